@@ -0,0 +1,100 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.http.netty;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+
+/**
+ * The content of a HTTP response which is sent using chunked transfer encoding,
+ * see {@link NettyHttpChannel#startChunkedResponse(org.elasticsearch.rest.RestStatus, String)}.
+ *
+ * Chunks are queued by the channel until they're written to the client, a writer should
+ * wait for the last written chunk if the channel isn't {@link #isWritable()} anymore.
+ */
+public class ChunkedHttpResponse {
+
+    private final NettyHttpChannel channel;
+    private final boolean close;
+    private int subsequence = 1;
+    private boolean finished = false;
+
+    ChunkedHttpResponse(NettyHttpChannel channel, boolean close) {
+        this.channel = channel;
+        this.close = close;
+    }
+
+    /**
+     * @param content the content of the chunk, it must not be modified afterwards
+     * @return a future which completes once the chunk has been written to the client
+     */
+    public ListenableFuture<Void> write(BytesReference content) {
+        assert !finished : "response is finished already";
+        final SettableFuture<Void> written = SettableFuture.create();
+        channel.write(new DefaultHttpChunk(content.toChannelBuffer()), subsequence++, false)
+                .addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        if (future.isSuccess()) {
+                            written.set(null);
+                        } else if (future.isCancelled()) {
+                            written.cancel(false);
+                        } else {
+                            written.setException(future.getCause());
+                        }
+                    }
+                });
+        return written;
+    }
+
+    /**
+     * @return false if the client doesn't read fast enough and chunks are piling up
+     */
+    public boolean isWritable() {
+        return channel.channel().isWritable();
+    }
+
+    /**
+     * sends the last chunk, which ends the response
+     */
+    public void finish() {
+        finished = true;
+        ChannelFuture future = channel.write(HttpChunk.LAST_CHUNK, subsequence, true);
+        if (close) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * closes the connection without ending the response, so that the client can tell
+     * that the content is incomplete. Used if an error occurs after the status has been sent.
+     */
+    public void abort() {
+        finished = true;
+        channel.channel().close();
+    }
+}
@@ -21,6 +21,7 @@
 
 package io.crate.core.bigarray;
 
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.ElasticsearchException;
 
 import java.util.Iterator;
@@ -32,14 +33,21 @@ public class MultiNativeArrayBigArray<T> extends AbstractMultiArrayBigArray<T, T
         super(offset, size, backingArrays);
     }
 
+    /**
+     * only the backing arrays are estimated, not the elements they reference
+     */
     @Override
     public long ramBytesUsed() {
-        return 0; // TODO
+        long used = 0L;
+        for (T[] array : backingArrays) {
+            used += RamUsageEstimator.shallowSizeOf(array);
+        }
+        return used;
     }
 
     @Override
     public void close() throws ElasticsearchException {
-        // lalala!
+        // plain java arrays, nothing to release
     }
 
     @Override
@@ -0,0 +1,304 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.core.bigarray;
+
+import com.google.common.io.CountingOutputStream;
+import io.crate.Streamer;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ByteArray;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * append only store of rows that serializes them using the streamers
+ * of their columns into the recycled byte pages of {@link BigArrays}.
+ *
+ * Once the pages exceed the spill threshold, all further rows are written to a temporary file.
+ * {@link #ramBytesUsed()} only reports the bytes held by the pages.
+ *
+ * Iterators only return the rows that have been added when they were created
+ * and reuse a single row array, which is only valid until the next call of <code>next()</code>.
+ * An iterator created with a {@link Position} starts reading right at the bytes of the first row
+ * added after it, the rows before it aren't read again.
+ */
+public class RowPageStore implements Iterable<Object[]>, Releasable {
+
+    /**
+     * the end of the rows a store contained at some point,
+     * the rows added afterwards start right behind it
+     */
+    public static class Position {
+
+        private final int row;
+        private final long pagesOffset;
+        private final long spillOffset;
+
+        private Position(int row, long pagesOffset, long spillOffset) {
+            this.row = row;
+            this.pagesOffset = pagesOffset;
+            this.spillOffset = spillOffset;
+        }
+
+        /**
+         * @return the number of rows before this position
+         */
+        public int row() {
+            return row;
+        }
+    }
+
+    public static final Position START = new Position(0, 0L, 0L);
+
+    private final BigArrays bigArrays;
+    private final Streamer<?>[] streamers;
+    private final long spillThreshold;
+
+    private ByteArray pages;
+    private long pagesSize = 0L;
+    private int pagesNumRows = 0;
+    private final StreamOutput pagesOutput;
+
+    private Path spillFile;
+    private StreamOutput spillOutput;
+    private CountingOutputStream spillBytes;
+    private int spilledNumRows = 0;
+    private final Set<Closeable> spillInputs = new HashSet<>();
+
+    /**
+     * @param streamers one streamer for every column of the rows
+     * @param spillThreshold number of bytes the pages may hold before rows are written to a temporary file
+     */
+    public RowPageStore(BigArrays bigArrays, Streamer<?>[] streamers, long spillThreshold) {
+        this.bigArrays = bigArrays;
+        this.streamers = streamers;
+        this.spillThreshold = spillThreshold;
+        this.pages = bigArrays.newByteArray(0, false);
+        this.pagesOutput = new OutputStreamStreamOutput(new PagesOutputStream());
+    }
+
+    public void add(Object[] row) throws IOException {
+        StreamOutput out;
+        if (spillOutput != null) {
+            out = spillOutput;
+            spilledNumRows++;
+        } else {
+            out = pagesOutput;
+            pagesNumRows++;
+        }
+        for (int i = 0; i < streamers.length; i++) {
+            streamers[i].writeValueTo(out, row[i]);
+        }
+        if (spillOutput == null && pagesSize > spillThreshold) {
+            spillFile = Files.createTempFile("crate-rows-", ".bin");
+            spillBytes = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+            spillOutput = new OutputStreamStreamOutput(spillBytes);
+        }
+    }
+
+    public int numRows() {
+        return pagesNumRows + spilledNumRows;
+    }
+
+    public boolean spilled() {
+        return spilledNumRows > 0;
+    }
+
+    public long ramBytesUsed() {
+        return pages == null ? 0L : pages.ramBytesUsed();
+    }
+
+    /**
+     * @return the position behind the last row added so far
+     */
+    public Position end() {
+        return new Position(numRows(), pagesSize, spillBytes == null ? 0L : spillBytes.getCount());
+    }
+
+    @Override
+    public Iterator<Object[]> iterator() {
+        return iterator(START);
+    }
+
+    /**
+     * @return an iterator over the rows added after the given position of this store
+     */
+    public Iterator<Object[]> iterator(Position from) {
+        if (spilledNumRows > 0) {
+            try {
+                spillOutput.flush();
+            } catch (IOException e) {
+                throw new ElasticsearchException("Failed to flush spilled rows", e);
+            }
+        }
+        return new RowIterator(from, pagesNumRows, spilledNumRows);
+    }
+
+    @Override
+    public void close() throws ElasticsearchException {
+        Releasables.close(pages);
+        pages = null;
+        try {
+            for (Closeable spillInput : spillInputs) {
+                spillInput.close();
+            }
+            spillInputs.clear();
+            if (spillOutput != null) {
+                spillOutput.close();
+                spillOutput = null;
+                Files.deleteIfExists(spillFile);
+            }
+        } catch (IOException e) {
+            throw new ElasticsearchException("Failed to delete spilled rows", e);
+        }
+    }
+
+    private class RowIterator implements Iterator<Object[]> {
+
+        private final int numPagesRows;
+        private final int numSpilledRows;
+        private final Object[] row = new Object[streamers.length];
+        private final StreamInput pagesInput;
+        private final long spillOffset;
+        private StreamInput spillInput;
+        private int idx;
+
+        private RowIterator(Position from, int numPagesRows, int numSpilledRows) {
+            this.numPagesRows = numPagesRows;
+            this.numSpilledRows = numSpilledRows;
+            this.pagesInput = new InputStreamStreamInput(new PagesInputStream(from.pagesOffset));
+            this.spillOffset = from.spillOffset;
+            this.idx = from.row;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx < numPagesRows + numSpilledRows;
+        }
+
+        @Override
+        public Object[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more rows");
+            }
+            try {
+                StreamInput in;
+                if (idx < numPagesRows) {
+                    in = pagesInput;
+                } else {
+                    if (spillInput == null) {
+                        FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.READ);
+                        channel.position(spillOffset);
+                        spillInput = new InputStreamStreamInput(
+                                new BufferedInputStream(Channels.newInputStream(channel)));
+                        spillInputs.add(spillInput);
+                    }
+                    in = spillInput;
+                }
+                for (int i = 0; i < streamers.length; i++) {
+                    row[i] = streamers[i].readValueFrom(in);
+                }
+                idx++;
+                if (!hasNext() && spillInput != null) {
+                    spillInputs.remove(spillInput);
+                    spillInput.close();
+                }
+            } catch (IOException e) {
+                throw new ElasticsearchException("Failed to read row", e);
+            }
+            return row;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove is not supported");
+        }
+    }
+
+    /**
+     * appends to the pages, which are grown as needed
+     */
+    private class PagesOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            pages = bigArrays.grow(pages, pagesSize + 1);
+            pages.set(pagesSize++, (byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            pages = bigArrays.grow(pages, pagesSize + len);
+            pages.set(pagesSize, b, off, len);
+            pagesSize += len;
+        }
+    }
+
+    /**
+     * reads from the pages, which might have been grown since this stream was created
+     */
+    private class PagesInputStream extends InputStream {
+
+        private final BytesRef slice = new BytesRef();
+        private long position;
+
+        private PagesInputStream(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= pagesSize) {
+                return -1;
+            }
+            return pages.get(position++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= pagesSize) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, pagesSize - position);
+            pages.get(position, toRead, slice);
+            System.arraycopy(slice.bytes, slice.offset, b, off, toRead);
+            position += toRead;
+            return toRead;
+        }
+    }
+}
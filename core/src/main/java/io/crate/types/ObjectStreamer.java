@@ -0,0 +1,253 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.types;
+
+import io.crate.Streamer;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Streamer for object values whose child columns are known.
+ *
+ * Known children are written positionally, without their key, using a streamer
+ * for their type. Children not known to this streamer (e.g. dynamically added columns
+ * or values of an unexpected java class) are written using the generic
+ * {@link org.elasticsearch.common.io.stream.StreamOutput#writeGenericValue(Object)}.
+ *
+ * The streamer itself is {@link Streamable} so that the sending and the receiving side
+ * use exactly the same child definitions.
+ */
+public class ObjectStreamer implements Streamer<Map<String, Object>>, Streamable {
+
+    private static final byte ABSENT = 0;
+    private static final byte NULL = 1;
+    private static final byte TYPED = 2;
+    private static final byte GENERIC = 3;
+
+    private String[] keys;
+    private DataType[] types;
+    private ObjectStreamer[] innerStreamers;
+    private Class<?>[] typedClasses;
+
+    public ObjectStreamer() {}
+
+    /**
+     * @param children the types of the known child columns by name
+     * @param innerStreamers streamers for known children that are objects themselves
+     */
+    public ObjectStreamer(Map<String, DataType> children, Map<String, ObjectStreamer> innerStreamers) {
+        SortedMap<String, DataType> sortedChildren = new TreeMap<>(children);
+        keys = new String[sortedChildren.size()];
+        types = new DataType[sortedChildren.size()];
+        this.innerStreamers = new ObjectStreamer[sortedChildren.size()];
+        int idx = 0;
+        for (Map.Entry<String, DataType> entry : sortedChildren.entrySet()) {
+            keys[idx] = entry.getKey();
+            types[idx] = entry.getValue();
+            this.innerStreamers[idx] = innerStreamers.get(entry.getKey());
+            idx++;
+        }
+        initTypedClasses();
+    }
+
+    public int numKnownChildren() {
+        return keys.length;
+    }
+
+    private void initTypedClasses() {
+        typedClasses = new Class<?>[types.length];
+        for (int i = 0; i < types.length; i++) {
+            typedClasses[i] = typedClass(types[i], innerStreamers[i]);
+        }
+    }
+
+    /**
+     * the java class a child value must have to be streamed using the typed streamer.
+     * Values of any other class are streamed generically, so that the receiving side
+     * sees exactly the same values as the sending side.
+     */
+    @Nullable
+    private static Class<?> typedClass(DataType type, @Nullable ObjectStreamer innerStreamer) {
+        switch (type.id()) {
+            case StringType.ID:
+            case IpType.ID:
+                return String.class;
+            case LongType.ID:
+            case TimestampType.ID:
+                return Long.class;
+            case IntegerType.ID:
+                return Integer.class;
+            case ShortType.ID:
+                return Short.class;
+            case ByteType.ID:
+                return Byte.class;
+            case DoubleType.ID:
+                return Double.class;
+            case FloatType.ID:
+                return Float.class;
+            case BooleanType.ID:
+                return Boolean.class;
+            case ObjectType.ID:
+                return innerStreamer == null ? null : Map.class;
+            default:
+                return null;
+        }
+    }
+
+    private boolean isTyped(int idx, Object value) {
+        Class<?> typedClass = typedClasses[idx];
+        if (typedClass == null) {
+            return false;
+        }
+        if (typedClass == Map.class) {
+            return value instanceof Map;
+        }
+        return value.getClass() == typedClass;
+    }
+
+    @Override
+    public Map<String, Object> readValueFrom(StreamInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            byte marker = in.readByte();
+            switch (marker) {
+                case ABSENT:
+                    break;
+                case NULL:
+                    map.put(keys[i], null);
+                    break;
+                case TYPED:
+                    map.put(keys[i], readTyped(i, in));
+                    break;
+                case GENERIC:
+                    map.put(keys[i], in.readGenericValue());
+                    break;
+                default:
+                    throw new IllegalStateException("invalid object child marker: " + marker);
+            }
+        }
+        int numDynamic = in.readVInt();
+        for (int i = 0; i < numDynamic; i++) {
+            map.put(in.readString(), in.readGenericValue());
+        }
+        return map;
+    }
+
+    private Object readTyped(int idx, StreamInput in) throws IOException {
+        if (typedClasses[idx] == String.class) {
+            return in.readString();
+        } else if (typedClasses[idx] == Map.class) {
+            return innerStreamers[idx].readValueFrom(in);
+        }
+        return types[idx].streamer().readValueFrom(in);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeValueTo(StreamOutput out, Object v) throws IOException {
+        if (v == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        Map<String, Object> map = (Map<String, Object>) v;
+        int numKnown = 0;
+        for (int i = 0; i < keys.length; i++) {
+            Object value = map.get(keys[i]);
+            if (value == null) {
+                if (map.containsKey(keys[i])) {
+                    numKnown++;
+                    out.writeByte(NULL);
+                } else {
+                    out.writeByte(ABSENT);
+                }
+                continue;
+            }
+            numKnown++;
+            if (isTyped(i, value)) {
+                out.writeByte(TYPED);
+                writeTyped(i, out, value);
+            } else {
+                out.writeByte(GENERIC);
+                out.writeGenericValue(value);
+            }
+        }
+
+        out.writeVInt(map.size() - numKnown);
+        if (numKnown < map.size()) {
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                if (Arrays.binarySearch(keys, entry.getKey()) < 0) {
+                    out.writeString(entry.getKey());
+                    out.writeGenericValue(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void writeTyped(int idx, StreamOutput out, Object value) throws IOException {
+        if (typedClasses[idx] == String.class) {
+            out.writeString((String) value);
+        } else if (typedClasses[idx] == Map.class) {
+            innerStreamers[idx].writeValueTo(out, value);
+        } else {
+            types[idx].streamer().writeValueTo(out, value);
+        }
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        int numChildren = in.readVInt();
+        keys = new String[numChildren];
+        types = new DataType[numChildren];
+        innerStreamers = new ObjectStreamer[numChildren];
+        for (int i = 0; i < numChildren; i++) {
+            keys[i] = in.readString();
+            types[i] = DataTypes.fromStream(in);
+            if (in.readBoolean()) {
+                innerStreamers[i] = new ObjectStreamer();
+                innerStreamers[i].readFrom(in);
+            }
+        }
+        initTypedClasses();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.writeString(keys[i]);
+            DataTypes.toStream(types[i], out);
+            out.writeBoolean(innerStreamers[i] != null);
+            if (innerStreamers[i] != null) {
+                innerStreamers[i].writeTo(out);
+            }
+        }
+    }
+}
@@ -68,9 +68,10 @@ public class ObjectType extends DataType<Map<String,Object>>
         return INSTANCE;
     }
 
-    // TODO: require type info from each child and then use typed streamer for contents of the map
-    // ?
-
+    /**
+     * generic streaming of object values, writing each key and a type marker per value.
+     * If the child columns are known use a {@link io.crate.types.ObjectStreamer} instead.
+     */
     @Override
     @SuppressWarnings("unchecked")
     public Map<String, Object> readValueFrom(StreamInput in) throws IOException {
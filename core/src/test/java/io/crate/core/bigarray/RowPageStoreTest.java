@@ -0,0 +1,126 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.core.bigarray;
+
+import com.google.common.collect.Lists;
+import io.crate.Streamer;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class RowPageStoreTest {
+
+    private static final Streamer<?>[] STREAMERS = new Streamer[]{
+            DataTypes.INTEGER.streamer(), DataTypes.STRING.streamer()};
+
+    private RowPageStore createStore(int numRows, long spillThreshold) throws Exception {
+        RowPageStore store = new RowPageStore(BigArrays.NON_RECYCLING_INSTANCE, STREAMERS, spillThreshold);
+        for (int i = 0; i < numRows; i++) {
+            store.add(new Object[]{i, new BytesRef("row" + i)});
+        }
+        return store;
+    }
+
+    private void assertRows(Iterator<Object[]> iterator, int numRows) {
+        assertRows(iterator, 0, numRows);
+    }
+
+    private void assertRows(Iterator<Object[]> iterator, int fromRow, int numRows) {
+        int i = fromRow;
+        while (iterator.hasNext()) {
+            Object[] row = iterator.next();
+            assertThat((Integer) row[0], is(i));
+            assertThat((BytesRef) row[1], is(new BytesRef("row" + i)));
+            i++;
+        }
+        assertThat(i, is(numRows));
+    }
+
+    @Test
+    public void testRowsInPages() throws Exception {
+        RowPageStore store = createStore(10_000, Long.MAX_VALUE);
+        assertThat(store.numRows(), is(10_000));
+        assertThat(store.spilled(), is(false));
+        assertThat(store.ramBytesUsed(), greaterThan(0L));
+        assertRows(store.iterator(), 10_000);
+        // iterating twice returns the same rows
+        assertRows(store.iterator(), 10_000);
+        store.close();
+        assertThat(store.ramBytesUsed(), is(0L));
+    }
+
+    @Test
+    public void testRowsSpilledToFile() throws Exception {
+        RowPageStore store = createStore(1000, 100);
+        assertThat(store.spilled(), is(true));
+        assertRows(store.iterator(), 1000);
+        store.close();
+    }
+
+    @Test
+    public void testIteratorOnlyReturnsRowsAddedBefore() throws Exception {
+        RowPageStore store = createStore(10, 100);
+        Iterator<Object[]> iterator = store.iterator();
+        store.add(new Object[]{10, new BytesRef("row10")});
+        assertRows(iterator, 10);
+        assertRows(store.iterator(), 11);
+        store.close();
+    }
+
+    @Test
+    public void testIteratorFromPosition() throws Exception {
+        // the first rows are kept in pages, the others are spilled
+        RowPageStore store = new RowPageStore(BigArrays.NON_RECYCLING_INSTANCE, STREAMERS, 100);
+        List<RowPageStore.Position> positions = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            positions.add(store.end());
+            store.add(new Object[]{i, new BytesRef("row" + i)});
+        }
+        assertThat(store.spilled(), is(true));
+        assertThat(positions.get(0).row(), is(0));
+        for (int i = 0; i < 100; i++) {
+            assertThat(positions.get(i).row(), is(i));
+            assertRows(store.iterator(positions.get(i)), i, 100);
+        }
+        assertRows(store.iterator(RowPageStore.START), 100);
+        assertThat(store.iterator(store.end()).hasNext(), is(false));
+        store.close();
+    }
+
+    @Test
+    public void testNullValues() throws Exception {
+        RowPageStore store = new RowPageStore(BigArrays.NON_RECYCLING_INSTANCE, STREAMERS, Long.MAX_VALUE);
+        store.add(new Object[]{null, null});
+        List<Object[]> rows = Lists.newArrayList(store.iterator());
+        assertThat(rows.size(), is(1));
+        assertThat(rows.get(0)[0], nullValue());
+        assertThat(rows.get(0)[1], nullValue());
+        store.close();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.types;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class ObjectStreamerTest {
+
+    private ObjectStreamer streamer() {
+        ObjectStreamer inner = new ObjectStreamer(
+                ImmutableMap.<String, DataType>of("city", DataTypes.STRING),
+                ImmutableMap.<String, ObjectStreamer>of());
+        return new ObjectStreamer(
+                ImmutableMap.<String, DataType>of(
+                        "name", DataTypes.STRING,
+                        "age", DataTypes.INTEGER,
+                        "size", DataTypes.LONG,
+                        "address", DataTypes.OBJECT),
+                ImmutableMap.of("address", inner));
+    }
+
+    private Map<String, Object> roundTrip(ObjectStreamer streamer, Object value) throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        streamer.writeValueTo(out, value);
+        BytesStreamInput in = new BytesStreamInput(out.bytes());
+        return streamer.readValueFrom(in);
+    }
+
+    @Test
+    public void testStreamKnownAndDynamicChildren() throws Exception {
+        Map<String, Object> address = new HashMap<>();
+        address.put("city", "Dornbirn");
+        address.put("zip", 6850);
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("name", "Arthur");
+        value.put("age", 42);
+        value.put("size", 10); // integer value of a long column is streamed generically
+        value.put("address", address);
+        value.put("nickname", null);
+        value.put("dynamic", "foo");
+
+        Map<String, Object> result = roundTrip(streamer(), value);
+        assertThat(result, is(value));
+        assertThat(result.get("size"), is((Object) 10));
+    }
+
+    @Test
+    public void testStreamNullAndEmpty() throws Exception {
+        assertThat(roundTrip(streamer(), null), is((Map<String, Object>) null));
+        assertThat(roundTrip(streamer(), new HashMap<String, Object>()).size(), is(0));
+    }
+
+    @Test
+    public void testStreamNullChild() throws Exception {
+        Map<String, Object> value = new HashMap<>();
+        value.put("name", null);
+        Map<String, Object> result = roundTrip(streamer(), value);
+        assertThat(result.containsKey("name"), is(true));
+        assertThat(result.containsKey("age"), is(false));
+    }
+
+    @Test
+    public void testTypedStreamingIsSmallerThanGeneric() throws Exception {
+        Map<String, Object> value = new HashMap<>();
+        value.put("name", "Arthur");
+        value.put("age", 42);
+        value.put("size", 10L);
+
+        BytesStreamOutput typedOut = new BytesStreamOutput();
+        streamer().writeValueTo(typedOut, value);
+        BytesStreamOutput genericOut = new BytesStreamOutput();
+        ObjectType.INSTANCE.writeValueTo(genericOut, value);
+
+        assertThat(typedOut.size(), lessThan(genericOut.size()));
+    }
+
+    @Test
+    public void testStreamerSerialization() throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        streamer().writeTo(out);
+        ObjectStreamer streamer = new ObjectStreamer();
+        streamer.readFrom(new BytesStreamInput(out.bytes()));
+        assertThat(streamer.numKnownChildren(), is(4));
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("name", "Trillian");
+        value.put("address", ImmutableMap.<String, Object>of("city", "London"));
+
+        // written with the original, read with the deserialized streamer
+        BytesStreamOutput valueOut = new BytesStreamOutput();
+        streamer().writeValueTo(valueOut, value);
+        Map<String, Object> result = streamer.readValueFrom(new BytesStreamInput(valueOut.bytes()));
+        assertThat(result, is(value));
+    }
+}
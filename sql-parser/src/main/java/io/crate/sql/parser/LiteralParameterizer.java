@@ -0,0 +1,271 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.sql.parser;
+
+import com.google.common.collect.ImmutableSet;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces literals of a statement with positional parameters so that statements
+ * which only differ in their literal values share the same text
+ * (and therefore the same parsed {@link io.crate.sql.tree.Statement}).
+ *
+ * <pre>
+ *     select name from users where id = 10 limit 5
+ *     -&gt; select name from users where id = ? limit 5  [10]
+ * </pre>
+ *
+ * Only literals whose replacement by a parameter can't change the semantics of the
+ * statement are parameterized. Those are literals inside the WHERE and HAVING clause,
+ * the VALUES of an INSERT and the SET clause of an UPDATE, excluding
+ * <ul>
+ *     <li>subscripts, array and object literals</li>
+ *     <li>match predicates and their options</li>
+ *     <li>typed literals like <code>TIMESTAMP '...'</code> and precisions like <code>CURRENT_TIMESTAMP(3)</code></li>
+ * </ul>
+ * Literals of the select list, GROUP BY and ORDER BY (ordinals), LIMIT and OFFSET are kept.
+ */
+public final class LiteralParameterizer
+{
+    private LiteralParameterizer() {}
+
+    /**
+     * @return the parameterized statement or null if the statement can't or doesn't need to be parameterized,
+     *         e.g. because it isn't a query or DML statement, already contains parameters or doesn't contain
+     *         any literals that could be replaced.
+     */
+    @Nullable
+    public static ParameterizedStatement parameterize(String sql)
+    {
+        TokenSource tokens;
+        try {
+            tokens = StatementSplitter.getLexer(sql, ImmutableSet.<String>of());
+        }
+        catch (ParsingException e) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(sql.length());
+        List<Object> args = new ArrayList<>();
+
+        int statementType = -1;
+        int prevType = -1;
+        String prevText = null;
+        int unaryMinusPos = -1;
+        int parenDepth = 0;
+        int bracketDepth = 0;
+        boolean enabled = false;
+        boolean suppressPending = false;
+        int suppressDepth = -1;
+
+        while (true) {
+            Token token;
+            try {
+                token = tokens.nextToken();
+            }
+            catch (ParsingException e) {
+                return null;
+            }
+            int type = token.getType();
+            if (type == Token.EOF) {
+                break;
+            }
+            if (type == StatementLexer.LEXER_ERROR) {
+                return null;
+            }
+            if (type == StatementLexer.WS || type == StatementLexer.COMMENT) {
+                sb.append(' ');
+                continue;
+            }
+            if (statementType == -1) {
+                if (type != StatementLexer.SELECT && type != StatementLexer.INSERT
+                    && type != StatementLexer.UPDATE && type != StatementLexer.DELETE) {
+                    return null;
+                }
+                statementType = type;
+            }
+
+            String text = token.getText();
+            if (suppressPending) {
+                suppressPending = false;
+                if ("(".equals(text) && suppressDepth == -1) {
+                    suppressDepth = parenDepth;
+                }
+            }
+
+            Object value = null;
+            switch (type) {
+                case StatementLexer.INTERVAL:
+                    return null;
+                case StatementLexer.SELECT:
+                    if (parenDepth > 0) {
+                        // sub-queries may contain select lists or limits on any nesting level
+                        return null;
+                    }
+                    enabled = false;
+                    break;
+                case StatementLexer.WHERE:
+                case StatementLexer.HAVING:
+                case StatementLexer.VALUES:
+                    enabled = enabled || parenDepth == 0;
+                    break;
+                case StatementLexer.SET:
+                    enabled = enabled || (parenDepth == 0 && statementType == StatementLexer.UPDATE);
+                    break;
+                case StatementLexer.FROM:
+                case StatementLexer.GROUP:
+                case StatementLexer.ORDER:
+                case StatementLexer.LIMIT:
+                case StatementLexer.OFFSET:
+                case StatementLexer.ON:
+                    if (parenDepth == 0) {
+                        enabled = false;
+                    }
+                    break;
+                case StatementLexer.MATCH:
+                case StatementLexer.WITH:
+                case StatementLexer.CURRENT_TIME:
+                case StatementLexer.CURRENT_TIMESTAMP:
+                    suppressPending = true;
+                    break;
+                case StatementLexer.STRING:
+                    if (prevType != StatementLexer.DATE && prevType != StatementLexer.TIME
+                        && prevType != StatementLexer.TIMESTAMP) {
+                        value = text;
+                    }
+                    break;
+                case StatementLexer.INTEGER_VALUE:
+                    try {
+                        value = Long.parseLong(unaryMinusPos == -1 ? text : "-" + text);
+                    }
+                    catch (NumberFormatException e) {
+                        // keep the literal, the parser will report it
+                    }
+                    break;
+                case StatementLexer.DECIMAL_VALUE:
+                    value = Double.parseDouble(unaryMinusPos == -1 ? text : "-" + text);
+                    break;
+                default:
+                    switch (text) {
+                        case "?":
+                        case "$":
+                            return null;
+                        case "(":
+                            parenDepth++;
+                            break;
+                        case ")":
+                            parenDepth--;
+                            if (parenDepth == suppressDepth) {
+                                suppressDepth = -1;
+                            }
+                            break;
+                        case "[":
+                        case "{":
+                            bracketDepth++;
+                            break;
+                        case "]":
+                        case "}":
+                            bracketDepth--;
+                            break;
+                    }
+            }
+
+            if (value != null && enabled && bracketDepth == 0 && suppressDepth == -1) {
+                if (unaryMinusPos != -1) {
+                    // fold the sign into the value: "x = -1" becomes "x = ?" with -1 as argument
+                    sb.setLength(unaryMinusPos);
+                }
+                args.add(value);
+                sb.append('?');
+                unaryMinusPos = -1;
+            }
+            else {
+                unaryMinusPos = -1;
+                if ("-".equals(text) && isOperandExpected(prevType, prevText)) {
+                    unaryMinusPos = sb.length();
+                }
+                sb.append(StatementSplitter.getTokenText(token));
+            }
+            prevType = type;
+            prevText = text;
+        }
+        if (args.isEmpty()) {
+            return null;
+        }
+        return new ParameterizedStatement(sb.toString().trim(), args.toArray(new Object[args.size()]));
+    }
+
+    /**
+     * a minus is only known to be an unary sign if it follows an opening parenthesis, a separator,
+     * a comparison or a boolean operator.
+     */
+    private static boolean isOperandExpected(int prevType, String prevText)
+    {
+        switch (prevType) {
+            case StatementLexer.WHERE:
+            case StatementLexer.HAVING:
+            case StatementLexer.AND:
+            case StatementLexer.OR:
+            case StatementLexer.NOT:
+            case StatementLexer.EQ:
+            case StatementLexer.NEQ:
+            case StatementLexer.LT:
+            case StatementLexer.LTE:
+            case StatementLexer.GT:
+            case StatementLexer.GTE:
+                return true;
+        }
+        return "(".equals(prevText) || ",".equals(prevText);
+    }
+
+    public static class ParameterizedStatement
+    {
+        private final String statement;
+        private final Object[] args;
+
+        public ParameterizedStatement(String statement, Object[] args)
+        {
+            this.statement = statement;
+            this.args = args;
+        }
+
+        /**
+         * the statement with all parameterized literals replaced by <code>?</code>
+         */
+        public String statement()
+        {
+            return statement;
+        }
+
+        /**
+         * the values of the replaced literals, in order of their occurrence
+         */
+        public Object[] args()
+        {
+            return args;
+        }
+    }
+}
@@ -97,6 +97,7 @@ tokens {
     IDENT_LIST;
     COLUMN_LIST;
     INSERT_VALUES;
+    ON_DUPLICATE_KEY;
     VALUES_LIST;
     ASSIGNMENT;
     ASSIGNMENT_LIST;
@@ -749,7 +750,7 @@ insertStmt
     ;
 
 insertSource
-   : VALUES values=insertValues -> $values
+   : VALUES values=insertValues onDuplicateKey? -> $values onDuplicateKey?
    | '(' query ')' -> query
    ;
 
@@ -769,6 +770,10 @@ valuesList
     : '(' expr (',' expr)* ')' -> ^(VALUES_LIST expr+)
     ;
 
+onDuplicateKey
+    : ON DUPLICATE KEY UPDATE assignmentList -> ^(ON_DUPLICATE_KEY assignmentList)
+    ;
+
 
 deleteStmt
     : DELETE FROM tablePrimary whereClause? -> ^(DELETE tablePrimary whereClause?)
@@ -1014,9 +1019,9 @@ settingsType
 
 nonReserved
     : ALIAS | ANALYZER | BERNOULLI | BLOB | CATALOGS | CHAR_FILTERS | CLUSTERED
-    | COLUMNS | COPY | CURRENT | DATE | DAY | DISTRIBUTED | DYNAMIC | EXPLAIN
+    | COLUMNS | COPY | CURRENT | DATE | DAY | DISTRIBUTED | DUPLICATE | DYNAMIC | EXPLAIN
     | EXTENDS | FOLLOWING | FORMAT | FULLTEXT | FUNCTIONS | GEO_POINT | GLOBAL
-    | GRAPHVIZ | HOUR | IGNORED | INTERVAL | LOGICAL | MATERIALIZED | MINUTE
+    | GRAPHVIZ | HOUR | IGNORED | INTERVAL | KEY | LOGICAL | MATERIALIZED | MINUTE
     | MONTH | OFF | OVER | PARTITION | PARTITIONED | PARTITIONS | PLAIN
     | PRECEDING | RANGE | REFRESH | ROW | ROWS | SCHEMA | SCHEMAS | SECOND
     | SHARDS | SHOW | STRICT | SYSTEM | TABLES | TABLESAMPLE | TEXT | TIME
@@ -1157,6 +1162,8 @@ INTO: 'INTO';
 VALUES: 'VALUES';
 DELETE: 'DELETE';
 UPDATE: 'UPDATE';
+DUPLICATE: 'DUPLICATE';
+KEY: 'KEY';
 SET: 'SET';
 RESET: 'RESET';
 COPY: 'COPY';
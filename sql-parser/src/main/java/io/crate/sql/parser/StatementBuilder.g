@@ -657,9 +657,9 @@ dropTable returns [Statement value]
     ;
 
 insert returns [Statement value]
-    : ^(INSERT values=insertValues namedTable cols=columnIdentList?)
+    : ^(INSERT values=insertValues onDuplicate=onDuplicateKey? namedTable cols=columnIdentList?)
         {
-            $value = new InsertFromValues($namedTable.value, $values.value, $cols.value);
+            $value = new InsertFromValues($namedTable.value, $values.value, $cols.value, $onDuplicate.value);
         }
     | ^(INSERT subQuery=query namedTable cols=columnIdentList?)
         {
@@ -675,6 +675,10 @@ valuesList returns [ValuesList value]
     : ^(VALUES_LIST exprList) { $value = new ValuesList($exprList.value); }
     ;
 
+onDuplicateKey returns [List<Assignment> value]
+    : ^(ON_DUPLICATE_KEY assignmentList) { $value = $assignmentList.value; }
+    ;
+
 delete returns [Statement value]
     : ^(DELETE relation where=whereClause?)
         {
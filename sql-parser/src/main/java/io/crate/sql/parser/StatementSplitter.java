@@ -109,7 +109,7 @@ public class StatementSplitter
         return sb.toString().trim();
     }
 
-    private static String getTokenText(Token token)
+    static String getTokenText(Token token)
     {
         switch (token.getType()) {
             case StatementLexer.STRING:
@@ -122,7 +122,7 @@ public class StatementSplitter
         return token.getText();
     }
 
-    private static TokenSource getLexer(String sql, Set<String> terminators)
+    static TokenSource getLexer(String sql, Set<String> terminators)
     {
         checkNotNull(sql, "sql is null");
         CharStream stream = new CaseInsensitiveStream(new ANTLRStringStream(sql));
@@ -405,6 +405,9 @@ public abstract class DefaultTraversalVisitor<R, C>
         for (ValuesList valuesList : node.valuesLists()) {
             process(valuesList, context);
         }
+        for (Assignment assignment : node.onDuplicateKeyAssignments()) {
+            process(assignment, context);
+        }
         return null;
     }
 
@@ -22,6 +22,7 @@
 package io.crate.sql.tree;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -29,11 +30,20 @@ import java.util.List;
 public class InsertFromValues extends Insert {
 
     private final List<ValuesList> valuesLists;
+    private final List<Assignment> onDuplicateKeyAssignments;
     private final int maxValuesLength;
 
     public InsertFromValues(Table table, List<ValuesList> valuesLists, @Nullable List<String> columns) {
+        this(table, valuesLists, columns, null);
+    }
+
+    public InsertFromValues(Table table,
+                            List<ValuesList> valuesLists,
+                            @Nullable List<String> columns,
+                            @Nullable List<Assignment> onDuplicateKeyAssignments) {
         super(table, columns);
         this.valuesLists = valuesLists;
+        this.onDuplicateKeyAssignments = Objects.firstNonNull(onDuplicateKeyAssignments, ImmutableList.<Assignment>of());
 
         int i = 0;
         for (ValuesList valuesList : valuesLists) {
@@ -46,6 +56,13 @@ public class InsertFromValues extends Insert {
         return valuesLists;
     }
 
+    /**
+     * the assignments of the <code>ON DUPLICATE KEY UPDATE</code> clause, empty if there is none
+     */
+    public List<Assignment> onDuplicateKeyAssignments() {
+        return onDuplicateKeyAssignments;
+    }
+
     /**
      * returns the length of the longest values List
      */
@@ -55,7 +72,7 @@ public class InsertFromValues extends Insert {
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(super.hashCode(), valuesLists);
+        return Objects.hashCode(super.hashCode(), valuesLists, onDuplicateKeyAssignments);
     }
 
     @Override
@@ -67,6 +84,7 @@ public class InsertFromValues extends Insert {
         InsertFromValues that = (InsertFromValues) o;
 
         if (!valuesLists.equals(that.valuesLists)) return false;
+        if (!onDuplicateKeyAssignments.equals(that.onDuplicateKeyAssignments)) return false;
 
         return true;
     }
@@ -77,6 +95,7 @@ public class InsertFromValues extends Insert {
                 .add("table", table)
                 .add("columns", columns)
                 .add("values", valuesLists)
+                .add("onDuplicateKeyAssignments", onDuplicateKeyAssignments)
                 .toString();
     }
 
@@ -0,0 +1,121 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.sql.parser;
+
+import org.testng.annotations.Test;
+
+import static io.crate.sql.parser.LiteralParameterizer.ParameterizedStatement;
+import static io.crate.sql.parser.LiteralParameterizer.parameterize;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TestLiteralParameterizer
+{
+    @Test
+    public void testWhereClause()
+    {
+        assertParameterized("select name from users where id = 10 and name = 'Arthur''s' limit 5",
+                "select name from users where id = ? and name = ? limit 5",
+                10L, "Arthur's");
+    }
+
+    @Test
+    public void testSameShapeResultsInSameStatement()
+    {
+        assertEquals(parameterize("select * from t where x = 1").statement(),
+                parameterize("select * from t   where x = 2").statement());
+    }
+
+    @Test
+    public void testNegativeNumbers()
+    {
+        assertParameterized("select * from t where x = -1.5 or y - 1 > -2",
+                "select * from t where x = ? or y - ? > ?",
+                -1.5, 1L, -2L);
+    }
+
+    @Test
+    public void testSelectListGroupByOrderByAndLimitAreKept()
+    {
+        assertParameterized("select x + 1, 'a' from t where y > 2 group by 1, 2 order by 1 limit 10 offset 5",
+                "select x + 1, 'a' from t where y > ? group by 1, 2 order by 1 limit 10 offset 5",
+                2L);
+    }
+
+    @Test
+    public void testInsertValues()
+    {
+        assertParameterized("insert into t (a, b) values (1, 'foo'), (-2, 'bar')",
+                "insert into t (a, b) values (?, ?), (?, ?)",
+                1L, "foo", -2L, "bar");
+    }
+
+    @Test
+    public void testUpdate()
+    {
+        assertParameterized("update t set a = 1, o['x'] = 'foo' where id = 3",
+                "update t set a = ?, o['x'] = ? where id = ?",
+                1L, "foo", 3L);
+    }
+
+    @Test
+    public void testArrayAndObjectLiteralsAreKept()
+    {
+        assertParameterized("insert into t (a, b, c) values ([1, 2], {x=1}, 3)",
+                "insert into t (a, b, c) values ([1, 2], {x=1}, ?)",
+                3L);
+    }
+
+    @Test
+    public void testMatchPredicateIsKept()
+    {
+        assertParameterized("select * from t where match((a 1.5, b), 'foo') using best_fields with (fuzziness=1) and x = 1",
+                "select * from t where match((a 1.5, b), 'foo') using best_fields with (fuzziness=1) and x = ?",
+                1L);
+    }
+
+    @Test
+    public void testTypedLiteralsAreKept()
+    {
+        assertParameterized("select * from t where ts > timestamp '2014-01-01' and ts < current_timestamp(3) and x = 1",
+                "select * from t where ts > timestamp '2014-01-01' and ts < current_timestamp(3) and x = ?",
+                1L);
+    }
+
+    @Test
+    public void testStatementsNotParameterized()
+    {
+        assertNull(parameterize("select 1, 'foo' from t"));
+        assertNull(parameterize("select * from t where x = ?"));
+        assertNull(parameterize("select * from t where x = $1 and y = 1"));
+        assertNull(parameterize("select * from t where x in (select y from t2 limit 1)"));
+        assertNull(parameterize("create table t (x int) clustered into 2 shards"));
+        assertNull(parameterize("copy t from '/tmp/foo.json'"));
+    }
+
+    private static void assertParameterized(String sql, String expectedStatement, Object... expectedArgs)
+    {
+        ParameterizedStatement parameterized = parameterize(sql);
+        assertEquals(parameterized.statement(), expectedStatement);
+        assertEquals(parameterized.args(), expectedArgs);
+    }
+}
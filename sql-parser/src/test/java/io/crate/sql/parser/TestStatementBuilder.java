@@ -292,6 +292,8 @@ public class TestStatementBuilder
         printStatement("insert into foo values ('string', NULL)");
         printStatement("insert into foo (id, name) values ('string', 1.2), (abs(-4), 4+?)");
         printStatement("insert into schemah.foo (id, name) values ('string', 1.2)");
+        printStatement("insert into foo (id, name) values (1, 'foo') on duplicate key update name = 'bar'");
+        printStatement("insert into foo (id, counter) values (?, 1), (?, 1) on duplicate key update counter = counter + 1, o['x'] = ?");
 
         printStatement("insert into foo (id, name) (select id, name from bar order by id)");
         printStatement("insert into foo (id, name) (select * from bar limit 3 offset 10)");
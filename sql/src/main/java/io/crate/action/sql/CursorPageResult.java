@@ -0,0 +1,60 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import io.crate.executor.TaskResult;
+
+import javax.annotation.Nullable;
+
+/**
+ * the first page of a result that has been executed with a fetch size
+ */
+public class CursorPageResult implements TaskResult {
+
+    private final Object[][] rows;
+    private final String cursor;
+
+    public CursorPageResult(Object[][] rows, @Nullable String cursor) {
+        this.rows = rows;
+        this.cursor = cursor;
+    }
+
+    @Override
+    public Object[][] rows() {
+        return rows;
+    }
+
+    /**
+     * @return the id of the cursor the remaining rows can be fetched from
+     *         or null if the page contains all rows
+     */
+    @Nullable
+    public String cursor() {
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public String errorMessage() {
+        return null;
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import io.crate.breaker.CrateCircuitBreakerService;
+import io.crate.core.bigarray.MultiNativeArrayBigArray;
+import io.crate.exceptions.CursorUnknownException;
+import io.crate.exceptions.UnhandledServerException;
+import io.crate.executor.BytesRefUtils;
+import io.crate.executor.FetchedRowsPageableTaskResult;
+import io.crate.executor.Page;
+import io.crate.executor.PageInfo;
+import io.crate.executor.PageableTaskResult;
+import io.crate.types.DataType;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Keeps the results of statements that have been executed with a fetch size,
+ * so that the remaining rows can be fetched page by page without executing the statement again.
+ *
+ * A cursor lives on the node that executed the statement, its id starts with the id of that node.
+ * Cursors that haven't been used for longer than their keep alive are closed
+ * and the number of open cursors per node is limited. All cursors are closed when the node stops.
+ *
+ * Rows that are kept in memory by a cursor are accounted for with the query circuit breaker.
+ */
+@Singleton
+public class CursorService extends AbstractLifecycleComponent<CursorService> implements Runnable {
+
+    public static final String MAX_OPEN_SETTING = "cursors.max_open";
+    public static final String KEEP_ALIVE_SETTING = "cursors.keep_alive";
+
+    static final int DEFAULT_MAX_OPEN = 100;
+    static final TimeValue DEFAULT_KEEP_ALIVE = TimeValue.timeValueMinutes(5);
+    static final TimeValue REAPER_INTERVAL = TimeValue.timeValueSeconds(30);
+
+    private static final char NODE_ID_SEPARATOR = ':';
+
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final CircuitBreaker circuitBreaker;
+    private final int maxOpen;
+    private final TimeValue defaultKeepAlive;
+    private final ConcurrentMap<String, Cursor> cursors = ConcurrentCollections.newConcurrentMap();
+    private ScheduledFuture<?> reaperTask;
+
+    @Inject
+    public CursorService(Settings settings,
+                         ClusterService clusterService,
+                         ThreadPool threadPool,
+                         CrateCircuitBreakerService breakerService) {
+        super(settings);
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.circuitBreaker = breakerService.getBreaker(CrateCircuitBreakerService.QUERY_BREAKER);
+        this.maxOpen = settings.getAsInt(MAX_OPEN_SETTING, DEFAULT_MAX_OPEN);
+        this.defaultKeepAlive = settings.getAsTime(KEEP_ALIVE_SETTING, DEFAULT_KEEP_ALIVE);
+    }
+
+    @Override
+    protected void doStart() throws ElasticsearchException {
+        reaperTask = threadPool.scheduleWithFixedDelay(this, REAPER_INTERVAL);
+    }
+
+    @Override
+    protected void doStop() throws ElasticsearchException {
+        if (reaperTask != null) {
+            reaperTask.cancel(false);
+            reaperTask = null;
+        }
+        for (Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+            if (cursors.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().close();
+            }
+        }
+    }
+
+    @Override
+    protected void doClose() throws ElasticsearchException {
+    }
+
+    /**
+     * @return the id of the node the cursor lives on
+     * @throws CursorUnknownException if the id is no valid cursor id
+     */
+    public static String nodeId(String cursorId) {
+        int idx = cursorId.indexOf(NODE_ID_SEPARATOR);
+        if (idx <= 0) {
+            throw new CursorUnknownException(cursorId);
+        }
+        return cursorId.substring(0, idx);
+    }
+
+    public TimeValue keepAlive(@Nullable TimeValue keepAlive) {
+        return keepAlive == null ? defaultKeepAlive : keepAlive;
+    }
+
+    public int numOpen() {
+        return cursors.size();
+    }
+
+    /**
+     * fail early if no further cursor can be opened, before a statement with a fetch size is executed
+     */
+    public void ensureCapacity() {
+        if (cursors.size() >= maxOpen) {
+            throw tooManyCursors();
+        }
+    }
+
+    /**
+     * returns the rows of the first page of the result and keeps the result in a cursor if more rows may follow
+     *
+     * @param result the result holding the page of <code>pageInfo</code>
+     * @param limit the maximum number of rows of the whole result or null if there is no limit
+     */
+    public CursorPageResult open(PageableTaskResult result,
+                                 PageInfo pageInfo,
+                                 @Nullable Integer limit,
+                                 SQLRequest request,
+                                 String[] outputNames,
+                                 DataType[] outputTypes) {
+        return open(result, pageInfo, limit, request, outputNames, outputTypes, 0L);
+    }
+
+    /**
+     * like {@link #open(PageableTaskResult, PageInfo, Integer, SQLRequest, String[], DataType[])}
+     * for a result whose rows are all in memory already.
+     * The rows are accounted for with the query circuit breaker as long as the cursor keeps them.
+     *
+     * @throws org.elasticsearch.common.breaker.CircuitBreakingException if the rows exceed the limit of the breaker
+     */
+    public CursorPageResult open(Object[][] rows, SQLRequest request, String[] outputNames, DataType[] outputTypes) {
+        long bytes = estimateSize(rows);
+        circuitBreaker.addEstimateBytesAndMaybeBreak(bytes, "cursor");
+        PageInfo pageInfo = PageInfo.firstPage(request.fetchSize());
+        PageableTaskResult result = new FetchedRowsPageableTaskResult(
+                new MultiNativeArrayBigArray<Object[]>(0, rows.length, rows), 0L, pageInfo);
+        return open(result, pageInfo, null, request, outputNames, outputTypes, bytes);
+    }
+
+    /**
+     * @param accountedBytes bytes accounted for the result with the circuit breaker,
+     *                       released once the result is closed
+     */
+    private CursorPageResult open(PageableTaskResult result,
+                                  PageInfo pageInfo,
+                                  @Nullable Integer limit,
+                                  SQLRequest request,
+                                  String[] outputNames,
+                                  DataType[] outputTypes,
+                                  long accountedBytes) {
+        long remaining = limit == null ? Long.MAX_VALUE : limit;
+        Object[][] rows;
+        try {
+            rows = rows(result.page(), Math.min(pageInfo.size(), remaining));
+        } catch (Throwable t) {
+            closeQuietly(result, accountedBytes);
+            throw t;
+        }
+        remaining -= rows.length;
+        if (rows.length < pageInfo.size() || remaining == 0) {
+            closeQuietly(result, accountedBytes);
+            return new CursorPageResult(rows, null);
+        }
+        if (cursors.size() >= maxOpen) {
+            closeQuietly(result, accountedBytes);
+            throw tooManyCursors();
+        }
+        if (lifecycle.stoppedOrClosed()) {
+            closeQuietly(result, accountedBytes);
+            throw new UnhandledServerException("Cannot open a cursor, the node is shutting down");
+        }
+        String id = clusterService.localNode().id() + NODE_ID_SEPARATOR + Strings.randomBase64UUID();
+        cursors.put(id, new Cursor(result, pageInfo, remaining, request.fetchSize(),
+                keepAlive(request.keepAlive()).millis(), outputNames, outputTypes, request.includeTypesOnResponse(),
+                accountedBytes));
+        return new CursorPageResult(rows, id);
+    }
+
+    /**
+     * rough estimate of the heap used by the rows, only strings are measured
+     */
+    static long estimateSize(Object[][] rows) {
+        long bytes = RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + (long) rows.length * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        for (Object[] row : rows) {
+            bytes += RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+            for (Object value : row) {
+                bytes += RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+                if (value instanceof BytesRef) {
+                    bytes += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + ((BytesRef) value).length;
+                } else if (value instanceof String) {
+                    bytes += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+                            + RamUsageEstimator.NUM_BYTES_CHAR * ((String) value).length();
+                } else if (value != null) {
+                    bytes += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_LONG;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * fetch the next page of the cursor of the request,
+     * the response contains the id of the cursor as long as more rows may follow.
+     * If the request has no fetch size the one of the statement that opened the cursor is used.
+     */
+    public void fetch(final SQLRequest request, final ActionListener<SQLResponse> listener) {
+        final String id = request.cursor();
+        final Cursor cursor = cursors.get(id);
+        if (cursor == null) {
+            throw new CursorUnknownException(id);
+        }
+        if (!cursor.acquire()) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "Cursor '%s' is already fetching rows", id));
+        }
+        final int size = (int) Math.min(request.fetchSize() > 0 ? request.fetchSize() : cursor.fetchSize,
+                cursor.remaining);
+        final PageInfo pageInfo = cursor.pageInfo.nextPage(size);
+        try {
+            Futures.addCallback(cursor.result.fetch(pageInfo), new FutureCallback<PageableTaskResult>() {
+                @Override
+                public void onSuccess(@Nullable PageableTaskResult result) {
+                    assert result != null;
+                    Object[][] rows;
+                    String nextId = null;
+                    try {
+                        rows = rows(result.page(), size);
+                        if (rows.length < size || cursor.remaining == rows.length) {
+                            cursors.remove(id, cursor);
+                            cursor.finish(result);
+                        } else if (cursor.release(result, pageInfo, rows.length)) {
+                            nextId = id;
+                        }
+                        BytesRefUtils.ensureStringTypesAreStrings(cursor.outputTypes, rows);
+                    } catch (Throwable t) {
+                        onFailure(t);
+                        return;
+                    }
+                    SQLResponse response = new SQLResponse(cursor.outputNames, rows, cursor.outputTypes,
+                            rows.length, request.creationTime(), cursor.includeTypes);
+                    response.cursor(nextId);
+                    listener.onResponse(response);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    cursors.remove(id, cursor);
+                    cursor.finish(cursor.result);
+                    listener.onFailure(t);
+                }
+            });
+        } catch (Throwable t) {
+            cursors.remove(id, cursor);
+            cursor.finish(cursor.result);
+            throw t;
+        }
+    }
+
+    /**
+     * close the cursor and release the resources of its result
+     */
+    public void close(String id) {
+        Cursor cursor = cursors.remove(id);
+        if (cursor == null) {
+            throw new CursorUnknownException(id);
+        }
+        cursor.close();
+    }
+
+    @Override
+    public void run() {
+        reap(System.currentTimeMillis());
+    }
+
+    /**
+     * close all cursors that haven't been used for longer than their keep alive
+     */
+    void reap(long now) {
+        for (Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+            Cursor cursor = entry.getValue();
+            if (cursor.expired(now) && cursors.remove(entry.getKey(), cursor)) {
+                logger.debug("closing cursor {} after its keep alive of {}ms", entry.getKey(), cursor.keepAliveMillis);
+                cursor.close();
+            }
+        }
+    }
+
+    private UnhandledServerException tooManyCursors() {
+        return new UnhandledServerException(String.format(Locale.ENGLISH,
+                "Too many open cursors, a node can have up to %d cursors open", maxOpen));
+    }
+
+    private static Object[][] rows(Page page, long maxRows) {
+        List<Object[]> rows = new ArrayList<>((int) Math.min(page.size(), maxRows));
+        for (Object[] row : page) {
+            if (rows.size() >= maxRows) {
+                break;
+            }
+            rows.add(row);
+        }
+        return rows.toArray(new Object[rows.size()][]);
+    }
+
+    private void closeQuietly(PageableTaskResult result) {
+        try {
+            result.close();
+        } catch (IOException e) {
+            logger.error("error closing cursor result", e);
+        }
+    }
+
+    private void closeQuietly(PageableTaskResult result, long accountedBytes) {
+        closeQuietly(result);
+        if (accountedBytes != 0) {
+            circuitBreaker.addWithoutBreaking(-accountedBytes);
+        }
+    }
+
+    private class Cursor {
+
+        private final int fetchSize;
+        private final long keepAliveMillis;
+        private final String[] outputNames;
+        private final DataType[] outputTypes;
+        private final boolean includeTypes;
+        private long accountedBytes;
+
+        private PageableTaskResult result;
+        private PageInfo pageInfo;
+        private long remaining;
+        private long lastAccess;
+        private boolean fetching = false;
+        private boolean closed = false;
+
+        Cursor(PageableTaskResult result,
+               PageInfo pageInfo,
+               long remaining,
+               int fetchSize,
+               long keepAliveMillis,
+               String[] outputNames,
+               DataType[] outputTypes,
+               boolean includeTypes,
+               long accountedBytes) {
+            this.result = result;
+            this.pageInfo = pageInfo;
+            this.remaining = remaining;
+            this.fetchSize = fetchSize;
+            this.keepAliveMillis = keepAliveMillis;
+            this.outputNames = outputNames;
+            this.outputTypes = outputTypes;
+            this.includeTypes = includeTypes;
+            this.accountedBytes = accountedBytes;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        synchronized boolean acquire() {
+            if (fetching || closed) {
+                return false;
+            }
+            fetching = true;
+            return true;
+        }
+
+        /**
+         * keep the fetched page as the current position of the cursor
+         *
+         * @return false if the cursor has been closed while the page was fetched
+         */
+        synchronized boolean release(PageableTaskResult result, PageInfo pageInfo, int numRows) {
+            this.result = result;
+            this.pageInfo = pageInfo;
+            this.remaining -= numRows;
+            this.lastAccess = System.currentTimeMillis();
+            fetching = false;
+            if (closed) {
+                closeQuietly(result);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * close the cursor after the last page has been fetched or fetching failed
+         */
+        synchronized void finish(PageableTaskResult lastResult) {
+            fetching = false;
+            closed = true;
+            // an exhausted result releases its resources on its own
+            if (lastResult != PageableTaskResult.EMPTY_PAGABLE_RESULT) {
+                closeQuietly(lastResult);
+            }
+            releaseBytes();
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // a page that is being fetched is closed once it arrives
+            if (!fetching) {
+                closeQuietly(result);
+            }
+            releaseBytes();
+        }
+
+        private void releaseBytes() {
+            if (accountedBytes != 0) {
+                circuitBreaker.addWithoutBreaking(-accountedBytes);
+                accountedBytes = 0;
+            }
+        }
+
+        synchronized boolean expired(long now) {
+            return !fetching && lastAccess + keepAliveMillis < now;
+        }
+    }
+}
@@ -45,6 +45,7 @@ public abstract class SQLBaseResponse extends ActionResponse implements ToXConte
         static final XContentBuilderString ROWCOUNT = new XContentBuilderString("rowcount");
         static final XContentBuilderString DURATION = new XContentBuilderString("duration");
         static final XContentBuilderString ERROR_MESSAGE = new XContentBuilderString("error_message");
+        static final XContentBuilderString CURSOR = new XContentBuilderString("cursor");
     }
 
     protected String[] cols;
@@ -22,19 +22,31 @@
 package io.crate.action.sql;
 
 import com.google.common.base.Objects;
+import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Arrays;
 
 /**
  * Request class for regular/single SQL statements.
+ *
+ * With a {@link #fetchSize(int)} only the first rows of the result are returned,
+ * the rest is kept in a cursor whose id is returned with the {@link SQLResponse}.
+ * A request with a {@link #cursor(String)} instead of a statement fetches the next rows of that cursor
+ * or closes it.
  */
 public class SQLRequest extends SQLBaseRequest {
 
     public final static Object[] EMPTY_ARGS = new Object[0];
     private Object[] args;
+    private int fetchSize = 0;
+    private TimeValue keepAlive;
+    private String cursor;
+    private boolean closeCursor = false;
 
     public SQLRequest() {} // used for serialization
 
@@ -72,6 +84,64 @@ public class SQLRequest extends SQLBaseRequest {
         this.args = Objects.firstNonNull(args, EMPTY_ARGS);
     }
 
+    /**
+     * @return the maximum number of rows of the response or 0 if all rows are returned at once
+     */
+    public int fetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * set the number of rows that are returned with the response,
+     * if the result contains more rows they can be fetched using the cursor of the response.
+     */
+    public void fetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return how long an unused cursor is kept open or null if the default of the node applies
+     */
+    @Nullable
+    public TimeValue keepAlive() {
+        return keepAlive;
+    }
+
+    public void keepAlive(@Nullable TimeValue keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * @return the id of the cursor to fetch from or null if the request contains a statement
+     */
+    @Nullable
+    public String cursor() {
+        return cursor;
+    }
+
+    public void cursor(@Nullable String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return true if the {@link #cursor()} is closed instead of fetched from
+     */
+    public boolean closeCursor() {
+        return closeCursor;
+    }
+
+    public void closeCursor(boolean closeCursor) {
+        this.closeCursor = closeCursor;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (cursor != null) {
+            return null;
+        }
+        return super.validate();
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         // doesn't call super to stay compatible with older crate version
@@ -85,6 +155,15 @@ public class SQLRequest extends SQLBaseRequest {
         }
         creationTime = in.readVLong();
         includeTypesOnResponse = in.readBoolean();
+        if (in.readBoolean()) {
+            // the cursor attributes are only sent if they are set
+            fetchSize = in.readVInt();
+            if (in.readBoolean()) {
+                keepAlive = TimeValue.readTimeValue(in);
+            }
+            cursor = in.readOptionalString();
+            closeCursor = in.readBoolean();
+        }
     }
 
     @Override
@@ -93,13 +172,25 @@ public class SQLRequest extends SQLBaseRequest {
 
         out.writeBoolean(false); // headers == null from TransportRequest base class
 
-        out.writeString(stmt);
+        // requests for a cursor have no statement
+        out.writeString(stmt == null ? "" : stmt);
         out.writeVInt(args.length);
         for (int i = 0; i < args.length; i++) {
             out.writeGenericValue(args[i]);
         }
         out.writeVLong(creationTime);
         out.writeBoolean(includeTypesOnResponse);
+        boolean hasCursorAttributes = fetchSize > 0 || cursor != null;
+        out.writeBoolean(hasCursorAttributes);
+        if (hasCursorAttributes) {
+            out.writeVInt(fetchSize);
+            out.writeBoolean(keepAlive != null);
+            if (keepAlive != null) {
+                keepAlive.writeTo(out);
+            }
+            out.writeOptionalString(cursor);
+            out.writeBoolean(closeCursor);
+        }
     }
 
     @Override
@@ -107,6 +198,8 @@ public class SQLRequest extends SQLBaseRequest {
         return Objects.toStringHelper(this)
                 .add("stmt", stmt)
                 .add("args", Arrays.asList(args))
+                .add("fetchSize", fetchSize)
+                .add("cursor", cursor)
                 .add("creationTime", creationTime).toString();
     }
 }
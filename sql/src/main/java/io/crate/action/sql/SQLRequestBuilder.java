@@ -24,6 +24,7 @@ package io.crate.action.sql;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
 
 public class SQLRequestBuilder extends ActionRequestBuilder<SQLRequest, SQLResponse, SQLRequestBuilder, Client> {
 
@@ -51,4 +52,20 @@ public class SQLRequestBuilder extends ActionRequestBuilder<SQLRequest, SQLRespo
         request.includeTypesOnResponse(includeTypes);
     }
 
+    public void fetchSize(int fetchSize) {
+        request.fetchSize(fetchSize);
+    }
+
+    public void keepAlive(TimeValue keepAlive) {
+        request.keepAlive(keepAlive);
+    }
+
+    public void cursor(String cursor) {
+        request.cursor(cursor);
+    }
+
+    public void closeCursor(boolean closeCursor) {
+        request.closeCursor(closeCursor);
+    }
+
 }
@@ -27,6 +27,7 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -36,6 +37,7 @@ public class SQLResponse extends SQLBaseResponse {
 
     private Object[][] rows;
     private long rowCount = NO_ROW_COUNT;
+    private String cursor;
 
     public SQLResponse() {
     }
@@ -57,22 +59,41 @@ public class SQLResponse extends SQLBaseResponse {
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
-        builder.startObject();
-        writeSharedAttributes(builder);
-        builder.startArray(Fields.ROWS);
+        startXContent(builder);
         if (rows != null) {
             for (int i = 0; i < rows.length; i++) {
-                builder.startArray();
-                for (int j = 0; j < cols.length; j++) {
-                    builder.value(rows[i][j]);
-                }
-                builder.endArray();
+                rowToXContent(builder, i);
             }
         }
+        endXContent(builder);
+        return builder;
+    }
+
+    /**
+     * writes everything in front of the rows, so that the response can be written in pieces
+     * using {@link #rowToXContent(XContentBuilder, int)} and {@link #endXContent(XContentBuilder)}
+     */
+    public void startXContent(XContentBuilder builder) throws IOException {
+        builder.startObject();
+        writeSharedAttributes(builder);
+        builder.startArray(Fields.ROWS);
+    }
+
+    public void rowToXContent(XContentBuilder builder, int row) throws IOException {
+        builder.startArray();
+        for (int j = 0; j < cols.length; j++) {
+            builder.value(rows[row][j]);
+        }
+        builder.endArray();
+    }
+
+    public void endXContent(XContentBuilder builder) throws IOException {
         builder.endArray();
         builder.field(Fields.ROWCOUNT, rowCount());
+        if (cursor != null) {
+            builder.field(Fields.CURSOR, cursor);
+        }
         builder.endObject();
-        return builder;
     }
 
     public Object[][] rows(){
@@ -95,6 +116,18 @@ public class SQLResponse extends SQLBaseResponse {
         this.rows = rows;
     }
 
+    /**
+     * @return the id of the cursor to fetch the next rows from or null if the response contains all rows
+     */
+    @Nullable
+    public String cursor() {
+        return cursor;
+    }
+
+    public void cursor(@Nullable String cursor) {
+        this.cursor = cursor;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         // don't user super.readFrom to stay binary backward compatible
@@ -124,6 +157,7 @@ public class SQLResponse extends SQLBaseResponse {
         } else {
             colTypes = EMPTY_TYPES;
         }
+        cursor = in.readOptionalString();
     }
 
     @Override
@@ -148,6 +182,7 @@ public class SQLResponse extends SQLBaseResponse {
                 DataTypes.toStream(colTypes[i], out);
             }
         }
+        out.writeOptionalString(cursor);
     }
 
     @Override
@@ -157,6 +192,7 @@ public class SQLResponse extends SQLBaseResponse {
                 "colTypes=" + ((colTypes !=null) ? Arrays.toString(colTypes): null) +
                 ", rows=" + ((rows!=null) ? rows.length: -1)  +
                 ", rowCount=" + rowCount  +
+                ", cursor=" + cursor  +
                 ", duration=" + duration()  +
                 '}';
     }
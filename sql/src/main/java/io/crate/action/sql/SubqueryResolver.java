@@ -0,0 +1,305 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.analyze.Analysis;
+import io.crate.analyze.Analyzer;
+import io.crate.analyze.SelectAnalyzedStatement;
+import io.crate.analyze.relations.AnalyzedRelation;
+import io.crate.analyze.relations.TableRelation;
+import io.crate.executor.Executor;
+import io.crate.executor.TaskResult;
+import io.crate.planner.Planner;
+import io.crate.planner.TableStatsService;
+import io.crate.sql.tree.*;
+import org.elasticsearch.common.inject.Provider;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Executes the subqueries of <code>x IN (subquery)</code> and <code>EXISTS (subquery)</code> conditions
+ * in the WHERE clause of a SELECT statement before the statement itself is analyzed.
+ *
+ * <ul>
+ *     <li>the result of an IN subquery is passed as an additional parameter: <code>x IN (?)</code>,
+ *     which is analyzed to a deduplicated set and pushed down to the collect phase
+ *     as a single terms filter if it is large</li>
+ *     <li>an EXISTS subquery is executed with a limit of 1 and replaced by <code>true</code> or <code>false</code></li>
+ * </ul>
+ *
+ * IN subqueries whose result exceeds {@link #MAX_KEYS} rows are left in place and are executed
+ * as semi join by the planner.
+ */
+public class SubqueryResolver {
+
+    static final int MAX_KEYS = 10_000;
+
+    private static final SubqueryCollector SUBQUERY_COLLECTOR = new SubqueryCollector();
+
+    private final Analyzer analyzer;
+    private final Planner planner;
+    private final Provider<Executor> executorProvider;
+    private final TableStatsService tableStatsService;
+
+    public SubqueryResolver(Analyzer analyzer,
+                            Planner planner,
+                            Provider<Executor> executorProvider,
+                            TableStatsService tableStatsService) {
+        this.analyzer = analyzer;
+        this.planner = planner;
+        this.executorProvider = executorProvider;
+        this.tableStatsService = tableStatsService;
+    }
+
+    public static class ResolvedStatement {
+        private final Statement statement;
+        private final Object[] args;
+
+        public ResolvedStatement(Statement statement, Object[] args) {
+            this.statement = statement;
+            this.args = args;
+        }
+
+        public Statement statement() {
+            return statement;
+        }
+
+        public Object[] args() {
+            return args;
+        }
+    }
+
+    /**
+     * @return true if the WHERE clause of the statement contains IN or EXISTS subqueries
+     */
+    public static boolean hasSubqueries(Statement statement) {
+        return !subqueryPredicates(statement).isEmpty();
+    }
+
+    /**
+     * executes the subqueries of the statement and returns the statement with their results
+     * in place of the subqueries together with the extended arguments
+     */
+    public ListenableFuture<ResolvedStatement> resolve(final Statement statement, final Object[] args) {
+        final List<Expression> predicates = subqueryPredicates(statement);
+        List<ListenableFuture<Object[][]>> results = new ArrayList<>(predicates.size());
+        for (Expression predicate : predicates) {
+            if (predicate instanceof ExistsPredicate) {
+                Query subquery = withLimit(((ExistsPredicate) predicate).getSubquery(), 1);
+                results.add(execute(analyzer.analyze(subquery, args, SQLBulkRequest.EMPTY_BULK_ARGS)));
+            } else {
+                results.add(executeInSubquery(
+                        ((SubqueryExpression) ((InPredicate) predicate).getValueList()).getQuery(), args));
+            }
+        }
+        return Futures.transform(Futures.allAsList(results), new Function<List<Object[][]>, ResolvedStatement>() {
+            @Nullable
+            @Override
+            public ResolvedStatement apply(List<Object[][]> input) {
+                List<Object> resolvedArgs = new ArrayList<>(Arrays.asList(args));
+                Map<Expression, Expression> replacements = new IdentityHashMap<>(predicates.size());
+                for (int i = 0; i < predicates.size(); i++) {
+                    Expression predicate = predicates.get(i);
+                    Object[][] rows = input.get(i);
+                    if (predicate instanceof ExistsPredicate) {
+                        replacements.put(predicate,
+                                rows.length > 0 ? BooleanLiteral.TRUE_LITERAL : BooleanLiteral.FALSE_LITERAL);
+                    } else if (rows != null) {
+                        Set<Object> keys = new HashSet<>(rows.length);
+                        for (Object[] row : rows) {
+                            keys.add(row[0]);
+                        }
+                        resolvedArgs.add(keys);
+                        replacements.put(predicate, new InPredicate(
+                                ((InPredicate) predicate).getValue(), new ParameterExpression(resolvedArgs.size())));
+                    }
+                }
+                return new ResolvedStatement(
+                        replaceWhere((Query) statement, replacements),
+                        resolvedArgs.toArray(new Object[resolvedArgs.size()]));
+            }
+        });
+    }
+
+    /**
+     * @return a future of the rows of the subquery
+     *         or of null if there are too many to be passed on as parameter
+     */
+    private ListenableFuture<Object[][]> executeInSubquery(Query subquery, Object[] args) {
+        final boolean limited = isLimited(subquery);
+        if (!limited) {
+            subquery = withLimit(subquery, MAX_KEYS + 1);
+        }
+        Analysis analysis = analyzer.analyze(subquery, args, SQLBulkRequest.EMPTY_BULK_ARGS);
+        if (analysis.analyzedStatement().outputTypes().size() != 1) {
+            throw new IllegalArgumentException("Subquery of an IN condition must select exactly one column");
+        }
+        if (!limited && exceedsMaxKeys(analysis)) {
+            return Futures.immediateFuture(null);
+        }
+        return Futures.transform(execute(analysis), new Function<Object[][], Object[][]>() {
+            @Nullable
+            @Override
+            public Object[][] apply(Object[][] rows) {
+                if (!limited && rows.length > MAX_KEYS) {
+                    return null;
+                }
+                return rows;
+            }
+        });
+    }
+
+    /**
+     * a subquery selecting all documents of a table that is known to be too large
+     * doesn't need to be executed
+     */
+    private boolean exceedsMaxKeys(Analysis analysis) {
+        if (!(analysis.analyzedStatement() instanceof SelectAnalyzedStatement)) {
+            return false;
+        }
+        SelectAnalyzedStatement statement = (SelectAnalyzedStatement) analysis.analyzedStatement();
+        if (statement.sources().size() != 1
+            || statement.whereClause().hasQuery()
+            || statement.whereClause().noMatch()
+            || statement.hasGroupBy()
+            || statement.hasAggregates()) {
+            return false;
+        }
+        AnalyzedRelation relation = Iterables.getOnlyElement(statement.sources().values());
+        return relation instanceof TableRelation
+               && tableStatsService.numDocs(((TableRelation) relation).tableInfo().ident()) > MAX_KEYS;
+    }
+
+    private ListenableFuture<Object[][]> execute(Analysis analysis) {
+        if (analysis.analyzedStatement().hasNoResult()) {
+            return Futures.immediateFuture(TaskResult.EMPTY_ROWS);
+        }
+        Executor executor = executorProvider.get();
+        List<ListenableFuture<TaskResult>> results = executor.execute(executor.newJob(planner.plan(analysis)));
+        return Futures.transform(Iterables.getOnlyElement(results), new Function<TaskResult, Object[][]>() {
+            @Nullable
+            @Override
+            public Object[][] apply(TaskResult input) {
+                return input.rows();
+            }
+        });
+    }
+
+    private static boolean isLimited(Query query) {
+        if (query.getLimit().isPresent()) {
+            return true;
+        }
+        return query.getQueryBody() instanceof QuerySpecification
+               && ((QuerySpecification) query.getQueryBody()).getLimit().isPresent();
+    }
+
+    private static Query withLimit(Query query, int limit) {
+        if (isLimited(query) || !(query.getQueryBody() instanceof QuerySpecification)) {
+            return query;
+        }
+        QuerySpecification spec = (QuerySpecification) query.getQueryBody();
+        return new Query(
+                query.getWith(),
+                new QuerySpecification(
+                        spec.getSelect(),
+                        spec.getFrom(),
+                        spec.getWhere(),
+                        spec.getGroupBy(),
+                        spec.getHaving(),
+                        spec.getOrderBy(),
+                        Optional.<Expression>of(new LongLiteral(String.valueOf(limit))),
+                        spec.getOffset()),
+                query.getOrderBy(),
+                query.getLimit(),
+                query.getOffset());
+    }
+
+    private static Statement replaceWhere(Query query, final Map<Expression, Expression> replacements) {
+        if (replacements.isEmpty()) {
+            return query;
+        }
+        QuerySpecification spec = (QuerySpecification) query.getQueryBody();
+        Expression where = ExpressionTreeRewriter.rewriteWith(new ExpressionRewriter<Void>() {
+            @Override
+            public Expression rewriteExpression(Expression node, Void context, ExpressionTreeRewriter<Void> treeRewriter) {
+                return replacements.get(node);
+            }
+        }, spec.getWhere().get());
+        return new Query(
+                query.getWith(),
+                new QuerySpecification(
+                        spec.getSelect(),
+                        spec.getFrom(),
+                        Optional.of(where),
+                        spec.getGroupBy(),
+                        spec.getHaving(),
+                        spec.getOrderBy(),
+                        spec.getLimit(),
+                        spec.getOffset()),
+                query.getOrderBy(),
+                query.getLimit(),
+                query.getOffset());
+    }
+
+    private static List<Expression> subqueryPredicates(Statement statement) {
+        if (!(statement instanceof Query) || !(((Query) statement).getQueryBody() instanceof QuerySpecification)) {
+            return Collections.emptyList();
+        }
+        Optional<Expression> where = ((QuerySpecification) ((Query) statement).getQueryBody()).getWhere();
+        if (!where.isPresent()) {
+            return Collections.emptyList();
+        }
+        List<Expression> predicates = new ArrayList<>();
+        SUBQUERY_COLLECTOR.process(where.get(), predicates);
+        return predicates;
+    }
+
+    private static class SubqueryCollector extends DefaultTraversalVisitor<Void, List<Expression>> {
+
+        @Override
+        protected Void visitInPredicate(InPredicate node, List<Expression> context) {
+            if (node.getValueList() instanceof SubqueryExpression) {
+                context.add(node);
+                return null;
+            }
+            return super.visitInPredicate(node, context);
+        }
+
+        @Override
+        protected Void visitExists(ExistsPredicate node, List<Expression> context) {
+            context.add(node);
+            return null;
+        }
+
+        @Override
+        protected Void visitSubqueryExpression(SubqueryExpression node, List<Expression> context) {
+            // only the subqueries of the outer statement are resolved
+            return null;
+        }
+    }
+}
@@ -68,6 +68,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 
@@ -111,6 +112,28 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
 
     public abstract Analysis getAnalysis(Statement statement, TRequest request);
 
+    /**
+     * analyze a statement before its text is parsed as is, e.g. after its literals have been replaced by parameters
+     *
+     * @return the analysis or null if the statement must be parsed and analyzed
+     *         using {@link #getAnalysis(Statement, SQLBaseRequest)}
+     */
+    @Nullable
+    protected Analysis getPreparedAnalysis(TRequest request) {
+        return null;
+    }
+
+    /**
+     * analyze a statement that can't be analyzed right away, e.g. because its subqueries must be executed first
+     *
+     * @return a future of the analysis or null if the statement can be analyzed
+     *         using {@link #getAnalysis(Statement, SQLBaseRequest)}
+     */
+    @Nullable
+    protected ListenableFuture<Analysis> getAnalysisAsync(Statement statement, TRequest request) {
+        return null;
+    }
+
     /**
      * create an empty SQLBaseResponse instance with no rows
      * and a rowCount of 0
@@ -147,8 +170,16 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
             return;
         }
         try {
-            Statement statement = statementCache.get(request.stmt());
-            Analysis analysis = getAnalysis(statement, request);
+            Analysis analysis = getPreparedAnalysis(request);
+            if (analysis == null) {
+                Statement statement = parseStatement(request.stmt());
+                ListenableFuture<Analysis> futureAnalysis = getAnalysisAsync(statement, request);
+                if (futureAnalysis != null) {
+                    processAnalysis(futureAnalysis, request, listener);
+                    return;
+                }
+                analysis = getAnalysis(statement, request);
+            }
             processAnalysis(analysis, request, listener);
         } catch (Throwable e) {
             logger.debug("Error executing SQLRequest", e);
@@ -156,6 +187,34 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
         }
     }
 
+    private void processAnalysis(ListenableFuture<Analysis> futureAnalysis,
+                                 final TRequest request,
+                                 final ActionListener<TResponse> listener) {
+        Futures.addCallback(futureAnalysis, new FutureCallback<Analysis>() {
+            @Override
+            public void onSuccess(@Nullable Analysis analysis) {
+                try {
+                    processAnalysis(analysis, request, listener);
+                } catch (Throwable e) {
+                    onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(@Nonnull Throwable t) {
+                logger.debug("Error executing SQLRequest", t);
+                sendResponse(listener, buildSQLActionException(t));
+            }
+        });
+    }
+
+    /**
+     * @return the parsed statement, served from a cache shared by all requests of this action
+     */
+    protected Statement parseStatement(String stmt) throws ExecutionException {
+        return statementCache.get(stmt);
+    }
+
     private void sendResponse(ActionListener<TResponse> listener, Throwable throwable) {
         listener.onFailure(throwable);
         statsTables.activeRequestsDec();
@@ -194,7 +253,7 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
         if (jobId != null) {
             statsTables.jobStarted(jobId, request.stmt());
         }
-        List<ListenableFuture<TaskResult>> resultFutureList = executor.execute(job);
+        List<ListenableFuture<TaskResult>> resultFutureList = execute(executor, job, analyzedStatement, request);
         Futures.addCallback(Futures.allAsList(resultFutureList), new FutureCallback<List<TaskResult>>() {
             @Override
             public void onSuccess(@Nullable List<TaskResult> result) {
@@ -235,6 +294,18 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
         });
     }
 
+    /**
+     * execute the tasks of the job
+     *
+     * @return the futures of the results of the last task
+     */
+    protected List<ListenableFuture<TaskResult>> execute(Executor executor,
+                                                         Job job,
+                                                         AnalyzedStatement analyzedStatement,
+                                                         TRequest request) {
+        return executor.execute(job);
+    }
+
     private void tracePlan(Plan plan) {
         if (logger.isTraceEnabled()) {
             PlanPrinter printer = new PlanPrinter();
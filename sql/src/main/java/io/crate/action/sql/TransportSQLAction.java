@@ -21,19 +21,32 @@
 
 package io.crate.action.sql;
 
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.crate.analyze.Analysis;
+import io.crate.analyze.AnalyzedStatement;
 import io.crate.analyze.Analyzer;
-import io.crate.executor.BytesRefUtils;
-import io.crate.executor.Executor;
-import io.crate.executor.TaskResult;
+import io.crate.analyze.SelectAnalyzedStatement;
+import io.crate.exceptions.CursorUnknownException;
+import io.crate.exceptions.Exceptions;
+import io.crate.executor.*;
+import io.crate.executor.transport.DefaultTransportResponseHandler;
 import io.crate.executor.transport.ResponseForwarder;
+import io.crate.executor.transport.task.elasticsearch.QueryThenFetchTask;
 import io.crate.operation.collect.StatsTables;
 import io.crate.planner.Planner;
+import io.crate.planner.TableStatsService;
+import io.crate.sql.parser.LiteralParameterizer;
 import io.crate.sql.tree.Statement;
 import io.crate.types.DataType;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Provider;
 import org.elasticsearch.common.settings.Settings;
@@ -44,10 +57,16 @@ import org.elasticsearch.transport.TransportService;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 
 public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLResponse> {
 
+    private final SubqueryResolver subqueryResolver;
+    private final ClusterService clusterService;
+    private final TransportService transportService;
+    private final CursorService cursorService;
+
     @Inject
     protected TransportSQLAction(
             ClusterService clusterService,
@@ -58,17 +77,195 @@ public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLRe
             Provider<Executor> executor,
             TransportService transportService,
             StatsTables statsTables,
-            ActionFilters actionFilters) {
+            ActionFilters actionFilters,
+            TableStatsService tableStatsService,
+            CursorService cursorService) {
         super(clusterService, settings, SQLAction.NAME, threadPool,
                 analyzer, planner, executor, statsTables, actionFilters);
+        this.clusterService = clusterService;
+        this.transportService = transportService;
+        this.cursorService = cursorService;
+        subqueryResolver = new SubqueryResolver(analyzer, planner, executor, tableStatsService);
         transportService.registerHandler(SQLAction.NAME, new TransportHandler());
     }
 
+    @Override
+    protected void doExecute(SQLRequest request, ActionListener<SQLResponse> listener) {
+        if (request.cursor() == null) {
+            super.doExecute(request, listener);
+            return;
+        }
+        try {
+            String nodeId = CursorService.nodeId(request.cursor());
+            if (nodeId.equals(clusterService.localNode().id())) {
+                executeOnCursor(request, listener);
+            } else {
+                forwardToCursorNode(nodeId, request, listener);
+            }
+        } catch (Throwable e) {
+            logger.debug("Error executing SQLRequest on cursor", e);
+            listener.onFailure(buildSQLActionException(e));
+        }
+    }
+
+    private void executeOnCursor(SQLRequest request, final ActionListener<SQLResponse> listener) {
+        if (request.closeCursor()) {
+            cursorService.close(request.cursor());
+            listener.onResponse(emptyResponse(request, new String[0], new DataType[0]));
+            return;
+        }
+        cursorService.fetch(request, new ActionListener<SQLResponse>() {
+            @Override
+            public void onResponse(SQLResponse response) {
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                logger.debug("Error fetching from cursor", e);
+                listener.onFailure(buildSQLActionException(e));
+            }
+        });
+    }
+
+    /**
+     * cursors live on the node that executed their statement, the request is sent there
+     */
+    private void forwardToCursorNode(String nodeId, SQLRequest request, final ActionListener<SQLResponse> listener) {
+        DiscoveryNode node = clusterService.state().nodes().get(nodeId);
+        if (node == null) {
+            throw new CursorUnknownException(request.cursor());
+        }
+        transportService.sendRequest(node, SQLAction.NAME, request,
+                new DefaultTransportResponseHandler<SQLResponse>(new ActionListener<SQLResponse>() {
+                    @Override
+                    public void onResponse(SQLResponse response) {
+                        listener.onResponse(response);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable e) {
+                        // the other node already converted its error
+                        listener.onFailure(buildSQLActionException(Exceptions.unwrap(e)));
+                    }
+                }, ThreadPool.Names.SAME) {
+                    @Override
+                    public SQLResponse newInstance() {
+                        return new SQLResponse();
+                    }
+                });
+    }
+
+    /**
+     * With a fetch size the first page of the result is returned and the rest is kept in a cursor.
+     * A single pageable task is paged, so that the remaining rows are only loaded on demand,
+     * the rows of other tasks are kept as they are.
+     */
+    @Override
+    protected List<ListenableFuture<TaskResult>> execute(Executor executor,
+                                                         Job job,
+                                                         AnalyzedStatement analyzedStatement,
+                                                         final SQLRequest request) {
+        if (request.fetchSize() <= 0 || analyzedStatement.expectsAffectedRows()) {
+            return super.execute(executor, job, analyzedStatement, request);
+        }
+        try {
+            cursorService.ensureCapacity();
+        } catch (Throwable e) {
+            return ImmutableList.of(Futures.<TaskResult>immediateFailedFuture(e));
+        }
+        final String[] outputNames = analyzedStatement.outputNames().toArray(
+                new String[analyzedStatement.outputNames().size()]);
+        final DataType[] outputTypes = analyzedStatement.outputTypes().toArray(
+                new DataType[analyzedStatement.outputTypes().size()]);
+
+        List<Task> tasks = job.tasks();
+        if (tasks.size() == 1 && tasks.get(0) instanceof PageableTask) {
+            // a paged task ignores the default limit, only a limit of the statement applies
+            final Integer limit = analyzedStatement instanceof SelectAnalyzedStatement
+                    ? ((SelectAnalyzedStatement) analyzedStatement).limit()
+                    : null;
+            PageableTask task = (PageableTask) tasks.get(0);
+            if (task instanceof QueryThenFetchTask) {
+                // keep the search contexts as long as the cursor
+                ((QueryThenFetchTask) task).setKeepAlive(cursorService.keepAlive(request.keepAlive()));
+            }
+            final PageInfo pageInfo = PageInfo.firstPage(
+                    limit == null ? request.fetchSize() : Math.max(1, Math.min(limit, request.fetchSize())));
+            return ImmutableList.of(Futures.transform(Iterables.getLast(executor.execute(job, pageInfo)),
+                    new Function<TaskResult, TaskResult>() {
+                        @Nullable
+                        @Override
+                        public TaskResult apply(@Nullable TaskResult input) {
+                            assert input instanceof PageableTaskResult : "paged task must return a PageableTaskResult";
+                            return cursorService.open((PageableTaskResult) input, pageInfo, limit,
+                                    request, outputNames, outputTypes);
+                        }
+                    }));
+        }
+        return ImmutableList.of(Futures.transform(Iterables.getLast(executor.execute(job)),
+                new Function<TaskResult, TaskResult>() {
+                    @Nullable
+                    @Override
+                    public TaskResult apply(@Nullable TaskResult input) {
+                        assert input != null;
+                        Object[][] rows = input.rows();
+                        if (rows.length <= request.fetchSize()) {
+                            return input;
+                        }
+                        return cursorService.open(rows, request, outputNames, outputTypes);
+                    }
+                }));
+    }
+
     @Override
     public Analysis getAnalysis(Statement statement, SQLRequest request) {
         return analyzer.analyze(statement, request.args(), SQLBulkRequest.EMPTY_BULK_ARGS);
     }
 
+    /**
+     * Replaces the literals of statements without arguments by parameters, so that all statements
+     * of the same shape share one entry of the statement cache (and the template cache of the analyzer).
+     *
+     * @return the analysis or null if the statement couldn't be parameterized
+     */
+    @Nullable
+    @Override
+    protected Analysis getPreparedAnalysis(SQLRequest request) {
+        if (request.args().length > 0) {
+            return null;
+        }
+        LiteralParameterizer.ParameterizedStatement parameterized = LiteralParameterizer.parameterize(request.stmt());
+        if (parameterized == null) {
+            return null;
+        }
+        Statement statement;
+        try {
+            statement = parseStatement(parameterized.statement());
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            // let the original statement report the error
+            logger.debug("Parsing parameterized statement {} failed", e, parameterized.statement());
+            return null;
+        }
+        return analyzer.analyze(statement, parameterized.args(), SQLBulkRequest.EMPTY_BULK_ARGS);
+    }
+
+    @Nullable
+    @Override
+    protected ListenableFuture<Analysis> getAnalysisAsync(Statement statement, SQLRequest request) {
+        if (!SubqueryResolver.hasSubqueries(statement)) {
+            return null;
+        }
+        return Futures.transform(subqueryResolver.resolve(statement, request.args()),
+                new Function<SubqueryResolver.ResolvedStatement, Analysis>() {
+                    @Nullable
+                    @Override
+                    public Analysis apply(SubqueryResolver.ResolvedStatement input) {
+                        return analyzer.analyze(input.statement(), input.args(), SQLBulkRequest.EMPTY_BULK_ARGS);
+                    }
+                });
+    }
+
     @Override
     public SQLResponse emptyResponse(SQLRequest request,
                                      String[] outputNames,
@@ -101,7 +298,7 @@ public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLRe
             rowCount = rows.length;
         }
         BytesRefUtils.ensureStringTypesAreStrings(outputTypes, rows);
-        return new SQLResponse(
+        SQLResponse response = new SQLResponse(
                 outputNames,
                 rows,
                 outputTypes,
@@ -109,6 +306,10 @@ public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLRe
                 requestCreationTime,
                 includeTypesOnResponse
         );
+        if (taskResult instanceof CursorPageResult) {
+            response.cursor(((CursorPageResult) taskResult).cursor());
+        }
+        return response;
     }
 
     private class TransportHandler extends BaseTransportRequestHandler<SQLRequest> {
@@ -21,6 +21,8 @@
 
 package io.crate.action.sql.parser;
 
+import org.elasticsearch.common.unit.TimeValue;
+
 /**
  * Context for information gathered by parsing an XContent based sql request
  */
@@ -29,6 +31,10 @@ public class SQLXContentSourceContext {
     private String stmt;
     private Object[] args;
     private Object[][] bulkArgs;
+    private int fetchSize = 0;
+    private TimeValue keepAlive;
+    private String cursor;
+    private boolean close = false;
 
     public String stmt() {
         return stmt;
@@ -54,4 +60,36 @@ public class SQLXContentSourceContext {
     public void bulkArgs(Object[][] bulkArgs) {
         this.bulkArgs = bulkArgs;
     }
+
+    public int fetchSize() {
+        return fetchSize;
+    }
+
+    public void fetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public TimeValue keepAlive() {
+        return keepAlive;
+    }
+
+    public void keepAlive(TimeValue keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public String cursor() {
+        return cursor;
+    }
+
+    public void cursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public boolean close() {
+        return close;
+    }
+
+    public void close(boolean close) {
+        this.close = close;
+    }
 }
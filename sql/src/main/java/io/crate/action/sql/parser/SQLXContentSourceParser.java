@@ -34,6 +34,12 @@ import org.elasticsearch.common.xcontent.XContentParser;
  * {
  * "stmt": "select * from...."
  * }
+ * <p/>
+ * or for fetching from a cursor
+ * <p/>
+ * {
+ * "cursor": "..."
+ * }
  */
 public class SQLXContentSourceParser {
 
@@ -43,22 +49,37 @@ public class SQLXContentSourceParser {
         static final String STMT = "stmt";
         static final String ARGS = "args";
         static final String BULK_ARGS = "bulk_args";
+        static final String FETCH_SIZE = "fetch_size";
+        static final String KEEP_ALIVE = "keep_alive";
+        static final String CURSOR = "cursor";
+        static final String CLOSE = "close";
     }
 
-    private static final ImmutableMap<String, SQLParseElement> elementParsers = ImmutableMap.of(
-            Fields.STMT, (SQLParseElement) new SQLStmtParseElement(),
-            Fields.ARGS, (SQLParseElement) new SQLArgsParseElement(),
-            Fields.BULK_ARGS, (SQLParseElement) new SQLBulkArgsParseElement()
-    );
+    private static final ImmutableMap<String, SQLParseElement> elementParsers =
+            ImmutableMap.<String, SQLParseElement>builder()
+                    .put(Fields.STMT, new SQLStmtParseElement())
+                    .put(Fields.ARGS, new SQLArgsParseElement())
+                    .put(Fields.BULK_ARGS, new SQLBulkArgsParseElement())
+                    .put(Fields.FETCH_SIZE, new SQLFetchSizeParseElement())
+                    .put(Fields.KEEP_ALIVE, new SQLKeepAliveParseElement())
+                    .put(Fields.CURSOR, new SQLCursorParseElement())
+                    .put(Fields.CLOSE, new SQLCloseParseElement())
+                    .build();
 
     public SQLXContentSourceParser(SQLXContentSourceContext context) {
         this.context = context;
     }
 
     private void validate() throws SQLParseSourceException {
-        if (context.stmt() == null) {
+        if (context.stmt() == null && context.cursor() == null) {
             throw new SQLParseSourceException(context, "Field [stmt] was not defined");
         }
+        if (context.stmt() != null && context.cursor() != null) {
+            throw new SQLParseSourceException(context, "Fields [stmt] and [cursor] can't be combined");
+        }
+        if (context.close() && context.cursor() == null) {
+            throw new SQLParseSourceException(context, "Field [close] requires a [cursor]");
+        }
     }
 
     public void parseSource(BytesReference source) throws SQLParseException {
@@ -27,13 +27,15 @@ import org.elasticsearch.common.inject.Inject;
 public class Analyzer {
 
     private final AnalyzerDispatcher dispatcher;
+    private final TemplateCache templateCache;
 
     private final static Object[] EMPTY_ARGS = new Object[0];
     private final static Object[][] EMPTY_BULK_ARGS = new Object[0][];
 
     @Inject
-    public Analyzer(AnalyzerDispatcher dispatcher) {
+    public Analyzer(AnalyzerDispatcher dispatcher, TemplateCache templateCache) {
         this.dispatcher = dispatcher;
+        this.templateCache = templateCache;
     }
 
     public Analysis analyze(Statement statement) {
@@ -42,9 +44,21 @@ public class Analyzer {
 
     public Analysis analyze(Statement statement, Object[] parameters, Object[][] bulkParams) {
         ParameterContext parameterContext = new ParameterContext(parameters, bulkParams);
+        if (!TemplateCache.isCacheable(statement)) {
+            return new Analysis(process(statement, parameterContext));
+        }
+        AnalyzedStatement analyzedStatement = templateCache.bind(statement, parameterContext);
+        if (analyzedStatement == null) {
+            analyzedStatement = process(statement, parameterContext);
+            templateCache.put(dispatcher.analysisMetaData, statement, parameterContext, analyzedStatement);
+        }
+        return new Analysis(analyzedStatement);
+    }
+
+    private AnalyzedStatement process(Statement statement, ParameterContext parameterContext) {
         AnalyzedStatement analyzedStatement = dispatcher.process(statement, parameterContext);
         assert analyzedStatement != null : "analyzed statement must not be null";
-        return new Analysis(analyzedStatement);
+        return analyzedStatement;
     }
 
 
@@ -21,6 +21,7 @@
 
 package io.crate.analyze;
 
+import com.google.common.collect.ImmutableList;
 import io.crate.analyze.expressions.ExpressionAnalysisContext;
 import io.crate.analyze.expressions.ExpressionAnalyzer;
 import io.crate.analyze.relations.NameFieldResolver;
@@ -40,10 +41,13 @@ import org.elasticsearch.common.settings.Settings;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class CopyStatementAnalyzer extends AbstractStatementAnalyzer<Void, CopyAnalyzedStatement> {
 
+    private static final List<String> CSV_SETTINGS = ImmutableList.of("delimiter", "quote", "header");
+
     private final AnalysisMetaData analysisMetaData;
     private ExpressionAnalysisContext expressionAnalysisContext;
     private ExpressionAnalyzer expressionAnalyzer;
@@ -67,6 +71,7 @@ public class CopyStatementAnalyzer extends AbstractStatementAnalyzer<Void, CopyA
         if (node.genericProperties().isPresent()) {
             context.settings(settingsFromProperties(node.genericProperties().get(), tableRelation));
         }
+        validateFormatSettings(context.settings());
         context.mode(CopyAnalyzedStatement.Mode.FROM);
 
         if (!node.table().partitionProperties().isEmpty()) {
@@ -89,6 +94,7 @@ public class CopyStatementAnalyzer extends AbstractStatementAnalyzer<Void, CopyA
         if (node.genericProperties().isPresent()) {
             context.settings(settingsFromProperties(node.genericProperties().get(), tableRelation));
         }
+        validateExportFormat(context.settings());
 
         if (!node.table().partitionProperties().isEmpty()) {
             String partitionIdent = PartitionPropertiesAnalyzer.toPartitionIdent(
@@ -113,6 +119,44 @@ public class CopyStatementAnalyzer extends AbstractStatementAnalyzer<Void, CopyA
         return null;
     }
 
+    private static void validateFormatSettings(Settings settings) {
+        String format = settings.get("format", "json").toLowerCase(Locale.ENGLISH);
+        if (format.equals("json")) {
+            for (String csvSetting : CSV_SETTINGS) {
+                if (settings.get(csvSetting) != null) {
+                    throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                            "Setting \"%s\" is only supported with format 'csv'", csvSetting));
+                }
+            }
+        } else if (format.equals("csv")) {
+            validateSingleCharacter(settings, "delimiter");
+            validateSingleCharacter(settings, "quote");
+            String header = settings.get("header");
+            if (header != null && !header.equals("true") && !header.equals("false")) {
+                throw new IllegalArgumentException("Setting \"header\" must be a boolean");
+            }
+        } else {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "Unknown format '%s', supported formats are 'json' and 'csv'", format));
+        }
+    }
+
+    private static void validateExportFormat(Settings settings) {
+        String format = settings.get("format", "json").toLowerCase(Locale.ENGLISH);
+        if (!format.equals("json") && !format.equals("columnar")) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "Unknown format '%s', supported formats are 'json' and 'columnar'", format));
+        }
+    }
+
+    private static void validateSingleCharacter(Settings settings, String name) {
+        String value = settings.get(name);
+        if (value != null && value.length() != 1) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "Setting \"%s\" must be a single character", name));
+        }
+    }
+
     private boolean partitionExists(TableInfo table, @Nullable String partitionIdent) {
         if (table.isPartitioned() && partitionIdent != null) {
             return table.partitions().contains(PartitionName.fromPartitionIdent(table.ident().schema(), table.ident().name(), partitionIdent));
@@ -25,6 +25,8 @@ import io.crate.metadata.ColumnIdent;
 import io.crate.metadata.PartitionName;
 import io.crate.metadata.ReferenceInfo;
 import io.crate.metadata.table.TableInfo;
+import io.crate.planner.symbol.Reference;
+import io.crate.planner.symbol.Symbol;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.lucene.BytesRefs;
@@ -42,6 +44,7 @@ public class InsertFromValuesAnalyzedStatement extends AbstractInsertAnalyzedSta
 
     private final List<String> ids = new ArrayList<>();
     private final List<String> routingValues = new ArrayList<>();
+    private final List<Map<Reference, Symbol>> onDuplicateKeyAssignments = new ArrayList<>();
     private final boolean isBulkRequest;
 
     public InsertFromValuesAnalyzedStatement(TableInfo tableInfo, boolean isBulkRequest) {
@@ -118,6 +121,18 @@ public class InsertFromValuesAnalyzedStatement extends AbstractInsertAnalyzedSta
         return routingValues;
     }
 
+    /**
+     * the assignments of the <code>ON DUPLICATE KEY UPDATE</code> clause, one map per row.
+     * Empty if the statement has no such clause.
+     */
+    public List<Map<Reference, Symbol>> onDuplicateKeyAssignments() {
+        return onDuplicateKeyAssignments;
+    }
+
+    public void addOnDuplicateKeyAssignments(Map<Reference, Symbol> assignments) {
+        onDuplicateKeyAssignments.add(assignments);
+    }
+
     @Override
     public boolean hasNoResult() {
         return false;
@@ -35,15 +35,12 @@ import io.crate.metadata.table.TableInfo;
 import io.crate.operation.Input;
 import io.crate.planner.symbol.Reference;
 import io.crate.planner.symbol.Symbol;
+import io.crate.sql.tree.Assignment;
 import io.crate.sql.tree.Expression;
 import io.crate.sql.tree.InsertFromValues;
 import io.crate.sql.tree.ValuesList;
 import org.apache.lucene.util.BytesRef;
-import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.lucene.BytesRefs;
-import org.elasticsearch.common.text.BytesText;
-import org.elasticsearch.common.xcontent.XContentBuilder;
-import org.elasticsearch.common.xcontent.XContentFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -58,6 +55,7 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
 
     private ExpressionAnalyzer expressionAnalyzer;
     private ExpressionAnalysisContext expressionAnalysisContext;
+    private TableRelation tableRelation;
 
     public InsertFromValuesAnalyzer(AnalysisMetaData analysisMetaData, ParameterContext parameterContext) {
         this.analysisMetaData = analysisMetaData;
@@ -67,8 +65,12 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
     @Override
     public AnalyzedStatement visitInsertFromValues(InsertFromValues node, Void context) {
         TableInfo tableInfo = analysisMetaData.referenceInfos().getTableInfoUnsafe(TableIdent.of(node.table()));
-        TableRelation tableRelation = new TableRelation(tableInfo);
+        tableRelation = new TableRelation(tableInfo);
         validateTable(tableInfo);
+        if (!node.onDuplicateKeyAssignments().isEmpty() && tableInfo.hasAutoGeneratedPrimaryKey()) {
+            throw new UnsupportedOperationException(
+                    "ON DUPLICATE KEY UPDATE is only supported on tables with a primary key");
+        }
 
         FieldResolver fieldResolver = new NameFieldResolver(tableRelation);
         expressionAnalyzer = new ExpressionAnalyzer(
@@ -82,9 +84,11 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
         InsertFromValuesAnalyzedStatement statement = new InsertFromValuesAnalyzedStatement(tableInfo, parameterContext.hasBulkParams());
         handleInsertColumns(node, node.maxValuesLength(), statement);
 
+        InsertSourceEncoder sourceEncoder = new InsertSourceEncoder(statement.columns());
         for (ValuesList valuesList : node.valuesLists()) {
-            analyzeValues(valuesList, statement);
+            analyzeValues(valuesList, node.onDuplicateKeyAssignments(), statement, sourceEncoder);
         }
+        statement.sourceMaps().addAll(sourceEncoder.finish());
         return statement;
     }
 
@@ -97,7 +101,10 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
         }
     }
 
-    private void analyzeValues(ValuesList node, InsertFromValuesAnalyzedStatement context) {
+    private void analyzeValues(ValuesList node,
+                               List<Assignment> onDuplicateKeyAssignments,
+                               InsertFromValuesAnalyzedStatement context,
+                               InsertSourceEncoder sourceEncoder) {
         if (node.values().size() != context.columns().size()) {
             throw new IllegalArgumentException(String.format(Locale.ENGLISH,
                     "Invalid number of values: Got %d columns specified but %d values",
@@ -108,10 +115,12 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
             if (parameterContext.bulkParameters.length > 0) {
                 for (int i = 0; i < parameterContext.bulkParameters.length; i++) {
                     parameterContext.setBulkIdx(i);
-                    addValues(node, context, numPks);
+                    addValues(node, context, sourceEncoder, numPks);
+                    addOnDuplicateKeyAssignments(onDuplicateKeyAssignments, context);
                 }
             } else {
-                addValues(node, context, numPks);
+                addValues(node, context, sourceEncoder, numPks);
+                addOnDuplicateKeyAssignments(onDuplicateKeyAssignments, context);
             }
         } catch (IOException e) {
             throw new RuntimeException(e); // can't throw IOException directly because of visitor interface
@@ -120,28 +129,67 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
 
     private void addValues(ValuesList node,
                            InsertFromValuesAnalyzedStatement context,
+                           InsertSourceEncoder sourceEncoder,
                            int numPrimaryKeys) throws IOException {
+        List<Expression> values = node.values();
+        Symbol[] valueSymbols = new Symbol[values.size()];
+        for (int i = 0, valuesSize = values.size(); i < valuesSize; i++) {
+            Symbol valuesSymbol = expressionAnalyzer.convert(values.get(i), expressionAnalysisContext);
+            valueSymbols[i] = normalizeValue(expressionAnalyzer, valuesSymbol, context.columns().get(i));
+        }
+        addValues(context, sourceEncoder, valueSymbols, numPrimaryKeys);
+    }
+
+    /**
+     * analyzes the assignments of the ON DUPLICATE KEY UPDATE clause for the current row,
+     * they may differ per row if they contain parameters of a bulk request
+     */
+    private void addOnDuplicateKeyAssignments(List<Assignment> assignments, InsertFromValuesAnalyzedStatement context) {
+        if (assignments.isEmpty()) {
+            return;
+        }
+        UpdateStatementAnalyzer updateStatementAnalyzer = new UpdateStatementAnalyzer(analysisMetaData, parameterContext);
+        UpdateAnalyzedStatement.NestedAnalyzedStatement nestedStatement =
+                new UpdateAnalyzedStatement.NestedAnalyzedStatement(WhereClause.MATCH_ALL);
+        for (Assignment assignment : assignments) {
+            updateStatementAnalyzer.analyzeAssignment(assignment, nestedStatement, tableRelation,
+                    context.tableInfo(), expressionAnalyzer, expressionAnalysisContext);
+        }
+        expressionAnalyzer.resolveWritableFields(true);
+        context.addOnDuplicateKeyAssignments(nestedStatement.assignments());
+    }
+
+    /**
+     * implicit type conversion of a value to the type of the column it is inserted into
+     */
+    static Symbol normalizeValue(ExpressionAnalyzer expressionAnalyzer, Symbol valuesSymbol, Reference column) {
+        try {
+            return expressionAnalyzer.normalizeInputForReference(valuesSymbol, column, true);
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            throw new ColumnValidationException(column.info().ident().columnIdent().sqlFqn(), e);
+        }
+    }
+
+    /**
+     * adds the id and routing of one row of already normalized values to the statement
+     * and writes its source using the sourceEncoder
+     */
+    static void addValues(InsertFromValuesAnalyzedStatement context,
+                          InsertSourceEncoder sourceEncoder,
+                          Symbol[] valueSymbols,
+                          int numPrimaryKeys) throws IOException {
         if (context.tableInfo().isPartitioned()) {
             context.newPartitionMap();
         }
         List<BytesRef> primaryKeyValues = new ArrayList<>(numPrimaryKeys);
-        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        sourceEncoder.startRow();
         String routingValue = null;
-        List<Expression> values = node.values();
         List<ColumnIdent> primaryKey = context.tableInfo().primaryKey();
 
-        for (int i = 0, valuesSize = values.size(); i < valuesSize; i++) {
-            Expression expression = values.get(i);
-            Symbol valuesSymbol = expressionAnalyzer.convert(expression, expressionAnalysisContext);
-
-            // implicit type conversion
+        for (int i = 0; i < valueSymbols.length; i++) {
+            Symbol valuesSymbol = valueSymbols[i];
             Reference column = context.columns().get(i);
             final ColumnIdent columnIdent = column.info().ident().columnIdent();
-            try {
-                valuesSymbol = expressionAnalyzer.normalizeInputForReference(valuesSymbol, column, true);
-            } catch (IllegalArgumentException | UnsupportedOperationException e) {
-                throw new ColumnValidationException(column.info().ident().columnIdent().sqlFqn(), e);
-            }
             try {
                 Object value = ((Input) valuesSymbol).value();
                 if (context.primaryKeyColumnIndices().contains(i)) {
@@ -167,13 +215,10 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
                 if (context.partitionedByIndices().contains(i)) {
                     Object rest = processPartitionedByValues(columnIdent, value, context);
                     if (rest != null) {
-                        builder.field(columnIdent.name(), rest);
+                        sourceEncoder.field(i, rest);
                     }
                 } else {
-                    if (value instanceof BytesRef) {
-                        value = new BytesText(new BytesArray((BytesRef) value));
-                    }
-                    builder.field(columnIdent.name(), value);
+                    sourceEncoder.field(i, value);
                 }
             } catch (ClassCastException e) {
                 // symbol is no input
@@ -181,11 +226,11 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
                         String.format("Invalid value of type '%s' in insert statement", valuesSymbol.symbolType().name()));
             }
         }
-        context.sourceMaps().add(builder.bytes());
+        sourceEncoder.endRow();
         context.addIdAndRouting(primaryKeyValues, routingValue);
     }
 
-    private void addPrimaryKeyValue(int index, Object value, List<BytesRef> primaryKeyValues) {
+    private static void addPrimaryKeyValue(int index, Object value, List<BytesRef> primaryKeyValues) {
         if (value == null) {
             throw new IllegalArgumentException("Primary key value must not be NULL");
         }
@@ -196,7 +241,7 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
         }
     }
 
-    private String extractRoutingValue(ColumnIdent columnIdent, Object columnValue, InsertFromValuesAnalyzedStatement context) {
+    private static String extractRoutingValue(ColumnIdent columnIdent, Object columnValue, InsertFromValuesAnalyzedStatement context) {
         Object clusteredByValue = columnValue;
         ColumnIdent clusteredByIdent = context.tableInfo().clusteredBy();
         if (!columnIdent.equals(clusteredByIdent)) {
@@ -210,7 +255,7 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer<Void> {
         return BytesRefs.toString(clusteredByValue);
     }
 
-    private Object processPartitionedByValues(final ColumnIdent columnIdent, Object columnValue, InsertFromValuesAnalyzedStatement context) {
+    private static Object processPartitionedByValues(final ColumnIdent columnIdent, Object columnValue, InsertFromValuesAnalyzedStatement context) {
         int idx = context.tableInfo().partitionedBy().indexOf(columnIdent);
         Map<String, String> partitionMap = context.currentPartitionMap();
         if (idx < 0) {
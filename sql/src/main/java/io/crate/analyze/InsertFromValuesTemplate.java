@@ -0,0 +1,192 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.analyze;
+
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.google.common.collect.ImmutableList;
+import io.crate.analyze.expressions.ExpressionAnalysisContext;
+import io.crate.analyze.expressions.ExpressionAnalyzer;
+import io.crate.metadata.table.TableInfo;
+import io.crate.planner.symbol.DynamicReference;
+import io.crate.planner.symbol.Reference;
+import io.crate.planner.symbol.Symbol;
+import io.crate.sql.tree.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An analyzed <code>INSERT INTO ... VALUES</code> statement without bound arguments.
+ *
+ * Table, columns, primary key, routing and partition information are resolved once,
+ * constant values are converted to the type of their column once.
+ * Binding only converts the arguments of a request and builds the sources, ids and routing values.
+ * The sources of all rows are written into one buffer using the column names encoded by the template.
+ */
+public class InsertFromValuesTemplate {
+
+    private final AnalysisMetaData analysisMetaData;
+    private final ExpressionAnalyzer expressionAnalyzer;
+    private final TableInfo tableInfo;
+    private final InsertFromValuesAnalyzedStatement analyzedColumns;
+    private final String[] columnNames;
+
+    /**
+     * for every values list and column either the index of the parameter or the normalized constant value
+     */
+    private final List<Object[]> values;
+
+    private InsertFromValuesTemplate(AnalysisMetaData analysisMetaData,
+                                     ExpressionAnalyzer expressionAnalyzer,
+                                     InsertFromValuesAnalyzedStatement analyzedColumns,
+                                     List<Object[]> values) {
+        this.analysisMetaData = analysisMetaData;
+        this.expressionAnalyzer = expressionAnalyzer;
+        this.tableInfo = analyzedColumns.tableInfo();
+        this.analyzedColumns = analyzedColumns;
+        this.columnNames = InsertSourceEncoder.columnNames(analyzedColumns.columns());
+        this.values = values;
+    }
+
+    /**
+     * creates a template from an already analyzed statement.
+     *
+     * @return the template or null if the statement contains values which must be analyzed
+     *         on every execution, e.g. expressions, object or array literals or new columns,
+     *         or if it has an ON DUPLICATE KEY UPDATE clause.
+     */
+    @Nullable
+    public static InsertFromValuesTemplate create(AnalysisMetaData analysisMetaData,
+                                                  InsertFromValues node,
+                                                  InsertFromValuesAnalyzedStatement statement) {
+        if (!node.onDuplicateKeyAssignments().isEmpty()) {
+            return null;
+        }
+        for (Reference column : statement.columns()) {
+            if (column instanceof DynamicReference) {
+                return null;
+            }
+        }
+        ExpressionAnalyzer expressionAnalyzer = new ExpressionAnalyzer(
+                analysisMetaData, new ParameterContext(new Object[0], new Object[0][]), null);
+        ExpressionAnalysisContext expressionAnalysisContext = new ExpressionAnalysisContext();
+
+        List<Object[]> values = new ArrayList<>(node.valuesLists().size());
+        for (ValuesList valuesList : node.valuesLists()) {
+            List<Expression> expressions = valuesList.values();
+            Object[] row = new Object[expressions.size()];
+            for (int i = 0; i < expressions.size(); i++) {
+                Expression expression = expressions.get(i);
+                if (expression instanceof ParameterExpression) {
+                    row[i] = ((ParameterExpression) expression).index();
+                } else if (isConstant(expression)) {
+                    row[i] = InsertFromValuesAnalyzer.normalizeValue(expressionAnalyzer,
+                            expressionAnalyzer.convert(expression, expressionAnalysisContext),
+                            statement.columns().get(i));
+                } else {
+                    return null;
+                }
+            }
+            values.add(row);
+        }
+
+        InsertFromValuesAnalyzedStatement analyzedColumns = new InsertFromValuesAnalyzedStatement(
+                statement.tableInfo(), false);
+        copyColumns(statement, analyzedColumns);
+        return new InsertFromValuesTemplate(analysisMetaData, expressionAnalyzer, analyzedColumns, values);
+    }
+
+    private static boolean isConstant(Expression expression) {
+        // object and array literals are excluded as they may contain parameters
+        // and their values are modified during normalization
+        return expression instanceof Literal
+                && !(expression instanceof ObjectLiteral)
+                && !(expression instanceof ArrayLiteral);
+    }
+
+    private static void copyColumns(InsertFromValuesAnalyzedStatement source,
+                                    InsertFromValuesAnalyzedStatement target) {
+        target.columns(ImmutableList.copyOf(source.columns()));
+        for (IntCursor cursor : source.primaryKeyColumnIndices()) {
+            target.addPrimaryKeyColumnIdx(cursor.value);
+        }
+        for (IntCursor cursor : source.partitionedByIndices()) {
+            target.addPartitionedByIndex(cursor.value);
+        }
+        target.routingColumnIndex(source.routingColumnIndex());
+    }
+
+    /**
+     * @return false if the table has changed since this template was created
+     */
+    public boolean isValid() {
+        return analysisMetaData.referenceInfos().getTableInfoUnsafe(tableInfo.ident()) == tableInfo;
+    }
+
+    /**
+     * bind the arguments of a request to this template
+     */
+    public InsertFromValuesAnalyzedStatement bind(ParameterContext parameterContext) {
+        InsertFromValuesAnalyzedStatement statement = new InsertFromValuesAnalyzedStatement(
+                tableInfo, parameterContext.hasBulkParams());
+        copyColumns(analyzedColumns, statement);
+
+        int numPks = tableInfo.primaryKey().size();
+        InsertSourceEncoder sourceEncoder = new InsertSourceEncoder(columnNames);
+        try {
+            for (Object[] row : values) {
+                if (parameterContext.hasBulkParams()) {
+                    for (int i = 0; i < parameterContext.bulkParameters.length; i++) {
+                        parameterContext.setBulkIdx(i);
+                        addValues(statement, sourceEncoder, row, parameterContext, numPks);
+                    }
+                } else {
+                    addValues(statement, sourceEncoder, row, parameterContext, numPks);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        statement.sourceMaps().addAll(sourceEncoder.finish());
+        return statement;
+    }
+
+    private void addValues(InsertFromValuesAnalyzedStatement statement,
+                           InsertSourceEncoder sourceEncoder,
+                           Object[] row,
+                           ParameterContext parameterContext,
+                           int numPks) throws IOException {
+        Symbol[] valueSymbols = new Symbol[row.length];
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] instanceof Integer) {
+                valueSymbols[i] = InsertFromValuesAnalyzer.normalizeValue(expressionAnalyzer,
+                        parameterContext.getAsSymbol((Integer) row[i]),
+                        statement.columns().get(i));
+            } else {
+                valueSymbols[i] = (Symbol) row[i];
+            }
+        }
+        InsertFromValuesAnalyzer.addValues(statement, sourceEncoder, valueSymbols, numPks);
+    }
+}
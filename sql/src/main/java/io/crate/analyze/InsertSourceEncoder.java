@@ -0,0 +1,103 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.analyze;
+
+import com.carrotsearch.hppc.IntArrayList;
+import io.crate.planner.symbol.Reference;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.text.BytesText;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * encodes the sources of all rows of an insert statement into one shared buffer.
+ *
+ * The column names are resolved once per statement and not once per row,
+ * {@link io.crate.analyze.InsertFromValuesTemplate} even reuses them for every execution.
+ * They are written as they are, column names are case sensitive.
+ * The sources are slices of the buffer and are available after {@link #finish()}.
+ */
+class InsertSourceEncoder {
+
+    private final String[] columnNames;
+    private final BytesStreamOutput out = new BytesStreamOutput();
+    private final IntArrayList offsets = new IntArrayList();
+    private XContentBuilder builder;
+
+    InsertSourceEncoder(List<Reference> columns) {
+        this(columnNames(columns));
+    }
+
+    /**
+     * @param columnNames the names of the insert columns, see {@link #columnNames(java.util.List)}
+     */
+    InsertSourceEncoder(String[] columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    static String[] columnNames(List<Reference> columns) {
+        String[] columnNames = new String[columns.size()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = columns.get(i).info().ident().columnIdent().name();
+        }
+        return columnNames;
+    }
+
+    void startRow() throws IOException {
+        offsets.add(out.size());
+        builder = new XContentBuilder(JsonXContent.jsonXContent, out);
+        builder.startObject();
+    }
+
+    void field(int columnIdx, Object value) throws IOException {
+        if (value instanceof BytesRef) {
+            value = new BytesText(new BytesArray((BytesRef) value));
+        }
+        builder.field(columnNames[columnIdx], value);
+    }
+
+    void endRow() throws IOException {
+        builder.endObject();
+        builder.flush();
+        builder = null;
+    }
+
+    /**
+     * @return the sources of all rows in the order they've been written
+     */
+    List<BytesReference> finish() {
+        BytesReference bytes = out.bytes();
+        List<BytesReference> sources = new ArrayList<>(offsets.size());
+        for (int i = 0; i < offsets.size(); i++) {
+            int end = i + 1 < offsets.size() ? offsets.get(i + 1) : bytes.length();
+            sources.add(bytes.slice(offsets.get(i), end - offsets.get(i)));
+        }
+        return sources;
+    }
+}
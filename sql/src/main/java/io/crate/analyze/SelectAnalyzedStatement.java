@@ -46,6 +46,8 @@ public class SelectAnalyzedStatement extends AnalyzedStatement implements Analyz
     private final List<String> outputNames;
     private final List<Symbol> outputSymbols;
     private WhereClause whereClause;
+    private Symbol joinCondition;
+    private boolean semiJoin = false;
     private final Integer limit;
     private final int offset;
     private boolean hasSysExpressions;
@@ -55,6 +57,7 @@ public class SelectAnalyzedStatement extends AnalyzedStatement implements Analyz
                                    List<Symbol> outputSymbols,
                                    Map<QualifiedName, AnalyzedRelation> sources,
                                    WhereClause whereClause,
+                                   @Nullable Symbol joinCondition,
                                    List<Symbol> groupBy,
                                    OrderBy orderBy,
                                    Symbol having,
@@ -67,6 +70,7 @@ public class SelectAnalyzedStatement extends AnalyzedStatement implements Analyz
         this.outputSymbols = outputSymbols;
         this.sources = sources;
         this.whereClause = whereClause;
+        this.joinCondition = joinCondition;
         this.groupBy = groupBy;
         this.orderBy = orderBy;
         this.having = having;
@@ -90,6 +94,26 @@ public class SelectAnalyzedStatement extends AnalyzedStatement implements Analyz
         return whereClause;
     }
 
+    /**
+     * the ON condition if two tables are joined, otherwise null
+     */
+    @Nullable
+    public Symbol joinCondition() {
+        return joinCondition;
+    }
+
+    /**
+     * true if the {@link #joinCondition()} was derived from a <code>x IN (subquery)</code> condition.
+     * Only the rows of the outer relation are emitted then, each at most once.
+     */
+    public boolean semiJoin() {
+        return semiJoin;
+    }
+
+    public void semiJoin(boolean semiJoin) {
+        this.semiJoin = semiJoin;
+    }
+
     public Integer limit() {
         return limit;
     }
@@ -144,6 +168,9 @@ public class SelectAnalyzedStatement extends AnalyzedStatement implements Analyz
         orderBy.normalize(normalizer);
         normalizer.normalizeInplace(outputSymbols);
         whereClause = whereClause.normalize(normalizer);
+        if (joinCondition != null) {
+            joinCondition = normalizer.normalize(joinCondition);
+        }
     }
 
     @Override
@@ -0,0 +1,152 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.analyze;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.crate.sql.tree.InsertFromValues;
+import io.crate.sql.tree.Statement;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.inject.Singleton;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Cache of analyzed statement templates, keyed by statement and argument types.
+ *
+ * Statements which are executed over and over again with different arguments
+ * only need to be analyzed once, subsequent executions just bind their arguments
+ * to the cached template. Currently only <code>INSERT INTO ... VALUES</code>
+ * statements are cached.
+ *
+ * Templates are invalidated once the table info they were created from is replaced,
+ * which happens on any metadata change of the table
+ * (see {@link io.crate.metadata.doc.DocSchemaInfo#clusterChanged(org.elasticsearch.cluster.ClusterChangedEvent)}).
+ */
+@Singleton
+public class TemplateCache {
+
+    private static final int MAX_SIZE = 1000;
+
+    private final Cache<Key, InsertFromValuesTemplate> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .recordStats()
+            .build();
+
+    public static boolean isCacheable(Statement statement) {
+        return statement instanceof InsertFromValues;
+    }
+
+    /**
+     * bind the arguments to a cached template of the statement
+     *
+     * @return the analyzed statement or null if no valid template exists
+     */
+    @Nullable
+    public AnalyzedStatement bind(Statement statement, ParameterContext parameterContext) {
+        Key key = new Key(statement, parameterContext);
+        InsertFromValuesTemplate template = cache.getIfPresent(key);
+        if (template == null) {
+            return null;
+        }
+        if (!template.isValid()) {
+            cache.invalidate(key);
+            return null;
+        }
+        return template.bind(parameterContext);
+    }
+
+    /**
+     * create a template from an analyzed statement and add it to the cache
+     */
+    public void put(AnalysisMetaData analysisMetaData,
+                    Statement statement,
+                    ParameterContext parameterContext,
+                    AnalyzedStatement analyzedStatement) {
+        if (!(statement instanceof InsertFromValues)
+                || !(analyzedStatement instanceof InsertFromValuesAnalyzedStatement)) {
+            return;
+        }
+        InsertFromValuesTemplate template = InsertFromValuesTemplate.create(
+                analysisMetaData,
+                (InsertFromValues) statement,
+                (InsertFromValuesAnalyzedStatement) analyzedStatement);
+        if (template != null) {
+            cache.put(new Key(statement, parameterContext), template);
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    static class Key {
+
+        private final Statement statement;
+        private final DataType[] argumentTypes;
+        private final int hashCode;
+
+        Key(Statement statement, ParameterContext parameterContext) {
+            this.statement = statement;
+            this.argumentTypes = argumentTypes(parameterContext);
+            this.hashCode = 31 * statement.hashCode() + Arrays.hashCode(argumentTypes);
+        }
+
+        private static DataType[] argumentTypes(ParameterContext parameterContext) {
+            if (parameterContext.hasBulkParams()) {
+                return parameterContext.bulkTypes;
+            }
+            DataType[] types = new DataType[parameterContext.parameters.length];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = DataTypes.guessType(parameterContext.parameters[i], true);
+            }
+            return types;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && Arrays.equals(argumentTypes, key.argumentTypes)
+                    && statement.equals(key.statement);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
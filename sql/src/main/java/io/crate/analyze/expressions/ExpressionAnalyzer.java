@@ -417,8 +417,28 @@ public class ExpressionAnalyzer {
                 return Literal.NULL;
             }
 
+            Expression valueList = node.getValueList();
+            if (valueList instanceof SubqueryExpression) {
+                throw new UnsupportedFeatureException(
+                        "IN (subquery) is only supported as a condition of the WHERE clause of a single table query");
+            }
+            Set<Object> rightValues;
+            if (valueList instanceof ParameterExpression) {
+                rightValues = parameterValues((ParameterExpression) valueList, leftType);
+            } else {
+                rightValues = listValues((InListExpression) valueList, leftType, context);
+            }
+            SetType setType = new SetType(leftType);
+            FunctionIdent functionIdent = new FunctionIdent(InOperator.NAME, Arrays.asList(leftType, setType));
+            FunctionInfo functionInfo = getFunctionInfo(functionIdent);
+            return context.allocateFunction(
+                    functionInfo,
+                    Arrays.asList(left, newLiteral(setType, rightValues)));
+        }
+
+        private Set<Object> listValues(InListExpression inList, DataType leftType, ExpressionAnalysisContext context) {
             Set<Object> rightValues = new HashSet<>();
-            for (Expression expression : ((InListExpression) node.getValueList()).getValues()) {
+            for (Expression expression : inList.getValues()) {
                 Symbol right = expression.accept(this, context);
                 Literal rightLiteral;
                 try {
@@ -431,12 +451,47 @@ public class ExpressionAnalyzer {
                                     leftType.getName()));
                 }
             }
-            SetType setType = new SetType(leftType);
-            FunctionIdent functionIdent = new FunctionIdent(InOperator.NAME, Arrays.asList(leftType, setType));
-            FunctionInfo functionInfo = getFunctionInfo(functionIdent);
-            return context.allocateFunction(
-                    functionInfo,
-                    Arrays.asList(left, newLiteral(setType, rightValues)));
+            return rightValues;
+        }
+
+        /**
+         * values of a <code>IN (?)</code> parameter, which must be a collection or an array.
+         * Resolved subqueries are passed as such a parameter, too.
+         */
+        private Set<Object> parameterValues(ParameterExpression parameter, DataType leftType) {
+            Object[] parameters = parameterContext.parameters();
+            if (parameter.index() >= parameters.length) {
+                throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                        "Tried to resolve a parameter but the arguments provided with the " +
+                                "SQLRequest don't contain a parameter at position %d", parameter.index()));
+            }
+            Object value = parameters[parameter.index()];
+            Collection<?> values;
+            if (value instanceof Collection) {
+                values = (Collection<?>) value;
+            } else if (value instanceof Object[]) {
+                values = Arrays.asList((Object[]) value);
+            } else {
+                throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                        "invalid IN parameter at position %d. expected an array", parameter.position()));
+            }
+            Set<Object> rightValues = new HashSet<>(values.size());
+            for (Object o : values) {
+                try {
+                    rightValues.add(leftType.value(o));
+                } catch (IllegalArgumentException | ClassCastException e) {
+                    throw new IllegalArgumentException(
+                            String.format(Locale.ENGLISH, "invalid IN LIST value %s. expected type '%s'",
+                                    o, leftType.getName()));
+                }
+            }
+            return rightValues;
+        }
+
+        @Override
+        protected Symbol visitExists(ExistsPredicate node, ExpressionAnalysisContext context) {
+            throw new UnsupportedFeatureException(
+                    "EXISTS (subquery) is only supported as a condition of the WHERE clause");
         }
 
         @Override
@@ -21,15 +21,15 @@
 
 package io.crate.analyze.relations;
 
+import io.crate.sql.tree.Expression;
 import io.crate.sql.tree.QualifiedName;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 public class RelationAnalysisContext {
 
-    private Map<QualifiedName, AnalyzedRelation> sources = new HashMap<>();
+    private Map<QualifiedName, AnalyzedRelation> sources = new LinkedHashMap<>();
+    private List<Expression> joinConditions = new ArrayList<>();
 
     public RelationAnalysisContext() {
     }
@@ -45,4 +45,15 @@ public class RelationAnalysisContext {
     public Map<QualifiedName, AnalyzedRelation> sources() {
         return sources;
     }
+
+    public void addJoinCondition(Expression joinCondition) {
+        joinConditions.add(joinCondition);
+    }
+
+    /**
+     * the ON conditions of the joins in the FROM clause, in the order the joined relations were added
+     */
+    public List<Expression> joinConditions() {
+        return joinConditions;
+    }
 }
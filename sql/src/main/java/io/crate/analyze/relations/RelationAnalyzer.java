@@ -33,24 +33,28 @@ import io.crate.analyze.validator.HavingSymbolValidator;
 import io.crate.analyze.validator.SemanticSortValidator;
 import io.crate.analyze.where.WhereClauseValidator;
 import io.crate.exceptions.AmbiguousColumnAliasException;
+import io.crate.exceptions.UnsupportedFeatureException;
+import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.metadata.TableIdent;
 import io.crate.metadata.table.TableInfo;
+import io.crate.operation.operator.AndOperator;
+import io.crate.operation.operator.EqOperator;
 import io.crate.planner.symbol.*;
 import io.crate.planner.symbol.Literal;
 import io.crate.sql.tree.*;
 import io.crate.types.DataTypes;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 
 public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation, RelationAnalysisContext> {
 
     private final static AggregationSearcher AGGREGATION_SEARCHER = new AggregationSearcher();
+    private final static String SEMI_JOIN_UNSUPPORTED =
+            "Only a simple SELECT of one column from a single table is supported as subquery of an IN condition";
 
     private final AnalysisMetaData analysisMetaData;
     private final ParameterContext parameterContext;
@@ -72,15 +76,52 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
         for (Relation relation : node.getFrom()) {
             process(relation, context);
         }
-        if (context.sources().size() != 1) {
+        boolean isJoin = context.joinConditions().size() == 1 && context.sources().size() == 2;
+        if (context.sources().size() != 1 && !isJoin) {
             throw new UnsupportedOperationException
                     ("Only exactly one table is allowed in the FROM clause, got: " + context.sources().size());
         }
+        if (isJoin && Iterables.get(context.sources().values(), 0).equals(Iterables.get(context.sources().values(), 1))) {
+            throw new UnsupportedFeatureException("Joining a table with itself is not supported");
+        }
         FieldResolver fieldResolver = new FullQualifedNameFieldResolver(context.sources());
         expressionAnalyzer = new ExpressionAnalyzer(analysisMetaData, parameterContext, fieldResolver);
         expressionAnalysisContext = new ExpressionAnalysisContext();
 
-        WhereClause whereClause = analyzeWhere(node.getWhere());
+        Optional<Expression> where = node.getWhere();
+        InPredicate semiJoinPredicate = null;
+        if (!isJoin && where.isPresent()) {
+            List<Expression> conjuncts = new ArrayList<>();
+            splitConjunction(where.get(), conjuncts);
+            semiJoinPredicate = removeSubqueryInPredicate(conjuncts);
+            if (semiJoinPredicate != null) {
+                where = joinConjuncts(conjuncts);
+            }
+        }
+
+        Map<QualifiedName, AnalyzedRelation> sources = context.sources();
+        Symbol joinCondition = null;
+        boolean semiJoin = false;
+        if (isJoin) {
+            joinCondition = expressionAnalyzer.normalize(expressionAnalyzer.convert(
+                    context.joinConditions().get(0), expressionAnalysisContext));
+        } else if (semiJoinPredicate != null) {
+            Map.Entry<QualifiedName, AnalyzedRelation> subquerySource = analyzeSemiJoinSource(
+                    semiJoinPredicate, Iterables.getOnlyElement(context.sources().values()));
+            joinCondition = analyzeSemiJoinCondition(
+                    semiJoinPredicate, (SelectAnalyzedStatement) subquerySource.getValue());
+            if (joinCondition.symbolType().isValueSymbol()) {
+                // subquery has no match, there is nothing to join
+                where = Optional.<Expression>of(BooleanLiteral.FALSE_LITERAL);
+                joinCondition = null;
+            } else {
+                sources = new LinkedHashMap<>(context.sources());
+                sources.put(subquerySource.getKey(),
+                        Iterables.getOnlyElement(((SelectAnalyzedStatement) subquerySource.getValue()).sources().values()));
+                semiJoin = true;
+            }
+        }
+        WhereClause whereClause = analyzeWhere(where);
         if(whereClause.hasQuery()){
             WhereClauseValidator whereClauseValidator = new WhereClauseValidator();
             whereClauseValidator.validate(whereClause);
@@ -106,11 +147,12 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
         Integer limit = expressionAnalyzer.integerFromExpression(node.getLimit());
         int offset = firstNonNull(expressionAnalyzer.integerFromExpression(node.getOffset()), 0);
 
-        return new SelectAnalyzedStatement(
+        SelectAnalyzedStatement statement = new SelectAnalyzedStatement(
                 selectAnalysis.outputNames(),
                 selectAnalysis.outputSymbols(),
-                context.sources(),
+                sources,
                 whereClause,
+                joinCondition,
                 groupBy,
                 orderBy,
                 having,
@@ -119,6 +161,103 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
                 expressionAnalysisContext.hasSysExpressions,
                 expressionAnalysisContext.hasAggregates
         );
+        statement.semiJoin(semiJoin);
+        return statement;
+    }
+
+    private static void splitConjunction(Expression expression, List<Expression> conjuncts) {
+        if (expression instanceof LogicalBinaryExpression
+            && ((LogicalBinaryExpression) expression).getType() == LogicalBinaryExpression.Type.AND) {
+            splitConjunction(((LogicalBinaryExpression) expression).getLeft(), conjuncts);
+            splitConjunction(((LogicalBinaryExpression) expression).getRight(), conjuncts);
+        } else {
+            conjuncts.add(expression);
+        }
+    }
+
+    private static Optional<Expression> joinConjuncts(List<Expression> conjuncts) {
+        Expression expression = null;
+        for (Expression conjunct : conjuncts) {
+            expression = expression == null ? conjunct : LogicalBinaryExpression.and(expression, conjunct);
+        }
+        return Optional.fromNullable(expression);
+    }
+
+    /**
+     * removes the first <code>x IN (subquery)</code> condition from the conjuncts and returns it.
+     * Further subquery conditions remain in place and will be rejected by the {@link ExpressionAnalyzer}.
+     */
+    @Nullable
+    private static InPredicate removeSubqueryInPredicate(List<Expression> conjuncts) {
+        for (int i = 0; i < conjuncts.size(); i++) {
+            Expression conjunct = conjuncts.get(i);
+            if (conjunct instanceof InPredicate
+                && ((InPredicate) conjunct).getValueList() instanceof SubqueryExpression) {
+                conjuncts.remove(i);
+                return (InPredicate) conjunct;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * analyze the subquery of a <code>x IN (subquery)</code> condition that is executed as semi join.
+     * Only a simple select of one column from a single table, other than the outer table, is supported.
+     */
+    private Map.Entry<QualifiedName, AnalyzedRelation> analyzeSemiJoinSource(InPredicate predicate,
+                                                                            AnalyzedRelation outerRelation) {
+        Query query = ((SubqueryExpression) predicate.getValueList()).getQuery();
+        if (!(query.getQueryBody() instanceof QuerySpecification)) {
+            throw new UnsupportedFeatureException(SEMI_JOIN_UNSUPPORTED);
+        }
+        QuerySpecification querySpec = (QuerySpecification) query.getQueryBody();
+        RelationAnalysisContext subContext = new RelationAnalysisContext();
+        SelectAnalyzedStatement subquery = (SelectAnalyzedStatement) new RelationAnalyzer(
+                analysisMetaData, parameterContext).process(querySpec, subContext);
+
+        boolean distinctOnly = querySpec.getSelect().isDistinct() && querySpec.getGroupBy().isEmpty();
+        if (subquery.sources().size() != 1
+            || subquery.joinCondition() != null
+            || (subquery.hasGroupBy() && !distinctOnly)
+            || subquery.hasAggregates()
+            || subquery.havingClause() != null
+            || subquery.isLimited()
+            || subquery.orderBy().isSorted()
+            || !(Iterables.getOnlyElement(subquery.sources().values()) instanceof TableRelation)) {
+            throw new UnsupportedFeatureException(SEMI_JOIN_UNSUPPORTED);
+        }
+        if (subquery.outputSymbols().size() != 1) {
+            throw new IllegalArgumentException("Subquery of an IN condition must select exactly one column");
+        }
+        if (Iterables.getOnlyElement(subquery.sources().values()).equals(outerRelation)) {
+            throw new UnsupportedFeatureException("Joining a table with itself is not supported");
+        }
+        QualifiedName name = Iterables.getOnlyElement(subquery.sources().keySet());
+        return new AbstractMap.SimpleImmutableEntry<QualifiedName, AnalyzedRelation>(name, subquery);
+    }
+
+    /**
+     * <code>x = subquery_output AND subquery_where</code>, normalized.
+     * Returns a literal if the subquery can't match.
+     */
+    private Symbol analyzeSemiJoinCondition(InPredicate predicate, SelectAnalyzedStatement subquery) {
+        Symbol left = expressionAnalyzer.convert(predicate.getValue(), expressionAnalysisContext);
+        Symbol right = subquery.outputSymbols().get(0);
+        if (!left.valueType().equals(right.valueType())) {
+            throw new IllegalArgumentException(SymbolFormatter.format(
+                    "Subquery of an IN condition selects %s, which doesn't match the type of %s", right, left));
+        }
+        WhereClause subWhere = subquery.whereClause();
+        if (subWhere.noMatch()) {
+            return Literal.newLiteral(false);
+        }
+        FunctionInfo eqInfo = analysisMetaData.functions().get(
+                new FunctionIdent(EqOperator.NAME, Arrays.asList(left.valueType(), right.valueType()))).info();
+        Symbol condition = new Function(eqInfo, Arrays.asList(left, right));
+        if (subWhere.hasQuery()) {
+            condition = new Function(AndOperator.INFO, Arrays.asList(condition, subWhere.query()));
+        }
+        return expressionAnalyzer.normalize(condition);
     }
 
     private List<Symbol> rewriteGlobalDistinct(List<Symbol> outputSymbols) {
@@ -312,6 +451,17 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
         return symbols.iterator().next();
     }
 
+    @Override
+    protected AnalyzedRelation visitJoin(Join node, RelationAnalysisContext context) {
+        if (node.getType() != Join.Type.INNER || !(node.getCriteria().get() instanceof JoinOn)) {
+            throw new UnsupportedFeatureException("Only INNER JOIN with an ON condition is supported");
+        }
+        process(node.getLeft(), context);
+        process(node.getRight(), context);
+        context.addJoinCondition(((JoinOn) node.getCriteria().get()).getExpression());
+        return null;
+    }
+
     @Override
     protected AnalyzedRelation visitAliasedRelation(AliasedRelation node, RelationAnalysisContext context) {
         AnalyzedRelation childRelation = process(node.getRelation(), new RelationAnalysisContext());
@@ -32,4 +32,9 @@ public interface Executor {
 
     public List<ListenableFuture<TaskResult>> execute(Job job);
 
+    /**
+     * executes a job consisting of a single {@link PageableTask}, starting with the given page
+     */
+    public List<ListenableFuture<TaskResult>> execute(Job job, PageInfo pageInfo);
+
 }
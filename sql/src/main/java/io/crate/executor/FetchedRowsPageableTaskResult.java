@@ -72,6 +72,15 @@ public class FetchedRowsPageableTaskResult implements PageableTaskResult {
         if (backingArrayStartIdx + pageInfo.position() > backingArray.size()) {
             return Futures.immediateFailedFuture(new NoSuchElementException("backingArray exceeded"));
         }
+        if (backingArrayStartIdx + pageInfo.position() == backingArray.size()) {
+            // exhausted, like a QTFScrollTaskResult release the rows and return an empty result
+            try {
+                close();
+            } catch (IOException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+            return Futures.immediateFuture(PageableTaskResult.EMPTY_PAGABLE_RESULT);
+        }
         return Futures.<PageableTaskResult>immediateFuture(
                 new FetchedRowsPageableTaskResult(backingArray, backingArrayStartIdx, pageInfo)
         );
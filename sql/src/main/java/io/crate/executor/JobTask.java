@@ -35,4 +35,12 @@ public abstract class JobTask implements Task {
         return this.jobId;
     }
 
+    /**
+     * @return true if the task registers its operations in the stats tables itself,
+     *         so the executor must not track it as an operation again
+     */
+    public boolean tracksOperations() {
+        return false;
+    }
+
 }
@@ -98,6 +98,11 @@ public class LocalMergeTask extends JobTask {
         this.resultList = Arrays.<ListenableFuture<TaskResult>>asList(this.result);
     }
 
+    @Override
+    public boolean tracksOperations() {
+        return true;
+    }
+
     /**
      * only operate if we have an upstream as data always comes in via upstream results
      *
@@ -116,7 +121,7 @@ public class LocalMergeTask extends JobTask {
         final RamAccountingContext ramAccountingContext =
                 new RamAccountingContext(ramAccountingContextId, circuitBreaker);
         final MergeOperation mergeOperation = new MergeOperation(
-                clusterService, settings, transportActionProvider, symbolVisitor, mergeNode,
+                clusterService, threadPool, settings, transportActionProvider, symbolVisitor, mergeNode,
                 ramAccountingContext);
         final AtomicInteger countdown = new AtomicInteger(upstreamResults.size());
         statsTables.operationStarted(operationId, mergeNode.contextId(), mergeNode.id());
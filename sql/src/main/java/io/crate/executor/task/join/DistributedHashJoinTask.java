@@ -0,0 +1,79 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.task.join;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.executor.JobTask;
+import io.crate.executor.Task;
+import io.crate.executor.TaskExecutor;
+import io.crate.executor.TaskResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * starts the collectors of both relations of a distributed hash join
+ * and the join on the nodes they distribute their rows to.
+ *
+ * The results are the ones of the join nodes.
+ */
+public class DistributedHashJoinTask extends JobTask {
+
+    private final List<Task> leftTasks;
+    private final List<Task> rightTasks;
+    private final Task joinTask;
+    private final TaskExecutor executor;
+
+    public DistributedHashJoinTask(UUID jobId,
+                                   List<Task> leftTasks,
+                                   List<Task> rightTasks,
+                                   Task joinTask,
+                                   TaskExecutor executor) {
+        super(jobId);
+        this.leftTasks = leftTasks;
+        this.rightTasks = rightTasks;
+        this.joinTask = joinTask;
+        this.executor = executor;
+    }
+
+    @Override
+    public void start() {
+        List<ListenableFuture<TaskResult>> collectResults = new ArrayList<>();
+        collectResults.addAll(executor.execute(leftTasks));
+        collectResults.addAll(executor.execute(rightTasks));
+        // failures of the collectors are propagated to the results of the join
+        joinTask.upstreamResult(collectResults);
+        executor.execute(ImmutableList.of(joinTask));
+    }
+
+    @Override
+    public List<ListenableFuture<TaskResult>> result() {
+        return joinTask.result();
+    }
+
+    @Override
+    public void upstreamResult(List<ListenableFuture<TaskResult>> result) {
+        // ignore
+    }
+}
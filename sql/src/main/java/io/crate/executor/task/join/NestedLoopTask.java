@@ -32,6 +32,7 @@ import io.crate.operation.join.NestedLoopOperation;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
 import io.crate.planner.node.dql.join.NestedLoopNode;
 import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.util.BigArrays;
 
 import java.util.Arrays;
 import java.util.List;
@@ -51,7 +52,8 @@ public class NestedLoopTask extends JobTask implements PageableTask {
                           List<Task> innerTasks,
                           TaskExecutor executor,
                           ProjectionToProjectorVisitor projectionToProjectorVisitor,
-                          CircuitBreaker circuitBreaker) {
+                          CircuitBreaker circuitBreaker,
+                          BigArrays bigArrays) {
         super(jobId);
         String ramContextId = String.format(Locale.ENGLISH, "%s: %s", nodeId, jobId.toString());
         RamAccountingContext ramAccountingContext = new RamAccountingContext(
@@ -63,7 +65,8 @@ public class NestedLoopTask extends JobTask implements PageableTask {
                 innerTasks,
                 executor,
                 projectionToProjectorVisitor,
-                ramAccountingContext
+                ramAccountingContext,
+                bigArrays
         );
     }
 
@@ -0,0 +1,157 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import io.crate.Constants;
+import io.crate.planner.symbol.Symbol;
+import org.elasticsearch.action.support.single.instance.InstanceShardOperationRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.index.shard.ShardId;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request to apply the same assignments to many documents of one shard.
+ *
+ * If upsert sources are given, a document which doesn't exist is inserted
+ * using the source at the position of its id instead of being updated.
+ */
+public class ShardBulkUpdateRequest extends InstanceShardOperationRequest<ShardBulkUpdateRequest> {
+
+    private List<String> ids;
+    private long version = Versions.MATCH_ANY;
+    private Map<String, Symbol> assignments;
+    private List<BytesReference> upsertSources;
+    private List<String> routings;
+
+    public ShardBulkUpdateRequest() {
+    }
+
+    public ShardBulkUpdateRequest(ShardId shardId, List<String> ids, Map<String, Symbol> assignments) {
+        super(shardId.getIndex());
+        this.shardId = shardId.id();
+        this.ids = ids;
+        this.assignments = assignments;
+    }
+
+    public List<String> ids() {
+        return ids;
+    }
+
+    public ShardBulkUpdateRequest version(long version) {
+        this.version = version;
+        return this;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int shardId() {
+        return shardId;
+    }
+
+    public int retryOnConflict() {
+        return version == Versions.MATCH_ANY ? Constants.UPDATE_RETRY_ON_CONFLICT : 0;
+    }
+
+    public Map<String, Symbol> assignments() {
+        return assignments;
+    }
+
+    /**
+     * @param sources  the sources to insert if a document doesn't exist, one per id
+     * @param routings the routing values of the inserted documents, one per id, entries may be null
+     */
+    public ShardBulkUpdateRequest upsert(List<BytesReference> sources, List<String> routings) {
+        assert sources.size() == ids.size() && routings.size() == ids.size() : "one source and routing per id required";
+        this.upsertSources = sources;
+        this.routings = routings;
+        return this;
+    }
+
+    @Nullable
+    public List<BytesReference> upsertSources() {
+        return upsertSources;
+    }
+
+    @Nullable
+    public List<String> routings() {
+        return routings;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int numIds = in.readVInt();
+        ids = new ArrayList<>(numIds);
+        for (int i = 0; i < numIds; i++) {
+            ids.add(in.readString());
+        }
+        version = Versions.readVersion(in);
+        int mapSize = in.readVInt();
+        assignments = new HashMap<>(mapSize);
+        for (int i = 0; i < mapSize; i++) {
+            assignments.put(in.readString(), Symbol.fromStream(in));
+        }
+        if (in.readBoolean()) {
+            upsertSources = new ArrayList<>(numIds);
+            routings = new ArrayList<>(numIds);
+            for (int i = 0; i < numIds; i++) {
+                upsertSources.add(in.readBytesReference());
+                routings.add(in.readOptionalString());
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(ids.size());
+        for (String id : ids) {
+            out.writeString(id);
+        }
+        Versions.writeVersion(version, out);
+        out.writeVInt(assignments.size());
+        for (Map.Entry<String, Symbol> entry : assignments.entrySet()) {
+            out.writeString(entry.getKey());
+            Symbol.toStream(entry.getValue(), out);
+        }
+        if (upsertSources == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            for (int i = 0; i < upsertSources.size(); i++) {
+                out.writeBytesReference(upsertSources.get(i));
+                out.writeOptionalString(routings.get(i));
+            }
+        }
+    }
+}
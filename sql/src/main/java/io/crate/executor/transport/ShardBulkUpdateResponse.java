@@ -0,0 +1,116 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ShardBulkUpdateResponse extends ActionResponse {
+
+    public static class Failure {
+
+        private final int location;
+        private final String id;
+        private final String message;
+        private final boolean versionConflict;
+
+        public Failure(int location, String id, String message, boolean versionConflict) {
+            this.location = location;
+            this.id = id;
+            this.message = message;
+            this.versionConflict = versionConflict;
+        }
+
+        /**
+         * the position of the document in the ids of the request
+         */
+        public int location() {
+            return location;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String message() {
+            return message;
+        }
+
+        /**
+         * true if the document was modified concurrently or didn't match the required version
+         */
+        public boolean versionConflict() {
+            return versionConflict;
+        }
+    }
+
+    private long updated;
+    private List<Failure> failures;
+
+    public ShardBulkUpdateResponse() {
+    }
+
+    public ShardBulkUpdateResponse(long updated, List<Failure> failures) {
+        this.updated = updated;
+        this.failures = failures;
+    }
+
+    /**
+     * the number of documents that were updated or inserted
+     */
+    public long updated() {
+        return updated;
+    }
+
+    public List<Failure> failures() {
+        return failures;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        updated = in.readVLong();
+        int numFailures = in.readVInt();
+        failures = new ArrayList<>(numFailures);
+        for (int i = 0; i < numFailures; i++) {
+            failures.add(new Failure(in.readVInt(), in.readString(), in.readString(), in.readBoolean()));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVLong(updated);
+        out.writeVInt(failures.size());
+        for (Failure failure : failures) {
+            out.writeVInt(failure.location());
+            out.writeString(failure.id());
+            out.writeString(failure.message());
+            out.writeBoolean(failure.versionConflict());
+        }
+    }
+}
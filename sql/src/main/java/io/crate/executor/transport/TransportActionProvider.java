@@ -71,6 +71,7 @@ public class TransportActionProvider {
     private final Provider<TransportQueryShardAction> transportQueryShardActionProvider;
     private final Provider<TransportUpdateAction> transportUpdateActionProvider;
     private final Provider<TransportShardUpdateAction> transportShardUpdateActionProvider;
+    private final Provider<TransportShardBulkUpdateAction> transportShardBulkUpdateActionProvider;
     private final Provider<TransportPutMappingAction> transportPutMappingActionProvider;
     private final Provider<TransportRefreshAction> transportRefreshActionProvider;
     private final Provider<TransportUpdateSettingsAction> transportUpdateSettingsActionProvider;
@@ -93,6 +94,7 @@ public class TransportActionProvider {
                                    Provider<TransportIndexAction> transportIndexActionProvider,
                                    Provider<TransportUpdateAction> transportUpdateActionProvider,
                                    Provider<TransportShardUpdateAction> transportShardUpdateActionProvider,
+                                   Provider<TransportShardBulkUpdateAction> transportShardBulkUpdateActionProvider,
                                    Provider<TransportQueryShardAction> transportQueryShardActionProvider,
                                    Provider<TransportSearchAction> transportSearchActionProvider,
                                    Provider<SearchServiceTransportAction> searchServiceTransportActionProvider,
@@ -114,6 +116,7 @@ public class TransportActionProvider {
         this.transportQueryShardActionProvider = transportQueryShardActionProvider;
         this.transportUpdateActionProvider = transportUpdateActionProvider;
         this.transportShardUpdateActionProvider = transportShardUpdateActionProvider;
+        this.transportShardBulkUpdateActionProvider = transportShardBulkUpdateActionProvider;
         this.transportShardBulkActionProvider = transportShardBulkActionProvider;
         this.transportCollectNodeActionProvider = transportCollectNodeActionProvider;
         this.transportMergeNodeActionProvider = transportMergeNodeActionProvider;
@@ -181,6 +184,10 @@ public class TransportActionProvider {
         return transportShardUpdateActionProvider.get();
     }
 
+    public TransportShardBulkUpdateAction transportShardBulkUpdateAction() {
+        return transportShardBulkUpdateActionProvider.get();
+    }
+
     public TransportShardBulkActionDelegate transportShardBulkAction() {
         return new TransportShardBulkActionDelegateImpl(transportShardBulkActionProvider.get());
     }
@@ -21,16 +21,23 @@
 
 package io.crate.executor.transport;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.action.sql.DDLStatementDispatcher;
 import io.crate.action.sql.query.CrateResultSorter;
 import io.crate.breaker.CrateCircuitBreakerService;
+import io.crate.exceptions.Exceptions;
 import io.crate.executor.*;
 import io.crate.executor.task.DDLTask;
 import io.crate.executor.task.LocalCollectTask;
 import io.crate.executor.task.LocalMergeTask;
 import io.crate.executor.task.NoopTask;
+import io.crate.executor.task.join.DistributedHashJoinTask;
+import io.crate.executor.task.join.HashJoinTask;
 import io.crate.executor.task.join.NestedLoopTask;
 import io.crate.executor.transport.task.*;
 import io.crate.executor.transport.task.elasticsearch.*;
@@ -46,6 +53,9 @@ import io.crate.planner.node.PlanNodeVisitor;
 import io.crate.planner.node.ddl.*;
 import io.crate.planner.node.dml.*;
 import io.crate.planner.node.dql.*;
+import io.crate.planner.node.dql.join.DistributedHashJoin;
+import io.crate.planner.node.dql.join.HashJoin;
+import io.crate.planner.node.dql.join.HashJoinNode;
 import io.crate.planner.node.dql.join.NestedLoopNode;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.breaker.CircuitBreaker;
@@ -56,9 +66,12 @@ import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.search.controller.SearchPhaseController;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
 public class TransportExecutor implements Executor, TaskExecutor {
@@ -117,7 +130,7 @@ public class TransportExecutor implements Executor, TaskExecutor {
         this.globalImplementationSymbolVisitor = new ImplementationSymbolVisitor(
                 referenceResolver, functions, RowGranularity.CLUSTER);
         this.globalProjectionToProjectionVisitor = new ProjectionToProjectorVisitor(
-                clusterService, settings, transportActionProvider,
+                clusterService, threadPool, settings, transportActionProvider,
                 globalImplementationSymbolVisitor);
     }
 
@@ -135,23 +148,130 @@ public class TransportExecutor implements Executor, TaskExecutor {
 
     }
 
+    @Override
+    public List<ListenableFuture<TaskResult>> execute(Job job, PageInfo pageInfo) {
+        if (job.tasks().size() != 1 || !(job.tasks().get(0) instanceof PageableTask)) {
+            throw new IllegalArgumentException("only a job with a single pageable task can be paged");
+        }
+        Task task = job.tasks().get(0);
+        startTask(task, pageInfo);
+        return task.result();
+    }
+
     @Override
     public List<Task> newTasks(PlanNode planNode, UUID jobId) {
         return planNode.accept(nodeVisitor, jobId);
     }
 
+    /**
+     * Starts all tasks, each task gets the result of its upstream task.
+     *
+     * Consecutive {@link io.crate.executor.ConcurrentTask}s form a group that is started at once,
+     * the result of the group is passed to the next task once all tasks of the group have finished.
+     *
+     * Apart from these groups the tasks of a job form a chain, there is no dependency graph:
+     * a task only starts working once the complete result of its upstream is available.
+     */
     @Override
     public List<ListenableFuture<TaskResult>> execute(Collection<Task> tasks) {
-        Task lastTask = null;
+        List<ListenableFuture<TaskResult>> lastResult = null;
+        List<ListenableFuture<TaskResult>> concurrentResults = new ArrayList<>();
         for (Task task : tasks) {
+            if (task instanceof ConcurrentTask) {
+                startTask(task, null);
+                concurrentResults.add(Iterables.getLast(task.result()));
+                lastResult = null;
+                continue;
+            }
+            if (!concurrentResults.isEmpty()) {
+                lastResult = concurrentGroupResult(concurrentResults);
+                concurrentResults = new ArrayList<>();
+            }
             // chaining tasks
-            if (lastTask != null) {
-                task.upstreamResult(lastTask.result());
+            if (lastResult != null) {
+                task.upstreamResult(lastResult);
+            }
+            startTask(task, null);
+            lastResult = task.result();
+        }
+        if (!concurrentResults.isEmpty()) {
+            lastResult = concurrentGroupResult(concurrentResults);
+        }
+        assert lastResult != null : "no tasks to execute";
+        return lastResult;
+    }
+
+    private static List<ListenableFuture<TaskResult>> concurrentGroupResult(List<ListenableFuture<TaskResult>> results) {
+        if (results.size() == 1) {
+            return results;
+        }
+        ListenableFuture<TaskResult> groupResult = Futures.transform(Futures.allAsList(results),
+                new Function<List<TaskResult>, TaskResult>() {
+                    @Nullable
+                    @Override
+                    public TaskResult apply(@Nullable List<TaskResult> input) {
+                        assert input != null;
+                        return Iterables.getLast(input);
+                    }
+                });
+        return ImmutableList.of(groupResult);
+    }
+
+    /**
+     * start the task and track it as an operation of its job, so its start and end time
+     * show up in the sys.operations table
+     *
+     * @param pageInfo the first page to fetch if the task is paged, null otherwise
+     */
+    private void startTask(Task task, @Nullable PageInfo pageInfo) {
+        if (!(task instanceof JobTask) || ((JobTask) task).tracksOperations()) {
+            start(task, pageInfo);
+            return;
+        }
+        final UUID operationId = UUID.randomUUID();
+        statsTables.operationStarted(operationId, ((JobTask) task).jobId(), operationName(task));
+        try {
+            start(task, pageInfo);
+        } catch (Throwable t) {
+            statsTables.operationFinished(operationId, Exceptions.messageOf(t), 0);
+            throw t;
+        }
+        Futures.addCallback(Futures.allAsList(task.result()), new FutureCallback<List<TaskResult>>() {
+            @Override
+            public void onSuccess(@Nullable List<TaskResult> result) {
+                statsTables.operationFinished(operationId, null, 0);
+            }
+
+            @Override
+            public void onFailure(@Nonnull Throwable t) {
+                statsTables.operationFinished(operationId, Exceptions.messageOf(t), 0);
             }
+        });
+    }
+
+    private static void start(Task task, @Nullable PageInfo pageInfo) {
+        if (pageInfo == null) {
             task.start();
-            lastTask = task;
+        } else {
+            ((PageableTask) task).start(pageInfo);
+        }
+    }
+
+    /**
+     * the simple class name of the task in lower camel case, a leading acronym is lowercased as a whole,
+     * e.g. "esDeleteIndexTask" for ESDeleteIndexTask
+     */
+    static String operationName(Task task) {
+        String name = task.getClass().getSimpleName();
+        int upper = 0;
+        while (upper < name.length() && Character.isUpperCase(name.charAt(upper))) {
+            upper++;
+        }
+        if (upper > 1 && upper < name.length()) {
+            // keep the first letter of the following word
+            upper--;
         }
-        return lastTask.result();
+        return name.substring(0, upper).toLowerCase(Locale.ENGLISH) + name.substring(upper);
     }
 
     class TaskCollectingVisitor extends PlanVisitor<Job, Void> {
@@ -184,6 +304,27 @@ public class TransportExecutor implements Executor, TaskExecutor {
             return null;
         }
 
+        @Override
+        public Void visitHashJoin(HashJoin plan, Job job) {
+            job.addTasks(nodeVisitor.visitHashJoinNode(plan.hashJoinNode(), job.id()));
+            return null;
+        }
+
+        @Override
+        public Void visitDistributedHashJoin(DistributedHashJoin plan, Job job) {
+            List<Task> leftTasks = nodeVisitor.visitCollectNode(plan.leftCollectNode(), job.id());
+            List<Task> rightTasks = nodeVisitor.visitCollectNode(plan.rightCollectNode(), job.id());
+            // the rows of the right relation are received by their own context on the join nodes
+            UUID rightContextId = UUID.randomUUID();
+            plan.rightCollectNode().jobId(rightContextId);
+            plan.joinMergeNode().rightContextId(rightContextId);
+            Task joinTask = Iterables.getOnlyElement(nodeVisitor.visitMergeNode(plan.joinMergeNode(), job.id()));
+
+            job.addTask(new DistributedHashJoinTask(job.id(), leftTasks, rightTasks, joinTask, TransportExecutor.this));
+            job.addTasks(nodeVisitor.visitMergeNode(plan.localMergeNode(), job.id()));
+            return null;
+        }
+
         @Override
         public Void visitNonDistributedGroupBy(NonDistributedGroupBy plan, Job job) {
             job.addTasks(nodeVisitor.visitCollectNode(plan.collectNode(), job.id()));
@@ -298,7 +439,32 @@ public class TransportExecutor implements Executor, TaskExecutor {
                             innerTasks,
                             TransportExecutor.this,
                             globalProjectionToProjectionVisitor,
-                            circuitBreaker)
+                            circuitBreaker,
+                            bigArrays)
+            );
+        }
+
+        @Override
+        public ImmutableList<Task> visitHashJoinNode(HashJoinNode node, UUID jobId) {
+            List<Task> leftTasks = new ArrayList<>();
+            for (PlanNode planNode : node.left()) {
+                leftTasks.addAll(planNode.accept(this, jobId));
+            }
+            List<Task> rightTasks = new ArrayList<>();
+            for (PlanNode planNode : node.right()) {
+                rightTasks.addAll(planNode.accept(this, jobId));
+            }
+            return singleTask(
+                    new HashJoinTask(
+                            jobId,
+                            clusterService.localNode().id(),
+                            node,
+                            leftTasks,
+                            rightTasks,
+                            TransportExecutor.this,
+                            globalProjectionToProjectionVisitor,
+                            circuitBreaker,
+                            bigArrays)
             );
         }
 
@@ -356,8 +522,14 @@ public class TransportExecutor implements Executor, TaskExecutor {
 
         @Override
         public ImmutableList<Task> visitESIndexNode(ESIndexNode node, UUID jobId) {
+            if (!node.onDuplicateKeyAssignments().isEmpty()) {
+                return singleTask(new UpsertTask(jobId, clusterService,
+                        transportActionProvider.transportCreateIndexAction(),
+                        transportActionProvider.transportShardBulkUpdateAction(),
+                        node));
+            }
             if (node.sourceMaps().size() > 1) {
-                return singleTask(new ESBulkIndexTask(jobId, clusterService, settings,
+                return singleTask(new ESBulkIndexTask(jobId, clusterService, threadPool, settings,
                         transportActionProvider.transportShardBulkAction(),
                         transportActionProvider.transportCreateIndexAction(),
                         node));
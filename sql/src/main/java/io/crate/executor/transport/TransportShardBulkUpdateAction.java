@@ -0,0 +1,321 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.Constants;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRunnable;
+import org.elasticsearch.action.bulk.*;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.TransportActions;
+import org.elasticsearch.action.support.single.instance.TransportInstanceSingleOperationAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.service.IndexService;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Updates many documents of a shard at once.
+ *
+ * The new source of every document is prepared on the node of the primary shard like
+ * a single update done by the {@link TransportShardUpdateAction}.
+ * All of them are then indexed with a single shard bulk request, which is replicated as a whole.
+ * Documents that failed because of a version conflict are prepared and indexed again.
+ *
+ * If the request contains upsert sources, documents which don't exist are inserted instead
+ * (<code>INSERT ... ON DUPLICATE KEY UPDATE</code>). They are indexed in the same shard bulk request
+ * with the create flag set, so a document inserted concurrently results in a version conflict
+ * and is updated by the retry.
+ *
+ * If the primary shard is allocated on the local node, {@link #executeLocal(ShardBulkUpdateRequest, ActionListener)}
+ * skips the transport layer.
+ */
+public class TransportShardBulkUpdateAction
+        extends TransportInstanceSingleOperationAction<ShardBulkUpdateRequest, ShardBulkUpdateResponse> {
+
+    private final static String ACTION_NAME = "indices:crate/data/write/bulk_update";
+
+    private final TransportShardUpdateAction shardUpdateAction;
+    private final TransportShardBulkActionDelegate shardBulkAction;
+    private final IndicesService indicesService;
+
+    @Inject
+    public TransportShardBulkUpdateAction(Settings settings,
+                                          ThreadPool threadPool,
+                                          ClusterService clusterService,
+                                          TransportService transportService,
+                                          ActionFilters actionFilters,
+                                          TransportShardUpdateAction shardUpdateAction,
+                                          TransportShardBulkAction shardBulkAction,
+                                          IndicesService indicesService) {
+        this(settings, threadPool, clusterService, transportService, actionFilters, shardUpdateAction,
+                new TransportShardBulkActionDelegateImpl(shardBulkAction), indicesService);
+    }
+
+    TransportShardBulkUpdateAction(Settings settings,
+                                   ThreadPool threadPool,
+                                   ClusterService clusterService,
+                                   TransportService transportService,
+                                   ActionFilters actionFilters,
+                                   TransportShardUpdateAction shardUpdateAction,
+                                   TransportShardBulkActionDelegate shardBulkAction,
+                                   IndicesService indicesService) {
+        super(settings, ACTION_NAME, threadPool, clusterService, transportService, actionFilters);
+        this.shardUpdateAction = shardUpdateAction;
+        this.shardBulkAction = shardBulkAction;
+        this.indicesService = indicesService;
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.INDEX;
+    }
+
+    @Override
+    protected ShardBulkUpdateRequest newRequest() {
+        return new ShardBulkUpdateRequest();
+    }
+
+    @Override
+    protected ShardBulkUpdateResponse newResponse() {
+        return new ShardBulkUpdateResponse();
+    }
+
+    @Override
+    protected boolean retryOnFailure(Throwable e) {
+        return TransportActions.isShardNotAvailableException(e);
+    }
+
+    @Override
+    protected boolean resolveRequest(ClusterState state,
+                                     InternalRequest request,
+                                     ActionListener<ShardBulkUpdateResponse> listener) {
+        return true;
+    }
+
+    @Override
+    protected ShardIterator shards(ClusterState clusterState, InternalRequest request) throws ElasticsearchException {
+        return clusterState.routingTable().index(request.concreteIndex()).shard(request.request().shardId()).primaryShardIt();
+    }
+
+    @Override
+    protected void shardOperation(InternalRequest request, ActionListener<ShardBulkUpdateResponse> listener) throws ElasticsearchException {
+        IndexShard indexShard = indicesService.indexServiceSafe(request.concreteIndex()).shardSafe(request.request().shardId());
+        ShardId shardId = new ShardId(request.concreteIndex(), request.request().shardId());
+        update(new BulkUpdate(request.request(), shardId, indexShard, listener, true),
+                allLocations(request.request()), 0);
+    }
+
+    /**
+     * Updates the documents on the current thread if the primary shard is allocated on this node,
+     * without a transport round trip. The shard bulk request is executed on the current thread, too,
+     * its replication stays asynchronous.
+     *
+     * Otherwise the request is sent to the node of the primary shard.
+     */
+    public void executeLocal(ShardBulkUpdateRequest request, ActionListener<ShardBulkUpdateResponse> listener) {
+        IndexShard indexShard = localPrimary(request);
+        if (indexShard == null) {
+            execute(request, listener);
+            return;
+        }
+        try {
+            update(new BulkUpdate(request, indexShard.shardId(), indexShard, listener, false),
+                    allLocations(request), 0);
+        } catch (Throwable t) {
+            listener.onFailure(t);
+        }
+    }
+
+    @Nullable
+    private IndexShard localPrimary(ShardBulkUpdateRequest request) {
+        ClusterState state = clusterService.state();
+        IndexRoutingTable indexRoutingTable = state.routingTable().index(request.index());
+        if (indexRoutingTable == null) {
+            return null;
+        }
+        IndexShardRoutingTable shardRoutingTable = indexRoutingTable.shard(request.shardId());
+        if (shardRoutingTable == null) {
+            return null;
+        }
+        ShardRouting primary = shardRoutingTable.primaryShard();
+        if (primary == null || !primary.active() || !state.nodes().localNodeId().equals(primary.currentNodeId())) {
+            return null;
+        }
+        IndexService indexService = indicesService.indexService(request.index());
+        if (indexService == null) {
+            return null;
+        }
+        return indexService.shard(request.shardId());
+    }
+
+    private static List<Integer> allLocations(ShardBulkUpdateRequest request) {
+        List<Integer> locations = new ArrayList<>(request.ids().size());
+        for (int i = 0; i < request.ids().size(); i++) {
+            locations.add(i);
+        }
+        return locations;
+    }
+
+    /**
+     * @param locations the positions of the documents to update in the ids of the request
+     */
+    private void update(final BulkUpdate bulkUpdate, List<Integer> locations, final int retryCount) {
+        final List<Integer> preparedLocations = new ArrayList<>(locations.size());
+        List<IndexRequest> indexRequests = new ArrayList<>(locations.size());
+        for (Integer location : locations) {
+            String id = bulkUpdate.request.ids().get(location);
+            try {
+                indexRequests.add(prepare(bulkUpdate, location, id));
+                preparedLocations.add(location);
+            } catch (Throwable t) {
+                t = ExceptionsHelper.unwrapCause(t);
+                bulkUpdate.failures.add(new ShardBulkUpdateResponse.Failure(
+                        location, id, ExceptionsHelper.detailedMessage(t), t instanceof VersionConflictEngineException));
+            }
+        }
+        if (indexRequests.isEmpty()) {
+            bulkUpdate.respond();
+            return;
+        }
+
+        BulkShardRequest bulkShardRequest = BulkShardRequests.create(bulkUpdate.shardId, indexRequests);
+        bulkShardRequest.timeout(bulkUpdate.request.timeout());
+        bulkShardRequest.operationThreaded(bulkUpdate.operationThreaded);
+        shardBulkAction.execute(bulkShardRequest, new ActionListener<BulkShardResponse>() {
+            @Override
+            public void onResponse(BulkShardResponse bulkShardResponse) {
+                final List<Integer> conflictingLocations = new ArrayList<>();
+                for (BulkItemResponse itemResponse : bulkShardResponse.getResponses()) {
+                    int location = preparedLocations.get(itemResponse.getItemId());
+                    if (!itemResponse.isFailed()) {
+                        bulkUpdate.updated++;
+                        continue;
+                    }
+                    boolean versionConflict = itemResponse.getFailure().getStatus() == RestStatus.CONFLICT;
+                    if (versionConflict && retryCount < bulkUpdate.request.retryOnConflict()) {
+                        conflictingLocations.add(location);
+                    } else {
+                        bulkUpdate.failures.add(new ShardBulkUpdateResponse.Failure(
+                                location, itemResponse.getId(), itemResponse.getFailureMessage(), versionConflict));
+                    }
+                }
+                if (conflictingLocations.isEmpty()) {
+                    bulkUpdate.respond();
+                    return;
+                }
+                try {
+                    threadPool.executor(executor()).execute(new ActionRunnable<ShardBulkUpdateResponse>(bulkUpdate.listener) {
+                        @Override
+                        protected void doRun() {
+                            update(bulkUpdate, conflictingLocations, retryCount + 1);
+                        }
+                    });
+                } catch (EsRejectedExecutionException e) {
+                    logger.debug("Can not retry conflicting updates, execution rejected");
+                    for (Integer location : conflictingLocations) {
+                        bulkUpdate.failures.add(new ShardBulkUpdateResponse.Failure(
+                                location, bulkUpdate.request.ids().get(location), ExceptionsHelper.detailedMessage(e), true));
+                    }
+                    bulkUpdate.respond();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                bulkUpdate.listener.onFailure(e);
+            }
+        });
+    }
+
+    private IndexRequest prepare(BulkUpdate bulkUpdate, int location, String id) {
+        ShardUpdateRequest updateRequest = new ShardUpdateRequest(bulkUpdate.shardId.getIndex(), id)
+                .shardId(bulkUpdate.shardId.id())
+                .version(bulkUpdate.request.version())
+                .assignments(bulkUpdate.request.assignments());
+        try {
+            return shardUpdateAction.prepare(updateRequest, bulkUpdate.indexShard);
+        } catch (DocumentMissingException e) {
+            List<BytesReference> upsertSources = bulkUpdate.request.upsertSources();
+            if (upsertSources == null) {
+                throw e;
+            }
+            return new IndexRequest(bulkUpdate.shardId.getIndex(), Constants.DEFAULT_MAPPING_TYPE, id)
+                    .routing(bulkUpdate.request.routings().get(location))
+                    .source(upsertSources.get(location), false)
+                    .create(true);
+        }
+    }
+
+    /**
+     * state of a bulk update which is carried over to the retries of conflicting documents
+     */
+    private static class BulkUpdate {
+
+        final ShardBulkUpdateRequest request;
+        final ShardId shardId;
+        final IndexShard indexShard;
+        final ActionListener<ShardBulkUpdateResponse> listener;
+        final boolean operationThreaded;
+        final List<ShardBulkUpdateResponse.Failure> failures = new ArrayList<>();
+        long updated = 0;
+
+        BulkUpdate(ShardBulkUpdateRequest request,
+                   ShardId shardId,
+                   IndexShard indexShard,
+                   ActionListener<ShardBulkUpdateResponse> listener,
+                   boolean operationThreaded) {
+            this.request = request;
+            this.shardId = shardId;
+            this.indexShard = indexShard;
+            this.listener = listener;
+            this.operationThreaded = operationThreaded;
+        }
+
+        void respond() {
+            listener.onResponse(new ShardBulkUpdateResponse(updated, ImmutableList.copyOf(failures)));
+        }
+    }
+}
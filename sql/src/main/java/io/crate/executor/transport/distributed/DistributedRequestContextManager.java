@@ -31,8 +31,10 @@ import io.crate.executor.transport.merge.NodeMergeResponse;
 import io.crate.metadata.Functions;
 import io.crate.operation.DownstreamOperationFactory;
 import io.crate.operation.collect.StatsTables;
+import io.crate.operation.join.HashJoinMergeOperation;
 import io.crate.planner.node.PlanNodeStreamerVisitor;
 import io.crate.planner.node.dql.MergeNode;
+import io.crate.planner.node.dql.join.HashJoinMergeNode;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -45,6 +47,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -56,10 +59,15 @@ import java.util.*;
  *
  * in case of this race condition the rows that are sent from the collector cannot be de-serialized immediately
  * so they are placed into a memoryStream and later read.
+ * Rows of requests that were handed over from the local node without serialization are kept as they are
+ * until the context is initialized.
  *
  * this class is also responsible for this lazy-de-serialization.
  *
  * the merge itself is done inside {@link DownstreamOperationContext}
+ *
+ * A {@link HashJoinMergeNode} receives the rows of two relations, so two contexts are created for it,
+ * one for the contextId of each relation.
  */
 public class DistributedRequestContextManager {
 
@@ -67,9 +75,11 @@ public class DistributedRequestContextManager {
 
     private final Map<UUID, DownstreamOperationContext> activeMergeOperations = new HashMap<>();
     private final Map<UUID, List<BytesReference>> unreadStreams = new HashMap<>();
+    private final Map<UUID, List<Object[][]>> unreadRows = new HashMap<>();
     private final Set<UUID> unreadFailures = new HashSet<>();
     private final Object lock = new Object();
     private final DownstreamOperationFactory downstreamOperationFactory;
+    private final JoinOperationFactory joinOperationFactory;
     private final PlanNodeStreamerVisitor planNodeStreamerVisitor;
     private final StatsTables statsTables;
     private final CircuitBreaker circuitBreaker;
@@ -78,7 +88,16 @@ public class DistributedRequestContextManager {
                                             Functions functions,
                                             StatsTables statsTables,
                                             CircuitBreaker circuitBreaker) {
+        this(downstreamOperationFactory, null, functions, statsTables, circuitBreaker);
+    }
+
+    public DistributedRequestContextManager(DownstreamOperationFactory downstreamOperationFactory,
+                                            @Nullable JoinOperationFactory joinOperationFactory,
+                                            Functions functions,
+                                            StatsTables statsTables,
+                                            CircuitBreaker circuitBreaker) {
         this.downstreamOperationFactory = downstreamOperationFactory;
+        this.joinOperationFactory = joinOperationFactory;
         this.statsTables = statsTables;
         this.circuitBreaker = circuitBreaker;
         this.planNodeStreamerVisitor = new PlanNodeStreamerVisitor(functions);
@@ -101,6 +120,11 @@ public class DistributedRequestContextManager {
         statsTables.operationStarted(operationId, mergeNode.contextId(), mergeNode.id());
         PlanNodeStreamerVisitor.Context streamerContext = planNodeStreamerVisitor.process(mergeNode, ramAccountingContext);
         SettableFuture<Object[][]> settableFuture = wrapActionListener(streamerContext.outputStreamers(), listener);
+        if (mergeNode instanceof HashJoinMergeNode) {
+            createJoinContexts((HashJoinMergeNode) mergeNode, streamerContext.inputStreamers(),
+                    settableFuture, operationId, ramAccountingContext);
+            return;
+        }
         DownstreamOperationContext downstreamOperationContext = new DownstreamOperationContext(
                 downstreamOperationFactory.create(mergeNode, ramAccountingContext),
                 settableFuture,
@@ -119,6 +143,52 @@ public class DistributedRequestContextManager {
         put(mergeNode.contextId(), downstreamOperationContext);
     }
 
+    private void createJoinContexts(final HashJoinMergeNode mergeNode,
+                                    Streamer<?>[] leftStreamers,
+                                    SettableFuture<Object[][]> settableFuture,
+                                    final UUID operationId,
+                                    final RamAccountingContext ramAccountingContext) {
+        assert joinOperationFactory != null : "joins are not supported by this context manager";
+        HashJoinMergeOperation operation = joinOperationFactory.create(mergeNode, ramAccountingContext);
+
+        Streamer<?>[] rightStreamers = new Streamer<?>[mergeNode.rightInputTypes().size()];
+        for (int i = 0; i < rightStreamers.length; i++) {
+            rightStreamers[i] = mergeNode.rightInputTypes().get(i).streamer();
+        }
+        // both contexts share the listener, the first failure of any relation fails the join
+        final AtomicInteger openContexts = new AtomicInteger(2);
+        DownstreamOperationContext leftContext = new DownstreamOperationContext(
+                operation.left(),
+                settableFuture,
+                leftStreamers,
+                joinDoneCallback(mergeNode.contextId(), openContexts, operationId, ramAccountingContext)
+        );
+        DownstreamOperationContext rightContext = new DownstreamOperationContext(
+                operation.right(),
+                settableFuture,
+                rightStreamers,
+                joinDoneCallback(mergeNode.rightContextId(), openContexts, operationId, ramAccountingContext)
+        );
+        put(mergeNode.contextId(), leftContext);
+        put(mergeNode.rightContextId(), rightContext);
+    }
+
+    private DoneCallback joinDoneCallback(final UUID contextId,
+                                          final AtomicInteger openContexts,
+                                          final UUID operationId,
+                                          final RamAccountingContext ramAccountingContext) {
+        return new DoneCallback() {
+            @Override
+            public void finished() {
+                logger.trace("DoneCallback.finished: {}", contextId);
+                activeMergeOperations.remove(contextId);
+                if (openContexts.decrementAndGet() == 0) {
+                    statsTables.operationFinished(operationId, null, ramAccountingContext.totalBytes());
+                    ramAccountingContext.close();
+                }
+            }
+        };
+    }
 
     /**
      * use to retrieve the streamers to read the incoming rows
@@ -140,7 +210,26 @@ public class DistributedRequestContextManager {
         DownstreamOperationContext operationContext;
         if (request.rowsRead()) {
             operationContext = activeMergeOperations.get(request.contextId());
-            assert operationContext != null;
+            if (operationContext == null) {
+                // request from the local node which didn't pass the streamer lookup of readFrom
+                synchronized (lock) {
+                    operationContext = activeMergeOperations.get(request.contextId());
+                    if (operationContext == null) {
+                        logger.trace("addToContext: without context rowsRead failure: {}", request.failure());
+                        if (request.failure()) {
+                            unreadFailures.add(request.contextId());
+                        } else {
+                            List<Object[][]> rows = unreadRows.get(request.contextId());
+                            if (rows == null) {
+                                rows = new ArrayList<>();
+                                unreadRows.put(request.contextId(), rows);
+                            }
+                            rows.add(request.rows());
+                        }
+                        return;
+                    }
+                }
+            }
             logger.trace("addToContext rowsRead: {}", operationContext);
             if (request.failure()) {
                 operationContext.addFailure(null);
@@ -201,10 +290,12 @@ public class DistributedRequestContextManager {
 
     private void put(UUID contextId, DownstreamOperationContext downstreamOperationContext) {
         List<BytesReference> bytesReferences;
+        List<Object[][]> rows;
         synchronized (lock) {
             logger.trace("put: {} {}", contextId, downstreamOperationContext);
             activeMergeOperations.put(contextId, downstreamOperationContext);
             bytesReferences = unreadStreams.remove(contextId);
+            rows = unreadRows.remove(contextId);
             if (unreadFailures.contains(contextId)) {
                 unreadFailures.remove(contextId);
                 downstreamOperationContext.addFailure(null);
@@ -215,6 +306,11 @@ public class DistributedRequestContextManager {
                 addFromBytesReference(bytes, downstreamOperationContext);
             }
         }
+        if (rows != null) {
+            for (Object[][] rowsOfRequest : rows) {
+                downstreamOperationContext.add(rowsOfRequest);
+            }
+        }
     }
 
     private void addFromBytesReference(BytesReference bytesReference, DownstreamOperationContext ctx) {
@@ -248,4 +344,8 @@ public class DistributedRequestContextManager {
     public interface DoneCallback {
         public void finished();
     }
+
+    public interface JoinOperationFactory {
+        public HashJoinMergeOperation create(HashJoinMergeNode node, RamAccountingContext ramAccountingContext);
+    }
 }
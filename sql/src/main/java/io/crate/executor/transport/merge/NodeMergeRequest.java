@@ -22,6 +22,7 @@
 package io.crate.executor.transport.merge;
 
 import io.crate.planner.node.dql.MergeNode;
+import io.crate.planner.node.dql.join.HashJoinMergeNode;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.transport.TransportRequest;
@@ -46,13 +47,18 @@ public class NodeMergeRequest extends TransportRequest {
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
-        mergeNode = new MergeNode();
+        if (in.readBoolean()) {
+            mergeNode = new HashJoinMergeNode();
+        } else {
+            mergeNode = new MergeNode();
+        }
         mergeNode.readFrom(in);
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
+        out.writeBoolean(mergeNode instanceof HashJoinMergeNode);
         mergeNode.writeTo(out);
     }
 }
@@ -36,10 +36,12 @@ import io.crate.operation.DownstreamOperation;
 import io.crate.operation.DownstreamOperationFactory;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.collect.StatsTables;
+import io.crate.operation.join.HashJoinMergeOperation;
 import io.crate.operation.merge.MergeOperation;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.PlanNodeStreamerVisitor;
 import io.crate.planner.node.dql.MergeNode;
+import io.crate.planner.node.dql.join.HashJoinMergeNode;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.node.DiscoveryNode;
@@ -48,6 +50,8 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.*;
 
@@ -75,7 +79,8 @@ public class TransportMergeNodeAction {
                                     Functions functions,
                                     final ThreadPool threadPool,
                                     StatsTables statsTables,
-                                    CrateCircuitBreakerService breakerService) {
+                                    CrateCircuitBreakerService breakerService,
+                                    final BigArrays bigArrays) {
         this.transportService = transportService;
         this.clusterService = clusterService;
         this.threadPool = threadPool;
@@ -91,6 +96,7 @@ public class TransportMergeNodeAction {
             public DownstreamOperation create(MergeNode node, RamAccountingContext ramAccountingContext) {
                 return new MergeOperation(
                         clusterService,
+                        threadPool,
                         settings,
                         transportActionProvider,
                         implementationSymbolVisitor,
@@ -98,6 +104,21 @@ public class TransportMergeNodeAction {
                         ramAccountingContext
                 );
             }
+        }, new DistributedRequestContextManager.JoinOperationFactory() {
+            @Override
+            public HashJoinMergeOperation create(HashJoinMergeNode node, RamAccountingContext ramAccountingContext) {
+                return new HashJoinMergeOperation(
+                        clusterService,
+                        threadPool,
+                        settings,
+                        transportActionProvider,
+                        implementationSymbolVisitor,
+                        node,
+                        ramAccountingContext,
+                        circuitBreaker,
+                        bigArrays
+                );
+            }
         }, functions, statsTables, circuitBreaker);
 
         transportService.registerHandler(startMergeAction, new StartMergeHandler());
@@ -131,6 +152,26 @@ public class TransportMergeNodeAction {
         }
 
         public void start() {
+            if (node.id().equals(clusterService.state().nodes().localNodeId())) {
+                // hand over the rows directly, no need to serialize them
+                try {
+                    threadPool.executor(executorName()).execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                contextManager.addToContext(request);
+                            } catch (Throwable e) {
+                                listener.onFailure(e);
+                                return;
+                            }
+                            listener.onResponse(new DistributedResultResponse());
+                        }
+                    });
+                } catch (EsRejectedExecutionException e) {
+                    listener.onFailure(e);
+                }
+                return;
+            }
             transportService.sendRequest(
                     node,
                     mergeRowsAction,
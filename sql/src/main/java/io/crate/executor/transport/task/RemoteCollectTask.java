@@ -83,6 +83,11 @@ public class RemoteCollectTask extends JobTask {
         }
     }
 
+    @Override
+    public boolean tracksOperations() {
+        return true;
+    }
+
     @Override
     public void start() {
         NodeCollectRequest request = new NodeCollectRequest(collectNode);
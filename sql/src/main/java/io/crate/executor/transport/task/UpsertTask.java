@@ -0,0 +1,309 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport.task;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.crate.Constants;
+import io.crate.exceptions.Exceptions;
+import io.crate.exceptions.UnhandledServerException;
+import io.crate.executor.JobTask;
+import io.crate.executor.RowCountResult;
+import io.crate.executor.TaskResult;
+import io.crate.executor.transport.ShardBulkUpdateRequest;
+import io.crate.executor.transport.ShardBulkUpdateResponse;
+import io.crate.executor.transport.TransportShardBulkUpdateAction;
+import io.crate.planner.node.dml.ESIndexNode;
+import io.crate.planner.symbol.Symbol;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.admin.indices.create.TransportCreateIndexAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executes <code>INSERT ... ON DUPLICATE KEY UPDATE</code>.
+ *
+ * The rows are grouped by shard and assignments, each group is sent as one
+ * {@link io.crate.executor.transport.ShardBulkUpdateRequest} which inserts the rows whose
+ * documents don't exist and updates the others on the primary shard.
+ * Missing partitions are created before.
+ *
+ * Like {@link io.crate.executor.transport.task.elasticsearch.ESBulkIndexTask} a bulk request
+ * results in a row count per row, which is an error for rows whose request failed.
+ * A single statement fails if any of its rows failed, if other rows have been written
+ * the error says how many.
+ */
+public class UpsertTask extends JobTask {
+
+    private final ClusterService clusterService;
+    private final TransportCreateIndexAction transportCreateIndexAction;
+    private final TransportShardBulkUpdateAction transportShardBulkUpdateAction;
+    private final ESIndexNode node;
+    private final List<ListenableFuture<TaskResult>> resultList;
+
+    /**
+     * true for every row that has been inserted or updated
+     */
+    private final BitSet succeeded;
+    /**
+     * the failure of the request of every row whose request failed as a whole
+     */
+    private final Throwable[] requestFailures;
+    private final AtomicReference<Throwable> lastFailure = new AtomicReference<>();
+    private final AtomicInteger pendingRequests = new AtomicInteger(0);
+
+    public UpsertTask(UUID jobId,
+                      ClusterService clusterService,
+                      TransportCreateIndexAction transportCreateIndexAction,
+                      TransportShardBulkUpdateAction transportShardBulkUpdateAction,
+                      ESIndexNode node) {
+        super(jobId);
+        this.clusterService = clusterService;
+        this.transportCreateIndexAction = transportCreateIndexAction;
+        this.transportShardBulkUpdateAction = transportShardBulkUpdateAction;
+        this.node = node;
+        int numResults = node.isBulkRequest() ? node.sourceMaps().size() : 1;
+        resultList = new ArrayList<>(numResults);
+        for (int i = 0; i < numResults; i++) {
+            resultList.add(SettableFuture.<TaskResult>create());
+        }
+        succeeded = new BitSet(node.sourceMaps().size());
+        requestFailures = new Throwable[node.sourceMaps().size()];
+    }
+
+    @Override
+    public void start() {
+        Set<String> missingIndices = missingIndices();
+        if (missingIndices.isEmpty()) {
+            upsert();
+            return;
+        }
+        final AtomicInteger pendingIndices = new AtomicInteger(missingIndices.size());
+        for (String index : missingIndices) {
+            transportCreateIndexAction.execute(new CreateIndexRequest(index).cause("upsert"),
+                    new ActionListener<CreateIndexResponse>() {
+                        @Override
+                        public void onResponse(CreateIndexResponse createIndexResponse) {
+                            if (pendingIndices.decrementAndGet() == 0) {
+                                upsert();
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            e = Exceptions.unwrap(e);
+                            if (!(e instanceof IndexAlreadyExistsException)) {
+                                lastFailure.set(e);
+                            }
+                            if (pendingIndices.decrementAndGet() == 0) {
+                                upsert();
+                            }
+                        }
+                    });
+        }
+    }
+
+    private Set<String> missingIndices() {
+        if (!node.partitionedTable()) {
+            return Collections.emptySet();
+        }
+        ClusterState state = clusterService.state();
+        Set<String> missingIndices = new HashSet<>();
+        for (String index : node.indices()) {
+            if (!state.metaData().hasConcreteIndex(index)) {
+                missingIndices.add(index);
+            }
+        }
+        return missingIndices;
+    }
+
+    private void upsert() {
+        Throwable failure = lastFailure.get();
+        if (failure != null) {
+            failAll(failure);
+            return;
+        }
+        Collection<Batch> batches;
+        try {
+            batches = batches();
+        } catch (Throwable e) {
+            lastFailure.set(e);
+            failAll(e);
+            return;
+        }
+        pendingRequests.set(batches.size());
+        for (final Batch batch : batches) {
+            ShardBulkUpdateRequest request = new ShardBulkUpdateRequest(batch.shardId, batch.ids, batch.assignments)
+                    .upsert(batch.sources, batch.routings);
+            transportShardBulkUpdateAction.execute(request, new ActionListener<ShardBulkUpdateResponse>() {
+                @Override
+                public void onResponse(ShardBulkUpdateResponse response) {
+                    BitSet failed = new BitSet(batch.rows.size());
+                    for (ShardBulkUpdateResponse.Failure failure : response.failures()) {
+                        failed.set(failure.location());
+                        lastFailure.set(new UnhandledServerException(failure.message()));
+                    }
+                    synchronized (succeeded) {
+                        for (int i = 0; i < batch.rows.size(); i++) {
+                            if (!failed.get(i)) {
+                                succeeded.set(batch.rows.get(i));
+                            }
+                        }
+                    }
+                    onBatchDone();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    e = Exceptions.unwrap(e);
+                    lastFailure.set(e);
+                    synchronized (succeeded) {
+                        for (Integer row : batch.rows) {
+                            requestFailures[row] = e;
+                        }
+                    }
+                    onBatchDone();
+                }
+            });
+        }
+    }
+
+    /**
+     * groups the rows by shard and by assignments, which only differ for bulk requests
+     * if the assignments contain parameters
+     */
+    private Collection<Batch> batches() {
+        ClusterState state = clusterService.state();
+        Map<ShardId, Map<Map<String, Symbol>, Batch>> batchesByShard = new HashMap<>();
+        List<Batch> batches = new ArrayList<>();
+        List<String> routingValues = node.routingValues();
+        for (int row = 0; row < node.sourceMaps().size(); row++) {
+            String index = node.indices().length == 1 ? node.indices()[0] : node.indices()[row];
+            String id = node.ids().get(row);
+            String routing = routingValues == null ? null : routingValues.get(row);
+            ShardId shardId = clusterService.operationRouting().indexShards(
+                    state, index, Constants.DEFAULT_MAPPING_TYPE, id, routing).shardId();
+            Map<Map<String, Symbol>, Batch> shardBatches = batchesByShard.get(shardId);
+            if (shardBatches == null) {
+                shardBatches = new HashMap<>();
+                batchesByShard.put(shardId, shardBatches);
+            }
+            Map<String, Symbol> assignments = node.onDuplicateKeyAssignments().get(row);
+            Batch batch = shardBatches.get(assignments);
+            if (batch == null) {
+                batch = new Batch(shardId, assignments);
+                shardBatches.put(assignments, batch);
+                batches.add(batch);
+            }
+            batch.add(row, id, node.sourceMaps().get(row), routing);
+        }
+        return batches;
+    }
+
+    private void failAll(Throwable failure) {
+        synchronized (succeeded) {
+            Arrays.fill(requestFailures, failure);
+        }
+        setResult();
+    }
+
+    private void onBatchDone() {
+        if (pendingRequests.decrementAndGet() == 0) {
+            setResult();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setResult() {
+        Throwable failure = lastFailure.get();
+        synchronized (succeeded) {
+            if (node.isBulkRequest()) {
+                for (int i = 0; i < resultList.size(); i++) {
+                    TaskResult rowResult;
+                    if (succeeded.get(i)) {
+                        rowResult = TaskResult.ONE_ROW;
+                    } else if (requestFailures[i] != null) {
+                        rowResult = RowCountResult.error(requestFailures[i]);
+                    } else {
+                        rowResult = TaskResult.FAILURE;
+                    }
+                    ((SettableFuture<TaskResult>) resultList.get(i)).set(rowResult);
+                }
+                return;
+            }
+            SettableFuture<TaskResult> result = (SettableFuture<TaskResult>) resultList.get(0);
+            int numRows = node.sourceMaps().size();
+            int numSucceeded = succeeded.cardinality();
+            if (failure == null) {
+                result.set(new RowCountResult(numSucceeded));
+            } else if (numSucceeded == 0) {
+                result.setException(failure);
+            } else {
+                result.setException(new UnhandledServerException(String.format(Locale.ENGLISH,
+                        "%d of %d rows failed, the others have been inserted or updated: %s",
+                        numRows - numSucceeded, numRows, Exceptions.messageOf(failure))));
+            }
+        }
+    }
+
+    @Override
+    public List<ListenableFuture<TaskResult>> result() {
+        return resultList;
+    }
+
+    @Override
+    public void upstreamResult(List<ListenableFuture<TaskResult>> result) {
+        throw new UnsupportedOperationException("UpsertTask can't have an upstream result");
+    }
+
+    private static class Batch {
+
+        private final ShardId shardId;
+        private final Map<String, Symbol> assignments;
+        private final List<Integer> rows = new ArrayList<>();
+        private final List<String> ids = new ArrayList<>();
+        private final List<BytesReference> sources = new ArrayList<>();
+        private final List<String> routings = new ArrayList<>();
+
+        Batch(ShardId shardId, Map<String, Symbol> assignments) {
+            this.shardId = shardId;
+            this.assignments = assignments;
+        }
+
+        void add(int row, String id, BytesReference source, @Nullable String routing) {
+            rows.add(row);
+            ids.add(id);
+            sources.add(source);
+            routings.add(routing);
+        }
+    }
+}
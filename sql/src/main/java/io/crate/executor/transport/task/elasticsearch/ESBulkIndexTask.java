@@ -34,6 +34,7 @@ import org.elasticsearch.action.bulk.BulkShardProcessor;
 import org.elasticsearch.action.bulk.TransportShardBulkActionDelegate;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -50,6 +51,7 @@ public class ESBulkIndexTask extends JobTask {
 
     public ESBulkIndexTask(UUID jobId,
                            ClusterService clusterService,
+                           ThreadPool threadPool,
                            Settings settings,
                            TransportShardBulkActionDelegate transportShardBulkActionDelegate,
                            TransportCreateIndexAction transportCreateIndexAction,
@@ -58,6 +60,7 @@ public class ESBulkIndexTask extends JobTask {
         this.node = node;
         this.bulkShardProcessor = new BulkShardProcessor(
                 clusterService,
+                threadPool,
                 settings,
                 transportShardBulkActionDelegate,
                 transportCreateIndexAction,
@@ -127,27 +130,31 @@ public class ESBulkIndexTask extends JobTask {
 
     @Override
     public void start() {
-        if (node.indices().length == 1) {
-            String index = node.indices()[0];
-            for(int i=0; i < this.node.sourceMaps().size(); i++){
-                bulkShardProcessor.add(
-                        index,
-                        node.sourceMaps().get(i),
-                        node.ids().get(i),
-                        node.routingValues().get(i)
-                );
-            }
-        } else {
-            for(int i=0; i < this.node.sourceMaps().size(); i++){
-                bulkShardProcessor.add(
-                        node.indices()[i],
-                        node.sourceMaps().get(i),
-                        node.ids().get(i),
-                        node.routingValues().get(i)
-                );
+        try {
+            if (node.indices().length == 1) {
+                String index = node.indices()[0];
+                for(int i=0; i < this.node.sourceMaps().size(); i++){
+                    bulkShardProcessor.add(
+                            index,
+                            node.sourceMaps().get(i),
+                            node.ids().get(i),
+                            node.routingValues().get(i)
+                    );
+                }
+            } else {
+                for(int i=0; i < this.node.sourceMaps().size(); i++){
+                    bulkShardProcessor.add(
+                            node.indices()[i],
+                            node.sourceMaps().get(i),
+                            node.ids().get(i),
+                            node.routingValues().get(i)
+                    );
+                }
             }
+        } finally {
+            // a failing add fails the result of the processor, which must be closed anyway
+            bulkShardProcessor.close();
         }
-        bulkShardProcessor.close();
     }
 
     @Override
@@ -22,6 +22,7 @@
 package io.crate.executor.transport.task.elasticsearch;
 
 import com.google.common.util.concurrent.SettableFuture;
+import io.crate.executor.ConcurrentTask;
 import io.crate.executor.TaskResult;
 import io.crate.executor.transport.task.AbstractChainedTask;
 import io.crate.planner.node.ddl.ESDeleteIndexNode;
@@ -34,7 +35,7 @@ import org.elasticsearch.action.support.IndicesOptions;
 import java.util.List;
 import java.util.UUID;
 
-public class ESDeleteIndexTask extends AbstractChainedTask {
+public class ESDeleteIndexTask extends AbstractChainedTask implements ConcurrentTask {
 
     private static final TaskResult RESULT = TaskResult.ONE_ROW;
     private static final TaskResult RESULT_PARTITION = TaskResult.ROW_COUNT_UNKNOWN;
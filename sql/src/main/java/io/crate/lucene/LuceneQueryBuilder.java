@@ -85,6 +85,11 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 public class LuceneQueryBuilder {
 
+    /**
+     * IN lists with more values are converted to a single terms filter instead of a boolean query
+     */
+    static final int IN_TERMS_FILTER_THRESHOLD = 64;
+
     private final Visitor visitor;
 
     public LuceneQueryBuilder(Functions functions, SearchContext searchContext, IndexCache indexCache) {
@@ -289,8 +294,11 @@ public class LuceneQueryBuilder {
                 Literal literal = tuple.v2();
                 CollectionType dataType = ((CollectionType) literal.valueType());
                 QueryBuilderHelper builder = QueryBuilderHelper.forType(dataType.innerType());
-                BooleanQuery booleanQuery = new BooleanQuery();
                 Set values = (Set) literal.value();
+                if (values.size() > IN_TERMS_FILTER_THRESHOLD) {
+                    return new ConstantScoreQuery(builder.termsFilter(field, values));
+                }
+                BooleanQuery booleanQuery = new BooleanQuery();
                 for (Object value : values) {
                     booleanQuery.add(builder.eq(field, value), BooleanClause.Occur.SHOULD);
                 }
@@ -4,10 +4,17 @@ import io.crate.types.CollectionType;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.TermsFilter;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.common.lucene.BytesRefs;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 public abstract class QueryBuilderHelper {
 
     private final static QueryBuilderHelper intQueryBuilder = new IntegerQueryBuilder();
@@ -59,6 +66,25 @@ public abstract class QueryBuilderHelper {
         return eq(columnName, value);
     }
 
+    /**
+     * @return the term the given value is indexed as
+     */
+    protected abstract BytesRef indexedTerm(Object value);
+
+    /**
+     * a filter matching all documents whose value equals any of the given values,
+     * evaluated as a single lookup of the sorted terms per segment.
+     */
+    public Filter termsFilter(String columnName, Collection<?> values) {
+        List<BytesRef> terms = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                terms.add(indexedTerm(value));
+            }
+        }
+        return new TermsFilter(columnName, terms);
+    }
+
     static final class BooleanQueryBuilder extends QueryBuilderHelper {
         @Override
         public Filter rangeFilter(String columnName, Object from, Object to, boolean includeLower, boolean includeUpper) {
@@ -74,6 +100,11 @@ public abstract class QueryBuilderHelper {
         public Query eq(String columnName, Object value) {
             return new TermQuery(new Term(columnName, value == true ? "T" : "F"));
         }
+
+        @Override
+        protected BytesRef indexedTerm(Object value) {
+            return new BytesRef(value == true ? "T" : "F");
+        }
     }
 
     static final class FloatQueryBuilder extends QueryBuilderHelper {
@@ -97,6 +128,13 @@ public abstract class QueryBuilderHelper {
         public Query rangeQuery(String columnName, Object from, Object to, boolean includeLower, boolean includeUpper) {
             return NumericRangeQuery.newFloatRange(columnName, toFloat(from), toFloat(to), includeLower, includeUpper);
         }
+
+        @Override
+        protected BytesRef indexedTerm(Object value) {
+            BytesRefBuilder builder = new BytesRefBuilder();
+            NumericUtils.intToPrefixCoded(NumericUtils.floatToSortableInt(toFloat(value)), 0, builder);
+            return builder.get();
+        }
     }
 
     static final class DoubleQueryBuilder extends QueryBuilderHelper {
@@ -120,6 +158,13 @@ public abstract class QueryBuilderHelper {
         public Query rangeQuery(String columnName, Object from, Object to, boolean includeLower, boolean includeUpper) {
             return NumericRangeQuery.newDoubleRange(columnName, toDouble(from), toDouble(to), includeLower, includeUpper);
         }
+
+        @Override
+        protected BytesRef indexedTerm(Object value) {
+            BytesRefBuilder builder = new BytesRefBuilder();
+            NumericUtils.longToPrefixCoded(NumericUtils.doubleToSortableLong(toDouble(value)), 0, builder);
+            return builder.get();
+        }
     }
 
     static final class LongQueryBuilder extends QueryBuilderHelper {
@@ -143,6 +188,13 @@ public abstract class QueryBuilderHelper {
         public Query rangeQuery(String columnName, Object from, Object to, boolean includeLower, boolean includeUpper) {
             return NumericRangeQuery.newLongRange(columnName, (Long)from, (Long)to, includeLower, includeUpper);
         }
+
+        @Override
+        protected BytesRef indexedTerm(Object value) {
+            BytesRefBuilder builder = new BytesRefBuilder();
+            NumericUtils.longToPrefixCoded(toLong(value), 0, builder);
+            return builder.get();
+        }
     }
 
     static final class IntegerQueryBuilder extends QueryBuilderHelper {
@@ -166,6 +218,13 @@ public abstract class QueryBuilderHelper {
         public Query rangeQuery(String columnName, Object from, Object to, boolean includeLower, boolean includeUpper) {
             return NumericRangeQuery.newIntRange(columnName, toInt(from), toInt(to), includeLower, includeUpper);
         }
+
+        @Override
+        protected BytesRef indexedTerm(Object value) {
+            BytesRefBuilder builder = new BytesRefBuilder();
+            NumericUtils.intToPrefixCoded(toInt(value), 0, builder);
+            return builder.get();
+        }
     }
 
     static final class StringQueryBuilder extends QueryBuilderHelper {
@@ -190,5 +249,10 @@ public abstract class QueryBuilderHelper {
             return new WildcardQuery(
                     new Term(columnName, LuceneQueryBuilder.convertWildcard(BytesRefs.toString(value))));
         }
+
+        @Override
+        protected BytesRef indexedTerm(Object value) {
+            return BytesRefs.toBytesRef(value);
+        }
     }
 }
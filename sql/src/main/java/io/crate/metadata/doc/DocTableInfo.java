@@ -31,6 +31,9 @@ import io.crate.metadata.*;
 import io.crate.metadata.table.AbstractDynamicTableInfo;
 import io.crate.metadata.table.ColumnPolicy;
 import io.crate.planner.RowGranularity;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import io.crate.types.ObjectStreamer;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
@@ -132,6 +135,35 @@ public class DocTableInfo extends AbstractDynamicTableInfo {
         return columns;
     }
 
+    /**
+     * Creates an {@link io.crate.types.ObjectStreamer} for the given object column
+     * using the child columns defined in the table's schema.
+     *
+     * @return the streamer or null if the column is no object column of this table
+     */
+    @Nullable
+    public ObjectStreamer objectStreamer(ColumnIdent columnIdent) {
+        ReferenceInfo info = references.get(columnIdent);
+        if (info == null || !info.type().equals(DataTypes.OBJECT)) {
+            return null;
+        }
+        Map<String, DataType> children = new HashMap<>();
+        Map<String, ObjectStreamer> innerStreamers = new HashMap<>();
+        for (Map.Entry<ColumnIdent, ReferenceInfo> entry : references.entrySet()) {
+            ColumnIdent childIdent = entry.getKey();
+            if (!columnIdent.equals(childIdent.getParent())) {
+                continue;
+            }
+            DataType childType = entry.getValue().type();
+            String childName = childIdent.path().get(childIdent.path().size() - 1);
+            children.put(childName, childType);
+            if (childType.equals(DataTypes.OBJECT)) {
+                innerStreamers.put(childName, objectStreamer(childIdent));
+            }
+        }
+        return new ObjectStreamer(children, innerStreamers);
+    }
+
     @Override
     public RowGranularity rowGranularity() {
         return RowGranularity.DOC;
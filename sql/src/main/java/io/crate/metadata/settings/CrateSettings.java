@@ -119,7 +119,7 @@ public class CrateSettings {
 
         @Override
         public List<Setting> children() {
-            return ImmutableList.<Setting>of(GRACEFUL_STOP, ROUTING, CLUSTER_INFO);
+            return ImmutableList.<Setting>of(GRACEFUL_STOP, ROUTING, CLUSTER_INFO, CLUSTER_JOIN_STRATEGY);
         }
     };
 
@@ -979,6 +979,21 @@ public class CrateSettings {
         }
     };
 
+    public static final StringSetting CLUSTER_JOIN_STRATEGY = new StringSetting(
+            Sets.newHashSet("auto", "handler", "broadcast", "shuffle")
+    ) {
+        @Override
+        public String name() { return "join_strategy"; }
+
+        @Override
+        public String defaultValue() { return "auto"; }
+
+        @Override
+        public Setting parent() {
+            return CLUSTER;
+        }
+    };
+
     public static final ImmutableList<Setting> CRATE_SETTINGS = ImmutableList.<Setting>of(STATS, CLUSTER, DISCOVERY, INDICES);
 
     public static final Map<String, SettingsApplier> SUPPORTED_SETTINGS = ImmutableMap.<String, SettingsApplier>builder()
@@ -1114,6 +1129,8 @@ public class CrateSettings {
                     new SettingsAppliers.ObjectSettingsApplier(CrateSettings.CLUSTER_INFO_UPDATE))
             .put(CrateSettings.CLUSTER_INFO_UPDATE_INTERVAL.settingName(),
                     new SettingsAppliers.TimeSettingsApplier(CrateSettings.CLUSTER_INFO_UPDATE_INTERVAL))
+            .put(CrateSettings.CLUSTER_JOIN_STRATEGY.settingName(),
+                    new SettingsAppliers.StringSettingsApplier(CrateSettings.CLUSTER_JOIN_STRATEGY))
             .build();
 
     @Nullable
@@ -302,6 +302,8 @@ public class SysClusterTableInfo extends SysTableInfo {
                 CrateSettings.CLUSTER_INFO.name(),
                 CrateSettings.CLUSTER_INFO_UPDATE.name(),
                 CrateSettings.CLUSTER_INFO_UPDATE_INTERVAL.name()));
+        register("settings", DataTypes.STRING, ImmutableList.of(CrateSettings.CLUSTER.name(),
+                CrateSettings.CLUSTER_JOIN_STRATEGY.name()));
     }
 
     @Inject
@@ -114,6 +114,12 @@ public class SysNodesTableInfo extends SysTableInfo {
         register("process", DataTypes.LONG, ImmutableList.of("open_file_descriptors"));
         register("process", DataTypes.LONG, ImmutableList.of("max_open_file_descriptors"));
 
+        register("template_cache", DataTypes.OBJECT, null);
+        register("template_cache", DataTypes.LONG, ImmutableList.of("size"));
+        register("template_cache", DataTypes.LONG, ImmutableList.of("hits"));
+        register("template_cache", DataTypes.LONG, ImmutableList.of("misses"));
+        register("template_cache", DataTypes.LONG, ImmutableList.of("evictions"));
+
         register("fs", DataTypes.OBJECT, null);
         register("fs", DataTypes.OBJECT, ImmutableList.of("total"));
         register("fs", DataTypes.LONG, ImmutableList.of("total", "size"));
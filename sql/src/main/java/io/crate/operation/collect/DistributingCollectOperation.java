@@ -23,6 +23,7 @@ package io.crate.operation.collect;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -41,6 +42,7 @@ import io.crate.metadata.ReferenceResolver;
 import io.crate.operation.projectors.ResultProvider;
 import io.crate.planner.node.PlanNodeStreamerVisitor;
 import io.crate.planner.node.dql.CollectNode;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
@@ -58,10 +60,7 @@ import org.elasticsearch.transport.TransportService;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 /**
  * handling distributing collect requests
@@ -76,8 +75,10 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
         private final ESLogger logger = Loggers.getLogger(getClass());
 
         private final TransportService transportService;
+        private final TransportMergeNodeAction transportMergeNodeAction;
         private final DistributedResultRequest[] requests;
         private final List<DiscoveryNode> downStreams;
+        private final CollectNode.Distribution distribution;
         private final int numDownStreams;
         private final UUID jobId;
 
@@ -86,14 +87,18 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
                                               int numShards,
                                               ResultProvider resultProvider,
                                               List<DiscoveryNode> downStreams,
+                                              CollectNode.Distribution distribution,
                                               TransportService transportService,
+                                              TransportMergeNodeAction transportMergeNodeAction,
                                               Streamer<?>[] streamers) {
             super(numShards, resultProvider);
             Preconditions.checkNotNull(downStreams, "downstream nodes is null");
             Preconditions.checkNotNull(jobId, "jobId is null");
             this.jobId = jobId;
             this.transportService = transportService;
+            this.transportMergeNodeAction = transportMergeNodeAction;
             this.downStreams = downStreams;
+            this.distribution = distribution;
             this.numDownStreams = this.downStreams.size();
 
             this.requests = new DistributedResultRequest[numDownStreams];
@@ -112,14 +117,16 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
             }
             super.set(TaskResult.EMPTY_RESULT.rows());
 
-            BucketingIterator bucketingIterator = new ModuloBucketingIterator(
-                    this.numDownStreams,
-                    resultProvider
+            Iterable<List<Object[]>> buckets = buckets(
+                    distribution,
+                    resultProvider,
+                    downStreams,
+                    transportService.localNode().id()
             );
 
             // send requests
             int i = 0;
-            for (List<Object[]> bucket : bucketingIterator) {
+            for (List<Object[]> bucket : buckets) {
                 DistributedResultRequest request = this.requests[i];
                 request.rows(bucket.toArray(new Object[bucket.size()][]));
                 final DiscoveryNode node = downStreams.get(i);
@@ -143,6 +150,29 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
         }
 
         private void sendRequest(final DistributedResultRequest request, final DiscoveryNode node) {
+            if (node.id().equals(transportService.localNode().id())) {
+                transportMergeNodeAction.mergeRows(node.id(), request, new ActionListener<DistributedResultResponse>() {
+                    @Override
+                    public void onResponse(DistributedResultResponse response) {
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("[{}] successfully handed over distributing collect request to local node",
+                                    jobId.toString());
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable e) {
+                        if (e instanceof EsRejectedExecutionException) {
+                            sendFailure(request.contextId(), node);
+                        } else {
+                            logger.error("[{}] Exception handing over distributing collect request to local node",
+                                    e, jobId);
+                            setException(e);
+                        }
+                    }
+                });
+                return;
+            }
             transportService.submitRequest(
                 node,
                 TransportMergeNodeAction.mergeRowsAction, // NOTICE: hard coded transport action, should be delivered by collectNode
@@ -213,6 +243,39 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
         }
     }
 
+    /**
+     * splits the rows into one bucket per downstream node, as defined by the distribution of the collect node
+     */
+    static Iterable<List<Object[]>> buckets(CollectNode.Distribution distribution,
+                                            Iterable<Object[]> rows,
+                                            List<DiscoveryNode> downStreams,
+                                            String localNodeId) {
+        switch (distribution) {
+            case MODULO:
+                return new ModuloBucketingIterator(downStreams.size(), rows);
+            case BROADCAST:
+                return Collections.nCopies(downStreams.size(), (List<Object[]>) Lists.newArrayList(rows));
+            case SAME_NODE:
+                List<List<Object[]>> buckets = new ArrayList<>(downStreams.size());
+                boolean isDownStream = false;
+                for (DiscoveryNode downStream : downStreams) {
+                    if (downStream.id().equals(localNodeId)) {
+                        buckets.add(Lists.newArrayList(rows));
+                        isDownStream = true;
+                    } else {
+                        buckets.add(ImmutableList.<Object[]>of());
+                    }
+                }
+                if (!isDownStream) {
+                    throw new IllegalStateException(String.format(Locale.ENGLISH,
+                            "collecting node %s is not a downstream node", localNodeId));
+                }
+                return buckets;
+            default:
+                throw new IllegalArgumentException("unsupported distribution " + distribution);
+        }
+    }
+
     private static List<DistributedResultRequest> genRequests(UUID jobId, int size, Streamer<?>[] streamers) {
         List<DistributedResultRequest> requests = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
@@ -222,6 +285,7 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
     }
 
     private final TransportService transportService;
+    private final TransportActionProvider transportActionProvider;
     private final PlanNodeStreamerVisitor streamerVisitor;
     private final CircuitBreaker circuitBreaker;
 
@@ -241,6 +305,7 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
                 functions, referenceResolver, indicesService,
                 threadPool, collectServiceResolver);
         this.transportService = transportService;
+        this.transportActionProvider = transportActionProvider;
         this.streamerVisitor = streamerVisitor;
         this.circuitBreaker = breakerService.getBreaker(CrateCircuitBreakerService.QUERY_BREAKER);
     }
@@ -257,23 +322,24 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
                 downStreams.size(),
                 streamerVisitor.process(collectNode, ramAccountingContext).outputStreamers()
         );
-        sendRequestsOnFinish(future, downStreams, requests);
+        sendRequestsOnFinish(future, collectNode.distribution(), downStreams, requests);
         return future;
     }
 
     private void sendRequestsOnFinish(
             ListenableFuture<Object[][]> future,
+            final CollectNode.Distribution distribution,
             final List<DiscoveryNode> downStreams,
             final List<DistributedResultRequest> requests) {
         Futures.addCallback(future, new FutureCallback<Object[][]>() {
             @Override
             public void onSuccess(@Nullable Object[][] result) {
                 assert result != null;
-                BucketingIterator bucketingIterator = new ModuloBucketingIterator(
-                        downStreams.size(), Arrays.asList(result));
+                Iterable<List<Object[]>> buckets = buckets(
+                        distribution, Arrays.asList(result), downStreams, clusterService.localNode().id());
 
                 int i = 0;
-                for (List<Object[]> bucket : bucketingIterator) {
+                for (List<Object[]> bucket : buckets) {
                     DistributedResultRequest request = requests.get(i);
                     request.rows(bucket.toArray(new Object[bucket.size()][]));
                     sendRequest(request, downStreams.get(i));
@@ -294,6 +360,20 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
     }
 
     private void sendRequest(DistributedResultRequest request, DiscoveryNode discoveryNode) {
+        if (discoveryNode.id().equals(clusterService.localNode().id())) {
+            transportActionProvider.transportMergeNodeAction().mergeRows(
+                    discoveryNode.id(), request, new ActionListener<DistributedResultResponse>() {
+                        @Override
+                        public void onResponse(DistributedResultResponse response) {
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            logger.error(e.getMessage(), e);
+                        }
+                    });
+            return;
+        }
         transportService.sendRequest(
                 discoveryNode,
                 TransportMergeNodeAction.mergeRowsAction,
@@ -351,7 +431,9 @@ public class DistributingCollectOperation extends MapSideDataCollectOperation {
                 numShards,
                 projectorChain,
                 toDiscoveryNodes(collectNode.downStreamNodes()),
+                collectNode.distribution(),
                 transportService,
+                transportActionProvider.transportMergeNodeAction(),
                 streamers
         );
     }
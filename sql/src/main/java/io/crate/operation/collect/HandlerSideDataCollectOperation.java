@@ -38,6 +38,7 @@ import io.crate.planner.node.dql.CollectNode;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.util.List;
 import java.util.Set;
@@ -52,6 +53,7 @@ public class HandlerSideDataCollectOperation implements CollectOperation<Object[
 
     @Inject
     public HandlerSideDataCollectOperation(ClusterService clusterService,
+                                           ThreadPool threadPool,
                                            Settings settings,
                                            TransportActionProvider transportActionProvider,
                                            Functions functions,
@@ -63,7 +65,7 @@ public class HandlerSideDataCollectOperation implements CollectOperation<Object[
         this.clusterNormalizer = new EvaluatingNormalizer(functions, RowGranularity.CLUSTER, referenceResolver);
         this.implementationVisitor = new ImplementationSymbolVisitor(referenceResolver, functions, RowGranularity.CLUSTER);
         this.projectorVisitor = new ProjectionToProjectorVisitor(
-                clusterService, settings,
+                clusterService, threadPool, settings,
                 transportActionProvider,
                 implementationVisitor, clusterNormalizer);
     }
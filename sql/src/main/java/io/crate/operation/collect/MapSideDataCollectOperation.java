@@ -35,6 +35,8 @@ import io.crate.executor.transport.TransportActionProvider;
 import io.crate.metadata.Functions;
 import io.crate.metadata.ReferenceResolver;
 import io.crate.operation.ImplementationSymbolVisitor;
+import io.crate.operation.collect.files.Checkpoints;
+import io.crate.operation.collect.files.ClusterSettingsCheckpoints;
 import io.crate.operation.collect.files.FileCollectInputSymbolVisitor;
 import io.crate.operation.collect.files.FileInputFactory;
 import io.crate.operation.collect.files.FileReadingCollector;
@@ -44,6 +46,8 @@ import io.crate.operation.reference.file.FileLineReferenceResolver;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.FileUriCollectNode;
+import io.crate.planner.projection.AbstractIndexWriterProjection;
+import io.crate.planner.projection.Projection;
 import io.crate.planner.symbol.StringValueSymbolVisitor;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Inject;
@@ -51,6 +55,7 @@ import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.IndexShardMissingException;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.indices.IndexMissingException;
@@ -60,6 +65,7 @@ import org.elasticsearch.threadpool.ThreadPool;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -72,7 +78,11 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
     private final CollectServiceResolver collectServiceResolver;
     private final ProjectionToProjectorVisitor projectorVisitor;
     private final ThreadPoolExecutor executor;
+    private final Executor fileFetchExecutor;
+    private final ThreadPool threadPool;
     private final int poolSize;
+    private final int numFileParsers;
+    private final TransportActionProvider transportActionProvider;
     private ESLogger logger = Loggers.getLogger(getClass());
 
     private static class SimpleShardCollectFuture extends ShardCollectFuture {
@@ -113,7 +123,11 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
                                        CollectServiceResolver collectServiceResolver) {
         executor = (ThreadPoolExecutor) threadPool.executor(ThreadPool.Names.SEARCH);
         poolSize = executor.getPoolSize();
+        fileFetchExecutor = threadPool.executor(ThreadPool.Names.GENERIC);
+        this.threadPool = threadPool;
+        numFileParsers = EsExecutors.boundedNumberOfProcessors(settings);
         this.clusterService = clusterService;
+        this.transportActionProvider = transportActionProvider;
         this.indicesService = indicesService;
         this.nodeNormalizer = new EvaluatingNormalizer(functions, RowGranularity.NODE, referenceResolver);
         this.collectServiceResolver = collectServiceResolver;
@@ -126,6 +140,7 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
                 new FileCollectInputSymbolVisitor(functions, FileLineReferenceResolver.INSTANCE);
         this.projectorVisitor = new ProjectionToProjectorVisitor(
                 clusterService,
+                threadPool,
                 settings,
                 transportActionProvider,
                 nodeImplementationSymbolVisitor
@@ -195,23 +210,33 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
     private CrateCollector getCollector(CollectNode collectNode,
                                         FlatProjectorChain projectorChain) throws Exception {
         if (collectNode instanceof FileUriCollectNode) {
-            FileCollectInputSymbolVisitor.Context context = fileInputSymbolVisitor.process(collectNode);
+            // every parser needs its own expressions, the lines are parsed concurrently
+            List<FileCollectInputSymbolVisitor.Context> parserContexts = new ArrayList<>(numFileParsers);
+            for (int i = 0; i < numFileParsers; i++) {
+                parserContexts.add(fileInputSymbolVisitor.process(collectNode));
+            }
             FileUriCollectNode fileUriCollectNode = (FileUriCollectNode) collectNode;
 
             String[] readers = fileUriCollectNode.executionNodes().toArray(
                     new String[fileUriCollectNode.executionNodes().size()]);
             Arrays.sort(readers);
+            String fileUri = StringValueSymbolVisitor.INSTANCE.process(fileUriCollectNode.targetUri());
             return new FileReadingCollector(
-                    StringValueSymbolVisitor.INSTANCE.process(fileUriCollectNode.targetUri()),
-                    context.topLevelInputs(),
-                    context.expressions(),
+                    fileUri,
+                    parserContexts,
+                    threadPool.executor(FileReadingCollector.THREAD_POOL),
+                    fileFetchExecutor,
+                    fileUriCollectNode.prefetch(),
                     projectorChain.firstProjector(),
                     fileUriCollectNode.fileFormat(),
+                    fileUriCollectNode.csvOptions(),
                     fileUriCollectNode.compression(),
                     ImmutableMap.<String, FileInputFactory>of(),
                     fileUriCollectNode.sharedStorage(),
                     readers.length,
-                    Arrays.binarySearch(readers, clusterService.localNode().id())
+                    Arrays.binarySearch(readers, clusterService.localNode().id()),
+                    checkpoints(fileUriCollectNode, fileUri),
+                    fileUriCollectNode.errorFile()
             );
         } else {
             CollectService service = collectServiceResolver.getService(collectNode.routing());
@@ -225,6 +250,30 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
         }
     }
 
+    /**
+     * @return the checkpoints of the import or null if the rows aren't imported into a table
+     *         or the collect isn't part of a job, which all readers share
+     */
+    @Nullable
+    private Checkpoints checkpoints(FileUriCollectNode collectNode, String fileUri) {
+        if (!collectNode.jobId().isPresent() || collectNode.projections().isEmpty()) {
+            return null;
+        }
+        Projection projection = collectNode.projections().get(0);
+        if (!(projection instanceof AbstractIndexWriterProjection)) {
+            return null;
+        }
+        return new ClusterSettingsCheckpoints(
+                clusterService,
+                threadPool,
+                transportActionProvider.transportClusterUpdateSettingsAction(),
+                ((AbstractIndexWriterProjection) projection).tableName(),
+                fileUri,
+                collectNode.jobId().get(),
+                collectNode.resume()
+        );
+    }
+
     /**
      * collect data on shard or doc level
      * <p/>
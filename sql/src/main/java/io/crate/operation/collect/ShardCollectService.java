@@ -121,6 +121,7 @@ public class ShardCollectService {
         );
         this.projectorVisitor = new ProjectionToProjectorVisitor(
                 clusterService,
+                threadPool,
                 settings,
                 transportActionProvider,
                 shardImplementationSymbolVisitor,
@@ -0,0 +1,53 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import java.util.BitSet;
+
+/**
+ * Keeps track of the splits a {@link FileReadingCollector} has imported,
+ * so that an interrupted import can be resumed without importing them again.
+ *
+ * The splits are identified by their index in the list of the splits of all readers.
+ */
+public interface Checkpoints {
+
+    /**
+     * @param fingerprint   identifies the splits of the import, see {@link FileSplit#fingerprint(java.util.List)}
+     * @param sharedStorage if false only splits completed by this node are returned,
+     *                      other nodes might have seen different files with the same uris
+     * @return the splits completed by earlier runs of the import, empty if the import isn't resumed
+     */
+    public BitSet completedSplits(String fingerprint, boolean sharedStorage);
+
+    /**
+     * records the splits as completed, including those returned by {@link #completedSplits(String, boolean)}.
+     * The splits are recorded asynchronously.
+     */
+    public void splitsCompleted(String fingerprint, BitSet splits);
+
+    /**
+     * called once all splits of the reader have been recorded as completed,
+     * the checkpoints aren't needed anymore
+     */
+    public void importCompleted();
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.settings.ClusterUpdateSettingsRequest;
+import org.elasticsearch.action.admin.cluster.settings.ClusterUpdateSettingsResponse;
+import org.elasticsearch.action.admin.cluster.settings.TransportClusterUpdateSettingsAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.Base64;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Stores the checkpoints of an import in the transient cluster settings,
+ * one setting per job and node:
+ *
+ * <pre>crate.copy_from.checkpoints.&lt;import&gt;.&lt;job&gt;.&lt;node name&gt; = &lt;fingerprint&gt;:&lt;completed splits&gt;</pre>
+ *
+ * An import is identified by the table and the uri it reads from, a node by its name
+ * which unlike its id is kept if the node is restarted.
+ * A new import of the same files into the same table removes the checkpoints of earlier jobs,
+ * a resumed import keeps them and reads the splits they contain.
+ * Once a node has completed its splits it removes its checkpoints of the import.
+ *
+ * Checkpoints are stored at most once per {@link #STORE_INTERVAL},
+ * a resumed import might read the splits completed in the last interval again.
+ */
+public class ClusterSettingsCheckpoints implements Checkpoints {
+
+    public static final String SETTINGS_PREFIX = "crate.copy_from.checkpoints.";
+
+    static final TimeValue STORE_INTERVAL = TimeValue.timeValueSeconds(5);
+
+    private static final ESLogger LOGGER = Loggers.getLogger(ClusterSettingsCheckpoints.class);
+
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final TransportClusterUpdateSettingsAction transportClusterUpdateSettingsAction;
+    private final boolean resume;
+    private final String importPrefix;
+    private final String jobPrefix;
+    private final String localNodeSuffix;
+    private final String key;
+
+    private final Object storeLock = new Object();
+    private String pendingValue;
+    private boolean storing = false;
+    private boolean completed = false;
+    private long lastStoreNanos;
+
+    public ClusterSettingsCheckpoints(ClusterService clusterService,
+                                      ThreadPool threadPool,
+                                      TransportClusterUpdateSettingsAction transportClusterUpdateSettingsAction,
+                                      String tableName,
+                                      String uri,
+                                      UUID jobId,
+                                      boolean resume) {
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.transportClusterUpdateSettingsAction = transportClusterUpdateSettingsAction;
+        this.resume = resume;
+        importPrefix = SETTINGS_PREFIX + importId(tableName, uri) + ".";
+        jobPrefix = jobId.toString() + ".";
+        String nodeName = clusterService.localNode().name();
+        localNodeSuffix = "." + nodeName;
+        key = importPrefix + jobPrefix + nodeName;
+        lastStoreNanos = System.nanoTime() - STORE_INTERVAL.nanos();
+    }
+
+    static String importId(String tableName, String uri) {
+        return Hashing.sha1().newHasher()
+                .putString(tableName, Charsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(uri, Charsets.UTF_8)
+                .hash().toString();
+    }
+
+    @Override
+    public BitSet completedSplits(String fingerprint, boolean sharedStorage) {
+        Map<String, String> checkpoints = clusterService.state().metaData().transientSettings()
+                .getByPrefix(importPrefix).getAsMap();
+        BitSet completed = new BitSet();
+        if (!resume) {
+            removeObsoleteCheckpoints(checkpoints.keySet());
+            return completed;
+        }
+        for (Map.Entry<String, String> entry : checkpoints.entrySet()) {
+            if (!sharedStorage && !entry.getKey().endsWith(localNodeSuffix)) {
+                continue;
+            }
+            BitSet splits = parse(fingerprint, entry.getValue());
+            if (splits != null) {
+                completed.or(splits);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * removes the checkpoints of other jobs, those of the current job might have been stored by other nodes already
+     */
+    private void removeObsoleteCheckpoints(Set<String> names) {
+        Set<String> obsolete = new HashSet<>();
+        for (String name : names) {
+            if (!name.startsWith(jobPrefix)) {
+                obsolete.add(importPrefix + name);
+            }
+        }
+        removeCheckpoints(obsolete);
+    }
+
+    private void removeCheckpoints(Set<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        ClusterUpdateSettingsRequest request = new ClusterUpdateSettingsRequest();
+        request.transientSettingsToRemove(keys);
+        transportClusterUpdateSettingsAction.execute(request, new ActionListener<ClusterUpdateSettingsResponse>() {
+            @Override
+            public void onResponse(ClusterUpdateSettingsResponse response) {
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                LOGGER.warn("failed to remove copy from checkpoints {}", e, importPrefix);
+            }
+        });
+    }
+
+    /**
+     * only one update is sent at a time and at most one per {@link #STORE_INTERVAL},
+     * if splits are completed in the meantime only the latest state is sent afterwards
+     */
+    @Override
+    public void splitsCompleted(String fingerprint, BitSet splits) {
+        String value = fingerprint + ":" + Base64.encodeBytes(splits.toByteArray());
+        synchronized (storeLock) {
+            if (completed) {
+                return;
+            }
+            pendingValue = value;
+            if (storing) {
+                return;
+            }
+            storing = true;
+        }
+        scheduleStore();
+    }
+
+    /**
+     * removes the checkpoints this node has stored for the import, once a pending store is done
+     */
+    @Override
+    public void importCompleted() {
+        synchronized (storeLock) {
+            completed = true;
+            pendingValue = null;
+            if (storing) {
+                return;
+            }
+            storing = true;
+        }
+        removeLocalCheckpoints();
+    }
+
+    private void removeLocalCheckpoints() {
+        Set<String> keys = new HashSet<>();
+        keys.add(key);
+        for (String name : clusterService.state().metaData().transientSettings()
+                .getByPrefix(importPrefix).getAsMap().keySet()) {
+            if (name.endsWith(localNodeSuffix)) {
+                keys.add(importPrefix + name);
+            }
+        }
+        removeCheckpoints(keys);
+    }
+
+    private void scheduleStore() {
+        long delayNanos;
+        synchronized (storeLock) {
+            delayNanos = lastStoreNanos + STORE_INTERVAL.nanos() - System.nanoTime();
+        }
+        if (delayNanos <= 0) {
+            storePending();
+            return;
+        }
+        threadPool.schedule(TimeValue.timeValueNanos(delayNanos), ThreadPool.Names.SAME, new Runnable() {
+            @Override
+            public void run() {
+                storePending();
+            }
+        });
+    }
+
+    private void storePending() {
+        String value;
+        synchronized (storeLock) {
+            if (completed) {
+                value = null;
+            } else {
+                value = pendingValue;
+                pendingValue = null;
+                if (value == null) {
+                    storing = false;
+                    return;
+                }
+                lastStoreNanos = System.nanoTime();
+            }
+        }
+        if (value == null) {
+            removeLocalCheckpoints();
+            return;
+        }
+        ClusterUpdateSettingsRequest request = new ClusterUpdateSettingsRequest();
+        request.transientSettings(ImmutableSettings.builder().put(key, value).build());
+        transportClusterUpdateSettingsAction.execute(request, new ActionListener<ClusterUpdateSettingsResponse>() {
+            @Override
+            public void onResponse(ClusterUpdateSettingsResponse response) {
+                scheduleStore();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                LOGGER.warn("failed to store copy from checkpoint {}", e, key);
+                scheduleStore();
+            }
+        });
+    }
+
+    /**
+     * @return the completed splits or null if the checkpoint is of other splits
+     */
+    @Nullable
+    static BitSet parse(String fingerprint, String value) {
+        int idx = value.indexOf(':');
+        if (idx < 0 || !value.substring(0, idx).equals(fingerprint)) {
+            return null;
+        }
+        String splits = value.substring(idx + 1);
+        if (splits.isEmpty()) {
+            return new BitSet();
+        }
+        try {
+            return BitSet.valueOf(Base64.decode(splits));
+        } catch (IOException e) {
+            LOGGER.warn("invalid copy from checkpoint {}", e, value);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import io.crate.operation.reference.file.LineContext;
+import io.crate.types.*;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Splits a CSV line into its fields and converts them to the types of the columns they are mapped to.
+ *
+ * Quoted fields may contain the delimiter and escaped quotes (<code>""</code>) but no line breaks.
+ * An empty unquoted field is <code>NULL</code>.
+ * Fields of object and array columns, as well as geo points given as array, are parsed as JSON.
+ */
+class CsvLineParser {
+
+    private final char delimiter;
+    private final char quote;
+    private final String[] positionalColumns;
+    private final DataType[] positionalTypes;
+    private final Map<String, DataType> columnTypes;
+
+    private byte[] lastHeader;
+    private String[] headerColumns;
+    private DataType[] headerTypes;
+
+    CsvLineParser(CsvOptions options) {
+        this.delimiter = options.delimiter();
+        this.quote = options.quote();
+        this.positionalColumns = options.columnNames().toArray(new String[options.columnNames().size()]);
+        this.positionalTypes = options.columnTypes().toArray(new DataType[options.columnTypes().size()]);
+        this.columnTypes = new HashMap<>(positionalColumns.length);
+        for (int i = 0; i < positionalColumns.length; i++) {
+            columnTypes.put(positionalColumns[i], positionalTypes[i]);
+        }
+    }
+
+    /**
+     * @param header the header line of the file the line is from, if the columns aren't mapped by position
+     */
+    void parse(byte[] line, @Nullable byte[] header, LineContext lineContext) {
+        String[] columns;
+        DataType[] types;
+        if (header == null) {
+            columns = positionalColumns;
+            types = positionalTypes;
+        } else {
+            if (header != lastHeader) {
+                parseHeader(header);
+            }
+            columns = headerColumns;
+            types = headerTypes;
+        }
+        List<String> fields = split(line);
+        if (fields.size() > columns.length) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "CSV line has %d fields but there are only %d columns", fields.size(), columns.length));
+        }
+        Object[] values = new Object[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = convert(columns[i], types[i], fields.get(i));
+        }
+        if (values.length == columns.length) {
+            lineContext.values(columns, values);
+        } else {
+            String[] presentColumns = new String[values.length];
+            System.arraycopy(columns, 0, presentColumns, 0, values.length);
+            lineContext.values(presentColumns, values);
+        }
+    }
+
+    private void parseHeader(byte[] header) {
+        List<String> names = split(header);
+        headerColumns = new String[names.size()];
+        headerTypes = new DataType[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("CSV header contains an empty column name");
+            }
+            headerColumns[i] = name;
+            // unknown columns are kept as strings
+            DataType type = columnTypes.get(name);
+            headerTypes[i] = type == null ? DataTypes.STRING : type;
+        }
+        lastHeader = header;
+    }
+
+    @Nullable
+    private static Object convert(String column, DataType type, @Nullable String field) {
+        if (field == null || type.equals(DataTypes.STRING) || type.equals(DataTypes.IP)) {
+            return field;
+        }
+        try {
+            if (type instanceof ObjectType) {
+                return parseJson(field, XContentParser.Token.START_OBJECT);
+            }
+            if (type instanceof CollectionType || (type instanceof GeoPointType && field.startsWith("["))) {
+                return parseJson(field, XContentParser.Token.START_ARRAY);
+            }
+            if (!DataTypes.PRIMITIVE_TYPES.contains(type)) {
+                return field;
+            }
+            return type.value(field);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "Cannot convert value \"%s\" of column \"%s\" to type %s", field, column, type), e);
+        }
+    }
+
+    /**
+     * @return the map or list the JSON field contains
+     */
+    private static Object parseJson(String field, XContentParser.Token expectedToken) {
+        XContentParser parser = null;
+        try {
+            parser = JsonXContent.jsonXContent.createParser(field);
+            if (parser.nextToken() != expectedToken) {
+                throw new IllegalArgumentException(expectedToken == XContentParser.Token.START_OBJECT
+                        ? "value is not a JSON object" : "value is not a JSON array");
+            }
+            return expectedToken == XContentParser.Token.START_OBJECT ? parser.map() : parser.list();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("value is not valid JSON", e);
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+    }
+
+    /**
+     * @return the fields of the line, <code>null</code> for empty unquoted fields
+     */
+    List<String> split(byte[] line) {
+        String s = new String(line, StandardCharsets.UTF_8);
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (inQuotes) {
+                if (c == quote) {
+                    if (i + 1 < s.length() && s.charAt(i + 1) == quote) {
+                        field.append(quote);
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == delimiter) {
+                fields.add(quoted || field.length() > 0 ? field.toString() : null);
+                field.setLength(0);
+                quoted = false;
+            } else if (c == quote && field.length() == 0 && !quoted) {
+                inQuotes = true;
+                quoted = true;
+            } else {
+                field.append(c);
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalArgumentException("CSV line contains an unterminated quoted field");
+        }
+        fields.add(quoted || field.length() > 0 ? field.toString() : null);
+        return fields;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * options of the CSV {@link FileReadingCollector.FileFormat}.
+ *
+ * The columns of the target table are used to map the fields of a line to columns by position
+ * if the files have no header and to convert the values to the column types.
+ */
+public class CsvOptions implements Streamable {
+
+    public static final char DEFAULT_DELIMITER = ',';
+    public static final char DEFAULT_QUOTE = '"';
+
+    private char delimiter;
+    private char quote;
+    private boolean header;
+    private List<String> columnNames;
+    private List<DataType> columnTypes;
+
+    public CsvOptions() {
+    }
+
+    public CsvOptions(char delimiter,
+                      char quote,
+                      boolean header,
+                      List<String> columnNames,
+                      List<DataType> columnTypes) {
+        assert columnNames.size() == columnTypes.size() : "every column needs a type";
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.header = header;
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+    }
+
+    public char delimiter() {
+        return delimiter;
+    }
+
+    public char quote() {
+        return quote;
+    }
+
+    public boolean header() {
+        return header;
+    }
+
+    public List<String> columnNames() {
+        return columnNames;
+    }
+
+    public List<DataType> columnTypes() {
+        return columnTypes;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        delimiter = (char) in.readVInt();
+        quote = (char) in.readVInt();
+        header = in.readBoolean();
+        int numColumns = in.readVInt();
+        columnNames = new ArrayList<>(numColumns);
+        columnTypes = new ArrayList<>(numColumns);
+        for (int i = 0; i < numColumns; i++) {
+            columnNames.add(in.readString());
+            columnTypes.add(DataTypes.fromStream(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(delimiter);
+        out.writeVInt(quote);
+        out.writeBoolean(header);
+        out.writeVInt(columnNames.size());
+        for (int i = 0; i < columnNames.size(); i++) {
+            out.writeString(columnNames.get(i));
+            DataTypes.toStream(columnTypes.get(i), out);
+        }
+    }
+}
@@ -44,5 +44,21 @@ public interface FileInput {
 
     InputStream getStream(URI uri) throws IOException;
 
+    /**
+     * @param position the offset of the first byte to read
+     * @return a stream of the file starting at the given position or null if the file doesn't exist
+     */
+    InputStream getStream(URI uri, long position) throws IOException;
+
+    /**
+     * @return the size of the file in bytes or -1 if it is unknown
+     */
+    long size(URI uri) throws IOException;
+
     boolean sharedStorageDefault();
+
+    /**
+     * @return the number of files which are fetched ahead while a file is read if it isn't set explicitly
+     */
+    int prefetchDefault();
 }
@@ -23,25 +23,25 @@ package io.crate.operation.collect.files;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.operation.Input;
-import io.crate.operation.collect.CollectionAbortedException;
 import io.crate.operation.collect.CrateCollector;
+import io.crate.operation.projectors.CheckpointingProjector;
 import io.crate.operation.projectors.Projector;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 
 import javax.annotation.Nullable;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -54,22 +54,33 @@ public class FileReadingCollector implements CrateCollector {
     private final Boolean shared;
     private final int numReaders;
     private final int readerNumber;
+    private final long splitSize;
     private URI preGlobUri;
     private Projector downstream;
     private final boolean compressed;
-    private final List<Input<?>> inputs;
-    private final List<LineCollectorExpression<?>> collectorExpressions;
+    private final List<LineParser> parsers;
+    private final boolean csvHeader;
+    private final Executor parserExecutor;
+    private final Executor fetchExecutor;
+    private final Integer prefetch;
+    private final Checkpoints checkpoints;
+    private final String errorFile;
+
+    /**
+     * name of the thread pool the lines are parsed on, it's added to the node thread pool by the sql plugin
+     */
+    public static final String THREAD_POOL = "copy_from";
+
+    /**
+     * uncompressed files on shared storage which are larger than this are read by multiple readers
+     */
+    static final long DEFAULT_SPLIT_SIZE = new ByteSizeValue(64, ByteSizeUnit.MB).bytes();
 
     private static final Pattern HAS_GLOBS_PATTERN = Pattern.compile("(.*)[^\\\\]\\*.*");
-    private static final Predicate<URI> MATCH_ALL_PREDICATE = new Predicate<URI>() {
-        @Override
-        public boolean apply(@Nullable URI input) {
-            return true;
-        }
-    };
 
     public enum FileFormat {
-        JSON
+        JSON,
+        CSV
     }
 
     public FileReadingCollector(String fileUri,
@@ -82,6 +93,66 @@ public class FileReadingCollector implements CrateCollector {
                                 Boolean shared,
                                 int numReaders,
                                 int readerNumber) {
+        this(fileUri, ImmutableList.of(new LineParser(inputs, collectorExpressions)), null, null, null, downstream,
+                format, null, compression, additionalFileInputFactories, shared, numReaders, readerNumber,
+                DEFAULT_SPLIT_SIZE, null, null);
+    }
+
+    /**
+     * @param parserContexts one context per parser, if there is more than one the lines are parsed
+     *                       concurrently on the parserExecutor and the downstream must be thread-safe.
+     * @param fetchExecutor  executor the files are fetched ahead on, should allow blocking I/O
+     * @param prefetch       number of files which are fetched ahead while a file is read,
+     *                       if null the default of the {@link FileInput} is used
+     * @param csvOptions     required if the format is CSV
+     * @param checkpoints    if set the completed splits are recorded and the splits completed
+     *                       by earlier runs are skipped. Requires a {@link CheckpointingProjector} downstream
+     *                       to record anything.
+     * @param errorFile      path of a local file the lines which can't be parsed are written to,
+     *                       if null such a line fails the collect
+     */
+    public FileReadingCollector(String fileUri,
+                                List<FileCollectInputSymbolVisitor.Context> parserContexts,
+                                @Nullable Executor parserExecutor,
+                                @Nullable Executor fetchExecutor,
+                                @Nullable Integer prefetch,
+                                Projector downstream,
+                                FileFormat format,
+                                @Nullable CsvOptions csvOptions,
+                                String compression,
+                                Map<String, FileInputFactory> additionalFileInputFactories,
+                                Boolean shared,
+                                int numReaders,
+                                int readerNumber,
+                                @Nullable Checkpoints checkpoints,
+                                @Nullable String errorFile) {
+        this(fileUri, toParsers(parserContexts, csvOptions), parserExecutor, fetchExecutor, prefetch,
+                downstream, format, csvOptions,
+                compression, additionalFileInputFactories, shared, numReaders, readerNumber, DEFAULT_SPLIT_SIZE,
+                checkpoints, errorFile);
+    }
+
+    FileReadingCollector(String fileUri,
+                         List<LineParser> parsers,
+                         @Nullable Executor parserExecutor,
+                         @Nullable Executor fetchExecutor,
+                         @Nullable Integer prefetch,
+                         Projector downstream,
+                         FileFormat format,
+                         @Nullable CsvOptions csvOptions,
+                         String compression,
+                         Map<String, FileInputFactory> additionalFileInputFactories,
+                         Boolean shared,
+                         int numReaders,
+                         int readerNumber,
+                         long splitSize,
+                         @Nullable Checkpoints checkpoints,
+                         @Nullable String errorFile) {
+        if (format == FileFormat.CSV && csvOptions == null) {
+            throw new IllegalArgumentException("CSV options are required to read CSV files");
+        }
+        this.splitSize = splitSize;
+        this.csvHeader = csvOptions != null && csvOptions.header();
         if (fileUri.startsWith("/")) {
             this.fileUri = URI.create("file://" + fileUri);
         } else {
@@ -95,8 +166,12 @@ public class FileReadingCollector implements CrateCollector {
         }
         downstream(downstream);
         this.compressed = compression != null && compression.equalsIgnoreCase("gzip");
-        this.inputs = inputs;
-        this.collectorExpressions = collectorExpressions;
+        this.parsers = parsers;
+        this.parserExecutor = parserExecutor;
+        this.fetchExecutor = fetchExecutor;
+        this.prefetch = prefetch;
+        this.checkpoints = checkpoints;
+        this.errorFile = errorFile;
         this.fileInputFactoryMap = new HashMap<>(ImmutableMap.<String, FileInputFactory>of(
                 "s3", new FileInputFactory() {
                     @Override
@@ -131,6 +206,15 @@ public class FileReadingCollector implements CrateCollector {
         }
     }
 
+    static List<LineParser> toParsers(List<FileCollectInputSymbolVisitor.Context> parserContexts,
+                                      @Nullable CsvOptions csvOptions) {
+        List<LineParser> parsers = new ArrayList<>(parserContexts.size());
+        for (FileCollectInputSymbolVisitor.Context context : parserContexts) {
+            parsers.add(new LineParser(context.topLevelInputs(), context.expressions(), csvOptions));
+        }
+        return parsers;
+    }
+
     @Nullable
     private FileInput getFileInput() throws IOException {
         FileInputFactory fileInputFactory = fileInputFactoryMap.get(fileUri.getScheme());
@@ -149,94 +233,197 @@ public class FileReadingCollector implements CrateCollector {
             }
             return;
         }
-        Predicate<URI> uriPredicate = generateUriPredicate(fileInput);
-
-        CollectorContext collectorContext = new CollectorContext();
-        for (LineCollectorExpression<?> collectorExpression : collectorExpressions) {
-            collectorExpression.startCollect(collectorContext);
-        }
-        Object[] newRow;
-        String line;
-        List<URI> uris;
-        uris = getUris(fileInput, uriPredicate);
+        LineErrorWriter errorWriter = errorFile == null ? null : new LineErrorWriter(errorFile);
+        LineParsingPipeline pipeline = new LineParsingPipeline(parsers, parserExecutor, downstream, errorWriter);
+        SplitPrefetcher prefetcher = null;
         try {
-            for (URI uri : uris) {
-                InputStream inputStream = fileInput.getStream(uri);
-                if (inputStream == null) {
-                    continue;
+            boolean sharedStorage = Objects.firstNonNull(shared, fileInput.sharedStorageDefault());
+            List<FileSplit> allSplits = getSplits(fileInput, sharedStorage);
+            List<FileSplit> splits = sharedStorage ? FileSplit.assign(allSplits, numReaders, readerNumber) : allSplits;
+            SplitCheckpoints splitCheckpoints = null;
+            if (checkpoints != null) {
+                splitCheckpoints = new SplitCheckpoints(allSplits, sharedStorage);
+                splits = splitCheckpoints.remaining(splits);
+            }
+            prefetcher = new SplitPrefetcher(fileInput, splits, fetchExecutor,
+                    Objects.firstNonNull(prefetch, fileInput.prefetchDefault()),
+                    SplitPrefetcher.DEFAULT_MAX_BUFFER_SIZE);
+            boolean allCollected = true;
+            for (FileSplit split : splits) {
+                if (!collectSplit(prefetcher.next(), split, pipeline)) {
+                    allCollected = false;
+                    break;
                 }
-                BufferedReader reader;
-                reader = createReader(inputStream);
-
+                if (splitCheckpoints != null) {
+                    splitCheckpoints.collected(split, pipeline);
+                }
+            }
+            if (allCollected && splitCheckpoints != null) {
+                splitCheckpoints.finished();
+            }
+        } finally {
+            try {
+                if (prefetcher != null) {
+                    prefetcher.close();
+                }
+                pipeline.finish();
+            } finally {
                 try {
-                    while ((line = reader.readLine()) != null) {
-                        collectorContext.lineContext().rawSource(line.getBytes());
-                        newRow = new Object[inputs.size()];
-                        for (LineCollectorExpression expression : collectorExpressions) {
-                            expression.setNextLine(line);
-                        }
-                        int i = 0;
-                        for (Input<?> input : inputs) {
-                            newRow[i++] = input.value();
-                        }
-                        if (!downstream.setNextRow(newRow)) {
-                            throw new CollectionAbortedException();
-                        }
+                    if (errorWriter != null) {
+                        errorWriter.close();
                     }
                 } finally {
-                    reader.close();
+                    downstream.upstreamFinished();
                 }
             }
-        } finally {
-            downstream.upstreamFinished();
         }
     }
 
-    private BufferedReader createReader(InputStream inputStream) throws IOException {
-        BufferedReader reader;
+    /**
+     * @return false if the collect was aborted or failed and no further splits should be read
+     */
+    private boolean collectSplit(@Nullable InputStream inputStream,
+                                 FileSplit split,
+                                 LineParsingPipeline pipeline) throws IOException {
+        if (inputStream == null) {
+            return true;
+        }
         if (compressed) {
-            reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(inputStream),
-                    StandardCharsets.UTF_8));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            inputStream = new GZIPInputStream(inputStream);
         }
-        return reader;
+        SplitLineReader reader = new SplitLineReader(inputStream, split);
+        try {
+            byte[] header = null;
+            if (csvHeader) {
+                header = reader.readLine();
+                if (header == null) {
+                    return true;
+                }
+            }
+            pipeline.startFile(split.uri, header);
+            byte[] line;
+            while ((line = reader.readLine()) != null) {
+                if (!pipeline.addLine(line)) {
+                    return false;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return true;
+    }
+
+    /**
+     * On shared storage every reader sees the same files, these are split into byte ranges
+     * which are assigned to the readers by size afterwards.
+     * Otherwise every reader reads all the files it can see.
+     *
+     * @return the splits of all readers
+     */
+    private List<FileSplit> getSplits(FileInput fileInput, boolean sharedStorage) throws IOException {
+        // sorted, so that the splits are the same every time the files are read
+        List<URI> uris = new ArrayList<>(getUris(fileInput));
+        Collections.sort(uris);
+        if (!sharedStorage) {
+            List<FileSplit> splits = new ArrayList<>(uris.size());
+            for (URI uri : uris) {
+                splits.add(FileSplit.wholeFile(uri, -1));
+            }
+            return splits;
+        }
+        List<Long> sizes = new ArrayList<>(uris.size());
+        for (URI uri : uris) {
+            sizes.add(fileInput.size(uri));
+        }
+        // files with a header can't be split, only the first split would know the columns
+        boolean splittable = !compressed && !csvHeader;
+        return FileSplit.split(uris, sizes, splittable, splitSize, numReaders);
     }
 
-    private List<URI> getUris(FileInput fileInput, Predicate<URI> uriPredicate) throws IOException {
+    private List<URI> getUris(FileInput fileInput) throws IOException {
         List<URI> uris;
         if (preGlobUri != null) {
-            uris = fileInput.listUris(preGlobUri, uriPredicate);
-        } else if (uriPredicate.apply(fileUri)) {
-            uris = ImmutableList.of(fileUri);
+            uris = fileInput.listUris(preGlobUri, globPredicate);
         } else {
-            uris = ImmutableList.of();
+            uris = ImmutableList.of(fileUri);
         }
         return uris;
     }
 
-    private Predicate<URI> generateUriPredicate(FileInput fileInput) {
-        Predicate<URI> moduloPredicate;
-        boolean sharedStorage = Objects.firstNonNull(shared, fileInput.sharedStorageDefault());
-        if (sharedStorage) {
-            moduloPredicate = new Predicate<URI>() {
+    /**
+     * skips the splits completed by earlier runs and records the splits once the downstream
+     * has processed all their rows
+     */
+    private class SplitCheckpoints {
+
+        private final String fingerprint;
+        private final Map<FileSplit, Integer> indices = new IdentityHashMap<>();
+        private final BitSet completed;
+        private final List<ListenableFuture<?>> pendingCheckpoints = new ArrayList<>();
+
+        SplitCheckpoints(List<FileSplit> allSplits, boolean sharedStorage) {
+            fingerprint = FileSplit.fingerprint(allSplits);
+            for (int i = 0; i < allSplits.size(); i++) {
+                indices.put(allSplits.get(i), i);
+            }
+            completed = checkpoints.completedSplits(fingerprint, sharedStorage);
+        }
+
+        List<FileSplit> remaining(List<FileSplit> splits) {
+            if (completed.isEmpty()) {
+                return splits;
+            }
+            List<FileSplit> remaining = new ArrayList<>(splits.size());
+            for (FileSplit split : splits) {
+                if (!completed.get(indices.get(split))) {
+                    remaining.add(split);
+                }
+            }
+            return remaining;
+        }
+
+        void collected(FileSplit split, LineParsingPipeline pipeline) throws IOException {
+            if (!(downstream instanceof CheckpointingProjector)) {
+                return;
+            }
+            // all rows of the split have to be passed to the downstream before the checkpoint is taken
+            pipeline.drain();
+            final int index = indices.get(split);
+            ListenableFuture<?> checkpoint = ((CheckpointingProjector) downstream).checkpoint();
+            pendingCheckpoints.add(checkpoint);
+            Futures.addCallback(checkpoint, new FutureCallback<Object>() {
                 @Override
-                public boolean apply(URI input) {
-                    int hash = input.hashCode();
-                    if (hash == Integer.MIN_VALUE) {
-                        hash = 0; // Math.abs(Integer.MIN_VALUE) == Integer.MIN_VALUE
+                public void onSuccess(@Nullable Object result) {
+                    // recorded under the lock so that a later state can't be overwritten by an earlier one
+                    synchronized (completed) {
+                        completed.set(index);
+                        checkpoints.splitsCompleted(fingerprint, (BitSet) completed.clone());
                     }
-                    return Math.abs(hash) % numReaders == readerNumber;
                 }
-            };
-        } else {
-            moduloPredicate = MATCH_ALL_PREDICATE;
+
+                @Override
+                public void onFailure(Throwable t) {
+                    // the projector fails the collect itself, the split is read again on resume
+                }
+            });
         }
 
-        if (globPredicate != null) {
-            return Predicates.and(moduloPredicate, globPredicate);
+        /**
+         * completes the import once the checkpoints of all splits have been taken
+         */
+        void finished() {
+            Futures.addCallback(Futures.allAsList(pendingCheckpoints), new FutureCallback<List<Object>>() {
+                @Override
+                public void onSuccess(@Nullable List<Object> result) {
+                    checkpoints.importCompleted();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    // the checkpoints are kept to resume the import
+                }
+            });
         }
-        return moduloPredicate;
     }
 
     @Override
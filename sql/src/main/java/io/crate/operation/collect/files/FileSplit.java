@@ -0,0 +1,168 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * A byte range of a file that is read by one COPY FROM reader.
+ *
+ * A line belongs to the split its first byte is in, so the reader of a split
+ * skips the line it starts in the middle of and finishes the line crossing its end.
+ */
+class FileSplit {
+
+    private static final Comparator<FileSplit> LARGEST_FIRST = new Comparator<FileSplit>() {
+        @Override
+        public int compare(FileSplit o1, FileSplit o2) {
+            int cmp = Long.compare(o2.weight(), o1.weight());
+            if (cmp == 0) {
+                cmp = o1.uri.compareTo(o2.uri);
+            }
+            if (cmp == 0) {
+                cmp = Long.compare(o1.start, o2.start);
+            }
+            return cmp;
+        }
+    };
+
+    final URI uri;
+    final long start;
+    /**
+     * exclusive end of the split or -1 if the whole file is read
+     */
+    final long end;
+    private final long size;
+
+    FileSplit(URI uri, long start, long end, long size) {
+        this.uri = uri;
+        this.start = start;
+        this.end = end;
+        this.size = size;
+    }
+
+    static FileSplit wholeFile(URI uri, long size) {
+        return new FileSplit(uri, 0, -1, size);
+    }
+
+    boolean isWholeFile() {
+        return end == -1;
+    }
+
+    private long weight() {
+        if (isWholeFile()) {
+            return size;
+        }
+        return end - start;
+    }
+
+    /**
+     * splits the files into byte ranges of at most splitSize bytes and assigns them to the readers,
+     * so that every reader gets about the same number of bytes.
+     *
+     * Every reader computes the same assignment, the uris must be the same on every reader.
+     *
+     * @param sizes      the size of every file, -1 if unknown
+     * @param splittable false if the files can't be read from an arbitrary position, e.g. because they're compressed
+     * @return the splits to read by the reader with the given number
+     */
+    static List<FileSplit> assign(List<URI> uris,
+                                  List<Long> sizes,
+                                  boolean splittable,
+                                  long splitSize,
+                                  int numReaders,
+                                  int readerNumber) {
+        return assign(split(uris, sizes, splittable, splitSize, numReaders), numReaders, readerNumber);
+    }
+
+    /**
+     * splits the files into byte ranges of at most splitSize bytes if there is more than one reader.
+     *
+     * @return the splits of all readers, largest first
+     */
+    static List<FileSplit> split(List<URI> uris,
+                                 List<Long> sizes,
+                                 boolean splittable,
+                                 long splitSize,
+                                 int numReaders) {
+        List<FileSplit> splits = new ArrayList<>(uris.size());
+        for (int i = 0; i < uris.size(); i++) {
+            URI uri = uris.get(i);
+            long size = sizes.get(i);
+            if (!splittable || numReaders == 1 || size <= splitSize) {
+                splits.add(wholeFile(uri, size < 0 ? splitSize : size));
+                continue;
+            }
+            for (long start = 0; start < size; start += splitSize) {
+                splits.add(new FileSplit(uri, start, Math.min(start + splitSize, size), size));
+            }
+        }
+        Collections.sort(splits, LARGEST_FIRST);
+        return splits;
+    }
+
+    /**
+     * @param splits the splits of all readers as returned by {@link #split(List, List, boolean, long, int)}
+     * @return the splits to read by the reader with the given number
+     */
+    static List<FileSplit> assign(List<FileSplit> splits, int numReaders, int readerNumber) {
+        long[] assignedBytes = new long[numReaders];
+        List<FileSplit> assigned = new ArrayList<>();
+        for (FileSplit split : splits) {
+            int reader = 0;
+            for (int i = 1; i < numReaders; i++) {
+                if (assignedBytes[i] < assignedBytes[reader]) {
+                    reader = i;
+                }
+            }
+            assignedBytes[reader] += split.weight();
+            if (reader == readerNumber) {
+                assigned.add(split);
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * @return a hash of the splits, it is the same for every reader as long as the files don't change
+     */
+    static String fingerprint(List<FileSplit> splits) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (FileSplit split : splits) {
+            hasher.putString(split.uri.toString(), Charsets.UTF_8)
+                    .putLong(split.start)
+                    .putLong(split.end)
+                    .putLong(split.size);
+        }
+        return hasher.hash().toString();
+    }
+
+    @Override
+    public String toString() {
+        return uri + (isWholeFile() ? "" : "[" + start + "-" + end + ")");
+    }
+}
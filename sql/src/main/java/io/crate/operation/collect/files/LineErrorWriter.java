@@ -0,0 +1,68 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import com.google.common.base.Charsets;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import java.io.*;
+import java.net.URI;
+
+/**
+ * Appends the lines which couldn't be imported to a local file, one JSON object per line
+ * with the uri of the file the line is from, the line itself and the error.
+ *
+ * The file is only created once the first line is written.
+ */
+class LineErrorWriter implements Closeable {
+
+    private final String path;
+    private OutputStream out;
+
+    LineErrorWriter(String path) {
+        this.path = path;
+    }
+
+    synchronized void write(URI uri, byte[] line, Throwable error) throws IOException {
+        if (out == null) {
+            out = new BufferedOutputStream(new FileOutputStream(path, true));
+        }
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+                .startObject()
+                .field("uri", uri.toString())
+                .field("line", new String(line, Charsets.UTF_8))
+                .field("error", ExceptionsHelper.detailedMessage(error))
+                .endObject();
+        builder.bytes().writeTo(out);
+        out.write('\n');
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
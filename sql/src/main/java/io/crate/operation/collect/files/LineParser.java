@@ -0,0 +1,72 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import io.crate.operation.Input;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Turns a raw line into a row using its own set of {@link LineCollectorExpression}s,
+ * so that multiple parsers can be used concurrently.
+ */
+class LineParser {
+
+    private final List<Input<?>> inputs;
+    private final CollectorContext collectorContext = new CollectorContext();
+    private final CsvLineParser csvLineParser;
+
+    LineParser(List<Input<?>> inputs, List<LineCollectorExpression<?>> collectorExpressions) {
+        this(inputs, collectorExpressions, null);
+    }
+
+    /**
+     * @param csvOptions null if the lines are JSON
+     */
+    LineParser(List<Input<?>> inputs,
+               List<LineCollectorExpression<?>> collectorExpressions,
+               @Nullable CsvOptions csvOptions) {
+        this.inputs = inputs;
+        this.csvLineParser = csvOptions == null ? null : new CsvLineParser(csvOptions);
+        for (LineCollectorExpression<?> collectorExpression : collectorExpressions) {
+            collectorExpression.startCollect(collectorContext);
+        }
+    }
+
+    /**
+     * @param header the header line of the file the line is from, if there is one
+     */
+    Object[] parse(byte[] line, @Nullable byte[] header) {
+        if (csvLineParser == null) {
+            collectorContext.lineContext().rawSource(line);
+        } else {
+            csvLineParser.parse(line, header, collectorContext.lineContext());
+        }
+        Object[] row = new Object[inputs.size()];
+        int i = 0;
+        for (Input<?> input : inputs) {
+            row[i++] = input.value();
+        }
+        return row;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import com.google.common.base.Throwables;
+import io.crate.operation.collect.CollectionAbortedException;
+import io.crate.operation.projectors.Projector;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parses the lines read by a {@link FileReadingCollector} and emits the rows to the downstream.
+ *
+ * With an executor and more than one parser the reading thread only batches the lines
+ * and the batches are parsed by workers running on the executor.
+ * The queue between reader and workers is bounded, if it is full the reading thread parses
+ * the batch itself, so no worker ever has to be scheduled for the collect to make progress.
+ * The workers wait for batches until {@link #finish()} sends each of them a poison pill.
+ *
+ * In this case the downstream must accept rows from multiple threads concurrently.
+ *
+ * With an error writer lines which can't be parsed are written to it and skipped,
+ * otherwise the collect fails.
+ */
+class LineParsingPipeline {
+
+    static final int BATCH_SIZE = 1000;
+
+    /**
+     * tells a worker that no more batches follow
+     */
+    private static final Batch POISON_PILL = new Batch(null, null);
+
+    private final LineParser readerParser;
+    private final Projector downstream;
+    private final LineErrorWriter errorWriter;
+    private final boolean pipelined;
+
+    private final BlockingQueue<Batch> batches;
+    private final ConcurrentLinkedQueue<LineParser> idleParsers = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicInteger queuedBatches = new AtomicInteger(0);
+
+    private final Object workersLock = new Object();
+    private int activeWorkers = 0;
+    private boolean closed = false;
+
+    private URI uri;
+    private byte[] header;
+    private Batch batch = new Batch(null, null);
+
+    LineParsingPipeline(List<LineParser> parsers, @Nullable Executor executor, Projector downstream) {
+        this(parsers, executor, downstream, null);
+    }
+
+    LineParsingPipeline(List<LineParser> parsers,
+                        @Nullable Executor executor,
+                        Projector downstream,
+                        @Nullable LineErrorWriter errorWriter) {
+        assert parsers.size() > 0 : "at least one parser is required";
+        this.readerParser = parsers.get(0);
+        this.downstream = downstream;
+        this.errorWriter = errorWriter;
+        this.pipelined = executor != null && parsers.size() > 1;
+        if (!pipelined) {
+            batches = null;
+            return;
+        }
+        int numWorkers = parsers.size() - 1;
+        batches = new ArrayBlockingQueue<>(numWorkers * 2);
+        idleParsers.addAll(parsers.subList(1, parsers.size()));
+        for (int i = 0; i < numWorkers; i++) {
+            try {
+                executor.execute(new Worker());
+            } catch (RejectedExecutionException e) {
+                // the reading thread does the work of the workers which couldn't be started
+                break;
+            }
+        }
+    }
+
+    /**
+     * set the file the following lines are from and its header line, if it has one
+     */
+    void startFile(URI uri, @Nullable byte[] header) {
+        this.uri = uri;
+        this.header = header;
+        if (pipelined) {
+            if (!batch.lines.isEmpty()) {
+                dispatch(batch);
+            }
+            batch = new Batch(uri, header);
+        }
+    }
+
+    /**
+     * @return false if no more lines should be added because the collect was aborted or failed
+     */
+    boolean addLine(byte[] line) throws IOException {
+        if (!pipelined) {
+            emit(readerParser, line, uri, header);
+            return true;
+        }
+        if (failure.get() != null) {
+            return false;
+        }
+        batch.lines.add(line);
+        if (batch.lines.size() >= BATCH_SIZE) {
+            dispatch(batch);
+            batch = new Batch(uri, header);
+        }
+        return failure.get() == null;
+    }
+
+    private void dispatch(Batch batch) {
+        queuedBatches.incrementAndGet();
+        if (!batches.offer(batch)) {
+            queuedBatches.decrementAndGet();
+            parseBatch(readerParser, batch);
+        }
+    }
+
+    /**
+     * parses all lines added so far and waits until the workers have emitted their rows
+     */
+    void drain() throws IOException {
+        if (pipelined) {
+            parseBatch(readerParser, batch);
+            batch = new Batch(uri, header);
+            parseQueuedBatches();
+            synchronized (workersLock) {
+                try {
+                    while (queuedBatches.get() > 0) {
+                        workersLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }
+        throwIfFailed();
+    }
+
+    private void parseQueuedBatches() {
+        Batch queuedBatch;
+        while ((queuedBatch = batches.poll()) != null) {
+            parseQueuedBatch(readerParser, queuedBatch);
+        }
+    }
+
+    private void parseQueuedBatch(LineParser parser, Batch queuedBatch) {
+        try {
+            parseBatch(parser, queuedBatch);
+        } finally {
+            if (queuedBatches.decrementAndGet() == 0) {
+                synchronized (workersLock) {
+                    workersLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * parses the remaining lines and waits for the workers.
+     * Afterwards no more rows are emitted to the downstream.
+     */
+    void finish() throws IOException {
+        if (!pipelined) {
+            return;
+        }
+        parseBatch(readerParser, batch);
+        batch = new Batch(null, null);
+        parseQueuedBatches();
+        int numWorkers;
+        synchronized (workersLock) {
+            // workers which haven't started yet won't start anymore
+            closed = true;
+            numWorkers = activeWorkers;
+        }
+        try {
+            // the queue is empty and large enough to hold a pill for every worker
+            for (int i = 0; i < numWorkers; i++) {
+                batches.put(POISON_PILL);
+            }
+            synchronized (workersLock) {
+                while (activeWorkers > 0) {
+                    workersLock.wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() throws IOException {
+        Throwable t = failure.get();
+        if (t != null) {
+            Throwables.propagateIfInstanceOf(t, IOException.class);
+            throw Throwables.propagate(t);
+        }
+    }
+
+    private void emit(LineParser parser, byte[] line, URI uri, @Nullable byte[] header) throws IOException {
+        Object[] row;
+        try {
+            row = parser.parse(line, header);
+        } catch (RuntimeException e) {
+            if (errorWriter == null) {
+                throw e;
+            }
+            errorWriter.write(uri, line, e);
+            return;
+        }
+        if (!downstream.setNextRow(row)) {
+            throw new CollectionAbortedException();
+        }
+    }
+
+    private void parseBatch(LineParser parser, Batch batch) {
+        for (byte[] line : batch.lines) {
+            if (failure.get() != null) {
+                // discard the rest, the collect has failed anyway
+                return;
+            }
+            try {
+                emit(parser, line, batch.uri, batch.header);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }
+    }
+
+    private static class Batch {
+
+        private final URI uri;
+        private final byte[] header;
+        private final List<byte[]> lines = new ArrayList<>(BATCH_SIZE);
+
+        private Batch(@Nullable URI uri, @Nullable byte[] header) {
+            this.uri = uri;
+            this.header = header;
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            synchronized (workersLock) {
+                if (closed) {
+                    return;
+                }
+                activeWorkers++;
+            }
+            LineParser parser = idleParsers.poll();
+            try {
+                while (true) {
+                    Batch queuedBatch = batches.take();
+                    if (queuedBatch == POISON_PILL) {
+                        break;
+                    }
+                    parseQueuedBatch(parser, queuedBatch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } finally {
+                idleParsers.add(parser);
+                synchronized (workersLock) {
+                    activeWorkers--;
+                    workersLock.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -26,6 +26,8 @@ import com.google.common.collect.ImmutableList;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
@@ -76,8 +78,31 @@ public class LocalFsFileInput implements FileInput {
         }
     }
 
+    @Override
+    public InputStream getStream(URI uri, long position) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(uri), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        channel.position(position);
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public long size(URI uri) throws IOException {
+        File file = new File(uri);
+        return file.isFile() ? file.length() : -1;
+    }
+
     @Override
     public boolean sharedStorageDefault() {
         return false;
     }
+
+    @Override
+    public int prefetchDefault() {
+        return 0;
+    }
 }
@@ -22,6 +22,7 @@
 package io.crate.operation.collect.files;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
@@ -29,34 +30,53 @@ import com.google.common.base.Predicate;
 import io.crate.external.S3ClientHelper;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Reads files from S3. The streams of multiple objects may be opened concurrently.
+ *
+ * A stream starting at a position reads the object in ranged GETs of at most <code>rangeSize</code> bytes,
+ * the next range is requested once the previous one is consumed. So a reader which stops after its split
+ * only transfers the bytes of its split and the rest of the range its last line ends in.
+ */
 public class S3FileInput implements FileInput {
 
+    static final int DEFAULT_PREFETCH = 4;
+    static final long DEFAULT_RANGE_SIZE = new ByteSizeValue(8, ByteSizeUnit.MB).bytes();
+
     private AmazonS3 client; // to prevent early GC during getObjectContent() in getStream()
     private final ESLogger logger = Loggers.getLogger(S3FileInput.class);
+    private final Map<URI, Long> sizes = new ConcurrentHashMap<>();
 
     final S3ClientHelper clientBuilder;
+    private final long rangeSize;
 
     public S3FileInput() {
-        clientBuilder = new S3ClientHelper();
+        this(new S3ClientHelper());
     }
 
     public S3FileInput(S3ClientHelper clientBuilder) {
+        this(clientBuilder, DEFAULT_RANGE_SIZE);
+    }
+
+    S3FileInput(S3ClientHelper clientBuilder, long rangeSize) {
         this.clientBuilder = clientBuilder;
+        this.rangeSize = rangeSize;
     }
 
     @Override
     public List<URI> listUris(URI uri, Predicate<URI> uriPredicate) throws IOException {
         String bucketName = uri.getHost();
-        if (client == null) {
-            client = clientBuilder.client(uri);
-        }
+        AmazonS3 client = client(uri);
         String prefix = uri.getPath().length() > 1 ? uri.getPath().substring(1) : "";
         List<URI> uris = new ArrayList<>();
 
@@ -76,6 +96,7 @@ public class S3FileInput implements FileInput {
             URI keyUri = uri.resolve("/" + summary.getKey());
             if (uriPredicate.apply(keyUri)) {
                 uris.add(keyUri);
+                sizes.put(keyUri, summary.getSize());
                 if (logger.isDebugEnabled()) {
                     logger.debug("{}", keyUri);
                 }
@@ -85,10 +106,7 @@ public class S3FileInput implements FileInput {
 
     @Override
     public InputStream getStream(URI uri) throws IOException {
-        if (client == null) {
-            client = clientBuilder.client(uri);
-        }
-        S3Object object = client.getObject(uri.getHost(), uri.getPath().substring(1));
+        S3Object object = client(uri).getObject(uri.getHost(), uri.getPath().substring(1));
 
         if (object != null) {
             return object.getObjectContent();
@@ -96,8 +114,130 @@ public class S3FileInput implements FileInput {
         return null;
     }
 
+    /**
+     * uses bounded ranged GETs to read the object from the given position on
+     */
+    @Override
+    public InputStream getStream(URI uri, long position) throws IOException {
+        RangedObjectInputStream stream = new RangedObjectInputStream(uri, position, size(uri));
+        // the first range is requested right away, so a missing object fails on open
+        stream.nextRange();
+        return stream;
+    }
+
+    @Override
+    public long size(URI uri) throws IOException {
+        Long size = sizes.get(uri);
+        if (size != null) {
+            return size;
+        }
+        size = client(uri).getObjectMetadata(uri.getHost(), uri.getPath().substring(1)).getContentLength();
+        sizes.put(uri, size);
+        return size;
+    }
+
+    private synchronized AmazonS3 client(URI uri) throws IOException {
+        if (client == null) {
+            client = clientBuilder.client(uri);
+        }
+        return client;
+    }
+
+    /**
+     * reads an object from a position on, one ranged GET of at most <code>rangeSize</code> bytes after the other
+     */
+    private class RangedObjectInputStream extends InputStream {
+
+        private final URI uri;
+        private long size;
+        private long position;
+        private long rangeEnd;
+        private InputStream range;
+
+        private RangedObjectInputStream(URI uri, long position, long size) {
+            this.uri = uri;
+            this.position = position;
+            this.size = size;
+        }
+
+        /**
+         * @return false if the end of the object is reached
+         */
+        private boolean nextRange() throws IOException {
+            if (range != null) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            rangeEnd = Math.min(position + rangeSize, size) - 1;
+            GetObjectRequest request = new GetObjectRequest(uri.getHost(), uri.getPath().substring(1))
+                    .withRange(position, rangeEnd);
+            S3Object object = client(uri).getObject(request);
+            if (object == null) {
+                size = position;
+                return false;
+            }
+            range = object.getObjectContent();
+            return true;
+        }
+
+        private void rangeConsumed() throws IOException {
+            range.close();
+            range = null;
+            if (position <= rangeEnd) {
+                // the object is shorter than expected
+                size = position;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (nextRange()) {
+                int b = range.read();
+                if (b >= 0) {
+                    position++;
+                    return b;
+                }
+                rangeConsumed();
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (nextRange()) {
+                int read = range.read(b, off, len);
+                if (read > 0) {
+                    position += read;
+                    return read;
+                }
+                if (read < 0) {
+                    rangeConsumed();
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (range != null) {
+                range.close();
+                range = null;
+            }
+        }
+    }
+
     @Override
     public boolean sharedStorageDefault() {
         return true;
     }
+
+    @Override
+    public int prefetchDefault() {
+        return DEFAULT_PREFETCH;
+    }
 }
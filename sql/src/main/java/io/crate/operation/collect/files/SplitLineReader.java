@@ -0,0 +1,113 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a {@link FileSplit} as raw bytes.
+ *
+ * If the split doesn't start at the beginning of the file the stream must start one byte before the split,
+ * so that a line starting exactly at the beginning of the split can be told apart from one
+ * that started in the previous split.
+ */
+class SplitLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final long end;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos = 0;
+    private int bufferLimit = 0;
+    private byte[] line = new byte[1024];
+
+    /**
+     * offset of the next byte in the file
+     */
+    private long position;
+
+    /**
+     * @param in a stream starting at <code>max(0, split.start - 1)</code>, uncompressed
+     */
+    SplitLineReader(InputStream in, FileSplit split) throws IOException {
+        this.in = in;
+        this.end = split.isWholeFile() ? Long.MAX_VALUE : split.end;
+        if (split.start > 0) {
+            position = split.start - 1;
+            // the rest of the line the previous split has read
+            skipLine();
+        }
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferLimit) {
+            bufferLimit = in.read(buffer, 0, buffer.length);
+            bufferPos = 0;
+            if (bufferLimit <= 0) {
+                bufferLimit = 0;
+                return -1;
+            }
+        }
+        position++;
+        return buffer[bufferPos++] & 0xFF;
+    }
+
+    private void skipLine() throws IOException {
+        int b;
+        do {
+            b = read();
+        } while (b != -1 && b != '\n');
+    }
+
+    /**
+     * @return the next line without line terminator or null if the next line starts after the split
+     */
+    public byte[] readLine() throws IOException {
+        if (position >= end) {
+            return null;
+        }
+        int length = 0;
+        int b;
+        while ((b = read()) != -1 && b != '\n') {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[length++] = (byte) b;
+        }
+        if (b == -1 && length == 0) {
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import com.google.common.base.Throwables;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Opens the streams of the splits a {@link FileReadingCollector} reads, in the order of the splits.
+ *
+ * With an executor and a depth greater than 0 up to depth splits following the one which is read
+ * are fetched concurrently. The first maxBufferSize bytes of every fetched split are buffered,
+ * the rest of a larger split is read from its stream once the buffered bytes are consumed.
+ * So at most depth * maxBufferSize bytes are buffered.
+ */
+class SplitPrefetcher implements Closeable {
+
+    static final int DEFAULT_MAX_BUFFER_SIZE = (int) new ByteSizeValue(1, ByteSizeUnit.MB).bytes();
+    private static final int INITIAL_BUFFER_SIZE = (int) new ByteSizeValue(64, ByteSizeUnit.KB).bytes();
+
+    private final FileInput fileInput;
+    private final List<FileSplit> splits;
+    private final Executor executor;
+    private final int depth;
+    private final int maxBufferSize;
+    private final Deque<FutureTask<InputStream>> pending = new ArrayDeque<>();
+
+    private int nextSplit = 0;
+    private int nextFetch = 0;
+
+    SplitPrefetcher(FileInput fileInput,
+                    List<FileSplit> splits,
+                    @Nullable Executor executor,
+                    int depth,
+                    int maxBufferSize) {
+        assert maxBufferSize > 0 : "maxBufferSize must be greater than 0";
+        this.fileInput = fileInput;
+        this.splits = splits;
+        this.executor = executor;
+        this.depth = executor == null ? 0 : depth;
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * @return the stream of the next split or null if its file doesn't exist
+     */
+    @Nullable
+    InputStream next() throws IOException {
+        assert nextSplit < splits.size() : "no more splits";
+        if (depth == 0) {
+            return open(fileInput, splits.get(nextSplit++));
+        }
+        fetchAhead(nextSplit);
+        FutureTask<InputStream> current = pending.poll();
+        nextSplit++;
+        fetchAhead(nextSplit);
+        return result(current);
+    }
+
+    /**
+     * fetches the splits from the given one on, up to depth splits after it
+     */
+    private void fetchAhead(int from) {
+        int until = Math.min(splits.size(), from + depth + 1);
+        while (nextFetch < until) {
+            final FileSplit split = splits.get(nextFetch++);
+            FutureTask<InputStream> task = new FutureTask<>(new Callable<InputStream>() {
+                @Override
+                public InputStream call() throws Exception {
+                    return fetch(split);
+                }
+            });
+            pending.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+    }
+
+    private InputStream fetch(FileSplit split) throws IOException {
+        InputStream stream = open(fileInput, split);
+        if (stream == null) {
+            return null;
+        }
+        byte[] buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, maxBufferSize)];
+        int length = 0;
+        try {
+            int read;
+            while ((read = stream.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    if (length == maxBufferSize) {
+                        return new SequenceInputStream(new ByteArrayInputStream(buffer), stream);
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(length * 2, maxBufferSize));
+                }
+            }
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        stream.close();
+        return new ByteArrayInputStream(buffer, 0, length);
+    }
+
+    @Nullable
+    private static InputStream result(FutureTask<InputStream> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a file to be fetched");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    static InputStream open(FileInput fileInput, FileSplit split) throws IOException {
+        if (split.isWholeFile()) {
+            return fileInput.getStream(split.uri);
+        }
+        return fileInput.getStream(split.uri, Math.max(0, split.start - 1));
+    }
+
+    /**
+     * cancels the fetches which haven't started and closes the streams of the fetched splits
+     */
+    @Override
+    public void close() {
+        FutureTask<InputStream> task;
+        while ((task = pending.poll()) != null) {
+            if (task.cancel(false)) {
+                continue;
+            }
+            try {
+                InputStream stream = result(task);
+                if (stream != null) {
+                    stream.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                // the split isn't read anyway
+            }
+        }
+    }
+}
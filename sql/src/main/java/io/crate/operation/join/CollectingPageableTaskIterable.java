@@ -21,13 +21,12 @@
 
 package io.crate.operation.join;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.core.bigarray.RowPageStore;
 import io.crate.executor.Page;
 import io.crate.executor.PageInfo;
 import io.crate.executor.PageableTaskResult;
@@ -35,41 +34,56 @@ import io.crate.executor.SinglePageTaskResult;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
-import java.util.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * iterable over a PageableTask
- * that gathers the pages it fetches.
+ * that gathers the rows of the pages it fetches in a {@link RowPageStore}.
  *
- * The iterator it returns iterates over all the pages
+ * The iterator it returns iterates over the rows of all the pages,
+ * {@link #forCurrentPage()} starts reading right at the first row of the last fetched page.
+ * The bytes used by the store are accounted in the given RamAccountingContext.
  */
 public class CollectingPageableTaskIterable extends RelationIterable {
 
     private PageableTaskResult currentTaskResult;
-    private List<Page> pages;
+    private final RowPageStore rowStore;
+    private final RamAccountingContext ramAccountingContext;
+    private long accountedBytes = 0L;
+    private long lastPageSize;
+    private RowPageStore.Position currentPageStart = RowPageStore.START;
 
-    public CollectingPageableTaskIterable(PageableTaskResult taskResult, PageInfo pageInfo) {
+    public CollectingPageableTaskIterable(PageableTaskResult taskResult,
+                                          PageInfo pageInfo,
+                                          RowPageStore rowStore,
+                                          RamAccountingContext ramAccountingContext) throws IOException {
         super(pageInfo);
         this.currentTaskResult = taskResult;
-        this.pages = new LinkedList<>();
-        this.pages.add(
-                taskResult.page()
-        );
+        this.rowStore = rowStore;
+        this.ramAccountingContext = ramAccountingContext;
+        addPage(taskResult.page());
+    }
+
+    private void addPage(Page page) throws IOException {
+        currentPageStart = rowStore.end();
+        for (Object[] row : page) {
+            rowStore.add(row);
+        }
+        lastPageSize = page.size();
+        long bytesUsed = rowStore.ramBytesUsed();
+        ramAccountingContext.addBytes(bytesUsed - accountedBytes);
+        accountedBytes = bytesUsed;
     }
 
     @Override
     public Iterator<Object[]> iterator() {
-        return Iterators.concat(Lists.transform(pages, new Function<Page, Iterator<Object[]>>() {
-            @Nullable
-            @Override
-            public Iterator<Object[]> apply(@Nullable Page input) {
-                if (input == null) {
-                    return Collections.emptyIterator();
-                } else {
-                    return input.iterator();
-                }
-            }
-        }).iterator());
+        return rowStore.iterator();
+    }
+
+    @Override
+    public Iterator<Object[]> forCurrentPage() {
+        return rowStore.iterator(currentPageStart);
     }
 
     @Override
@@ -83,8 +97,12 @@ public class CollectingPageableTaskIterable extends RelationIterable {
                 if (result == null) {
                     future.setException(new IllegalArgumentException("PageableTaskResult is null"));
                 } else {
-                    pages.add(result.page());
-                    future.set(null);
+                    try {
+                        addPage(result.page());
+                        future.set(null);
+                    } catch (Throwable t) {
+                        future.setException(t);
+                    }
                 }
             }
 
@@ -99,12 +117,16 @@ public class CollectingPageableTaskIterable extends RelationIterable {
     @Override
     public boolean isComplete() {
         // last page length is 0
-        return pages.get(pages.size()-1).size() < currentPageInfo().size()      // we fetched less than requested
+        return lastPageSize < currentPageInfo().size()                          // we fetched less than requested
                 || currentTaskResult instanceof SinglePageTaskResult;           // we only have this single page, nothing more
     }
 
     @Override
     public void close() throws IOException {
-        currentTaskResult.close();
+        try {
+            currentTaskResult.close();
+        } finally {
+            rowStore.close();
+        }
     }
 }
@@ -0,0 +1,213 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.join;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.executor.transport.TransportActionProvider;
+import io.crate.operation.DownstreamOperation;
+import io.crate.operation.ImplementationSymbolVisitor;
+import io.crate.operation.ProjectorUpstream;
+import io.crate.operation.projectors.FlatProjectorChain;
+import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.projectors.Projector;
+import io.crate.planner.node.dql.join.HashJoinMergeNode;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.Arrays;
+
+/**
+ * joins the rows of two relations which are distributed to this node by their collectors.
+ *
+ * The rows of each relation are received by their own {@link DownstreamOperation},
+ * see {@link #left()} and {@link #right()}, and passed to a {@link HashJoiner} as they arrive.
+ * The hash table is built on the side chosen by the planner, see {@link HashJoinMergeNode#buildLeft()}.
+ * The rows of the other side are probed page by page once all upstreams of the build side have finished,
+ * until then they are buffered by the joiner.
+ * The joined rows are passed to the projections of the {@link HashJoinMergeNode}.
+ */
+public class HashJoinMergeOperation implements ProjectorUpstream {
+
+    private final ESLogger logger = Loggers.getLogger(getClass());
+
+    private final FlatProjectorChain projectorChain;
+    private final HashJoiner hashJoiner;
+    private final Side left;
+    private final Side right;
+    private final Object lock = new Object();
+    private int pendingSides = 2;
+    private boolean needsMoreRows = true;
+    private boolean done = false;
+    private Projector downstream;
+
+    public HashJoinMergeOperation(ClusterService clusterService,
+                                  ThreadPool threadPool,
+                                  Settings settings,
+                                  TransportActionProvider transportActionProvider,
+                                  ImplementationSymbolVisitor symbolVisitor,
+                                  HashJoinMergeNode mergeNode,
+                                  RamAccountingContext ramAccountingContext,
+                                  CircuitBreaker circuitBreaker,
+                                  BigArrays bigArrays) {
+        projectorChain = new FlatProjectorChain(mergeNode.projections(),
+                new ProjectionToProjectorVisitor(
+                        clusterService,
+                        threadPool,
+                        settings,
+                        transportActionProvider,
+                        symbolVisitor),
+                ramAccountingContext
+        );
+        downstream(projectorChain.firstProjector());
+        hashJoiner = new HashJoiner(
+                mergeNode.leftJoinKeys(),
+                mergeNode.rightJoinKeys(),
+                mergeNode.inputTypes(),
+                mergeNode.rightInputTypes(),
+                mergeNode.buildLeft(),
+                mergeNode.semiJoin(),
+                ramAccountingContext.contextId(),
+                circuitBreaker,
+                bigArrays,
+                downstream);
+        left = new Side(mergeNode.numUpstreams(), mergeNode.buildLeft());
+        right = new Side(mergeNode.numRightUpstreams(), !mergeNode.buildLeft());
+        projectorChain.startProjections();
+    }
+
+    /**
+     * receives the rows of the left relation
+     */
+    public DownstreamOperation left() {
+        return left;
+    }
+
+    /**
+     * receives the rows of the right relation
+     */
+    public DownstreamOperation right() {
+        return right;
+    }
+
+    public ListenableFuture<Object[][]> result() {
+        return projectorChain.result();
+    }
+
+    private boolean addRows(Side side, Object[][] rows) {
+        synchronized (lock) {
+            if (done || !needsMoreRows) {
+                return false;
+            }
+            try {
+                if (side.build) {
+                    hashJoiner.addBuildRows(Arrays.asList(rows));
+                } else {
+                    needsMoreRows = hashJoiner.addProbeRows(Arrays.asList(rows));
+                }
+                return needsMoreRows;
+            } catch (Throwable t) {
+                fail(t);
+                return false;
+            }
+        }
+    }
+
+    private void sideFinished(Side side) {
+        synchronized (lock) {
+            pendingSides--;
+            if (done) {
+                return;
+            }
+            try {
+                if (side.build && needsMoreRows) {
+                    needsMoreRows = hashJoiner.buildFinished();
+                }
+                if (pendingSides > 0) {
+                    return;
+                }
+                if (needsMoreRows) {
+                    hashJoiner.finish();
+                }
+                done = true;
+                hashJoiner.close();
+                downstream.upstreamFinished();
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+    }
+
+    private void fail(Throwable t) {
+        logger.error("Error during execution of distributed hash JOIN", t);
+        done = true;
+        hashJoiner.close();
+        downstream.upstreamFailed(t);
+    }
+
+    @Override
+    public void downstream(Projector downstream) {
+        downstream.registerUpstream(this);
+        this.downstream = downstream;
+    }
+
+    private class Side implements DownstreamOperation {
+
+        private final int numUpstreams;
+        private final boolean build;
+
+        Side(int numUpstreams, boolean build) {
+            this.numUpstreams = numUpstreams;
+            this.build = build;
+        }
+
+        @Override
+        public boolean addRows(Object[][] rows) throws Exception {
+            return HashJoinMergeOperation.this.addRows(this, rows);
+        }
+
+        @Override
+        public int numUpstreams() {
+            return numUpstreams;
+        }
+
+        @Override
+        public void finished() {
+            sideFinished(this);
+        }
+
+        @Override
+        public ListenableFuture<Object[][]> result() {
+            return HashJoinMergeOperation.this.result();
+        }
+
+        @Override
+        public void downstream(Projector downstream) {
+            // the rows of a join side are passed to the join, not to a downstream
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.join;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.executor.QueryResult;
+import io.crate.executor.Task;
+import io.crate.executor.TaskExecutor;
+import io.crate.executor.TaskResult;
+import io.crate.operation.ProjectorUpstream;
+import io.crate.operation.projectors.FlatProjectorChain;
+import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.projectors.Projector;
+import io.crate.planner.node.dql.join.HashJoinNode;
+import io.crate.planner.projection.Projection;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.util.BigArrays;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * INNER JOIN of two relations on equal join keys.
+ *
+ * Both relations are resolved concurrently, once both are done their rows are joined
+ * by a {@link HashJoiner} and passed to the projections.
+ * The hash table is built on the side with less rows.
+ */
+public class HashJoinOperation implements ProjectorUpstream {
+
+    private final ESLogger logger = Loggers.getLogger(getClass());
+
+    private final List<Task> leftTasks;
+    private final List<Task> rightTasks;
+    private final HashJoinNode hashJoinNode;
+    private final CircuitBreaker circuitBreaker;
+    private final BigArrays bigArrays;
+
+    private final TaskExecutor taskExecutor;
+    private final ProjectionToProjectorVisitor projectionToProjectorVisitor;
+    private final RamAccountingContext ramAccountingContext;
+    private final List<Projection> projections;
+    private Projector downstream;
+
+    /**
+     * @param hashJoinNode                 must have projections set
+     * @param executor                     the executor to execute the child-tasks
+     * @param projectionToProjectorVisitor used for building the ProjectorChain
+     * @param ramAccountingContext         used by the projections
+     * @param circuitBreaker               used to account the hash tables
+     * @param bigArrays                    provides the pages rows are buffered in
+     */
+    public HashJoinOperation(HashJoinNode hashJoinNode,
+                             List<Task> leftTasks,
+                             List<Task> rightTasks,
+                             TaskExecutor executor,
+                             ProjectionToProjectorVisitor projectionToProjectorVisitor,
+                             RamAccountingContext ramAccountingContext,
+                             CircuitBreaker circuitBreaker,
+                             BigArrays bigArrays) {
+        this.hashJoinNode = hashJoinNode;
+        this.leftTasks = leftTasks;
+        this.rightTasks = rightTasks;
+        this.taskExecutor = executor;
+        this.projectionToProjectorVisitor = projectionToProjectorVisitor;
+        this.ramAccountingContext = ramAccountingContext;
+        this.projections = hashJoinNode.projections();
+        this.circuitBreaker = circuitBreaker;
+        this.bigArrays = bigArrays;
+    }
+
+    public ListenableFuture<TaskResult> execute() {
+        FlatProjectorChain projectorChain = new FlatProjectorChain(projections, projectionToProjectorVisitor, ramAccountingContext);
+        downstream(projectorChain.firstProjector());
+        projectorChain.startProjections();
+
+        // start both sides before waiting for any of them
+        List<ListenableFuture<TaskResult>> leftResults = taskExecutor.execute(leftTasks);
+        List<ListenableFuture<TaskResult>> rightResults = taskExecutor.execute(rightTasks);
+
+        Futures.addCallback(
+                Futures.allAsList(
+                        ImmutableList.of(
+                                Iterables.getLast(leftResults),
+                                Iterables.getLast(rightResults)
+                        )
+                ),
+                new FutureCallback<List<TaskResult>>() {
+                    @Override
+                    public void onSuccess(List<TaskResult> results) {
+                        assert results.size() == 2;
+                        try {
+                            join(results.get(0).rows(), results.get(1).rows());
+                            downstream.upstreamFinished();
+                        } catch (Throwable t) {
+                            logger.error("Error during execution of hash JOIN", t);
+                            downstream.upstreamFailed(t);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        logger.error("Error during resolving the JOIN source relations", t);
+                        downstream.upstreamFailed(t);
+                    }
+                });
+
+        return Futures.transform(projectorChain.result(), new Function<Object[][], TaskResult>() {
+            @Nullable
+            @Override
+            public TaskResult apply(Object[][] rows) {
+                return new QueryResult(rows);
+            }
+        });
+    }
+
+    private void join(Object[][] leftRows, Object[][] rightRows) throws IOException {
+        boolean buildLeft = !hashJoinNode.semiJoin() && leftRows.length <= rightRows.length;
+        HashJoiner hashJoiner = new HashJoiner(
+                hashJoinNode.leftJoinKeys(),
+                hashJoinNode.rightJoinKeys(),
+                hashJoinNode.leftTypes(),
+                hashJoinNode.rightTypes(),
+                buildLeft,
+                hashJoinNode.semiJoin(),
+                ramAccountingContext.contextId(),
+                circuitBreaker,
+                bigArrays,
+                downstream);
+        try {
+            hashJoiner.addBuildRows(Arrays.asList(buildLeft ? leftRows : rightRows));
+            if (hashJoiner.buildFinished()
+                    && hashJoiner.addProbeRows(Arrays.asList(buildLeft ? rightRows : leftRows))) {
+                hashJoiner.finish();
+            }
+        } finally {
+            hashJoiner.close();
+        }
+    }
+
+    @Override
+    public void downstream(Projector downstream) {
+        this.downstream = downstream;
+        this.downstream.registerUpstream(this);
+    }
+}
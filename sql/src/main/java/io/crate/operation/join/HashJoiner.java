@@ -0,0 +1,510 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.join;
+
+import io.crate.Streamer;
+import io.crate.breaker.ConstSizeEstimator;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.breaker.SizeEstimator;
+import io.crate.breaker.SizeEstimatorFactory;
+import io.crate.core.bigarray.RowPageStore;
+import io.crate.operation.projectors.Projector;
+import io.crate.types.DataType;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.BigArrays;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * joins the rows of two relations on equal join keys and passes the joined rows to a downstream.
+ *
+ * The rows of the build side are added first and kept in a hash table,
+ * the rows of the probe side are probed against it as they are added, page by page.
+ * Probe rows added before the build side has finished are buffered in a {@link RowPageStore}.
+ *
+ * The build rows and the hash table are accounted on their own {@link RamAccountingContext}.
+ * If the circuit breaker trips while building it, the join falls back to a partitioned (grace) hash join:
+ * the memory is released and the rows of both sides are split into {@link #PARTITION_FAN_OUT} partitions
+ * by the hash of their join keys, which are written to disk.
+ * Once both sides are complete the partitions are joined one after another,
+ * so only the hash table of a single partition has to fit into memory.
+ * Partitions that still don't fit are partitioned again, up to {@link #MAX_PARTITION_DEPTH} times.
+ *
+ * The joined rows always contain the left columns first, then the right ones.
+ *
+ * A semi join always builds the hash table on the right side, keeping a single row per key,
+ * and passes every left row at most once.
+ *
+ * A joiner is not thread safe and must be closed once the join is done.
+ */
+class HashJoiner implements Releasable {
+
+    static final int PARTITION_FAN_OUT = 8;
+    static final int MAX_PARTITION_DEPTH = 3;
+    private static final int PARTITION_BITS = 3;
+
+    /**
+     * number of bytes the probe rows buffered until the build side has finished may use in memory
+     * before they are written to disk
+     */
+    static final long PROBE_BUFFER_SPILL_THRESHOLD = new ByteSizeValue(64, ByteSizeUnit.MB).bytes();
+
+    // HashMap entry and a bucket list holding a single row
+    private static final long BUCKET_SIZE = 72;
+    private static final long ROW_REFERENCE_SIZE = 8;
+    // array header of a row
+    private static final long ROW_OVERHEAD = 24;
+    // used for types without a size estimator, like objects and arrays
+    private static final long UNKNOWN_VALUE_SIZE = 64;
+
+    private final ESLogger logger = Loggers.getLogger(getClass());
+
+    private final int[] buildKeys;
+    private final int[] probeKeys;
+    private final boolean semiJoin;
+    private final boolean buildLeft;
+    private final long keySize;
+    private final String contextId;
+    private final CircuitBreaker circuitBreaker;
+    private final BigArrays bigArrays;
+    private final Streamer<?>[] buildStreamers;
+    private final Streamer<?>[] probeStreamers;
+    private final List<SizeEstimator<Object>> buildEstimators;
+    private final Projector downstream;
+
+    private final RamAccountingContext storesContext;
+    private final Set<RowPageStore> stores = new HashSet<>();
+    private long accountedStoreBytes = 0L;
+
+    private RamAccountingContext hashTableContext;
+    private Map<Object, List<Object[]>> hashTable = new HashMap<>();
+    private int numBuildRows = 0;
+    private boolean buildFinished = false;
+    private RowPageStore probeBuffer;
+    private Partitions partitions;
+
+    /**
+     * @param buildLeft      if true the hash table is built on the left side, must be false for a semi join
+     * @param semiJoin       if true every left row is joined with only one matching right row
+     * @param contextId      prefix of the ids of the ram accounting contexts
+     * @param circuitBreaker used to account the hash tables and the buffered rows
+     * @param bigArrays      provides the pages rows are buffered in
+     */
+    HashJoiner(int[] leftJoinKeys,
+               int[] rightJoinKeys,
+               List<DataType> leftTypes,
+               List<DataType> rightTypes,
+               boolean buildLeft,
+               boolean semiJoin,
+               String contextId,
+               CircuitBreaker circuitBreaker,
+               BigArrays bigArrays,
+               Projector downstream) {
+        assert !(semiJoin && buildLeft) : "a semi join must build the hash table on the right side";
+        this.buildLeft = buildLeft;
+        this.buildKeys = buildLeft ? leftJoinKeys : rightJoinKeys;
+        this.probeKeys = buildLeft ? rightJoinKeys : leftJoinKeys;
+        this.buildStreamers = streamers(buildLeft ? leftTypes : rightTypes);
+        this.probeStreamers = streamers(buildLeft ? rightTypes : leftTypes);
+        this.buildEstimators = estimators(buildLeft ? leftTypes : rightTypes);
+        this.semiJoin = semiJoin;
+        this.contextId = contextId;
+        this.circuitBreaker = circuitBreaker;
+        this.bigArrays = bigArrays;
+        this.downstream = downstream;
+        this.hashTableContext = new RamAccountingContext(
+                String.format(Locale.ENGLISH, "%s: hash table", contextId), circuitBreaker);
+        this.storesContext = new RamAccountingContext(
+                String.format(Locale.ENGLISH, "%s: hash join rows", contextId), circuitBreaker);
+
+        // single keys are the values of the rows, multiple keys are wrapped into a list
+        this.keySize = leftJoinKeys.length == 1 ? 0 : RamAccountingContext.roundUp(28 + leftJoinKeys.length * 4);
+    }
+
+    private static Streamer<?>[] streamers(List<DataType> types) {
+        Streamer<?>[] streamers = new Streamer<?>[types.size()];
+        for (int i = 0; i < streamers.length; i++) {
+            streamers[i] = types.get(i).streamer();
+        }
+        return streamers;
+    }
+
+    private static List<SizeEstimator<Object>> estimators(List<DataType> types) {
+        List<SizeEstimator<Object>> estimators = new ArrayList<>(types.size());
+        for (DataType type : types) {
+            try {
+                estimators.add(SizeEstimatorFactory.create(type));
+            } catch (UnsupportedOperationException e) {
+                estimators.add(new ConstSizeEstimator(UNKNOWN_VALUE_SIZE));
+            }
+        }
+        return estimators;
+    }
+
+    /**
+     * adds rows of the build side, the rows must not be modified afterwards
+     */
+    void addBuildRows(Iterable<Object[]> rows) throws IOException {
+        assert !buildFinished : "build side has already finished";
+        for (Object[] row : rows) {
+            Object key = key(row, buildKeys);
+            if (key == null) {
+                continue;
+            }
+            numBuildRows++;
+            if (partitions == null) {
+                try {
+                    addToHashTable(hashTable, key, row, hashTableContext);
+                    continue;
+                } catch (CircuitBreakingException e) {
+                    startPartitioning();
+                }
+            }
+            partitions.addBuildRow(key, row);
+        }
+        accountStores();
+    }
+
+    /**
+     * called once all rows of the build side have been added,
+     * probes the probe rows that have been buffered until now
+     *
+     * @return false if the downstream doesn't need any more rows
+     */
+    boolean buildFinished() throws IOException {
+        buildFinished = true;
+        if (probeBuffer == null) {
+            return true;
+        }
+        try {
+            return addProbeRows(probeBuffer);
+        } finally {
+            closeStore(probeBuffer);
+            probeBuffer = null;
+        }
+    }
+
+    /**
+     * adds rows of the probe side, they are buffered if the build side hasn't finished yet
+     *
+     * @return false if the downstream doesn't need any more rows
+     */
+    boolean addProbeRows(Iterable<Object[]> rows) throws IOException {
+        if (!buildFinished) {
+            if (probeBuffer == null) {
+                probeBuffer = newStore(probeStreamers, probeBufferSpillThreshold());
+            }
+            for (Object[] row : rows) {
+                probeBuffer.add(row);
+            }
+            accountStores();
+            return true;
+        }
+        if (numBuildRows == 0) {
+            return true;
+        }
+        for (Object[] row : rows) {
+            Object key = key(row, probeKeys);
+            if (key == null) {
+                continue;
+            }
+            if (partitions != null) {
+                partitions.addProbeRow(key, row);
+            } else if (!probe(hashTable, key, row)) {
+                return false;
+            }
+        }
+        accountStores();
+        return true;
+    }
+
+    /**
+     * called once all rows of both sides have been added, joins the partitions if the join has been partitioned
+     *
+     * @return false if the downstream doesn't need any more rows
+     */
+    boolean finish() throws IOException {
+        assert buildFinished : "build side hasn't finished";
+        if (partitions == null) {
+            return true;
+        }
+        return partitions.join();
+    }
+
+    @Override
+    public void close() {
+        hashTable = null;
+        hashTableContext.close();
+        for (RowPageStore store : stores) {
+            store.close();
+        }
+        stores.clear();
+        storesContext.close();
+    }
+
+    private long probeBufferSpillThreshold() {
+        long breakerLimit = circuitBreaker.getLimit();
+        if (breakerLimit > 0) {
+            // spill before the buffered rows trip the breaker on their own
+            return Math.min(PROBE_BUFFER_SPILL_THRESHOLD, breakerLimit / 2);
+        }
+        return PROBE_BUFFER_SPILL_THRESHOLD;
+    }
+
+    /**
+     * moves the rows of the hash table to the partitions and releases its memory
+     */
+    private void startPartitioning() throws IOException {
+        logger.debug("[HashJoin] hash table for {} rows doesn't fit into memory, partitioning both sides",
+                numBuildRows);
+        partitions = new Partitions(0);
+        for (Map.Entry<Object, List<Object[]>> entry : hashTable.entrySet()) {
+            for (Object[] row : entry.getValue()) {
+                partitions.addBuildRow(entry.getKey(), row);
+            }
+        }
+        hashTable = null;
+        hashTableContext.close();
+    }
+
+    private void addToHashTable(Map<Object, List<Object[]>> hashTable,
+                                Object key,
+                                Object[] row,
+                                RamAccountingContext context) {
+        List<Object[]> bucket = hashTable.get(key);
+        if (bucket == null) {
+            context.addBytes(keySize + BUCKET_SIZE + estimateSize(row));
+            bucket = new ArrayList<>(1);
+            hashTable.put(key, bucket);
+        } else if (semiJoin) {
+            return;
+        } else {
+            context.addBytes(ROW_REFERENCE_SIZE + estimateSize(row));
+        }
+        bucket.add(row);
+    }
+
+    private long estimateSize(Object[] row) {
+        long size = ROW_OVERHEAD + row.length * 4;
+        for (int i = 0; i < row.length && i < buildEstimators.size(); i++) {
+            size += buildEstimators.get(i).estimateSize(row[i]);
+        }
+        return RamAccountingContext.roundUp(size);
+    }
+
+    /**
+     * @return false if the downstream doesn't need any more rows
+     */
+    private boolean probe(Map<Object, List<Object[]>> hashTable, Object key, Object[] probeRow) {
+        List<Object[]> bucket = hashTable.get(key);
+        if (bucket == null) {
+            return true;
+        }
+        for (Object[] buildRow : bucket) {
+            Object[] row;
+            if (buildLeft) {
+                row = NestedLoopOperation.BothRowCombinator.combine(
+                        buildRow, buildRow.length, probeRow, probeRow.length);
+            } else {
+                row = NestedLoopOperation.BothRowCombinator.combine(
+                        probeRow, probeRow.length, buildRow, buildRow.length);
+            }
+            if (!downstream.setNextRow(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RowPageStore newStore(Streamer<?>[] streamers, long spillThreshold) {
+        RowPageStore store = new RowPageStore(bigArrays, streamers, spillThreshold);
+        stores.add(store);
+        return store;
+    }
+
+    private void closeStore(RowPageStore store) {
+        stores.remove(store);
+        store.close();
+        accountStores();
+    }
+
+    /**
+     * accounts the bytes of the pages used by the row stores
+     */
+    private void accountStores() {
+        long bytes = 0L;
+        for (RowPageStore store : stores) {
+            bytes += store.ramBytesUsed();
+        }
+        storesContext.addBytes(bytes - accountedStoreBytes);
+        accountedStoreBytes = bytes;
+    }
+
+    /**
+     * every depth uses other bits of the hash,
+     * otherwise the rows of one partition would all end up in the same partition again.
+     */
+    static int partition(Object key, int depth) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (hash >>> (depth * PARTITION_BITS)) & (PARTITION_FAN_OUT - 1);
+    }
+
+    /**
+     * the rows of both sides split by the hash of their join keys.
+     *
+     * The partitions are written to disk right away, as they are only used if the memory is exhausted.
+     */
+    private class Partitions {
+
+        private final int depth;
+        private final RowPageStore[] buildRows = new RowPageStore[PARTITION_FAN_OUT];
+        private final RowPageStore[] probeRows = new RowPageStore[PARTITION_FAN_OUT];
+
+        Partitions(int depth) {
+            this.depth = depth;
+            for (int i = 0; i < PARTITION_FAN_OUT; i++) {
+                buildRows[i] = newStore(buildStreamers, 0L);
+                probeRows[i] = newStore(probeStreamers, 0L);
+            }
+        }
+
+        void addBuildRow(Object key, Object[] row) throws IOException {
+            buildRows[partition(key, depth)].add(row);
+        }
+
+        void addProbeRow(Object key, Object[] row) throws IOException {
+            probeRows[partition(key, depth)].add(row);
+        }
+
+        /**
+         * joins the partitions one after another, each one is removed once it has been joined
+         *
+         * @return false if the downstream doesn't need any more rows
+         */
+        boolean join() throws IOException {
+            try {
+                for (int i = 0; i < PARTITION_FAN_OUT; i++) {
+                    if (!join(buildRows[i], probeRows[i])) {
+                        return false;
+                    }
+                    closeStore(buildRows[i]);
+                    closeStore(probeRows[i]);
+                }
+                return true;
+            } finally {
+                close();
+            }
+        }
+
+        private boolean join(RowPageStore buildStore, RowPageStore probeStore) throws IOException {
+            if (buildStore.numRows() == 0 || probeStore.numRows() == 0) {
+                return true;
+            }
+            RamAccountingContext context = new RamAccountingContext(
+                    String.format(Locale.ENGLISH, "%s: hash table %d", contextId, depth), circuitBreaker);
+            try {
+                Map<Object, List<Object[]>> partitionHashTable = new HashMap<>();
+                try {
+                    for (Object[] row : buildStore) {
+                        // the iterators of the store reuse their row
+                        Object[] buildRow = Arrays.copyOf(row, row.length);
+                        addToHashTable(partitionHashTable, key(buildRow, buildKeys), buildRow, context);
+                    }
+                } catch (CircuitBreakingException e) {
+                    if (depth + 1 >= MAX_PARTITION_DEPTH) {
+                        throw new CircuitBreakingException(String.format(Locale.ENGLISH,
+                                "[HashJoin] hash table for %d rows of a partition doesn't fit into memory: %s",
+                                buildStore.numRows(), e.getMessage()));
+                    }
+                    partitionHashTable = null;
+                    context.close();
+                    logger.debug("[HashJoin] hash table for {} rows of a partition doesn't fit into memory, " +
+                            "partitioning it again", buildStore.numRows());
+                    return joinPartitioned(buildStore, probeStore);
+                }
+                for (Object[] probeRow : probeStore) {
+                    if (!probe(partitionHashTable, key(probeRow, probeKeys), probeRow)) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                context.close();
+            }
+        }
+
+        private boolean joinPartitioned(RowPageStore buildStore, RowPageStore probeStore) throws IOException {
+            Partitions subPartitions = new Partitions(depth + 1);
+            for (Object[] row : buildStore) {
+                subPartitions.addBuildRow(key(row, buildKeys), row);
+            }
+            for (Object[] row : probeStore) {
+                subPartitions.addProbeRow(key(row, probeKeys), row);
+            }
+            accountStores();
+            return subPartitions.join();
+        }
+
+        private void close() {
+            for (int i = 0; i < PARTITION_FAN_OUT; i++) {
+                if (stores.contains(buildRows[i])) {
+                    closeStore(buildRows[i]);
+                }
+                if (stores.contains(probeRows[i])) {
+                    closeStore(probeRows[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the join key of the row or null if any key column is null, as null never matches
+     */
+    @Nullable
+    private static Object key(Object[] row, int[] keyIndices) {
+        if (keyIndices.length == 1) {
+            return row[keyIndices[0]];
+        }
+        Object[] key = new Object[keyIndices.length];
+        for (int i = 0; i < keyIndices.length; i++) {
+            Object value = row[keyIndices[i]];
+            if (value == null) {
+                return null;
+            }
+            key[i] = value;
+        }
+        return Arrays.asList(key);
+    }
+}
@@ -27,9 +27,11 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.Constants;
+import io.crate.Streamer;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.core.bigarray.IterableBigArray;
 import io.crate.core.bigarray.MultiNativeArrayBigArray;
+import io.crate.core.bigarray.RowPageStore;
 import io.crate.executor.*;
 import io.crate.operation.ProjectorUpstream;
 import io.crate.operation.projectors.FlatProjectorChain;
@@ -38,13 +40,17 @@ import io.crate.operation.projectors.Projector;
 import io.crate.operation.projectors.TopN;
 import io.crate.planner.node.dql.join.NestedLoopNode;
 import io.crate.planner.projection.Projection;
+import io.crate.types.DataType;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.BigArrays;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ConcurrentModificationException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -53,6 +59,11 @@ public class NestedLoopOperation implements ProjectorUpstream {
 
     public static final int DEFAULT_PAGE_SIZE = 1024;
 
+    /**
+     * number of bytes the rows of the inner relation may use in memory before they are written to disk
+     */
+    static final long INNER_RELATION_SPILL_THRESHOLD = new ByteSizeValue(64, ByteSizeUnit.MB).bytes();
+
     public static interface RowCombinator {
 
         public Object[] combine(Object[] left, Object[] right);
@@ -103,24 +114,27 @@ public class NestedLoopOperation implements ProjectorUpstream {
 
 
     /**
-     * [l, e, f, t] + [] = [l, e, f, t]
+     * [o, u, t, e, r] + [] = [o, u, t, e, r]
      */
-    private static final RowCombinator LEFT_COMBINATOR = new RowCombinator() {
+    private static final RowCombinator OUTER_COMBINATOR = new RowCombinator() {
 
         @Override
-        public Object[] combine(Object[] left, Object[] right) {
-            return left;
+        public Object[] combine(Object[] outer, Object[] inner) {
+            return outer;
         }
     };
 
     /**
-     * [] + [r, i, g, h, t] = [r, i, g, h, t]
+     * [] + [i, n, n, e, r] = [i, n, n, e, r]
+     *
+     * the inner rows might be read from a {@link RowPageStore}, whose iterators reuse a single row array,
+     * so they are copied
      */
-    private static final RowCombinator RIGHT_COMBINATOR = new RowCombinator() {
+    private static final RowCombinator INNER_COMBINATOR = new RowCombinator() {
 
         @Override
-        public Object[] combine(Object[] left, Object[] right) {
-            return right;
+        public Object[] combine(Object[] outer, Object[] inner) {
+            return Arrays.copyOf(inner, inner.length);
         }
     };
 
@@ -135,7 +149,12 @@ public class NestedLoopOperation implements ProjectorUpstream {
         final boolean singlePage;
 
         Iterator<Object[]> outerIterator;
-        Iterator<Object[]> innerIterator;
+
+        /**
+         * true if the rows of the current outer page haven't been joined with any inner row yet,
+         * false if they have been joined with all inner rows before the current inner page
+         */
+        boolean outerPageIsNew = true;
 
         private JoinContext(RelationIterable outerIterable,
                             RelationIterable innerIterable,
@@ -145,27 +164,19 @@ public class NestedLoopOperation implements ProjectorUpstream {
             this.singlePage = singlePage;
         }
 
-        void refreshOuterIteratorIfNeeded() {
-            try {
-                if (outerIterator == null || !outerIterator.hasNext()) {
-                    // outer iterator is iterated pagewise only
-                    outerIterator = outerIterable.forCurrentPage();
-                }
-            } catch (ConcurrentModificationException e) {
-                // underlying list has been changed
-                outerIterator = outerIterable.forCurrentPage();
-            }
+        /**
+         * (re)start iterating the rows of the current outer page
+         */
+        void restartOuterPage() {
+            outerIterator = outerIterable.forCurrentPage();
         }
 
-        void refreshInnerIteratorIfNeeded() {
-            try {
-                if (innerIterator == null || !innerIterator.hasNext()) {
-                    innerIterator = innerIterable.iterator();
-                }
-            } catch (ConcurrentModificationException e) {
-                // underlying list has been changed
-                innerIterator = innerIterable.iterator();
-            }
+        /**
+         * @return an iterator over the inner rows the rows of the current outer page haven't been joined with,
+         * which are either all inner rows or the ones of the current inner page
+         */
+        Iterator<Object[]> innerRowsToJoin() {
+            return outerPageIsNew ? innerIterable.iterator() : innerIterable.forCurrentPage();
         }
 
         ListenableFuture<Void> outerFetchNextPage() {
@@ -177,11 +188,11 @@ public class NestedLoopOperation implements ProjectorUpstream {
         }
 
         boolean innerNeedsToFetchMore() {
-            return innerIterator != null && !innerIterator.hasNext() && !innerIterable.isComplete();
+            return !innerIterable.isComplete();
         }
 
         boolean outerNeedsToFetchMore() {
-            return outerIterator != null && !outerIterator.hasNext() && !outerIterable.isComplete();
+            return !outerIterable.isComplete();
         }
 
         @Override
@@ -201,6 +212,8 @@ public class NestedLoopOperation implements ProjectorUpstream {
     private final TaskExecutor taskExecutor;
     private final ProjectionToProjectorVisitor projectionToProjectorVisitor;
     private final RamAccountingContext ramAccountingContext;
+    private final BigArrays bigArrays;
+    private final Streamer<?>[] innerStreamers;
     private final List<Projection> projections;
     private Projector downstream;
 
@@ -219,11 +232,13 @@ public class NestedLoopOperation implements ProjectorUpstream {
                                List<Task> innerTasks,
                                TaskExecutor executor,
                                ProjectionToProjectorVisitor projectionToProjectorVisitor,
-                               RamAccountingContext ramAccountingContext) {
+                               RamAccountingContext ramAccountingContext,
+                               BigArrays bigArrays) {
         this.limit = nestedLoopNode.limit() == TopN.NO_LIMIT ? Constants.DEFAULT_SELECT_LIMIT : nestedLoopNode.limit();
         this.offset = nestedLoopNode.offset();
 
         this.ramAccountingContext = ramAccountingContext;
+        this.bigArrays = bigArrays;
         this.projectionToProjectorVisitor = projectionToProjectorVisitor;
         this.projections = nestedLoopNode.projections();
         this.taskExecutor = executor;
@@ -236,14 +251,30 @@ public class NestedLoopOperation implements ProjectorUpstream {
             } else {
                 rowCombinator = new BothRowSwitchingCombinator(leftNumColumns, rightNumColumns);
             }
-        } else if (leftNumColumns == 0) {
-            rowCombinator = RIGHT_COMBINATOR;
-        } else if (rightNumColumns == 0) {
-            rowCombinator = LEFT_COMBINATOR;
+        } else {
+            int innerNumColumns = nestedLoopNode.leftOuterLoop() ? rightNumColumns : leftNumColumns;
+            rowCombinator = innerNumColumns > 0 ? INNER_COMBINATOR : OUTER_COMBINATOR;
         }
 
         this.outerRelationTasks = outerTasks;
         this.innerRelationTasks = innerTasks;
+
+        List<DataType> innerTypes = nestedLoopNode.leftOuterLoop()
+                ? nestedLoopNode.right().outputTypes()
+                : nestedLoopNode.left().outputTypes();
+        innerStreamers = new Streamer<?>[innerTypes.size()];
+        for (int i = 0; i < innerStreamers.length; i++) {
+            innerStreamers[i] = innerTypes.get(i).streamer();
+        }
+    }
+
+    private long spillThreshold() {
+        long breakerLimit = ramAccountingContext.limit();
+        if (breakerLimit > 0) {
+            // spill before the inner relation trips the breaker on its own
+            return Math.min(INNER_RELATION_SPILL_THRESHOLD, breakerLimit / 2);
+        }
+        return INNER_RELATION_SPILL_THRESHOLD;
     }
 
     private List<ListenableFuture<TaskResult>> executeChildTasks(List<Task> tasks, PageInfo pageInfo) {
@@ -297,14 +328,18 @@ public class NestedLoopOperation implements ProjectorUpstream {
                     public void onSuccess(List<TaskResult> results) {
                         assert results.size() == 2;
                         try {
-                            final RelationIterable outerIterable = RelationIterable.forTaskResult(results.get(0), outerPageInfo, false);
-                            final RelationIterable innerIterable = RelationIterable.forTaskResult(results.get(1), innerPageInfo, true);
+                            final RelationIterable outerIterable = RelationIterable.forTaskResult(results.get(0), outerPageInfo);
+                            final RelationIterable innerIterable = RelationIterable.collecting(
+                                    results.get(1),
+                                    innerPageInfo,
+                                    new RowPageStore(bigArrays, innerStreamers, spillThreshold()),
+                                    ramAccountingContext);
 
                             final JoinContext joinContext = new JoinContext(
                                     outerIterable,
                                     innerIterable,
                                     false);
-                            joinContext.refreshOuterIteratorIfNeeded(); // initialize outer iterator
+                            joinContext.restartOuterPage();
                             executeAsync(joinContext, new FutureCallback<Void>() {
 
                                 private void close() {
@@ -355,38 +390,40 @@ public class NestedLoopOperation implements ProjectorUpstream {
         });
     }
 
+    /**
+     * joins the current outer page with all inner rows it hasn't been joined with yet.
+     *
+     * All pages of the inner relation are fetched and joined with the current outer page
+     * before the next outer page is fetched, as the rows of previous outer pages are gone by then.
+     */
     private void executeAsync(final JoinContext ctx, final FutureCallback<Void> callback) {
-        boolean wantMore = true;
+        boolean outerPageEmpty = true;
 
-        Outer:
         while (ctx.outerIterator.hasNext()) {
+            outerPageEmpty = false;
             Object[] outerRow = ctx.outerIterator.next();
 
-            ctx.refreshInnerIteratorIfNeeded();
-            while (ctx.innerIterator.hasNext()) {
-                Object[] innerRow = ctx.innerIterator.next();
-                wantMore = downstream.setNextRow(
-                        rowCombinator.combine(outerRow, innerRow)
-                );
-                if (!wantMore) {
-                    break Outer;
+            Iterator<Object[]> innerIterator = ctx.innerRowsToJoin();
+            while (innerIterator.hasNext()) {
+                Object[] innerRow = innerIterator.next();
+                if (!downstream.setNextRow(rowCombinator.combine(outerRow, innerRow))) {
+                    // downstream has enough
+                    callback.onSuccess(null);
+                    return;
                 }
             }
         }
-        if (!wantMore) {
-            // downstream has enough
-            callback.onSuccess(null);
-            return;
-        }
 
         // get next pages
-        if (ctx.innerNeedsToFetchMore()) {
+        if (!outerPageEmpty && ctx.innerNeedsToFetchMore()) {
             Futures.addCallback(
                     ctx.innerFetchNextPage(),
                     new FutureCallback<Void>() {
                         @Override
                         public void onSuccess(@Nullable Void result) {
-                            ctx.refreshInnerIteratorIfNeeded();
+                            // join the rows of the current outer page with the new inner rows
+                            ctx.outerPageIsNew = false;
+                            ctx.restartOuterPage();
                             executeAsync(
                                     ctx,
                                     callback
@@ -399,15 +436,14 @@ public class NestedLoopOperation implements ProjectorUpstream {
                         }
                     }
             );
-
-
         } else if (ctx.outerNeedsToFetchMore()) {
             Futures.addCallback(
                     ctx.outerFetchNextPage(),
                     new FutureCallback<Void>() {
                         @Override
                         public void onSuccess(@Nullable Void result) {
-                            ctx.refreshOuterIteratorIfNeeded(); // refresh iterator
+                            ctx.restartOuterPage();
+                            ctx.outerPageIsNew = true;
                             executeAsync(
                                     ctx,
                                     callback
@@ -23,11 +23,14 @@ package io.crate.operation.join;
 
 import com.google.common.collect.Iterators;
 import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.core.bigarray.RowPageStore;
 import io.crate.executor.PageInfo;
 import io.crate.executor.PageableTaskResult;
 import io.crate.executor.TaskResult;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -57,15 +60,28 @@ abstract class RelationIterable implements Iterable<Object[]>, Closeable {
         return iter;
     }
 
-    static RelationIterable forTaskResult(TaskResult taskResult, PageInfo pageInfo, boolean collecting) {
+    static RelationIterable forTaskResult(TaskResult taskResult, PageInfo pageInfo) {
         if (taskResult instanceof PageableTaskResult) {
-            if (collecting) {
-                return new CollectingPageableTaskIterable((PageableTaskResult) taskResult, pageInfo);
-            } else {
-                return new SinglePagePageableTaskIterable((PageableTaskResult)taskResult, pageInfo);
-            }
+            return new SinglePagePageableTaskIterable((PageableTaskResult)taskResult, pageInfo);
         } else {
             return new FetchedRowsIterable(taskResult, pageInfo);
         }
     }
+
+    /**
+     * like {@link #forTaskResult(TaskResult, PageInfo)} but gathers all fetched pages of a pageable result
+     * in the given rowStore, which is closed together with the returned iterable.
+     */
+    static RelationIterable collecting(TaskResult taskResult,
+                                       PageInfo pageInfo,
+                                       RowPageStore rowStore,
+                                       RamAccountingContext ramAccountingContext) throws IOException {
+        if (taskResult instanceof PageableTaskResult) {
+            return new CollectingPageableTaskIterable(
+                    (PageableTaskResult) taskResult, pageInfo, rowStore, ramAccountingContext);
+        } else {
+            rowStore.close();
+            return new FetchedRowsIterable(taskResult, pageInfo);
+        }
+    }
 }
@@ -32,6 +32,7 @@ import io.crate.operation.projectors.Projector;
 import io.crate.planner.node.dql.MergeNode;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -48,6 +49,7 @@ public class MergeOperation implements DownstreamOperation {
     private final Object lock = new Object();
 
     public MergeOperation(ClusterService clusterService,
+                          ThreadPool threadPool,
                           Settings settings,
                           TransportActionProvider transportActionProvider,
                           ImplementationSymbolVisitor symbolVisitor, MergeNode mergeNode,
@@ -55,6 +57,7 @@ public class MergeOperation implements DownstreamOperation {
         projectorChain = new FlatProjectorChain(mergeNode.projections(),
                 new ProjectionToProjectorVisitor(
                         clusterService,
+                        threadPool,
                         settings,
                         transportActionProvider,
                         symbolVisitor),
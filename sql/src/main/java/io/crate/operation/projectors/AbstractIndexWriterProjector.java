@@ -30,6 +30,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.metadata.PartitionName;
 import io.crate.analyze.Id;
 import io.crate.metadata.ColumnIdent;
@@ -45,6 +46,7 @@ import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.lucene.BytesRefs;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -53,7 +55,7 @@ import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public abstract class AbstractIndexWriterProjector implements Projector {
+public abstract class AbstractIndexWriterProjector implements CheckpointingProjector {
 
     private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
     private final CollectExpression<?>[] collectExpressions;
@@ -77,6 +79,7 @@ public abstract class AbstractIndexWriterProjector implements Projector {
     private final LoadingCache<List<BytesRef>, String> partitionIdentCache;
 
     protected AbstractIndexWriterProjector(ClusterService clusterService,
+                                           ThreadPool threadPool,
                                            Settings settings,
                                            TransportShardBulkActionDelegate transportShardBulkActionDelegate,
                                            TransportCreateIndexAction transportCreateIndexAction,
@@ -111,6 +114,7 @@ public abstract class AbstractIndexWriterProjector implements Projector {
         }
         this.bulkShardProcessor = new BulkShardProcessor(
                 clusterService,
+                threadPool,
                 settings,
                 transportShardBulkActionDelegate,
                 transportCreateIndexAction,
@@ -159,6 +163,11 @@ public abstract class AbstractIndexWriterProjector implements Projector {
         return bulkShardProcessor.add(indexName, source, id, clusteredByValue);
     }
 
+    @Override
+    public ListenableFuture<?> checkpoint() {
+        return bulkShardProcessor.checkpoint();
+    }
+
     public Id getId() {
         return new Id(
                 primaryKeys,
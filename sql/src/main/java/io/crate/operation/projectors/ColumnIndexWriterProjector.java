@@ -34,6 +34,7 @@ import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -50,6 +51,7 @@ public class ColumnIndexWriterProjector extends AbstractIndexWriterProjector {
     private final List<ColumnIdent> columnIdents;
 
     protected ColumnIndexWriterProjector(ClusterService clusterService,
+                                         ThreadPool threadPool,
                                          Settings settings,
                                          TransportShardBulkActionDelegate transportShardBulkActionDelegate,
                                          TransportCreateIndexAction transportCreateIndexAction,
@@ -64,7 +66,7 @@ public class ColumnIndexWriterProjector extends AbstractIndexWriterProjector {
                                          CollectExpression<?>[] collectExpressions,
                                          @Nullable Integer bulkActions,
                                          boolean autoCreateIndices) {
-        super(clusterService, settings, transportShardBulkActionDelegate,
+        super(clusterService, threadPool, settings, transportShardBulkActionDelegate,
                 transportCreateIndexAction, tableName, primaryKeys, idInputs,
                 partitionedByInputs, routingIdent, routingInput, collectExpressions,
                 bulkActions, autoCreateIndices);
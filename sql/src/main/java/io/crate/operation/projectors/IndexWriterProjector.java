@@ -39,6 +39,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -50,6 +51,7 @@ public class IndexWriterProjector extends AbstractIndexWriterProjector {
     private final BytesReferenceGenerator generator;
 
     public IndexWriterProjector(ClusterService clusterService,
+                                ThreadPool threadPool,
                                 Settings settings,
                                 TransportShardBulkActionDelegate transportShardBulkActionDelegate,
                                 TransportCreateIndexAction transportCreateIndexAction,
@@ -65,7 +67,7 @@ public class IndexWriterProjector extends AbstractIndexWriterProjector {
                                 @Nullable String[] includes,
                                 @Nullable String[] excludes,
                                 boolean autoCreateIndices) {
-        super(clusterService, settings, transportShardBulkActionDelegate,
+        super(clusterService, threadPool, settings, transportShardBulkActionDelegate,
                 transportCreateIndexAction, tableName, primaryKeys, idInputs, partitionedByInputs,
                 routingIdent, routingInput,
                 collectExpressions, bulkActions, autoCreateIndices);
@@ -31,13 +31,16 @@ import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.collect.CollectInputSymbolVisitor;
 import io.crate.planner.projection.*;
 import io.crate.planner.symbol.*;
+import io.crate.types.DataType;
 import io.crate.types.StringType;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +48,7 @@ import java.util.Map;
 public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionToProjectorVisitor.Context, Projector> {
 
     private final ClusterService clusterService;
+    private final ThreadPool threadPool;
     private final Settings settings;
     private final TransportActionProvider transportActionProvider;
     private final ImplementationSymbolVisitor symbolVisitor;
@@ -54,6 +58,7 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
 
 
     public ProjectionToProjectorVisitor(ClusterService clusterService,
+                                        ThreadPool threadPool,
                                         Settings settings,
                                         TransportActionProvider transportActionProvider,
                                         ImplementationSymbolVisitor symbolVisitor,
@@ -61,6 +66,7 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
                                         @Nullable ShardId shardId,
                                         @Nullable CollectInputSymbolVisitor docInputSymbolVisitor) {
         this.clusterService = clusterService;
+        this.threadPool = threadPool;
         this.settings = settings;
         this.transportActionProvider = transportActionProvider;
         this.symbolVisitor = symbolVisitor;
@@ -70,18 +76,20 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
     }
 
     public ProjectionToProjectorVisitor(ClusterService clusterService,
+                                        ThreadPool threadPool,
                                         Settings settings,
                                         TransportActionProvider transportActionProvider,
                                         ImplementationSymbolVisitor symbolVisitor,
                                         EvaluatingNormalizer normalizer) {
-        this(clusterService, settings, transportActionProvider, symbolVisitor, normalizer, null, null);
+        this(clusterService, threadPool, settings, transportActionProvider, symbolVisitor, normalizer, null, null);
     }
 
     public ProjectionToProjectorVisitor(ClusterService clusterService,
+                                        ThreadPool threadPool,
                                         Settings settings,
                                         TransportActionProvider transportActionProvider,
                                         ImplementationSymbolVisitor symbolVisitor) {
-        this(clusterService, settings, transportActionProvider, symbolVisitor,
+        this(clusterService, threadPool, settings, transportActionProvider, symbolVisitor,
                 new EvaluatingNormalizer(
                         symbolVisitor.functions(),
                         symbolVisitor.rowGranularity(),
@@ -170,10 +178,12 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
         ImplementationSymbolVisitor.Context symbolContext = new ImplementationSymbolVisitor.Context();
 
         List<Input<?>> inputs = null;
+        List<DataType> inputTypes = new ArrayList<>(projection.inputs().size());
         if (!projection.inputs().isEmpty()) {
             inputs = new ArrayList<>(projection.inputs().size());
             for (Symbol symbol : projection.inputs()) {
                 inputs.add(symbolVisitor.process(symbol, symbolContext));
+                inputTypes.add(symbol.valueType());
             }
         }
         Map<ColumnIdent, Object> overwrites = symbolMapToObject(projection.overwrites(), symbolContext);
@@ -182,7 +192,10 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
         String uri = StringValueSymbolVisitor.INSTANCE.process(projection.uri());
         if (projection.isDirectoryUri()) {
             StringBuilder sb = new StringBuilder(uri);
-            Symbol resolvedFileName = normalizer.normalize(WriterProjection.DIRECTORY_TO_FILENAME);
+            Symbol resolvedFileName = normalizer.normalize(
+                    WriterProjector.FORMAT_COLUMNAR.equalsIgnoreCase(projection.settings().get("format"))
+                            ? WriterProjection.DIRECTORY_TO_COLUMNAR_FILENAME
+                            : WriterProjection.DIRECTORY_TO_FILENAME);
             assert resolvedFileName instanceof Literal;
             assert resolvedFileName.valueType() == StringType.INSTANCE;
             String fileName = StringValueSymbolVisitor.INSTANCE.process(resolvedFileName);
@@ -198,9 +211,12 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
         return new WriterProjector(
                 uri,
                 projection.settings(),
+                threadPool.executor(WriterProjector.THREAD_POOL),
                 inputs,
                 symbolContext.collectExpressions(),
-                overwrites
+                overwrites,
+                projection.outputNames() == null ? Collections.<String>emptyList() : projection.outputNames(),
+                inputTypes
         );
     }
 
@@ -233,6 +249,7 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
         }
         return new IndexWriterProjector(
                 clusterService,
+                threadPool,
                 settings,
                 transportActionProvider.transportShardBulkAction(),
                 transportActionProvider.transportCreateIndexAction(),
@@ -272,6 +289,7 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
         }
         return new ColumnIndexWriterProjector(
                 clusterService,
+                threadPool,
                 settings,
                 transportActionProvider.transportShardBulkAction(),
                 transportActionProvider.transportCreateIndexAction(),
@@ -317,7 +335,7 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
 
         return new UpdateProjector(
                 shardId,
-                transportActionProvider.transportShardUpdateAction(),
+                transportActionProvider.transportShardBulkUpdateAction(),
                 ctx.collectExpressions().toArray(new CollectExpression[ctx.collectExpressions().size()])[0],
                 projection.assignments(),
                 projection.requiredVersion());
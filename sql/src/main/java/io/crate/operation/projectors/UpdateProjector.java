@@ -24,9 +24,9 @@ package io.crate.operation.projectors;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
-import io.crate.executor.transport.ShardUpdateRequest;
-import io.crate.executor.transport.TransportShardUpdateAction;
-import io.crate.executor.transport.ShardUpdateResponse;
+import io.crate.executor.transport.ShardBulkUpdateRequest;
+import io.crate.executor.transport.ShardBulkUpdateResponse;
+import io.crate.executor.transport.TransportShardBulkUpdateAction;
 import io.crate.operation.ProjectorUpstream;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.planner.symbol.Symbol;
@@ -34,7 +34,6 @@ import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
-import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.shard.ShardId;
 
@@ -45,34 +44,57 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Updates the documents of a shard whose uids it receives.
+ *
+ * The ids are buffered and sent as batches of {@link #BULK_SIZE} documents
+ * to the {@link TransportShardBulkUpdateAction}, which applies them on the collecting thread
+ * if the primary shard is local.
+ * The row count of the updated documents is passed to the downstream once all batches are done.
+ */
 public class UpdateProjector implements Projector {
 
+    static final int BULK_SIZE = 1000;
+
     private Projector downstream;
     private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
     private final AtomicReference<Throwable> upstreamFailure = new AtomicReference<>(null);
     private final List<SettableFuture<Long>> updateResults = new ArrayList<>();
 
     private final ShardId shardId;
-    private final TransportShardUpdateAction transportUpdateAction;
+    private final TransportShardBulkUpdateAction transportBulkUpdateAction;
     private final CollectExpression<?> collectUidExpression;
     // The key of this map is expected to be a FQN columnIdent.
     private final Map<String, Symbol> assignments;
     @Nullable
     private final Long requiredVersion;
+    private final int bulkSize;
     private final Object lock = new Object();
+    private List<String> pendingIds;
 
     private final ESLogger logger = Loggers.getLogger(getClass());
 
     public UpdateProjector(ShardId shardId,
-                           TransportShardUpdateAction transportUpdateAction,
+                           TransportShardBulkUpdateAction transportBulkUpdateAction,
                            CollectExpression<?> collectUidExpression,
                            Map<String, Symbol> assignments,
                            @Nullable Long requiredVersion) {
+        this(shardId, transportBulkUpdateAction, collectUidExpression, assignments, requiredVersion, BULK_SIZE);
+    }
+
+    UpdateProjector(ShardId shardId,
+                    TransportShardBulkUpdateAction transportBulkUpdateAction,
+                    CollectExpression<?> collectUidExpression,
+                    Map<String, Symbol> assignments,
+                    @Nullable Long requiredVersion,
+                    int bulkSize) {
         this.shardId = shardId;
-        this.transportUpdateAction = transportUpdateAction;
+        this.transportBulkUpdateAction = transportBulkUpdateAction;
         this.collectUidExpression = collectUidExpression;
         this.assignments = assignments;
         this.requiredVersion = requiredVersion;
+        this.bulkSize = bulkSize;
+        this.pendingIds = new ArrayList<>(bulkSize);
     }
 
     @Override
@@ -84,40 +106,65 @@ public class UpdateProjector implements Projector {
 
     @Override
     public boolean setNextRow(Object... row) {
-        Uid uid;
+        List<String> ids = null;
         synchronized (lock) {
             // resolve the Uid
             collectUidExpression.setNextRow(row);
-            uid = Uid.createUid(((BytesRef)collectUidExpression.value()).utf8ToString());
+            Uid uid = Uid.createUid(((BytesRef)collectUidExpression.value()).utf8ToString());
+            pendingIds.add(uid.id());
+            if (pendingIds.size() >= bulkSize) {
+                ids = pendingIds;
+                pendingIds = new ArrayList<>(bulkSize);
+            }
+        }
+        if (ids != null) {
+            executeBulk(ids);
         }
+        return true;
+    }
 
-        final SettableFuture<Long> future = SettableFuture.create();
-        updateResults.add(future);
+    private void flush() {
+        List<String> ids;
+        synchronized (lock) {
+            ids = pendingIds;
+            pendingIds = new ArrayList<>(0);
+        }
+        if (!ids.isEmpty()) {
+            executeBulk(ids);
+        }
+    }
 
-        final ShardUpdateRequest updateRequest = new ShardUpdateRequest(shardId, uid, requiredVersion);
-        updateRequest.assignments(assignments);
+    private void executeBulk(final List<String> ids) {
+        final SettableFuture<Long> future = SettableFuture.create();
+        synchronized (lock) {
+            updateResults.add(future);
+        }
 
-        transportUpdateAction.execute(updateRequest, new ActionListener<ShardUpdateResponse>() {
+        ShardBulkUpdateRequest updateRequest = new ShardBulkUpdateRequest(shardId, ids, assignments);
+        if (requiredVersion != null) {
+            updateRequest.version(requiredVersion);
+        }
+        transportBulkUpdateAction.executeLocal(updateRequest, new ActionListener<ShardBulkUpdateResponse>() {
             @Override
-            public void onResponse(ShardUpdateResponse updateResponse) {
-                future.set(1L);
+            public void onResponse(ShardBulkUpdateResponse updateResponse) {
+                for (ShardBulkUpdateResponse.Failure failure : updateResponse.failures()) {
+                    if (failure.versionConflict()) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Updating document with id {} failed because of a version conflict", failure.id());
+                        }
+                    } else {
+                        logger.error("Updating document with id {} failed: {}", failure.id(), failure.message());
+                    }
+                }
+                future.set(updateResponse.updated());
             }
 
             @Override
             public void onFailure(Throwable e) {
-                if (e instanceof VersionConflictEngineException) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Updating document with id {} failed because of a version conflict", updateRequest.id());
-                    }
-                    future.set(0L);
-                } else {
-                    logger.error("Updating document with id {} failed", e, updateRequest.id());
-                    future.set(0L);
-                }
+                logger.error("Updating {} documents of shard {} failed", e, ids.size(), shardId);
+                future.set(0L);
             }
         });
-
-        return true;
     }
 
     @Override
@@ -130,7 +177,7 @@ public class UpdateProjector implements Projector {
         if (remainingUpstreams.decrementAndGet() > 0) {
             return;
         }
-
+        flush();
         if (downstream != null) {
             collectUpdateResultsAndPassOverRowCount();
         }
@@ -142,6 +189,7 @@ public class UpdateProjector implements Projector {
         if (remainingUpstreams.decrementAndGet() > 0) {
             return;
         }
+        flush();
         if (downstream != null) {
             collectUpdateResultsAndPassOverRowCount();
         }
@@ -28,9 +28,11 @@ import io.crate.metadata.ColumnIdent;
 import io.crate.operation.Input;
 import io.crate.operation.ProjectorUpstream;
 import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.projectors.writer.ColumnarWriter;
 import io.crate.operation.projectors.writer.Output;
 import io.crate.operation.projectors.writer.OutputFile;
 import io.crate.operation.projectors.writer.OutputS3;
+import io.crate.types.DataType;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -43,6 +45,7 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -51,10 +54,22 @@ public class WriterProjector implements Projector {
 
     private static final byte NEW_LINE = (byte) '\n';
 
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_COLUMNAR = "columnar";
+
+    /**
+     * name of the node thread pool the blocks of compressed outputs are compressed
+     * and the parts of S3 outputs are uploaded on
+     */
+    public static final String THREAD_POOL = "copy_to";
+
     private final URI uri;
     private final Set<CollectExpression<?>> collectExpressions;
     private final List<Input<?>> inputs;
     private final Map<String, Object> overwrites;
+    private final boolean columnar;
+    private final List<String> columnNames;
+    private final List<DataType> columnTypes;
     private Output output;
 
     protected final AtomicInteger remainingUpstreams = new AtomicInteger();
@@ -74,21 +89,44 @@ public class WriterProjector implements Projector {
      */
     public WriterProjector(String uri,
                            Settings settings,
+                           Executor compressionExecutor,
                            @Nullable List<Input<?>> inputs,
                            Set<CollectExpression<?>> collectExpressions,
                            Map<ColumnIdent, Object> overwrites) {
+        this(uri, settings, compressionExecutor, inputs, collectExpressions, overwrites,
+                Collections.<String>emptyList(), Collections.<DataType>emptyList());
+    }
+
+    /**
+     * @param columnNames names of the inputs, written to the schema of the columnar format
+     * @param columnTypes types of the inputs, used to encode the columns of the columnar format
+     */
+    public WriterProjector(String uri,
+                           Settings settings,
+                           Executor compressionExecutor,
+                           @Nullable List<Input<?>> inputs,
+                           Set<CollectExpression<?>> collectExpressions,
+                           Map<ColumnIdent, Object> overwrites,
+                           List<String> columnNames,
+                           List<DataType> columnTypes) {
         this.collectExpressions = collectExpressions;
         this.inputs = inputs;
         this.overwrites = toNestedStringObjectMap(overwrites);
+        this.columnar = settings.get("format", FORMAT_JSON).toLowerCase(Locale.ENGLISH).equals(FORMAT_COLUMNAR);
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        if (columnar && (inputs == null || inputs.size() != columnTypes.size() || inputs.size() != columnNames.size())) {
+            throw new ValidationException("The columnar format requires a name and a type for every column");
+        }
         try {
             this.uri = new URI(uri);
         } catch (URISyntaxException e) {
             throw new ValidationException(String.format("Invalid uri '%s'", uri), e);
         }
         if (this.uri.getScheme() == null || this.uri.getScheme().equals("file")) {
-            this.output = new OutputFile(this.uri, settings);
+            this.output = new OutputFile(this.uri, settings, compressionExecutor);
         } else if (this.uri.getScheme().equalsIgnoreCase("s3")) {
-            this.output = new OutputS3(this.uri, settings);
+            this.output = new OutputS3(this.uri, settings, compressionExecutor);
         } else {
             throw new UnsupportedFeatureException(String.format("Unknown scheme '%s'", this.uri.getScheme()));
         }
@@ -136,7 +174,10 @@ public class WriterProjector implements Projector {
         counter.set(0);
         try {
             output.open();
-            if (!overwrites.isEmpty()) {
+            if (columnar) {
+                rowWriter = new ColumnarRowWriter(output.getOutputStream(), collectExpressions, inputs,
+                        columnNames, columnTypes, failure);
+            } else if (!overwrites.isEmpty()) {
                 rowWriter = new DocWriter(
                         output.getOutputStream(), collectExpressions, overwrites, failure);
             }
@@ -318,4 +359,52 @@ public class WriterProjector implements Projector {
             builder.close();
         }
     }
+
+    static class ColumnarRowWriter implements RowWriter {
+        private final Set<CollectExpression<?>> collectExpressions;
+        private final List<Input<?>> inputs;
+        private final AtomicReference<Throwable> failure;
+        private final ColumnarWriter writer;
+        private final Object[] values;
+
+        ColumnarRowWriter(OutputStream outputStream,
+                          Set<CollectExpression<?>> collectExpressions,
+                          List<Input<?>> inputs,
+                          List<String> columnNames,
+                          List<DataType> columnTypes,
+                          AtomicReference<Throwable> failure) throws IOException {
+            this.collectExpressions = collectExpressions;
+            this.inputs = inputs;
+            this.failure = failure;
+            writer = new ColumnarWriter(outputStream, columnNames, columnTypes);
+            values = new Object[inputs.size()];
+        }
+
+        @Override
+        public void write(Object[] row) {
+            for (CollectExpression<?> collectExpression : collectExpressions) {
+                collectExpression.setNextRow(row);
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = inputs.get(i).value();
+            }
+            try {
+                writer.write(values);
+            } catch (IOException e) {
+                failure.set(new UnhandledServerException("Failed to write row to output", e));
+            }
+        }
+
+        @Override
+        public void close() {
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                writer.finish();
+            } catch (IOException e) {
+                failure.set(new UnhandledServerException("Failed to write footer to output", e));
+            }
+        }
+    }
 }
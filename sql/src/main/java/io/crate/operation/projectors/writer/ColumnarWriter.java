@@ -0,0 +1,164 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import com.google.common.base.Preconditions;
+import io.crate.Streamer;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes rows in a self-describing columnar file format.
+ *
+ * Rows are buffered column by column into row groups, every column is encoded with the
+ * {@link io.crate.Streamer} of its {@link io.crate.types.DataType}.
+ *
+ * <pre>
+ * file     := MAGIC version:vint rowGroup* footer footerLength:int MAGIC
+ * rowGroup := numRows:vint (columnLength:vint columnBytes)*
+ * footer   := numColumns:vint (name:string type)* numRowGroups:vint (offset:vlong numRows:vint)*
+ * </pre>
+ *
+ * The footer is written last so the schema and the positions of the row groups can be read
+ * from the end of the file. A reader for these files only exists in the tests so far,
+ * COPY FROM doesn't read the columnar format.
+ */
+@NotThreadSafe
+public class ColumnarWriter {
+
+    public static final byte[] MAGIC = new byte[]{'C', 'C', 'O', 'L'};
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = "ccol";
+
+    public static final int DEFAULT_ROW_GROUP_SIZE = 10000;
+    public static final int DEFAULT_MAX_ROW_GROUP_BYTES = 8 * 1024 * 1024;
+
+    private final OutputStream out;
+    private final List<String> columnNames;
+    private final List<DataType> columnTypes;
+    private final Streamer[] streamers;
+    private final BytesStreamOutput[] columns;
+    private final int rowGroupSize;
+    private final int maxRowGroupBytes;
+
+    private final List<Long> rowGroupOffsets = new ArrayList<>();
+    private final List<Integer> rowGroupRows = new ArrayList<>();
+    private long position = 0;
+    private int bufferedRows = 0;
+    private int bufferedBytes = 0;
+
+    public ColumnarWriter(OutputStream out, List<String> columnNames, List<DataType> columnTypes) throws IOException {
+        this(out, columnNames, columnTypes, DEFAULT_ROW_GROUP_SIZE, DEFAULT_MAX_ROW_GROUP_BYTES);
+    }
+
+    public ColumnarWriter(OutputStream out,
+                          List<String> columnNames,
+                          List<DataType> columnTypes,
+                          int rowGroupSize,
+                          int maxRowGroupBytes) throws IOException {
+        Preconditions.checkArgument(columnNames.size() == columnTypes.size(),
+                "number of column names and column types must match");
+        this.out = out;
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.rowGroupSize = rowGroupSize;
+        this.maxRowGroupBytes = maxRowGroupBytes;
+        streamers = new Streamer[columnTypes.size()];
+        columns = new BytesStreamOutput[columnTypes.size()];
+        for (int i = 0; i < columnTypes.size(); i++) {
+            streamers[i] = columnTypes.get(i).streamer();
+            columns[i] = new BytesStreamOutput();
+        }
+        BytesStreamOutput header = new BytesStreamOutput();
+        header.writeBytes(MAGIC);
+        header.writeVInt(VERSION);
+        write(header);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void write(Object[] values) throws IOException {
+        assert values.length == columns.length : "number of values must match the number of columns";
+        for (int i = 0; i < values.length; i++) {
+            BytesStreamOutput column = columns[i];
+            int size = column.size();
+            streamers[i].writeValueTo(column, columnTypes.get(i).value(values[i]));
+            bufferedBytes += column.size() - size;
+        }
+        bufferedRows++;
+        if (bufferedRows >= rowGroupSize || bufferedBytes >= maxRowGroupBytes) {
+            flushRowGroup();
+        }
+    }
+
+    private void flushRowGroup() throws IOException {
+        if (bufferedRows == 0) {
+            return;
+        }
+        BytesStreamOutput rowGroup = new BytesStreamOutput(bufferedBytes + 5 * (columns.length + 1));
+        rowGroup.writeVInt(bufferedRows);
+        for (BytesStreamOutput column : columns) {
+            rowGroup.writeVInt(column.size());
+            column.bytes().writeTo(rowGroup);
+            column.reset();
+        }
+        rowGroupOffsets.add(position);
+        rowGroupRows.add(bufferedRows);
+        write(rowGroup);
+        bufferedRows = 0;
+        bufferedBytes = 0;
+    }
+
+    /**
+     * writes the buffered rows and the footer, the underlying stream is not closed
+     */
+    public void finish() throws IOException {
+        flushRowGroup();
+        BytesStreamOutput footer = new BytesStreamOutput();
+        footer.writeVInt(columnNames.size());
+        for (int i = 0; i < columnNames.size(); i++) {
+            footer.writeString(columnNames.get(i));
+            DataTypes.toStream(columnTypes.get(i), footer);
+        }
+        footer.writeVInt(rowGroupOffsets.size());
+        for (int i = 0; i < rowGroupOffsets.size(); i++) {
+            footer.writeVLong(rowGroupOffsets.get(i));
+            footer.writeVInt(rowGroupRows.get(i));
+        }
+        int footerLength = footer.size();
+        footer.writeInt(footerLength);
+        footer.writeBytes(MAGIC);
+        write(footer);
+        out.flush();
+    }
+
+    private void write(BytesStreamOutput bytes) throws IOException {
+        bytes.bytes().writeTo(out);
+        position += bytes.size();
+    }
+}
@@ -25,9 +25,27 @@ import com.google.common.base.Preconditions;
 import org.elasticsearch.common.settings.Settings;
 
 import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
 public abstract class Output {
 
+    private static final int MAX_PENDING_BLOCKS = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * shared by all outputs, bounds the blocks waiting for compression on this node
+     */
+    private static final Semaphore COMPRESSION_PERMITS = new Semaphore(MAX_PENDING_BLOCKS);
+
+    private final Executor compressionExecutor;
+
+    /**
+     * @param compressionExecutor executor the blocks of a compressed output are compressed on concurrently
+     */
+    protected Output(Executor compressionExecutor) {
+        this.compressionExecutor = compressionExecutor;
+    }
+
     public abstract void open() throws java.io.IOException;
 
     public abstract void close() throws java.io.IOException;
@@ -44,4 +62,9 @@ public abstract class Output {
 
         return false;
     }
+
+    protected OutputStream gzip(OutputStream outputStream) {
+        return new ParallelGZIPOutputStream(outputStream, compressionExecutor, COMPRESSION_PERMITS,
+                ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE, MAX_PENDING_BLOCKS);
+    }
 }
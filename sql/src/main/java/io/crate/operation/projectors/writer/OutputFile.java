@@ -29,7 +29,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.Executor;
 
 public class OutputFile extends Output {
 
@@ -38,7 +38,8 @@ public class OutputFile extends Output {
     private final boolean overwrite;
     private final boolean compression;
 
-    public OutputFile(URI uri, Settings settings) {
+    public OutputFile(URI uri, Settings settings, Executor compressionExecutor) {
+        super(compressionExecutor);
         Preconditions.checkArgument(uri.getHost() == null);
         this.path = uri.getPath();
         compression = parseCompression(settings);
@@ -58,7 +59,7 @@ public class OutputFile extends Output {
         }
         os = new FileOutputStream(outFile);
         if (compression) {
-            os = new GZIPOutputStream(os);
+            os = gzip(os);
         }
     }
 
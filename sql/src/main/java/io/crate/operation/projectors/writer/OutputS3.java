@@ -25,8 +25,7 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import io.crate.external.S3ClientHelper;
 import org.elasticsearch.common.settings.Settings;
 
@@ -34,34 +33,56 @@ import javax.annotation.concurrent.NotThreadSafe;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.zip.GZIPOutputStream;
-
-import static org.elasticsearch.common.util.concurrent.EsExecutors.daemonThreadFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
+/**
+ * writes to a multipart upload, the parts are uploaded on the given node executor,
+ * which is shared by all outputs. A part whose upload is rejected is uploaded on the writing thread.
+ */
 @NotThreadSafe
 public class OutputS3 extends Output {
 
+    /**
+     * the maximum number of parts of one output which are buffered and uploaded at the same time
+     */
+    static final int MAX_CONCURRENT_PARTS = 4;
+
     private final URI uri;
     private final boolean compression;
+    private final S3ClientHelper s3ClientHelper;
+    private final Executor uploadExecutor;
     private OutputStream outputStream;
 
-    public OutputS3(URI uri, Settings settings) {
+    /**
+     * @param executor node executor the blocks of a compressed output are compressed and the parts are uploaded on
+     */
+    public OutputS3(URI uri, Settings settings, Executor executor) {
+        this(uri, settings, executor, new S3ClientHelper());
+    }
+
+    public OutputS3(URI uri, Settings settings, Executor executor, S3ClientHelper s3ClientHelper) {
+        super(executor);
         this.uri = uri;
+        this.s3ClientHelper = s3ClientHelper;
+        this.uploadExecutor = executor;
         compression = parseCompression(settings);
     }
 
     @Override
     public void open() throws IOException {
-        outputStream = new S3OutputStream(uri, new S3ClientHelper());
+        outputStream = new S3OutputStream(uri, s3ClientHelper, uploadExecutor);
         if (compression) {
-            outputStream = new GZIPOutputStream(outputStream);
+            outputStream = gzip(outputStream);
         }
     }
 
@@ -87,7 +108,8 @@ public class OutputS3 extends Output {
         private final InitiateMultipartUploadResult multipartUpload;
         private final String bucketName;
         private final String key;
-        private final ListeningExecutorService executorService;
+        private final Executor uploadExecutor;
+        private final Semaphore uploadPermits = new Semaphore(MAX_CONCURRENT_PARTS);
         final private List<PartETag> etags = Collections.<PartETag>synchronizedList(new ArrayList<PartETag>());
         final private List<ListenableFuture<?>> pendingUploads = new ArrayList<>();
 
@@ -96,13 +118,12 @@ public class OutputS3 extends Output {
         long bytesWritten = 0;
         int partNumber = 1;
 
-        private S3OutputStream(URI uri, S3ClientHelper s3ClientHelper) throws IOException {
+        private S3OutputStream(URI uri, S3ClientHelper s3ClientHelper, Executor uploadExecutor) throws IOException {
             bucketName = uri.getHost();
             key = uri.getPath().substring(1);
             outputStream = new ByteArrayOutputStream();
             client = s3ClientHelper.client(uri);
-            executorService = MoreExecutors.listeningDecorator(
-                Executors.newCachedThreadPool(daemonThreadFactory("OutputS3")));
+            this.uploadExecutor = uploadExecutor;
             multipartUpload = client.initiateMultipartUpload(
                     new InitiateMultipartUploadRequest(bucketName, key));
         }
@@ -141,53 +162,93 @@ public class OutputS3 extends Output {
                 outputStream.close();
                 outputStream = new ByteArrayOutputStream();
                 partNumber++;
-                ListenableFuture<?> future = executorService.submit(new Runnable() {
+                // blocks the writer if too many parts are in flight, this bounds the memory of an output
+                try {
+                    uploadPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                ListenableFutureTask<Void> task = ListenableFutureTask.create(new Runnable() {
                     @Override
                     public void run() {
-                        UploadPartRequest uploadPartRequest = new UploadPartRequest()
-                                .withBucketName(bucketName)
-                                .withKey(key)
-                                .withPartNumber(currentPart)
-                                .withPartSize(currentPartSize)
-                                .withFileOffset(offset)
-                                .withUploadId(multipartUpload.getUploadId())
-                                .withInputStream(inputStream);
-                        UploadPartResult uploadPartResult = client.uploadPart(uploadPartRequest);
-                        etags.add(uploadPartResult.getPartETag());
+                        try {
+                            uploadPart(currentPart, currentPartSize, offset, inputStream);
+                        } finally {
+                            uploadPermits.release();
+                        }
                     }
-                });
-                pendingUploads.add(future);
+                }, null);
+                pendingUploads.add(task);
+                try {
+                    uploadExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
                 currentPartBytes = 0;
             }
         }
 
-        @Override
-        public void close() throws IOException {
+        private void uploadPart(int part, long partSize, long offset, InputStream inputStream) {
             UploadPartRequest uploadPartRequest = new UploadPartRequest()
                     .withBucketName(bucketName)
                     .withKey(key)
-                    .withPartNumber(partNumber)
-                    .withPartSize(outputStream.size())
-                    .withFileOffset(bytesWritten)
+                    .withPartNumber(part)
+                    .withPartSize(partSize)
+                    .withFileOffset(offset)
                     .withUploadId(multipartUpload.getUploadId())
-                    .withInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+                    .withInputStream(inputStream);
             UploadPartResult uploadPartResult = client.uploadPart(uploadPartRequest);
             etags.add(uploadPartResult.getPartETag());
-            ListenableFuture<List<Object>> future = Futures.allAsList(pendingUploads);
+        }
+
+        @Override
+        public void close() throws IOException {
             try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
+                uploadPart(partNumber, outputStream.size(), bytesWritten,
+                        new ByteArrayInputStream(outputStream.toByteArray()));
+                Futures.allAsList(pendingUploads).get();
+                // parts are uploaded concurrently, S3 requires them in ascending order
+                List<PartETag> sortedEtags = new ArrayList<>(etags);
+                Collections.sort(sortedEtags, new Comparator<PartETag>() {
+                    @Override
+                    public int compare(PartETag o1, PartETag o2) {
+                        return Integer.compare(o1.getPartNumber(), o2.getPartNumber());
+                    }
+                });
+                client.completeMultipartUpload(
+                        new CompleteMultipartUploadRequest(
+                                bucketName,
+                                key,
+                                multipartUpload.getUploadId(),
+                                sortedEtags)
+                );
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                throw new IOException(e);
+            } catch (ExecutionException | RuntimeException e) {
+                // a failed part, including the last one, or a failed completion aborts the whole upload
+                abort();
                 throw new IOException(e);
             }
-            client.completeMultipartUpload(
-                    new CompleteMultipartUploadRequest(
-                            bucketName,
-                            key,
-                            multipartUpload.getUploadId(),
-                            etags)
-            );
-            executorService.shutdown();
             super.close();
         }
+
+        /**
+         * aborts the multipart upload once the parts still being uploaded are done,
+         * parts uploaded after the abort would be kept
+         */
+        private void abort() {
+            try {
+                Futures.successfulAsList(pendingUploads).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // successfulAsList never fails
+            }
+            client.abortMultipartUpload(
+                    new AbortMultipartUploadRequest(bucketName, key, multipartUpload.getUploadId()));
+        }
     }
 }
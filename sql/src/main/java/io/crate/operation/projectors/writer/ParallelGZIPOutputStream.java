@@ -0,0 +1,165 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import com.google.common.util.concurrent.Futures;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A gzip output stream that compresses blocks of the data concurrently.
+ *
+ * Every block is written as a gzip member of its own. The concatenated members are a valid gzip
+ * stream which {@link java.util.zip.GZIPInputStream} and gunzip read as a whole.
+ * At most maxPendingBlocks blocks are buffered, writing blocks if this limit is reached.
+ * A block is only handed to the executor if one of the given compression permits is available,
+ * otherwise it is compressed by the writing thread. The permits may be shared by many streams
+ * to bound the blocks waiting for compression of all of them.
+ */
+@NotThreadSafe
+class ParallelGZIPOutputStream extends OutputStream {
+
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+    private final Executor executor;
+    private final Semaphore compressionPermits;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean blockSubmitted = false;
+
+    ParallelGZIPOutputStream(OutputStream out, Executor executor, int blockSize, int maxPendingBlocks) {
+        this(out, executor, new Semaphore(maxPendingBlocks), blockSize, maxPendingBlocks);
+    }
+
+    ParallelGZIPOutputStream(OutputStream out,
+                             Executor executor,
+                             Semaphore compressionPermits,
+                             int blockSize,
+                             int maxPendingBlocks) {
+        this.out = out;
+        this.executor = executor;
+        this.compressionPermits = compressionPermits;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int toCopy = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, toCopy);
+            blockLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        while (pendingBlocks.size() >= maxPendingBlocks) {
+            writeCompressedBlock();
+        }
+        final byte[] data = block;
+        final int length = blockLength;
+        if (compressionPermits.tryAcquire()) {
+            FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    try {
+                        return compress(data, length);
+                    } finally {
+                        compressionPermits.release();
+                    }
+                }
+            });
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+            pendingBlocks.add(task);
+        } else {
+            pendingBlocks.add(Futures.immediateFuture(compress(data, length)));
+        }
+        blockSubmitted = true;
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void writeCompressedBlock() throws IOException {
+        try {
+            out.write(pendingBlocks.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress block", e.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(data, 0, length);
+        gzip.close();
+        return compressed.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // an empty stream still needs one member to be valid gzip
+            if (blockLength > 0 || !blockSubmitted) {
+                submitBlock();
+            }
+            while (!pendingBlocks.isEmpty()) {
+                writeCompressedBlock();
+            }
+        } finally {
+            block = null;
+            out.close();
+        }
+    }
+}
@@ -39,11 +39,9 @@ public class ColumnExtractingLineExpression extends LineCollectorExpression<Obje
         return context.get(columnIdent);
     }
 
-    @Override
-    public void setNextLine(String line) {}
-
     @Override
     public void startCollect(CollectorContext context) {
         this.context = context.lineContext();
+        this.context.prefetchColumn(columnIdent);
     }
 }
@@ -21,21 +21,42 @@
 
 package io.crate.operation.reference.file;
 
+import io.crate.exceptions.UnhandledServerException;
 import io.crate.metadata.ColumnIdent;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 import javax.annotation.Nullable;
-import java.util.LinkedList;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 
 public class LineContext {
 
     private byte[] rawSource;
     private Map<String, Object> parsedSource;
 
+    /**
+     * columns and values of a line which was already split into typed values, e.g. a CSV line
+     */
+    private String[] columns;
+    private Object[] values;
+
+    /**
+     * columns which are looked up with a single streaming scan of the raw source instead of
+     * parsing the whole source into a map, as long as nobody needs the whole map.
+     */
+    private final List<List<String>> prefetchColumns = new ArrayList<>();
+    private boolean sourceAsMapRequired = false;
+    private Object[] prefetchedValues;
+
     @Nullable
     public BytesRef sourceAsBytesRef() {
+        if (rawSource == null && values != null) {
+            rawSource = valuesToJson();
+        }
         if (rawSource != null) {
             return new BytesRef(rawSource);
         }
@@ -43,6 +64,12 @@ public class LineContext {
     }
 
     public Map<String, Object> sourceAsMap() {
+        if (parsedSource == null && values != null) {
+            parsedSource = new LinkedHashMap<>(columns.length);
+            for (int i = 0; i < columns.length; i++) {
+                parsedSource.put(columns[i], values[i]);
+            }
+        }
         if (parsedSource == null) {
             try {
                 parsedSource = XContentHelper.convertToMap(rawSource, false).v2();
@@ -54,9 +81,25 @@ public class LineContext {
     }
 
     public Object get(ColumnIdent columnIdent) {
+        if (values != null && parsedSource == null) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(columnIdent.name())) {
+                    // values are never objects, they can't have children
+                    return columnIdent.path().isEmpty() ? values[i] : null;
+                }
+            }
+            return null;
+        }
+        if (parsedSource == null && !sourceAsMapRequired && rawSource != null) {
+            int idx = prefetchColumns.indexOf(fqPath(columnIdent));
+            if (idx >= 0) {
+                if (prefetchedValues == null) {
+                    prefetchedValues = scanRawSource();
+                }
+                return prefetchedValues[idx];
+            }
+        }
         if (parsedSource == null) {
-            // TODO: optimize if collectorContext has prefetchColumns
-
             try {
                 parsedSource = XContentHelper.convertToMap(rawSource, false).v2();
             } catch (NullPointerException e) {
@@ -83,5 +126,132 @@ public class LineContext {
     public void rawSource(byte[] bytes) {
         this.rawSource = bytes;
         this.parsedSource = null;
+        this.prefetchedValues = null;
+        this.columns = null;
+        this.values = null;
+    }
+
+    /**
+     * register a column that will be looked up for every line
+     */
+    public void prefetchColumn(ColumnIdent columnIdent) {
+        List<String> path = fqPath(columnIdent);
+        if (!prefetchColumns.contains(path)) {
+            prefetchColumns.add(path);
+        }
+    }
+
+    /**
+     * the whole source is parsed for every line anyway, looking up columns in it is cheaper
+     * than an additional scan.
+     */
+    public void sourceAsMapRequired() {
+        sourceAsMapRequired = true;
+    }
+
+    private static List<String> fqPath(ColumnIdent columnIdent) {
+        List<String> path = new ArrayList<>(columnIdent.path().size() + 1);
+        path.add(columnIdent.name());
+        path.addAll(columnIdent.path());
+        return path;
+    }
+
+    /**
+     * reads the values of all prefetch columns, skipping everything else without building objects
+     */
+    private Object[] scanRawSource() {
+        Object[] result = new Object[prefetchColumns.size()];
+        XContentParser parser = null;
+        try {
+            parser = XContentFactory.xContent(rawSource).createParser(rawSource);
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                scanObject(parser, new ArrayList<String>(), result, result.length);
+            }
+        } catch (IOException e) {
+            throw new UnhandledServerException("Failed to parse the source of a line", e);
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of columns which are still not found
+     */
+    private int scanObject(XContentParser parser, List<String> path, Object[] result, int remaining) throws IOException {
+        while (remaining > 0 && parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            path.add(parser.currentName());
+            XContentParser.Token token = parser.nextToken();
+            int idx = prefetchColumns.indexOf(path);
+            if (idx >= 0) {
+                result[idx] = readValue(parser, token);
+                remaining--;
+            } else if (token == XContentParser.Token.START_OBJECT && isPrefixOfPrefetchColumn(path)) {
+                remaining = scanObject(parser, path, result, remaining);
+            } else {
+                parser.skipChildren();
+            }
+            path.remove(path.size() - 1);
+        }
+        return remaining;
+    }
+
+    private boolean isPrefixOfPrefetchColumn(List<String> path) {
+        for (List<String> column : prefetchColumns) {
+            if (column.size() > path.size() && column.subList(0, path.size()).equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static Object readValue(XContentParser parser, XContentParser.Token token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    list.add(readValue(parser, token));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.text();
+            case VALUE_NUMBER:
+                return parser.numberValue();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.objectText();
+        }
+    }
+
+    /**
+     * set the values of a line that doesn't need to be parsed,
+     * the JSON source is only built if the raw source is requested.
+     */
+    public void values(String[] columns, Object[] values) {
+        this.rawSource = null;
+        this.parsedSource = null;
+        this.prefetchedValues = null;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    private byte[] valuesToJson() {
+        try {
+            XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+            for (int i = 0; i < columns.length; i++) {
+                builder.field(columns[i], values[i]);
+            }
+            return builder.endObject().bytes().toBytes();
+        } catch (IOException e) {
+            throw new UnhandledServerException("Failed to build the source of a line", e);
+        }
     }
 }
@@ -29,5 +29,6 @@ public class PlanModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(PlanNodeStreamerVisitor.class).asEagerSingleton();
+        bind(TableStatsService.class).asEagerSingleton();
     }
 }
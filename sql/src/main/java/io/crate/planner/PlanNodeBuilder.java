@@ -28,14 +28,19 @@ import com.google.common.collect.Iterables;
 import io.crate.analyze.WhereClause;
 import io.crate.metadata.PartitionName;
 import io.crate.metadata.Routing;
+import io.crate.metadata.doc.DocTableInfo;
 import io.crate.metadata.table.TableInfo;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.DQLPlanNode;
 import io.crate.planner.node.dql.MergeNode;
 import io.crate.planner.projection.Projection;
 import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Reference;
 import io.crate.planner.symbol.Symbol;
+import io.crate.planner.symbol.SymbolType;
 import io.crate.planner.symbol.Symbols;
+import io.crate.types.DataTypes;
+import io.crate.types.ObjectStreamer;
 
 import javax.annotation.Nullable;
 import java.util.HashMap;
@@ -123,9 +128,31 @@ public class PlanNodeBuilder {
         node.projections(projections);
         node.isPartitioned(tableInfo.isPartitioned());
         setOutputTypes(node);
+        if (projections.isEmpty() && tableInfo instanceof DocTableInfo) {
+            node.objectStreamers(objectStreamers((DocTableInfo) tableInfo, toCollect));
+        }
         return node;
     }
 
+    /**
+     * resolves typed streamers for all object columns which are collected as they are
+     */
+    private static Map<Integer, ObjectStreamer> objectStreamers(DocTableInfo tableInfo, List<Symbol> toCollect) {
+        Map<Integer, ObjectStreamer> streamers = new HashMap<>();
+        for (int i = 0; i < toCollect.size(); i++) {
+            Symbol symbol = toCollect.get(i);
+            if (symbol.symbolType() == SymbolType.REFERENCE
+                    && symbol.valueType().equals(DataTypes.OBJECT)) {
+                ObjectStreamer streamer = tableInfo.objectStreamer(
+                        ((Reference) symbol).info().ident().columnIdent());
+                if (streamer != null && streamer.numKnownChildren() > 0) {
+                    streamers.put(i, streamer);
+                }
+            }
+        }
+        return streamers;
+    }
+
     private static Routing filterRouting(Routing routing, String includeTableName) {
         assert routing.hasLocations();
         assert includeTableName != null;
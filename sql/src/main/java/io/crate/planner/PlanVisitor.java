@@ -26,6 +26,8 @@ import io.crate.planner.node.dml.Update;
 import io.crate.planner.node.dql.DistributedGroupBy;
 import io.crate.planner.node.dql.GlobalAggregate;
 import io.crate.planner.node.dql.NonDistributedGroupBy;
+import io.crate.planner.node.dql.join.DistributedHashJoin;
+import io.crate.planner.node.dql.join.HashJoin;
 import org.elasticsearch.common.Nullable;
 
 public class PlanVisitor<C, R> {
@@ -65,4 +67,12 @@ public class PlanVisitor<C, R> {
     public R visitDistributedGroupBy(DistributedGroupBy node, C context) {
         return visitPlan(node, context);
     }
+
+    public R visitHashJoin(HashJoin node, C context) {
+        return visitPlan(node, context);
+    }
+
+    public R visitDistributedHashJoin(DistributedHashJoin node, C context) {
+        return visitPlan(node, context);
+    }
 }
@@ -36,6 +36,9 @@ import io.crate.metadata.*;
 import io.crate.metadata.doc.DocSysColumns;
 import io.crate.metadata.table.TableInfo;
 import io.crate.operation.aggregation.impl.SumAggregation;
+import io.crate.operation.collect.files.CsvOptions;
+import io.crate.operation.collect.files.FileReadingCollector;
+import io.crate.operation.projectors.WriterProjector;
 import io.crate.planner.consumer.ConsumingPlanner;
 import io.crate.planner.node.ddl.*;
 import io.crate.planner.node.dml.ESDeleteByQueryNode;
@@ -49,6 +52,7 @@ import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.InputColumn;
 import io.crate.planner.symbol.Reference;
 import io.crate.planner.symbol.Symbol;
+import io.crate.planner.symbol.SymbolFormatter;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import io.crate.types.LongType;
@@ -92,11 +96,13 @@ public class Planner extends AnalyzedStatementVisitor<Planner.Context, Plan> {
     private static final Context EMPTY_CONTEXT = new Context();
 
     @Inject
-    public Planner(ClusterService clusterService, AnalysisMetaData analysisMetaData) {
+    public Planner(ClusterService clusterService,
+                   AnalysisMetaData analysisMetaData,
+                   TableStatsService tableStatsService) {
         this.clusterService = clusterService;
         this.functions = analysisMetaData.functions();
         this.analysisMetaData = analysisMetaData;
-        this.consumingPlanner = new ConsumingPlanner(analysisMetaData);
+        this.consumingPlanner = new ConsumingPlanner(analysisMetaData, clusterService, tableStatsService);
     }
 
     /**
@@ -179,13 +185,31 @@ public class Planner extends AnalyzedStatementVisitor<Planner.Context, Plan> {
         projection.settings(analysis.settings());
 
         PlannerContextBuilder contextBuilder = new PlannerContextBuilder();
-        if (analysis.selectedColumns() != null && !analysis.selectedColumns().isEmpty()) {
-            List<Symbol> columns = new ArrayList<>(analysis.selectedColumns().size());
-            for (Symbol symbol : analysis.selectedColumns()) {
+        boolean columnar = WriterProjector.FORMAT_COLUMNAR.equalsIgnoreCase(analysis.settings().get("format"));
+        List<Symbol> selectedColumns = analysis.selectedColumns();
+        if (columnar && (selectedColumns == null || selectedColumns.isEmpty())) {
+            // the columnar format is typed, export all columns instead of the source
+            selectedColumns = new ArrayList<>(tableInfo.columns().size());
+            for (ReferenceInfo referenceInfo : tableInfo.columns()) {
+                selectedColumns.add(new Reference(referenceInfo));
+            }
+        }
+        if (selectedColumns != null && !selectedColumns.isEmpty()) {
+            List<Symbol> columns = new ArrayList<>(selectedColumns.size());
+            List<String> outputNames = new ArrayList<>(selectedColumns.size());
+            for (Symbol symbol : selectedColumns) {
+                if (symbol instanceof Reference) {
+                    outputNames.add(((Reference) symbol).info().ident().columnIdent().sqlFqn());
+                } else {
+                    outputNames.add(SymbolFormatter.format(symbol));
+                }
                 columns.add(DocReferenceConverter.convertIfPossible(symbol, analysis.table()));
             }
             contextBuilder = contextBuilder.output(columns);
             projection.inputs(contextBuilder.outputs());
+            if (columnar) {
+                projection.outputNames(outputNames);
+            }
         } else {
             Reference sourceRef;
             if (analysis.table().isPartitioned() && analysis.partitionIdent() == null) {
@@ -299,14 +323,52 @@ public class Planner extends AnalyzedStatementVisitor<Planner.Context, Plan> {
                 toCollect,
                 projections,
                 analysis.settings().get("compression", null),
-                analysis.settings().getAsBoolean("shared", null)
+                analysis.settings().getAsBoolean("shared", null),
+                fileFormat(analysis.settings()),
+                csvOptions(table, analysis.settings()),
+                prefetch(analysis.settings())
         );
+        collectNode.resume(analysis.settings().getAsBoolean("resume", false));
+        collectNode.errorFile(analysis.settings().get("error_file", null));
         PlanNodeBuilder.setOutputTypes(collectNode);
         plan.add(collectNode);
         plan.add(PlanNodeBuilder.localMerge(
                 ImmutableList.<Projection>of(localMergeProjection()), collectNode));
     }
 
+    private static FileReadingCollector.FileFormat fileFormat(Settings settings) {
+        return FileReadingCollector.FileFormat.valueOf(
+                settings.get("format", "json").toUpperCase(Locale.ENGLISH));
+    }
+
+    @Nullable
+    private static Integer prefetch(Settings settings) {
+        Integer prefetch = settings.getAsInt("prefetch", null);
+        Preconditions.checkArgument(prefetch == null || prefetch >= 0,
+                "\"prefetch\" must be greater than or equal to 0.");
+        return prefetch;
+    }
+
+    @Nullable
+    private static CsvOptions csvOptions(TableInfo table, Settings settings) {
+        if (fileFormat(settings) != FileReadingCollector.FileFormat.CSV) {
+            return null;
+        }
+        List<String> columnNames = new ArrayList<>(table.columns().size());
+        List<DataType> columnTypes = new ArrayList<>(table.columns().size());
+        for (ReferenceInfo column : table.columns()) {
+            columnNames.add(column.ident().columnIdent().name());
+            columnTypes.add(column.type());
+        }
+        return new CsvOptions(
+                settings.get("delimiter", String.valueOf(CsvOptions.DEFAULT_DELIMITER)).charAt(0),
+                settings.get("quote", String.valueOf(CsvOptions.DEFAULT_QUOTE)).charAt(0),
+                settings.getAsBoolean("header", true),
+                columnNames,
+                columnTypes
+        );
+    }
+
     private Routing generateRouting(DiscoveryNodes allNodes, int maxNodes) {
         final AtomicInteger counter = new AtomicInteger(maxNodes);
         final Map<String, Map<String, Set<Integer>>> locations = new HashMap<>();
@@ -426,11 +488,24 @@ public class Planner extends AnalyzedStatementVisitor<Planner.Context, Plan> {
                 analysis.ids(),
                 analysis.routingValues(),
                 analysis.tableInfo().isPartitioned(),
-                analysis.isBulkRequest()
+                analysis.isBulkRequest(),
+                convertAssignments(analysis.onDuplicateKeyAssignments())
         );
         return indexNode;
     }
 
+    private static List<Map<String, Symbol>> convertAssignments(List<Map<Reference, Symbol>> assignmentsPerRow) {
+        List<Map<String, Symbol>> converted = new ArrayList<>(assignmentsPerRow.size());
+        for (Map<Reference, Symbol> assignments : assignmentsPerRow) {
+            Map<String, Symbol> convertedAssignments = new HashMap<>(assignments.size());
+            for (Map.Entry<Reference, Symbol> entry : assignments.entrySet()) {
+                convertedAssignments.put(entry.getKey().info().ident().columnIdent().fqn(), entry.getValue());
+            }
+            converted.add(convertedAssignments);
+        }
+        return converted;
+    }
+
     static List<DataType> extractDataTypes(List<Projection> projections, @Nullable List<DataType> inputTypes) {
         if (projections.size() == 0){
             return inputTypes;
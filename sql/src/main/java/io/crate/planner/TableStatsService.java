@@ -0,0 +1,155 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner;
+
+import com.google.common.collect.ImmutableMap;
+import io.crate.action.sql.SQLRequest;
+import io.crate.action.sql.SQLResponse;
+import io.crate.action.sql.TransportSQLAction;
+import io.crate.metadata.TableIdent;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * periodically refreshes the number of documents of all tables from <code>sys.shards</code>,
+ * these are used by the planner to estimate the size of relations.
+ *
+ * The stats are only refreshed if they have been asked for since the last refresh,
+ * so nodes that don't plan any joins don't query <code>sys.shards</code>.
+ * Asking for a table the stats don't contain yet starts a refresh right away,
+ * instead of waiting for the next scheduled one.
+ */
+@Singleton
+public class TableStatsService extends AbstractLifecycleComponent<TableStatsService> implements Runnable {
+
+    static final String STMT =
+            "select sum(num_docs), schema_name, table_name from sys.shards where \"primary\" = true group by 2, 3";
+    static final TimeValue REFRESH_INTERVAL = TimeValue.timeValueMinutes(1);
+
+    private final ThreadPool threadPool;
+    private final Provider<TransportSQLAction> transportSQLActionProvider;
+    private volatile Map<String, Long> numDocs = ImmutableMap.of();
+    private volatile boolean requested = false;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private ScheduledFuture<?> refreshTask;
+
+    @Inject
+    public TableStatsService(Settings settings,
+                             ThreadPool threadPool,
+                             Provider<TransportSQLAction> transportSQLActionProvider) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.transportSQLActionProvider = transportSQLActionProvider;
+    }
+
+    @Override
+    protected void doStart() throws ElasticsearchException {
+        refreshTask = threadPool.scheduleWithFixedDelay(this, REFRESH_INTERVAL);
+    }
+
+    @Override
+    protected void doStop() throws ElasticsearchException {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+    }
+
+    @Override
+    protected void doClose() throws ElasticsearchException {
+    }
+
+    @Override
+    public void run() {
+        if (!requested) {
+            return;
+        }
+        requested = false;
+        refresh();
+    }
+
+    private void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            transportSQLActionProvider.get().execute(new SQLRequest(STMT), new ActionListener<SQLResponse>() {
+                @Override
+                public void onResponse(SQLResponse response) {
+                    numDocs = statsFromResponse(response);
+                    refreshing.set(false);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    logger.debug("error refreshing table stats", e);
+                    refreshing.set(false);
+                }
+            });
+        } catch (Throwable t) {
+            refreshing.set(false);
+            logger.debug("error refreshing table stats", t);
+        }
+    }
+
+    static Map<String, Long> statsFromResponse(SQLResponse response) {
+        Map<String, Long> numDocs = new HashMap<>(response.rows().length);
+        for (Object[] row : response.rows()) {
+            TableIdent tableIdent = new TableIdent((String) row[1], (String) row[2]);
+            numDocs.put(tableIdent.fqn(), row[0] == null ? 0L : ((Number) row[0]).longValue());
+        }
+        return numDocs;
+    }
+
+    /**
+     * @return the number of documents of the primary shards of the table
+     *         or -1 if it is unknown, e.g. for system tables or if the stats haven't been refreshed yet
+     */
+    public long numDocs(TableIdent tableIdent) {
+        requested = true;
+        Long tableNumDocs = numDocs.get(tableIdent.fqn());
+        if (tableNumDocs == null) {
+            if (!refreshing.get()) {
+                threadPool.executor(ThreadPool.Names.GENERIC).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh();
+                    }
+                });
+            }
+            return -1L;
+        }
+        return tableNumDocs;
+    }
+}
@@ -27,7 +27,9 @@ import io.crate.analyze.relations.AnalyzedRelation;
 import io.crate.analyze.relations.PlannedAnalyzedRelation;
 import io.crate.analyze.relations.TableRelation;
 import io.crate.planner.Plan;
+import io.crate.planner.TableStatsService;
 import io.crate.sql.tree.QualifiedName;
+import org.elasticsearch.cluster.ClusterService;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
@@ -38,7 +40,9 @@ public class ConsumingPlanner {
 
     private final List<Consumer> consumers = new ArrayList<>();
 
-    public ConsumingPlanner(AnalysisMetaData analysisMetaData) {
+    public ConsumingPlanner(AnalysisMetaData analysisMetaData,
+                            ClusterService clusterService,
+                            TableStatsService tableStatsService) {
         consumers.add(new NonDistributedGroupByConsumer(analysisMetaData));
         consumers.add(new ReduceOnCollectorGroupByConsumer(analysisMetaData));
         consumers.add(new DistributedGroupByConsumer(analysisMetaData));
@@ -48,6 +52,7 @@ public class ConsumingPlanner {
         consumers.add(new QueryThenFetchConsumer(analysisMetaData));
         consumers.add(new UpdateConsumer(analysisMetaData));
         consumers.add(new InsertFromSubQueryConsumer(analysisMetaData));
+        consumers.add(new HashJoinConsumer(analysisMetaData, clusterService, tableStatsService));
         consumers.add(new QueryAndFetchConsumer(analysisMetaData));
     }
 
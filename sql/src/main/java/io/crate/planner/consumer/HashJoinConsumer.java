@@ -0,0 +1,676 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner.consumer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.crate.Constants;
+import io.crate.analyze.AnalysisMetaData;
+import io.crate.analyze.SelectAnalyzedStatement;
+import io.crate.analyze.WhereClause;
+import io.crate.analyze.relations.AnalyzedRelation;
+import io.crate.analyze.relations.PlannedAnalyzedRelation;
+import io.crate.analyze.relations.RelationVisitor;
+import io.crate.analyze.relations.TableRelation;
+import io.crate.analyze.where.WhereClauseAnalyzer;
+import io.crate.analyze.where.WhereClauseContext;
+import io.crate.exceptions.UnsupportedFeatureException;
+import io.crate.exceptions.ValidationException;
+import io.crate.exceptions.VersionInvalidException;
+import io.crate.metadata.DocReferenceConverter;
+import io.crate.metadata.Routing;
+import io.crate.metadata.settings.CrateSettings;
+import io.crate.metadata.table.TableInfo;
+import io.crate.operation.operator.AndOperator;
+import io.crate.operation.operator.EqOperator;
+import io.crate.operation.projectors.TopN;
+import io.crate.planner.PlanNodeBuilder;
+import io.crate.planner.TableStatsService;
+import io.crate.planner.node.PlanNode;
+import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.node.dql.MergeNode;
+import io.crate.planner.node.dql.join.*;
+import io.crate.planner.projection.FilterProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.projection.TopNProjection;
+import io.crate.planner.symbol.*;
+import io.crate.types.DataTypes;
+import org.elasticsearch.cluster.ClusterService;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+
+/**
+ * plans an INNER JOIN of two tables with at least one equality condition
+ * between columns of both tables as hash join.
+ *
+ * <pre>
+ *     select t1.name, t2.x from t1 join t2 on t1.id = t2.t1_id where t2.x > 10
+ *
+ *     left:    collect [t1.name, t1.id]
+ *     right:   collect [t2.x, t2.t1_id] where t2.x > 10
+ *     join:    keys: in(1) = in(3)
+ *              topN outputs: [in(0), in(2)]
+ * </pre>
+ *
+ * Conditions referencing only one table are pushed down to the collect of that table,
+ * all other conditions are evaluated on the joined rows.
+ *
+ * Where the join is executed depends on the {@link JoinStrategy},
+ * which is chosen by the number of documents of both tables
+ * unless it is forced by the <code>cluster.join_strategy</code> setting:
+ *
+ * <ul>
+ *     <li>tables with no more than {@link #BROADCAST_LIMIT} documents are joined on the handler</li>
+ *     <li>a table with no more than {@link #BROADCAST_LIMIT} documents is broadcasted to the nodes of the other one</li>
+ *     <li>larger tables are shuffled to the nodes of both tables by the hash of their first join key</li>
+ * </ul>
+ *
+ * System tables are always joined on the handler. Tables whose number of documents isn't known yet,
+ * as the table stats haven't been loaded, are treated like large tables.
+ *
+ * A semi join, planned for <code>x IN (subquery)</code>, has the subquery table as its right side.
+ * Only the right side of a semi join is ever broadcasted.
+ */
+public class HashJoinConsumer implements Consumer {
+
+    static final long BROADCAST_LIMIT = 10_000L;
+
+    private static final FieldCollector FIELD_COLLECTOR = new FieldCollector();
+    private static final FieldReplacer FIELD_REPLACER = new FieldReplacer();
+
+    private final Visitor visitor;
+
+    public HashJoinConsumer(AnalysisMetaData analysisMetaData,
+                            ClusterService clusterService,
+                            TableStatsService tableStatsService) {
+        visitor = new Visitor(analysisMetaData, clusterService, tableStatsService);
+    }
+
+    @Override
+    public boolean consume(AnalyzedRelation rootRelation, ConsumerContext context) {
+        Context ctx = new Context(context);
+        context.rootRelation(visitor.process(context.rootRelation(), ctx));
+        return ctx.result;
+    }
+
+    private static class Context {
+        ConsumerContext consumerContext;
+        boolean result = false;
+
+        public Context(ConsumerContext context) {
+            this.consumerContext = context;
+        }
+    }
+
+    private static class Visitor extends RelationVisitor<Context, AnalyzedRelation> {
+
+        private final AnalysisMetaData analysisMetaData;
+        private final ClusterService clusterService;
+        private final TableStatsService tableStatsService;
+
+        public Visitor(AnalysisMetaData analysisMetaData,
+                       ClusterService clusterService,
+                       TableStatsService tableStatsService) {
+            this.analysisMetaData = analysisMetaData;
+            this.clusterService = clusterService;
+            this.tableStatsService = tableStatsService;
+        }
+
+        @Override
+        public AnalyzedRelation visitSelectAnalyzedStatement(SelectAnalyzedStatement statement, Context context) {
+            if (statement.joinCondition() == null || statement.sources().size() != 2) {
+                return statement;
+            }
+            List<TableRelation> tableRelations = new ArrayList<>(2);
+            for (AnalyzedRelation relation : statement.sources().values()) {
+                if (!(relation instanceof TableRelation)) {
+                    return statement;
+                }
+                tableRelations.add((TableRelation) relation);
+            }
+            if (statement.hasAggregates() || statement.hasGroupBy() || statement.havingClause() != null) {
+                context.consumerContext.validationException(new UnsupportedFeatureException(
+                        "GROUP BY, HAVING and aggregate functions are not supported on joined tables"));
+                return statement;
+            }
+            try {
+                PlannedAnalyzedRelation hashJoin = hashJoin(statement, tableRelations.get(0), tableRelations.get(1));
+                context.result = true;
+                return hashJoin;
+            } catch (ValidationException e) {
+                context.consumerContext.validationException(e);
+                return statement;
+            }
+        }
+
+        @Override
+        protected AnalyzedRelation visitAnalyzedRelation(AnalyzedRelation relation, Context context) {
+            return relation;
+        }
+
+        private PlannedAnalyzedRelation hashJoin(SelectAnalyzedStatement statement,
+                                                 TableRelation left,
+                                                 TableRelation right) {
+            JoinSide leftSide = new JoinSide(left);
+            JoinSide rightSide = new JoinSide(right);
+            List<Symbol> joinedConditions = new ArrayList<>();
+
+            for (Symbol condition : splitConjunction(statement.joinCondition())) {
+                if (!addJoinKeys(condition, leftSide, rightSide)) {
+                    addCondition(condition, leftSide, rightSide, joinedConditions);
+                }
+            }
+            if (leftSide.joinKeys.isEmpty()) {
+                throw new UnsupportedFeatureException(
+                        "JOIN condition must contain an equality comparison between columns of both tables");
+            }
+            if (statement.whereClause().hasQuery()) {
+                for (Symbol condition : splitConjunction(statement.whereClause().query())) {
+                    addCondition(condition, leftSide, rightSide, joinedConditions);
+                }
+            }
+
+            List<Field> fields = new ArrayList<>();
+            for (Symbol symbol : statement.outputSymbols()) {
+                FIELD_COLLECTOR.process(symbol, fields);
+            }
+            for (Symbol symbol : statement.orderBy().orderBySymbols()) {
+                FIELD_COLLECTOR.process(symbol, fields);
+            }
+            for (Symbol condition : joinedConditions) {
+                FIELD_COLLECTOR.process(condition, fields);
+            }
+            for (Field field : fields) {
+                if (field.relation() == left) {
+                    leftSide.addField(field);
+                } else {
+                    rightSide.addField(field);
+                }
+            }
+
+            // joined rows contain the left fields first, then the right ones
+            Map<Field, InputColumn> inputColumns = new HashMap<>();
+            List<Symbol> allInputColumns = new ArrayList<>(leftSide.fields.size() + rightSide.fields.size());
+            for (Field field : leftSide.fields) {
+                InputColumn inputColumn = new InputColumn(allInputColumns.size(), field.valueType());
+                inputColumns.put(field, inputColumn);
+                allInputColumns.add(inputColumn);
+            }
+            for (Field field : rightSide.fields) {
+                InputColumn inputColumn = new InputColumn(allInputColumns.size(), field.valueType());
+                inputColumns.put(field, inputColumn);
+                allInputColumns.add(inputColumn);
+            }
+
+            FilterProjection filterProjection = null;
+            if (!joinedConditions.isEmpty()) {
+                filterProjection = new FilterProjection(
+                        (Function) FIELD_REPLACER.process(conjunction(joinedConditions), inputColumns));
+                filterProjection.outputs(allInputColumns);
+            }
+            List<Symbol> outputs = replaceFields(statement.outputSymbols(), inputColumns);
+            List<Symbol> orderBy = replaceFields(statement.orderBy().orderBySymbols(), inputColumns);
+            int limit = firstNonNull(statement.limit(), Constants.DEFAULT_SELECT_LIMIT);
+
+            leftSide.analyze(analysisMetaData);
+            rightSide.analyze(analysisMetaData);
+            JoinStrategy strategy = strategy(leftSide, rightSide, statement.semiJoin());
+            if (strategy != JoinStrategy.HANDLER) {
+                return distributedHashJoin(strategy, statement, leftSide, rightSide,
+                        filterProjection, outputs, orderBy, limit);
+            }
+
+            HashJoinNode hashJoinNode = new HashJoinNode(
+                    leftSide.plan(),
+                    rightSide.plan(),
+                    leftSide.joinKeyIndices(),
+                    rightSide.joinKeyIndices()
+            );
+            hashJoinNode.semiJoin(statement.semiJoin());
+            hashJoinNode.leftTypes(Symbols.extractTypes(leftSide.toCollect));
+            hashJoinNode.rightTypes(Symbols.extractTypes(rightSide.toCollect));
+
+            List<Projection> projections = new ArrayList<>(2);
+            if (filterProjection != null) {
+                projections.add(filterProjection);
+            }
+            TopNProjection topNProjection;
+            if (statement.orderBy().isSorted()) {
+                topNProjection = new TopNProjection(
+                        limit,
+                        statement.offset(),
+                        orderBy,
+                        statement.orderBy().reverseFlags(),
+                        statement.orderBy().nullsFirst()
+                );
+            } else {
+                topNProjection = new TopNProjection(limit, statement.offset());
+            }
+            topNProjection.outputs(outputs);
+            projections.add(topNProjection);
+
+            hashJoinNode.projections(projections);
+            hashJoinNode.outputTypes(Symbols.extractTypes(outputs));
+            return new HashJoin(hashJoinNode);
+        }
+
+        private JoinStrategy strategy(JoinSide leftSide, JoinSide rightSide, boolean semiJoin) {
+            if (!leftSide.isDistributable() || !rightSide.isDistributable()) {
+                return JoinStrategy.HANDLER;
+            }
+            JoinStrategy strategy = JoinStrategy.fromSetting(
+                    CrateSettings.CLUSTER_JOIN_STRATEGY.extract(clusterService.state().metaData().settings()));
+            if (strategy != null) {
+                return strategy;
+            }
+            long leftNumDocs = numDocs(leftSide);
+            long rightNumDocs = numDocs(rightSide);
+            if (Math.max(leftNumDocs, rightNumDocs) <= BROADCAST_LIMIT) {
+                return JoinStrategy.HANDLER;
+            }
+            if (semiJoin ? rightNumDocs <= BROADCAST_LIMIT : Math.min(leftNumDocs, rightNumDocs) <= BROADCAST_LIMIT) {
+                return JoinStrategy.BROADCAST;
+            }
+            return JoinStrategy.SHUFFLE;
+        }
+
+        /**
+         * @return the number of documents of the table of the given side, {@link Long#MAX_VALUE} if it is unknown
+         */
+        private long numDocs(JoinSide side) {
+            long numDocs = tableStatsService.numDocs(side.relation.tableInfo().ident());
+            return numDocs < 0 ? Long.MAX_VALUE : numDocs;
+        }
+
+        /**
+         * plans the join on the nodes the collectors of both tables distribute their rows to.
+         *
+         * The join nodes apply the limit and offset, together with the order by, to their joined rows,
+         * the handler merges them and applies the final limit and offset.
+         */
+        private DistributedHashJoin distributedHashJoin(JoinStrategy strategy,
+                                                        SelectAnalyzedStatement statement,
+                                                        JoinSide leftSide,
+                                                        JoinSide rightSide,
+                                                        @Nullable FilterProjection filterProjection,
+                                                        List<Symbol> outputs,
+                                                        List<Symbol> orderBy,
+                                                        int limit) {
+            CollectNode leftCollectNode;
+            CollectNode rightCollectNode;
+            // the hash table is built on the side with less documents, the rows of the other one are streamed
+            boolean buildLeft;
+            if (strategy == JoinStrategy.BROADCAST) {
+                // the side with less documents is broadcasted, the other one doesn't leave its nodes.
+                // the left side of a semi join is never broadcasted, its rows would be emitted on every node
+                boolean broadcastLeft = !statement.semiJoin() && numDocs(leftSide) < numDocs(rightSide);
+                JoinSide broadcastSide = broadcastLeft ? leftSide : rightSide;
+                JoinSide localSide = broadcastLeft ? rightSide : leftSide;
+                List<String> joinNodes = sortedNodes(localSide.routing.nodes());
+                CollectNode broadcastCollectNode = broadcastSide.distributingCollect(
+                        joinNodes, CollectNode.Distribution.BROADCAST);
+                CollectNode localCollectNode = localSide.distributingCollect(
+                        joinNodes, CollectNode.Distribution.SAME_NODE);
+                leftCollectNode = broadcastLeft ? broadcastCollectNode : localCollectNode;
+                rightCollectNode = broadcastLeft ? localCollectNode : broadcastCollectNode;
+                buildLeft = broadcastLeft;
+            } else {
+                // rows are distributed by the hash of their first column, which is the first join key
+                if (leftSide.joinKeyIndices()[0] != 0 || rightSide.joinKeyIndices()[0] != 0) {
+                    throw new IllegalStateException("first join key must be the first collected column");
+                }
+                Set<String> nodes = new HashSet<>(leftSide.routing.nodes());
+                nodes.addAll(rightSide.routing.nodes());
+                List<String> joinNodes = sortedNodes(nodes);
+                leftCollectNode = leftSide.distributingCollect(joinNodes, CollectNode.Distribution.MODULO);
+                rightCollectNode = rightSide.distributingCollect(joinNodes, CollectNode.Distribution.MODULO);
+                buildLeft = !statement.semiJoin() && numDocs(leftSide) < numDocs(rightSide);
+            }
+
+            HashJoinMergeNode joinMergeNode = new HashJoinMergeNode(
+                    "distributed hash join",
+                    leftCollectNode.executionNodes().size(),
+                    rightCollectNode.executionNodes().size(),
+                    leftSide.joinKeyIndices(),
+                    rightSide.joinKeyIndices()
+            );
+            joinMergeNode.semiJoin(statement.semiJoin());
+            joinMergeNode.buildLeft(buildLeft);
+            joinMergeNode.executionNodes(ImmutableSet.copyOf(leftCollectNode.downStreamNodes()));
+            joinMergeNode.inputTypes(leftCollectNode.outputTypes());
+            joinMergeNode.rightInputTypes(rightCollectNode.outputTypes());
+
+            // the order by symbols are passed to the handler in addition to the outputs
+            List<Symbol> joinOutputs = new ArrayList<>(outputs);
+            List<Symbol> handlerOrderBy = new ArrayList<>(orderBy.size());
+            for (Symbol symbol : orderBy) {
+                int idx = joinOutputs.indexOf(symbol);
+                if (idx < 0) {
+                    idx = joinOutputs.size();
+                    joinOutputs.add(symbol);
+                }
+                handlerOrderBy.add(new InputColumn(idx, symbol.valueType()));
+            }
+            List<Symbol> handlerOutputs = new ArrayList<>(outputs.size());
+            for (int i = 0; i < outputs.size(); i++) {
+                handlerOutputs.add(new InputColumn(i, outputs.get(i).valueType()));
+            }
+
+            List<Projection> joinProjections = new ArrayList<>(2);
+            if (filterProjection != null) {
+                joinProjections.add(filterProjection);
+            }
+            TopNProjection joinTopN;
+            TopNProjection handlerTopN;
+            if (statement.orderBy().isSorted()) {
+                joinTopN = new TopNProjection(
+                        limit + statement.offset(),
+                        TopN.NO_OFFSET,
+                        orderBy,
+                        statement.orderBy().reverseFlags(),
+                        statement.orderBy().nullsFirst()
+                );
+                handlerTopN = new TopNProjection(
+                        limit,
+                        statement.offset(),
+                        handlerOrderBy,
+                        statement.orderBy().reverseFlags(),
+                        statement.orderBy().nullsFirst()
+                );
+            } else {
+                joinTopN = new TopNProjection(limit + statement.offset(), TopN.NO_OFFSET);
+                handlerTopN = new TopNProjection(limit, statement.offset());
+            }
+            joinTopN.outputs(joinOutputs);
+            joinProjections.add(joinTopN);
+            handlerTopN.outputs(handlerOutputs);
+
+            joinMergeNode.projections(joinProjections);
+            joinMergeNode.outputTypes(Symbols.extractTypes(joinOutputs));
+            MergeNode localMergeNode = PlanNodeBuilder.localMerge(
+                    ImmutableList.<Projection>of(handlerTopN), joinMergeNode);
+            return new DistributedHashJoin(strategy, leftCollectNode, rightCollectNode, joinMergeNode, localMergeNode);
+        }
+
+        /**
+         * adds the columns of an equality condition like <code>t1.a = t2.b</code> as join keys
+         *
+         * @return false if the condition can't be used as join key
+         */
+        private boolean addJoinKeys(Symbol condition, JoinSide leftSide, JoinSide rightSide) {
+            if (!(condition instanceof Function)
+                    || !((Function) condition).info().ident().name().equals(EqOperator.NAME)) {
+                return false;
+            }
+            List<Symbol> arguments = ((Function) condition).arguments();
+            if (!(arguments.get(0) instanceof Field) || !(arguments.get(1) instanceof Field)) {
+                return false;
+            }
+            Field first = (Field) arguments.get(0);
+            Field second = (Field) arguments.get(1);
+            Field leftKey;
+            Field rightKey;
+            if (first.relation() == leftSide.relation && second.relation() == rightSide.relation) {
+                leftKey = first;
+                rightKey = second;
+            } else if (first.relation() == rightSide.relation && second.relation() == leftSide.relation) {
+                leftKey = second;
+                rightKey = first;
+            } else {
+                return false;
+            }
+            // keys are compared using equals, so they must be of the same type
+            if (!leftKey.valueType().equals(rightKey.valueType())
+                    || DataTypes.isCollectionType(leftKey.valueType())) {
+                return false;
+            }
+            leftSide.addJoinKey(leftKey);
+            rightSide.addJoinKey(rightKey);
+            return true;
+        }
+
+        private void addCondition(Symbol condition, JoinSide leftSide, JoinSide rightSide, List<Symbol> joinedConditions) {
+            List<Field> fields = new ArrayList<>();
+            FIELD_COLLECTOR.process(condition, fields);
+            Set<AnalyzedRelation> relations = new HashSet<>();
+            for (Field field : fields) {
+                relations.add(field.relation());
+            }
+            if (relations.size() == 1 && relations.contains(leftSide.relation)) {
+                leftSide.conditions.add(condition);
+            } else if (relations.size() == 1 && relations.contains(rightSide.relation)) {
+                rightSide.conditions.add(condition);
+            } else if (condition instanceof Function) {
+                joinedConditions.add(condition);
+            } else {
+                throw new UnsupportedFeatureException(SymbolFormatter.format(
+                        "Cannot use %s as condition on joined tables", condition));
+            }
+        }
+    }
+
+    private static class JoinSide {
+
+        final TableRelation relation;
+        final List<Field> fields = new ArrayList<>();
+        final List<Field> joinKeys = new ArrayList<>();
+        final List<Symbol> conditions = new ArrayList<>();
+
+        WhereClause whereClause;
+        List<Symbol> toCollect;
+        Routing routing;
+
+        JoinSide(TableRelation relation) {
+            this.relation = relation;
+        }
+
+        void addField(Field field) {
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+
+        /**
+         * the first join key is always collected as first column,
+         * the rows of a shuffled join are distributed by its hash
+         */
+        void addJoinKey(Field field) {
+            if (joinKeys.isEmpty()) {
+                fields.remove(field);
+                fields.add(0, field);
+            } else {
+                addField(field);
+            }
+            joinKeys.add(field);
+        }
+
+        int[] joinKeyIndices() {
+            int[] indices = new int[joinKeys.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = fields.indexOf(joinKeys.get(i));
+            }
+            return indices;
+        }
+
+        /**
+         * analyzes the where clause and resolves the routing and the symbols to collect
+         */
+        void analyze(AnalysisMetaData analysisMetaData) {
+            WhereClause whereClause = WhereClause.MATCH_ALL;
+            if (!conditions.isEmpty()) {
+                whereClause = new WhereClause(conjunction(conditions));
+            }
+            WhereClauseAnalyzer whereClauseAnalyzer = new WhereClauseAnalyzer(analysisMetaData, relation);
+            WhereClauseContext whereClauseContext = whereClauseAnalyzer.analyze(relation.resolve(whereClause));
+            if (whereClauseContext.whereClause().version().isPresent()) {
+                throw new VersionInvalidException();
+            }
+            this.whereClause = whereClauseContext.whereClause();
+
+            TableInfo tableInfo = relation.tableInfo();
+            toCollect = new ArrayList<>(fields.size());
+            for (Field field : fields) {
+                Symbol symbol = relation.resolveField(field);
+                if (!tableInfo.schemaInfo().systemSchema()) {
+                    symbol = DocReferenceConverter.convertIfPossible(symbol, tableInfo);
+                }
+                toCollect.add(symbol);
+            }
+            routing = tableInfo.getRouting(this.whereClause, null);
+        }
+
+        /**
+         * @return true if the rows of this side can be collected on the nodes holding its shards
+         */
+        boolean isDistributable() {
+            if (relation.tableInfo().schemaInfo().systemSchema() || !routing.hasLocations()) {
+                return false;
+            }
+            for (String nodeId : routing.nodes()) {
+                if (nodeId == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<PlanNode> plan() {
+            CollectNode collectNode = PlanNodeBuilder.collect(
+                    relation.tableInfo(), whereClause, toCollect, ImmutableList.<Projection>of());
+            MergeNode mergeNode = PlanNodeBuilder.localMerge(ImmutableList.<Projection>of(), collectNode);
+            return ImmutableList.<PlanNode>of(collectNode, mergeNode);
+        }
+
+        CollectNode distributingCollect(List<String> joinNodes, CollectNode.Distribution distribution) {
+            CollectNode collectNode = PlanNodeBuilder.distributingCollect(
+                    relation.tableInfo(), whereClause, toCollect, joinNodes, ImmutableList.<Projection>of());
+            collectNode.distribution(distribution);
+            return collectNode;
+        }
+    }
+
+    private static List<String> sortedNodes(Set<String> nodes) {
+        // both collectors of a join must address the join nodes in the same order
+        List<String> sortedNodes = new ArrayList<>(nodes);
+        Collections.sort(sortedNodes);
+        return sortedNodes;
+    }
+
+    private static List<Symbol> splitConjunction(Symbol symbol) {
+        List<Symbol> conditions = new ArrayList<>();
+        splitConjunction(symbol, conditions);
+        return conditions;
+    }
+
+    private static void splitConjunction(Symbol symbol, List<Symbol> conditions) {
+        if (symbol instanceof Function && ((Function) symbol).info().ident().name().equals(AndOperator.NAME)) {
+            for (Symbol argument : ((Function) symbol).arguments()) {
+                splitConjunction(argument, conditions);
+            }
+        } else {
+            conditions.add(symbol);
+        }
+    }
+
+    private static Symbol conjunction(List<Symbol> conditions) {
+        Symbol result = conditions.get(0);
+        for (int i = 1; i < conditions.size(); i++) {
+            result = new Function(AndOperator.INFO, Arrays.asList(result, conditions.get(i)));
+        }
+        return result;
+    }
+
+    private static List<Symbol> replaceFields(List<Symbol> symbols, Map<Field, InputColumn> inputColumns) {
+        List<Symbol> result = new ArrayList<>(symbols.size());
+        for (Symbol symbol : symbols) {
+            result.add(FIELD_REPLACER.process(symbol, inputColumns));
+        }
+        return result;
+    }
+
+    private static class FieldCollector extends SymbolVisitor<List<Field>, Void> {
+
+        private void add(Field field, List<Field> fields) {
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+
+        @Override
+        public Void visitField(Field field, List<Field> context) {
+            add(field, context);
+            return null;
+        }
+
+        @Override
+        public Void visitFunction(Function symbol, List<Field> context) {
+            for (Symbol argument : symbol.arguments()) {
+                process(argument, context);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitMatchPredicate(MatchPredicate matchPredicate, List<Field> context) {
+            for (Field field : matchPredicate.identBoostMap().keySet()) {
+                add(field, context);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * replaces fields with input columns pointing to the joined row,
+     * functions are copied as the same symbols are resolved for the collect phase
+     */
+    private static class FieldReplacer extends SymbolVisitor<Map<Field, InputColumn>, Symbol> {
+
+        @Override
+        public Symbol visitField(Field field, Map<Field, InputColumn> context) {
+            InputColumn inputColumn = context.get(field);
+            assert inputColumn != null : "field is not part of the joined rows";
+            return inputColumn;
+        }
+
+        @Override
+        public Symbol visitFunction(Function symbol, Map<Field, InputColumn> context) {
+            List<Symbol> arguments = new ArrayList<>(symbol.arguments().size());
+            for (Symbol argument : symbol.arguments()) {
+                arguments.add(process(argument, context));
+            }
+            return new Function(symbol.info(), arguments);
+        }
+
+        @Override
+        public Symbol visitMatchPredicate(MatchPredicate matchPredicate, Map<Field, InputColumn> context) {
+            throw new UnsupportedFeatureException("Cannot use match predicate on columns of different tables");
+        }
+
+        @Override
+        protected Symbol visitSymbol(Symbol symbol, Map<Field, InputColumn> context) {
+            return symbol;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import io.crate.metadata.Functions;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.MergeNode;
+import io.crate.planner.node.dql.join.HashJoinMergeNode;
 import io.crate.planner.projection.AggregationProjection;
 import io.crate.planner.projection.GroupProjection;
 import io.crate.planner.projection.Projection;
@@ -123,6 +124,7 @@ public class PlanNodeStreamerVisitor extends PlanNodeVisitor<PlanNodeStreamerVis
 
 
         int aggIdx = 0;
+        int outputIdx = 0;
         Aggregation aggregation;
         for (DataType outputType : node.outputTypes()) {
             if (outputType == null || outputType == UndefinedType.INSTANCE) {
@@ -137,10 +139,14 @@ public class PlanNodeStreamerVisitor extends PlanNodeVisitor<PlanNodeStreamerVis
                     context.outputStreamers.add(UndefinedType.INSTANCE.streamer());
                 }
                 aggIdx++;
+            } else if (node.objectStreamers().containsKey(outputIdx)) {
+                // typed streamer for object column with known children
+                context.outputStreamers.add(node.objectStreamers().get(outputIdx));
             } else {
                 // get streamer for outputType
                 context.outputStreamers.add(outputType.streamer());
             }
+            outputIdx++;
         }
         return null;
     }
@@ -165,6 +171,17 @@ public class PlanNodeStreamerVisitor extends PlanNodeVisitor<PlanNodeStreamerVis
         return null;
     }
 
+    @Override
+    public Void visitHashJoinMergeNode(HashJoinMergeNode node, Context context) {
+        // the input streamers are the ones of the left relation,
+        // the rows of the right relation are read using its rightInputTypes
+        for (DataType dataType : node.inputTypes()) {
+            context.inputStreamers.add(dataType.streamer());
+        }
+        setOutputStreamers(node.outputTypes(), node.joinedInputTypes(), node.projections(), context);
+        return null;
+    }
+
     private void setOutputStreamers(List<DataType> outputTypes,
                                     List<DataType> inputTypes,
                                     List<Projection> projections, Context context) {
@@ -24,6 +24,8 @@ package io.crate.planner.node;
 import io.crate.planner.node.ddl.*;
 import io.crate.planner.node.dml.*;
 import io.crate.planner.node.dql.*;
+import io.crate.planner.node.dql.join.HashJoinMergeNode;
+import io.crate.planner.node.dql.join.HashJoinNode;
 import io.crate.planner.node.dql.join.NestedLoopNode;
 import org.elasticsearch.common.Nullable;
 
@@ -105,4 +107,12 @@ public class PlanNodeVisitor<C, R> {
         return visitPlanNode(node, context);
     }
 
+    public R visitHashJoinNode(HashJoinNode node, C context) {
+        return visitPlanNode(node, context);
+    }
+
+    public R visitHashJoinMergeNode(HashJoinMergeNode node, C context) {
+        return visitMergeNode(node, context);
+    }
+
 }
@@ -21,11 +21,14 @@
 
 package io.crate.planner.node.dml;
 
+import com.google.common.collect.ImmutableList;
 import io.crate.planner.node.PlanNodeVisitor;
+import io.crate.planner.symbol.Symbol;
 import org.elasticsearch.common.bytes.BytesReference;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Map;
 
 /**
  * plan node for 1 or more documents to index via ESIndexTask
@@ -40,6 +43,7 @@ public class ESIndexNode extends DMLPlanNode {
     private final List<BytesReference> sources;
     private final List<String> ids;
     private final List<String> routingValues;
+    private final List<Map<String, Symbol>> onDuplicateKeyAssignments;
 
     public ESIndexNode(String[] indices,
                        List<BytesReference> sources,
@@ -47,6 +51,24 @@ public class ESIndexNode extends DMLPlanNode {
                        @Nullable List<String> routingValues,
                        boolean partitionedTable,
                        boolean isBulkRequest) {
+        this(indices, sources, ids, routingValues, partitionedTable, isBulkRequest,
+                ImmutableList.<Map<String, Symbol>>of());
+    }
+
+    /**
+     * @param onDuplicateKeyAssignments the assignments applied to a row's document if it already exists,
+     *                                  one map per row or empty to index all rows
+     */
+    public ESIndexNode(String[] indices,
+                       List<BytesReference> sources,
+                       List<String> ids,
+                       @Nullable List<String> routingValues,
+                       boolean partitionedTable,
+                       boolean isBulkRequest,
+                       List<Map<String, Symbol>> onDuplicateKeyAssignments) {
+        assert onDuplicateKeyAssignments.isEmpty() || onDuplicateKeyAssignments.size() == sources.size()
+                : "one map of assignments per row required";
+        this.onDuplicateKeyAssignments = onDuplicateKeyAssignments;
         this.partitionedTable = partitionedTable;
         this.isBulkRequest = isBulkRequest;
         assert indices != null : "no indices";
@@ -74,6 +96,10 @@ public class ESIndexNode extends DMLPlanNode {
         return routingValues;
     }
 
+    public List<Map<String, Symbol>> onDuplicateKeyAssignments() {
+        return onDuplicateKeyAssignments;
+    }
+
     @Override
     public <C, R> R accept(PlanNodeVisitor<C, R> visitor, C context) {
         return visitor.visitESIndexNode(this, context);
@@ -23,6 +23,7 @@ package io.crate.planner.node.dql;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import io.crate.analyze.EvaluatingNormalizer;
 import io.crate.analyze.WhereClause;
@@ -31,6 +32,7 @@ import io.crate.planner.RowGranularity;
 import io.crate.planner.node.PlanNodeVisitor;
 import io.crate.planner.projection.Projection;
 import io.crate.planner.symbol.Symbol;
+import io.crate.types.ObjectStreamer;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
@@ -43,13 +45,36 @@ import java.util.*;
  */
 public class CollectNode extends AbstractDQLPlanNode {
 
+    /**
+     * how the collected rows are distributed to the downstream nodes
+     */
+    public enum Distribution {
+        /**
+         * every row is sent to one downstream node, chosen by the hash of its first column
+         */
+        MODULO,
+
+        /**
+         * all rows are sent to every downstream node
+         */
+        BROADCAST,
+
+        /**
+         * all rows are sent to the downstream node which collected them,
+         * the collecting nodes must be part of the downstream nodes
+         */
+        SAME_NODE
+    }
+
     private Optional<UUID> jobId = Optional.absent();
     private Routing routing;
     private List<Symbol> toCollect;
     private WhereClause whereClause = WhereClause.MATCH_ALL;
     private RowGranularity maxRowgranularity = RowGranularity.CLUSTER;
     private List<String> downStreamNodes;
+    private Distribution distribution = Distribution.MODULO;
     private boolean isPartitioned = false;
+    private Map<Integer, ObjectStreamer> objectStreamers = ImmutableMap.of();
 
     public CollectNode(String id) {
         super(id);
@@ -75,6 +100,15 @@ public class CollectNode extends AbstractDQLPlanNode {
         this.downStreamNodes = downStreamNodes;
     }
 
+    public Distribution distribution() {
+        return distribution;
+    }
+
+    public void distribution(Distribution distribution) {
+        assert distribution != null;
+        this.distribution = distribution;
+    }
+
     @Override
     public Set<String> executionNodes() {
         if (routing != null && routing.hasLocations()) {
@@ -136,6 +170,19 @@ public class CollectNode extends AbstractDQLPlanNode {
         this.isPartitioned = isPartitioned;
     }
 
+    /**
+     * typed streamers for object columns in the outputs of this node, by output index.
+     * Outputs without an entry are streamed using the streamer of their output type.
+     */
+    public Map<Integer, ObjectStreamer> objectStreamers() {
+        return objectStreamers;
+    }
+
+    public void objectStreamers(Map<Integer, ObjectStreamer> objectStreamers) {
+        assert objectStreamers != null;
+        this.objectStreamers = objectStreamers;
+    }
+
     public RowGranularity maxRowGranularity() {
         return maxRowgranularity;
     }
@@ -187,9 +234,23 @@ public class CollectNode extends AbstractDQLPlanNode {
         for (int i = 0; i < numDownStreams; i++) {
             downStreamNodes.add(in.readString());
         }
+        distribution = Distribution.values()[in.readVInt()];
         if (in.readBoolean()) {
             jobId = Optional.of(new UUID(in.readLong(), in.readLong()));
         }
+
+        int numObjectStreamers = in.readVInt();
+        if (numObjectStreamers > 0) {
+            objectStreamers = new HashMap<>(numObjectStreamers);
+            for (int i = 0; i < numObjectStreamers; i++) {
+                int idx = in.readVInt();
+                ObjectStreamer streamer = new ObjectStreamer();
+                streamer.readFrom(in);
+                objectStreamers.put(idx, streamer);
+            }
+        } else {
+            objectStreamers = ImmutableMap.of();
+        }
     }
 
     @Override
@@ -220,11 +281,18 @@ public class CollectNode extends AbstractDQLPlanNode {
         } else {
             out.writeVInt(0);
         }
+        out.writeVInt(distribution.ordinal());
         out.writeBoolean(jobId.isPresent());
         if (jobId.isPresent()) {
             out.writeLong(jobId.get().getMostSignificantBits());
             out.writeLong(jobId.get().getLeastSignificantBits());
         }
+
+        out.writeVInt(objectStreamers.size());
+        for (Map.Entry<Integer, ObjectStreamer> entry : objectStreamers.entrySet()) {
+            out.writeVInt(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
     }
 
     /**
@@ -244,8 +312,10 @@ public class CollectNode extends AbstractDQLPlanNode {
         if (changed) {
             result = new CollectNode(id(), routing, newToCollect, projections);
             result.downStreamNodes = downStreamNodes;
+            result.distribution = distribution;
             result.maxRowgranularity = maxRowgranularity;
             result.jobId = jobId;
+            result.objectStreamers = objectStreamers;
             result.whereClause(newWhereClause);
         }
         return result;
@@ -25,6 +25,7 @@ import com.google.common.base.Objects;
 import io.crate.analyze.EvaluatingNormalizer;
 import io.crate.analyze.WhereClause;
 import io.crate.metadata.Routing;
+import io.crate.operation.collect.files.CsvOptions;
 import io.crate.operation.collect.files.FileReadingCollector;
 import io.crate.planner.projection.Projection;
 import io.crate.planner.symbol.Symbol;
@@ -40,6 +41,11 @@ public class FileUriCollectNode extends CollectNode {
     private Symbol targetUri;
     private String compression;
     private Boolean sharedStorage;
+    private FileReadingCollector.FileFormat fileFormat = FileReadingCollector.FileFormat.JSON;
+    private CsvOptions csvOptions;
+    private Integer prefetch;
+    private boolean resume = false;
+    private String errorFile;
 
     public FileUriCollectNode() {
 
@@ -52,10 +58,27 @@ public class FileUriCollectNode extends CollectNode {
                               List<Projection> projections,
                               String compression,
                               Boolean sharedStorage) {
+        this(id, routing, targetUri, toCollect, projections, compression, sharedStorage,
+                FileReadingCollector.FileFormat.JSON, null, null);
+    }
+
+    public FileUriCollectNode(String id,
+                              Routing routing,
+                              Symbol targetUri,
+                              List<Symbol> toCollect,
+                              List<Projection> projections,
+                              String compression,
+                              Boolean sharedStorage,
+                              FileReadingCollector.FileFormat fileFormat,
+                              @Nullable CsvOptions csvOptions,
+                              @Nullable Integer prefetch) {
         super(id, routing, toCollect, projections);
         this.targetUri = targetUri;
         this.compression = compression;
         this.sharedStorage = sharedStorage;
+        this.fileFormat = fileFormat;
+        this.csvOptions = csvOptions;
+        this.prefetch = prefetch;
     }
 
     public Symbol targetUri() {
@@ -63,7 +86,47 @@ public class FileUriCollectNode extends CollectNode {
     }
 
     public FileReadingCollector.FileFormat fileFormat() {
-        return FileReadingCollector.FileFormat.JSON;
+        return fileFormat;
+    }
+
+    /**
+     * @return the options to read CSV files, null if the format isn't CSV
+     */
+    @Nullable
+    public CsvOptions csvOptions() {
+        return csvOptions;
+    }
+
+    /**
+     * @return the number of files fetched ahead by a reader, null to use the default of the uri scheme
+     */
+    @Nullable
+    public Integer prefetch() {
+        return prefetch;
+    }
+
+    /**
+     * @return true if the splits imported by earlier runs of the import should be skipped
+     */
+    public boolean resume() {
+        return resume;
+    }
+
+    public void resume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @return the path of the file lines which can't be parsed are written to on every node,
+     *         null if such a line fails the import
+     */
+    @Nullable
+    public String errorFile() {
+        return errorFile;
+    }
+
+    public void errorFile(@Nullable String errorFile) {
+        this.errorFile = errorFile;
     }
 
     @Override
@@ -85,10 +148,15 @@ public class FileUriCollectNode extends CollectNode {
                 normalizedToCollect,
                 projections(),
                 compression(),
-                sharedStorage());
+                sharedStorage(),
+                fileFormat,
+                csvOptions,
+                prefetch);
         result.downStreamNodes(downStreamNodes());
         result.maxRowGranularity(maxRowGranularity());
         result.whereClause(normalizedWhereClause);
+        result.resume(resume);
+        result.errorFile(errorFile);
         if (jobId().isPresent()) {
             result.jobId(jobId().get());
         }
@@ -106,6 +174,16 @@ public class FileUriCollectNode extends CollectNode {
         compression = in.readOptionalString();
         sharedStorage = in.readOptionalBoolean();
         targetUri = Symbol.fromStream(in);
+        fileFormat = FileReadingCollector.FileFormat.values()[in.readVInt()];
+        if (in.readBoolean()) {
+            csvOptions = new CsvOptions();
+            csvOptions.readFrom(in);
+        }
+        if (in.readBoolean()) {
+            prefetch = in.readVInt();
+        }
+        resume = in.readBoolean();
+        errorFile = in.readOptionalString();
     }
 
     @Override
@@ -114,6 +192,17 @@ public class FileUriCollectNode extends CollectNode {
         out.writeOptionalString(compression);
         out.writeOptionalBoolean(sharedStorage);
         Symbol.toStream(targetUri, out);
+        out.writeVInt(fileFormat.ordinal());
+        out.writeBoolean(csvOptions != null);
+        if (csvOptions != null) {
+            csvOptions.writeTo(out);
+        }
+        out.writeBoolean(prefetch != null);
+        if (prefetch != null) {
+            out.writeVInt(prefetch);
+        }
+        out.writeBoolean(resume);
+        out.writeOptionalString(errorFile);
     }
 
     @Override
@@ -124,6 +213,10 @@ public class FileUriCollectNode extends CollectNode {
                 .add("projections", projections)
                 .add("outputTypes", outputTypes)
                 .add("compression", compression)
+                .add("fileFormat", fileFormat)
+                .add("prefetch", prefetch)
+                .add("resume", resume)
+                .add("errorFile", errorFile)
                 .add("sharedStorageDefault", sharedStorage)
                 .toString();
     }
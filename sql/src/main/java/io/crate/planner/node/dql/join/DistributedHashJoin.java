@@ -0,0 +1,115 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner.node.dql.join;
+
+import io.crate.analyze.relations.PlannedAnalyzedRelation;
+import io.crate.analyze.relations.RelationVisitor;
+import io.crate.exceptions.ColumnUnknownException;
+import io.crate.metadata.Path;
+import io.crate.planner.Plan;
+import io.crate.planner.PlanVisitor;
+import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.node.dql.MergeNode;
+import io.crate.planner.symbol.Field;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * INNER JOIN whose relations are collected by distributing collect nodes
+ * to the execution nodes of a {@link HashJoinMergeNode}, which joins them.
+ * The results of all execution nodes are merged on the handler.
+ *
+ * Depending on the {@link JoinStrategy} the rows are either hash-partitioned by the join key
+ * or one relation is sent to all nodes holding shards of the other one, which keep their rows.
+ */
+public class DistributedHashJoin implements PlannedAnalyzedRelation, Plan {
+
+    private final JoinStrategy strategy;
+    private final CollectNode leftCollectNode;
+    private final CollectNode rightCollectNode;
+    private final HashJoinMergeNode joinMergeNode;
+    private final MergeNode localMergeNode;
+
+    public DistributedHashJoin(JoinStrategy strategy,
+                               CollectNode leftCollectNode,
+                               CollectNode rightCollectNode,
+                               HashJoinMergeNode joinMergeNode,
+                               MergeNode localMergeNode) {
+        this.strategy = strategy;
+        this.leftCollectNode = leftCollectNode;
+        this.rightCollectNode = rightCollectNode;
+        this.joinMergeNode = joinMergeNode;
+        this.localMergeNode = localMergeNode;
+    }
+
+    @Override
+    public <C, R> R accept(RelationVisitor<C, R> visitor, C context) {
+        return visitor.visitPlanedAnalyzedRelation(this, context);
+    }
+
+    @Nullable
+    @Override
+    public Field getField(Path path) {
+        throw new UnsupportedOperationException("getField is not supported");
+    }
+
+    @Override
+    public Field getWritableField(Path path) throws UnsupportedOperationException, ColumnUnknownException {
+        throw new UnsupportedOperationException("getWritableField is not supported");
+    }
+
+    @Override
+    public List<Field> fields() {
+        throw new UnsupportedOperationException("fields is not supported");
+    }
+
+    @Override
+    public <C, R> R accept(PlanVisitor<C, R> visitor, C context) {
+        return visitor.visitDistributedHashJoin(this, context);
+    }
+
+    public JoinStrategy strategy() {
+        return strategy;
+    }
+
+    public CollectNode leftCollectNode() {
+        return leftCollectNode;
+    }
+
+    public CollectNode rightCollectNode() {
+        return rightCollectNode;
+    }
+
+    public HashJoinMergeNode joinMergeNode() {
+        return joinMergeNode;
+    }
+
+    public MergeNode localMergeNode() {
+        return localMergeNode;
+    }
+
+    @Override
+    public Plan plan() {
+        return this;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner.node.dql.join;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import io.crate.planner.node.PlanNodeVisitor;
+import io.crate.planner.node.dql.MergeNode;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A merge node which joins the rows of two relations that are distributed
+ * to its execution nodes, using a hash table.
+ *
+ * The rows of the left relation are received using the {@link #contextId()},
+ * {@link #inputTypes()} and {@link #numUpstreams()} of the merge node,
+ * the rows of the right relation using the {@link #rightContextId()},
+ * {@link #rightInputTypes()} and {@link #numRightUpstreams()}.
+ *
+ * The rows passed to the projections contain the left columns first, then the right ones.
+ * The hash table is built on the side given by {@link #buildLeft()}, the rows of the other side
+ * are probed against it as they are received.
+ */
+public class HashJoinMergeNode extends MergeNode {
+
+    private UUID rightContextId;
+    private List<DataType> rightInputTypes;
+    private int numRightUpstreams;
+    private int[] leftJoinKeys;
+    private int[] rightJoinKeys;
+    private boolean semiJoin = false;
+    private boolean buildLeft = false;
+
+    public HashJoinMergeNode() {
+        super();
+    }
+
+    public HashJoinMergeNode(String id,
+                             int numLeftUpstreams,
+                             int numRightUpstreams,
+                             int[] leftJoinKeys,
+                             int[] rightJoinKeys) {
+        super(id, numLeftUpstreams);
+        assert leftJoinKeys.length > 0 : "hash join requires at least one join key";
+        assert leftJoinKeys.length == rightJoinKeys.length : "number of left and right join keys must match";
+        this.numRightUpstreams = numRightUpstreams;
+        this.leftJoinKeys = leftJoinKeys;
+        this.rightJoinKeys = rightJoinKeys;
+    }
+
+    public UUID rightContextId() {
+        return rightContextId;
+    }
+
+    public void rightContextId(UUID rightContextId) {
+        this.rightContextId = rightContextId;
+    }
+
+    public List<DataType> rightInputTypes() {
+        return rightInputTypes;
+    }
+
+    public void rightInputTypes(List<DataType> rightInputTypes) {
+        this.rightInputTypes = rightInputTypes;
+    }
+
+    public int numRightUpstreams() {
+        return numRightUpstreams;
+    }
+
+    public int[] leftJoinKeys() {
+        return leftJoinKeys;
+    }
+
+    public int[] rightJoinKeys() {
+        return rightJoinKeys;
+    }
+
+    /**
+     * if true, every left row is passed to the projections at most once,
+     * joined with any right row it matches (<code>IN (subquery)</code>)
+     */
+    public boolean semiJoin() {
+        return semiJoin;
+    }
+
+    public void semiJoin(boolean semiJoin) {
+        this.semiJoin = semiJoin;
+    }
+
+    /**
+     * if true, the hash table is built on the rows of the left relation, otherwise on the right ones.
+     * Always false for a semi join.
+     */
+    public boolean buildLeft() {
+        return buildLeft;
+    }
+
+    public void buildLeft(boolean buildLeft) {
+        this.buildLeft = buildLeft;
+    }
+
+    /**
+     * the types of the joined rows which are passed to the projections
+     */
+    public List<DataType> joinedInputTypes() {
+        return ImmutableList.<DataType>builder().addAll(inputTypes()).addAll(rightInputTypes).build();
+    }
+
+    @Override
+    public <C, R> R accept(PlanNodeVisitor<C, R> visitor, C context) {
+        return visitor.visitHashJoinMergeNode(this, context);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+
+        numRightUpstreams = in.readVInt();
+        rightContextId = new UUID(in.readLong(), in.readLong());
+        int numCols = in.readVInt();
+        rightInputTypes = new ArrayList<>(numCols);
+        for (int i = 0; i < numCols; i++) {
+            rightInputTypes.add(DataTypes.fromStream(in));
+        }
+        leftJoinKeys = readIntArray(in);
+        rightJoinKeys = readIntArray(in);
+        semiJoin = in.readBoolean();
+        buildLeft = in.readBoolean();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+
+        out.writeVInt(numRightUpstreams);
+        out.writeLong(rightContextId.getMostSignificantBits());
+        out.writeLong(rightContextId.getLeastSignificantBits());
+        out.writeVInt(rightInputTypes.size());
+        for (DataType inputType : rightInputTypes) {
+            DataTypes.toStream(inputType, out);
+        }
+        writeIntArray(leftJoinKeys, out);
+        writeIntArray(rightJoinKeys, out);
+        out.writeBoolean(semiJoin);
+        out.writeBoolean(buildLeft);
+    }
+
+    private static int[] readIntArray(StreamInput in) throws IOException {
+        int[] values = new int[in.readVInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readVInt();
+        }
+        return values;
+    }
+
+    private static void writeIntArray(int[] values, StreamOutput out) throws IOException {
+        out.writeVInt(values.length);
+        for (int value : values) {
+            out.writeVInt(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id())
+                .add("projections", projections)
+                .add("outputTypes", outputTypes)
+                .add("contextId", contextId())
+                .add("rightContextId", rightContextId)
+                .add("numUpstreams", numUpstreams())
+                .add("numRightUpstreams", numRightUpstreams)
+                .add("executionNodes", executionNodes())
+                .add("inputTypes", inputTypes())
+                .add("rightInputTypes", rightInputTypes)
+                .add("leftJoinKeys", Arrays.toString(leftJoinKeys))
+                .add("rightJoinKeys", Arrays.toString(rightJoinKeys))
+                .add("semiJoin", semiJoin)
+                .add("buildLeft", buildLeft)
+                .toString();
+    }
+}
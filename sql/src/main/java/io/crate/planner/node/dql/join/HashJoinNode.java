@@ -0,0 +1,161 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner.node.dql.join;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+import io.crate.planner.node.PlanNode;
+import io.crate.planner.node.PlanNodeVisitor;
+import io.crate.planner.node.dql.AbstractDQLPlanNode;
+import io.crate.types.DataType;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plan Node that will be executed as an INNER JOIN using a hash table
+ * built on the side with less rows, which is then probed with the rows
+ * of the other side.
+ *
+ * Assumptions:
+ *
+ * <ul>
+ * <li> the plan nodes of each side form a chain whose last node returns the rows of that side
+ * <li> the where clause is already splitted to the left and right plan nodes
+ * <li> the join keys are the column indices of the equality conditions in the left and right rows,
+ *      <code>leftJoinKeys[i]</code> has to be equal to <code>rightJoinKeys[i]</code>
+ * </ul>
+ *
+ * The rows passed to the projections always contain the left columns first, then the right ones,
+ * no matter which side the hash table is built on.
+ */
+public class HashJoinNode extends AbstractDQLPlanNode {
+
+    private final List<PlanNode> left;
+    private final List<PlanNode> right;
+    private final int[] leftJoinKeys;
+    private final int[] rightJoinKeys;
+    private List<DataType> leftTypes;
+    private List<DataType> rightTypes;
+    private boolean semiJoin = false;
+
+    public HashJoinNode(List<PlanNode> left,
+                        List<PlanNode> right,
+                        int[] leftJoinKeys,
+                        int[] rightJoinKeys) {
+        super("hashJoin");
+        assert leftJoinKeys.length > 0 : "hash join requires at least one join key";
+        assert leftJoinKeys.length == rightJoinKeys.length : "number of left and right join keys must match";
+        this.left = left;
+        this.right = right;
+        this.leftJoinKeys = leftJoinKeys;
+        this.rightJoinKeys = rightJoinKeys;
+    }
+
+    public List<PlanNode> left() {
+        return left;
+    }
+
+    public List<PlanNode> right() {
+        return right;
+    }
+
+    /**
+     * the types of the columns of the left rows
+     */
+    public List<DataType> leftTypes() {
+        return leftTypes;
+    }
+
+    public void leftTypes(List<DataType> leftTypes) {
+        this.leftTypes = leftTypes;
+    }
+
+    /**
+     * the types of the columns of the right rows
+     */
+    public List<DataType> rightTypes() {
+        return rightTypes;
+    }
+
+    public void rightTypes(List<DataType> rightTypes) {
+        this.rightTypes = rightTypes;
+    }
+
+    public int[] leftJoinKeys() {
+        return leftJoinKeys;
+    }
+
+    public int[] rightJoinKeys() {
+        return rightJoinKeys;
+    }
+
+    /**
+     * if true, every left row is passed to the projections at most once,
+     * joined with any right row it matches (<code>IN (subquery)</code>)
+     */
+    public boolean semiJoin() {
+        return semiJoin;
+    }
+
+    public void semiJoin(boolean semiJoin) {
+        this.semiJoin = semiJoin;
+    }
+
+    @Override
+    public Set<String> executionNodes() {
+        return ImmutableSet.of();
+    }
+
+    @Override
+    public <C, R> R accept(PlanNodeVisitor<C, R> visitor, C context) {
+        return visitor.visitHashJoinNode(this, context);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        throw new UnsupportedOperationException("HashJoinNode not serializable");
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        throw new UnsupportedOperationException("HashJoinNode not serializable");
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id())
+                .add("projections", projections)
+                .add("outputTypes", outputTypes)
+                .add("left", left)
+                .add("right", right)
+                .add("leftJoinKeys", Arrays.toString(leftJoinKeys))
+                .add("rightJoinKeys", Arrays.toString(rightJoinKeys))
+                .add("semiJoin", semiJoin)
+                .toString();
+    }
+}
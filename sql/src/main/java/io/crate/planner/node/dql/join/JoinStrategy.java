@@ -0,0 +1,59 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner.node.dql.join;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+
+/**
+ * the ways an INNER JOIN of two tables with equal join keys can be executed
+ */
+public enum JoinStrategy {
+
+    /**
+     * both relations are collected to the handler node, which joins them
+     */
+    HANDLER,
+
+    /**
+     * the smaller relation is sent to every node holding shards of the larger one,
+     * which joins it with its own rows of the larger relation
+     */
+    BROADCAST,
+
+    /**
+     * both relations are hash-partitioned by their join keys to the same set of nodes,
+     * each of them joins one partition
+     */
+    SHUFFLE;
+
+    /**
+     * @return the strategy or null for <code>auto</code>
+     */
+    @Nullable
+    public static JoinStrategy fromSetting(String value) {
+        if (value.equalsIgnoreCase("auto")) {
+            return null;
+        }
+        return valueOf(value.toUpperCase(Locale.ENGLISH));
+    }
+}
@@ -53,12 +53,8 @@ public class WriterProjection extends Projection {
     private final static Reference TABLE_NAME_REF = new Reference(SysShardsTableInfo.INFOS.get(new ColumnIdent("table_name")));
     private final static Reference PARTITION_IDENT_REF = new Reference(SysShardsTableInfo.INFOS.get(new ColumnIdent("partition_ident")));
 
-    public static final Symbol DIRECTORY_TO_FILENAME = new Function(new FunctionInfo(
-            new FunctionIdent(FormatFunction.NAME, Arrays.<DataType>asList(StringType.INSTANCE,
-                    StringType.INSTANCE, StringType.INSTANCE, StringType.INSTANCE)),
-            StringType.INSTANCE),
-            Arrays.<Symbol>asList(Literal.newLiteral("%s_%s_%s.json"), TABLE_NAME_REF, SHARD_ID_REF, PARTITION_IDENT_REF)
-    );
+    public static final Symbol DIRECTORY_TO_FILENAME = directoryToFilename("json");
+    public static final Symbol DIRECTORY_TO_COLUMNAR_FILENAME = directoryToFilename("ccol");
 
     private Symbol uri;
     private boolean isDirectoryUri = false;
@@ -77,6 +73,16 @@ public class WriterProjection extends Projection {
         }
     };
 
+    private static Symbol directoryToFilename(String extension) {
+        return new Function(new FunctionInfo(
+                new FunctionIdent(FormatFunction.NAME, Arrays.<DataType>asList(StringType.INSTANCE,
+                        StringType.INSTANCE, StringType.INSTANCE, StringType.INSTANCE)),
+                StringType.INSTANCE),
+                Arrays.<Symbol>asList(Literal.newLiteral("%s_%s_%s." + extension),
+                        TABLE_NAME_REF, SHARD_ID_REF, PARTITION_IDENT_REF)
+        );
+    }
+
     @Override
     public RowGranularity requiredGranularity() {
         return RowGranularity.SHARD;
@@ -111,6 +117,18 @@ public class WriterProjection extends Projection {
         return OUTPUTS;
     }
 
+    public void outputNames(@Nullable List<String> outputNames) {
+        this.outputNames = outputNames;
+    }
+
+    /**
+     * the names of the inputs, only set if the inputs are written in the columnar format
+     */
+    @Nullable
+    public List<String> outputNames() {
+        return outputNames;
+    }
+
     public void inputs(List<Symbol> symbols) {
         inputs = symbols;
     }
@@ -21,6 +21,7 @@
 
 package io.crate.plugin;
 
+import io.crate.action.sql.CursorService;
 import io.crate.service.SQLService;
 import org.elasticsearch.common.inject.AbstractModule;
 import io.crate.action.sql.DDLStatementDispatcher;
@@ -34,5 +35,6 @@ public class SQLModule extends AbstractModule {
         bind(SQLService.class).asEagerSingleton();
         bind(DDLStatementDispatcher.class).asEagerSingleton();
         bind(FulltextAnalyzerResolver.class).asEagerSingleton();
+        bind(CursorService.class).asEagerSingleton();
     }
 }
\ No newline at end of file
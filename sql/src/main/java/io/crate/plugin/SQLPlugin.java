@@ -21,8 +21,8 @@
 
 package io.crate.plugin;
 
-import com.google.common.collect.ImmutableList;
 import io.crate.Constants;
+import io.crate.action.sql.CursorService;
 import io.crate.action.sql.SQLAction;
 import io.crate.action.sql.SQLBulkAction;
 import io.crate.action.sql.TransportSQLAction;
@@ -42,8 +42,11 @@ import io.crate.metadata.sys.MetaDataSysModule;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
 import io.crate.operation.collect.CollectOperationModule;
 import io.crate.operation.collect.CollectShardModule;
+import io.crate.operation.collect.files.ClusterSettingsCheckpoints;
+import io.crate.operation.collect.files.FileReadingCollector;
 import io.crate.operation.operator.OperatorModule;
 import io.crate.operation.predicate.PredicateModule;
+import io.crate.operation.projectors.WriterProjector;
 import io.crate.operation.reference.sys.cluster.SysClusterExpressionModule;
 import io.crate.operation.reference.sys.node.SysNodeExpressionModule;
 import io.crate.operation.reference.sys.shard.SysShardExpressionModule;
@@ -52,6 +55,7 @@ import io.crate.operation.scalar.ScalarFunctionModule;
 import io.crate.operation.scalar.elasticsearch.script.NumericScalarSearchScript;
 import io.crate.operation.scalar.elasticsearch.script.NumericScalarSortScript;
 import io.crate.planner.PlanModule;
+import io.crate.planner.TableStatsService;
 import io.crate.rest.action.RestSQLAction;
 import io.crate.service.SQLService;
 import org.elasticsearch.action.ActionModule;
@@ -65,6 +69,7 @@ import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.plugins.AbstractPlugin;
 import org.elasticsearch.rest.RestModule;
 import org.elasticsearch.script.ScriptModule;
@@ -89,9 +94,29 @@ public class SQLPlugin extends AbstractPlugin {
         // Set default analyzer
         settingsBuilder.put("index.analysis.analyzer.default.type", "keyword");
 
+        // COPY FROM parses lines on its own threads, long running imports must not occupy the search threads
+        int numProcessors = EsExecutors.boundedNumberOfProcessors(settings);
+        addThreadPool(settingsBuilder, FileReadingCollector.THREAD_POOL, numProcessors, numProcessors);
+        // COPY TO compresses the blocks of gzip outputs and uploads S3 parts concurrently,
+        // with a full queue the writing thread does the work itself
+        addThreadPool(settingsBuilder, WriterProjector.THREAD_POOL, numProcessors, 2 * numProcessors);
+
         return settingsBuilder.build();
     }
 
+    /**
+     * adds a fixed thread pool to the node thread pool unless it's configured already
+     */
+    private void addThreadPool(ImmutableSettings.Builder settingsBuilder, String name, int size, int queueSize) {
+        String prefix = "threadpool." + name + ".";
+        if (settings.get(prefix + "type") != null) {
+            return;
+        }
+        settingsBuilder.put(prefix + "type", "fixed");
+        settingsBuilder.put(prefix + "size", size);
+        settingsBuilder.put(prefix + "queue_size", queueSize);
+    }
+
     public String name() {
         return "sql";
     }
@@ -102,7 +127,13 @@ public class SQLPlugin extends AbstractPlugin {
 
     @Override
     public Collection<Class<? extends LifecycleComponent>> services() {
-        return ImmutableList.<Class<? extends LifecycleComponent>>of(SQLService.class);
+        Collection<Class<? extends LifecycleComponent>> services = newArrayList();
+        services.add(SQLService.class);
+        if (!settings.getAsBoolean("node.client", false)) {
+            services.add(TableStatsService.class);
+            services.add(CursorService.class);
+        }
+        return services;
     }
 
     @Override
@@ -159,6 +190,7 @@ public class SQLPlugin extends AbstractPlugin {
     public void onModule(ClusterDynamicSettingsModule clusterDynamicSettingsModule) {
         // add our dynamic cluster settings
         clusterDynamicSettingsModule.addDynamicSettings(Constants.CUSTOM_ANALYSIS_SETTINGS_PREFIX + "*");
+        clusterDynamicSettingsModule.addDynamicSettings(ClusterSettingsCheckpoints.SETTINGS_PREFIX + "*");
         clusterDynamicSettingsModule.addDynamicSettings(CrateCircuitBreakerService.QUERY_CIRCUIT_BREAKER_LIMIT_SETTING);
         clusterDynamicSettingsModule.addDynamicSettings(CrateCircuitBreakerService.QUERY_CIRCUIT_BREAKER_OVERHEAD_SETTING);
         registerSettings(clusterDynamicSettingsModule, CrateSettings.CRATE_SETTINGS);
@@ -21,24 +21,44 @@
 
 package io.crate.rest.action;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.action.sql.*;
 import io.crate.action.sql.parser.SQLXContentSourceContext;
 import io.crate.action.sql.parser.SQLXContentSourceParser;
 import io.crate.exceptions.SQLParseException;
+import io.crate.http.netty.ChunkedHttpResponse;
+import io.crate.http.netty.NettyHttpChannel;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.rest.*;
 
+import javax.annotation.Nullable;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Locale;
 
+/**
+ * Executes the statement of a request to <code>/_sql</code>.
+ *
+ * With the parameter <code>stream=true</code> the response is sent using chunked transfer encoding,
+ * page by page, while the client reads it. Unless the request has a fetch size or a cursor of its own
+ * the rows are fetched from a cursor, {@link #STREAM_FETCH_SIZE} rows at a time,
+ * so that only those rows are held in memory.
+ * The parameter <code>format</code> selects <code>json</code> (the default) or <code>csv</code> output.
+ */
 public class RestSQLAction extends BaseRestHandler {
 
+    static final int STREAM_FETCH_SIZE = 10 * SQLResponsePageWriter.DEFAULT_PAGE_SIZE;
+
     @Inject
     public RestSQLAction(Settings settings, Client client, RestController controller) {
         super(settings, controller, client);
@@ -66,6 +86,15 @@ public class RestSQLAction extends BaseRestHandler {
             return;
         }
 
+        String format = request.param("format", SQLResponsePageWriter.FORMAT_JSON).toLowerCase(Locale.ENGLISH);
+        if (!format.equals(SQLResponsePageWriter.FORMAT_JSON) && !format.equals(SQLResponsePageWriter.FORMAT_CSV)) {
+            channel.sendResponse(new CrateThrowableRestResponse(channel,
+                    new SQLActionException(String.format(Locale.ENGLISH,
+                            "Unknown format '%s', supported formats are 'json' and 'csv'", format),
+                            4000, RestStatus.BAD_REQUEST, null)));
+            return;
+        }
+
         Object[] args = context.args();
         Object[][] bulkArgs = context.bulkArgs();
         if(args != null && args.length > 0 && bulkArgs != null && bulkArgs.length > 0){
@@ -77,16 +106,29 @@ public class RestSQLAction extends BaseRestHandler {
         if (bulkArgs != null && bulkArgs.length > 0) {
             executeBulkRequest(context, request, channel, client);
         } else {
-            executeSimpleRequest(context, request, channel, client);
+            executeSimpleRequest(context, format, request, channel, client);
         }
     }
 
-    private void executeSimpleRequest(SQLXContentSourceContext context, final RestRequest request, final RestChannel channel, Client client) {
+    private void executeSimpleRequest(SQLXContentSourceContext context, String format, final RestRequest request, final RestChannel channel, Client client) {
         final SQLRequestBuilder requestBuilder = new SQLRequestBuilder(client);
         requestBuilder.stmt(context.stmt());
         requestBuilder.args(context.args());
         requestBuilder.includeTypesOnResponse(request.paramAsBoolean("types", false));
-        requestBuilder.execute(RestSQLAction.<SQLResponse>newListener(request, channel));
+        requestBuilder.fetchSize(context.fetchSize());
+        requestBuilder.keepAlive(context.keepAlive());
+        requestBuilder.cursor(context.cursor());
+        requestBuilder.closeCursor(context.close());
+        boolean stream = request.paramAsBoolean("stream", false) && channel instanceof NettyHttpChannel;
+        boolean followCursor = stream && context.fetchSize() <= 0 && context.cursor() == null;
+        if (followCursor) {
+            requestBuilder.fetchSize(STREAM_FETCH_SIZE);
+        }
+        if (stream || !format.equals(SQLResponsePageWriter.FORMAT_JSON)) {
+            requestBuilder.execute(new PagedSQLResponseListener(request, channel, client, format, stream, followCursor));
+        } else {
+            requestBuilder.execute(RestSQLAction.<SQLResponse>newListener(request, channel));
+        }
     }
 
     private void executeBulkRequest(SQLXContentSourceContext context, RestRequest request, RestChannel channel, Client client) {
@@ -97,6 +139,149 @@ public class RestSQLAction extends BaseRestHandler {
         requestBuilder.execute(RestSQLAction.<SQLBulkResponse>newListener(request, channel));
     }
 
+    /**
+     * writes the response page by page, as chunks if streaming is requested.
+     * The next page is only serialized once the channel is writable again,
+     * so that a slow client doesn't make the pending chunks pile up in memory.
+     * If the listener follows the cursor of the response the next rows are only fetched
+     * once the rows of the previous fetch have been written.
+     */
+    private static class PagedSQLResponseListener implements ActionListener<SQLResponse> {
+
+        private static final ESLogger logger = Loggers.getLogger(PagedSQLResponseListener.class);
+        private final RestRequest request;
+        private final RestChannel channel;
+        private final Client client;
+        private final String format;
+        private final boolean stream;
+        private final boolean followCursor;
+
+        public PagedSQLResponseListener(RestRequest request,
+                                        RestChannel channel,
+                                        Client client,
+                                        String format,
+                                        boolean stream,
+                                        boolean followCursor) {
+            this.request = request;
+            this.channel = channel;
+            this.client = client;
+            this.format = format;
+            this.stream = stream;
+            this.followCursor = followCursor;
+        }
+
+        @Override
+        public void onResponse(SQLResponse response) {
+            SQLResponsePageWriter writer;
+            try {
+                writer = SQLResponsePageWriter.create(response, format, request.paramAsBoolean("pretty", false),
+                        SQLResponsePageWriter.DEFAULT_PAGE_SIZE);
+                if (followCursor) {
+                    writer.followCursor();
+                }
+                if (!stream) {
+                    BytesStreamOutput out = new BytesStreamOutput();
+                    for (BytesReference page = writer.nextPage(); page != null; page = writer.nextPage()) {
+                        page.writeTo(out);
+                    }
+                    channel.sendResponse(new BytesRestResponse(RestStatus.OK, writer.contentType(), out.bytes()));
+                    return;
+                }
+            } catch (Throwable e) {
+                onFailure(e);
+                return;
+            }
+            ChunkedHttpResponse chunkedResponse =
+                    ((NettyHttpChannel) channel).startChunkedResponse(RestStatus.OK, writer.contentType());
+            writePages(chunkedResponse, writer);
+        }
+
+        private void writePages(final ChunkedHttpResponse chunkedResponse, final SQLResponsePageWriter writer) {
+            try {
+                BytesReference page;
+                while (!writer.needsRows() && (page = writer.nextPage()) != null) {
+                    ListenableFuture<Void> written = chunkedResponse.write(page);
+                    if (!chunkedResponse.isWritable()) {
+                        Futures.addCallback(written, new FutureCallback<Void>() {
+                            @Override
+                            public void onSuccess(@Nullable Void result) {
+                                writePages(chunkedResponse, writer);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable t) {
+                                logger.debug("failed to send chunk of sql response", t);
+                                abort(chunkedResponse, writer);
+                            }
+                        });
+                        return;
+                    }
+                }
+                if (writer.needsRows()) {
+                    fetchRows(chunkedResponse, writer);
+                } else {
+                    chunkedResponse.finish();
+                }
+            } catch (Throwable e) {
+                // the status has been sent already, the client only notices the missing end of the response
+                logger.error("failed to send sql response", e);
+                abort(chunkedResponse, writer);
+            }
+        }
+
+        private void fetchRows(final ChunkedHttpResponse chunkedResponse, final SQLResponsePageWriter writer) {
+            SQLRequestBuilder requestBuilder = new SQLRequestBuilder(client);
+            requestBuilder.cursor(writer.cursor());
+            requestBuilder.execute(new ActionListener<SQLResponse>() {
+                @Override
+                public void onResponse(SQLResponse response) {
+                    writer.addRows(response);
+                    writePages(chunkedResponse, writer);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    // a cursor that fails to fetch is closed already
+                    logger.error("failed to fetch the rows of the sql response", e);
+                    chunkedResponse.abort();
+                }
+            });
+        }
+
+        /**
+         * aborts the response and closes the cursor the remaining rows would have been fetched from
+         */
+        private void abort(ChunkedHttpResponse chunkedResponse, SQLResponsePageWriter writer) {
+            chunkedResponse.abort();
+            String cursor = writer.cursor();
+            if (cursor == null) {
+                return;
+            }
+            SQLRequestBuilder requestBuilder = new SQLRequestBuilder(client);
+            requestBuilder.cursor(cursor);
+            requestBuilder.closeCursor(true);
+            requestBuilder.execute(new ActionListener<SQLResponse>() {
+                @Override
+                public void onResponse(SQLResponse response) {
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    logger.debug("failed to close the cursor of an aborted sql response", e);
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            try {
+                channel.sendResponse(new CrateThrowableRestResponse(channel, e));
+            } catch (Throwable e1) {
+                logger.error("failed to send failure response", e1);
+            }
+        }
+    }
+
     private static <TResponse extends SQLBaseResponse> ActionListener<TResponse> newListener(
             RestRequest request, RestChannel channel) {
         return new SQLResponseListener<>(request, channel);
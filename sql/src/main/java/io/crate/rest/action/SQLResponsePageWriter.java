@@ -0,0 +1,305 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.rest.action;
+
+import com.google.common.base.Charsets;
+import io.crate.action.sql.SQLResponse;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Serializes the rows of a {@link SQLResponse} page by page, so that a large response can be sent
+ * in chunks without holding all of it in memory in its serialized form.
+ *
+ * If the writer follows the cursor of the response the rows fetched from the cursor are written
+ * as part of the same response, see {@link #needsRows()} and {@link #addRows(SQLResponse)}.
+ */
+abstract class SQLResponsePageWriter {
+
+    static final String FORMAT_JSON = "json";
+    static final String FORMAT_CSV = "csv";
+
+    static final int DEFAULT_PAGE_SIZE = 1000;
+
+    protected final SQLResponse response;
+    protected final PageOutput out = new PageOutput();
+    private final int pageSize;
+    private SQLResponse rowsResponse;
+    private int numRows;
+    private int nextRow = 0;
+    private long writtenRows = 0;
+    private String cursor;
+    private boolean followsCursor = false;
+    private boolean started = false;
+    private boolean finished = false;
+
+    protected SQLResponsePageWriter(SQLResponse response, int pageSize) {
+        this.response = response;
+        this.pageSize = pageSize;
+        setRows(response);
+    }
+
+    private void setRows(SQLResponse rowsResponse) {
+        this.rowsResponse = rowsResponse;
+        numRows = rowsResponse.rows() == null ? 0 : rowsResponse.rows().length;
+        nextRow = 0;
+    }
+
+    /**
+     * the rows of the response are followed by the rows fetched from its cursor,
+     * the written response contains no cursor and the row count of all rows
+     */
+    void followCursor() {
+        followsCursor = true;
+        cursor = response.cursor();
+        response.cursor(null);
+    }
+
+    /**
+     * @return the cursor the next rows have to be fetched from or null if there are no further rows
+     */
+    @Nullable
+    String cursor() {
+        return cursor;
+    }
+
+    /**
+     * @return true if all rows have been written and the next rows have to be fetched from the {@link #cursor()}
+     */
+    boolean needsRows() {
+        return cursor != null && nextRow == numRows;
+    }
+
+    /**
+     * @param next the response to a fetch from the {@link #cursor()}
+     */
+    void addRows(SQLResponse next) {
+        assert needsRows() : "rows must only be added once all rows have been written";
+        cursor = next.cursor();
+        setRows(next);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    static SQLResponsePageWriter create(SQLResponse response, String format, boolean pretty, int pageSize)
+            throws IOException {
+        switch (format.toLowerCase(Locale.ENGLISH)) {
+            case FORMAT_JSON:
+                return new JsonPageWriter(response, pretty, pageSize);
+            case FORMAT_CSV:
+                return new CsvPageWriter(response, pageSize);
+            default:
+                throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                        "Unknown format '%s', supported formats are 'json' and 'csv'", format));
+        }
+    }
+
+    abstract String contentType();
+
+    /**
+     * @return the next page or null if the whole response has been written
+     */
+    @Nullable
+    BytesReference nextPage() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            writeStart();
+            started = true;
+        }
+        int end = Math.min(nextRow + pageSize, numRows);
+        for (; nextRow < end; nextRow++) {
+            writeRow(rowsResponse, nextRow);
+            writtenRows++;
+        }
+        if (nextRow == numRows && cursor == null) {
+            if (followsCursor) {
+                response.rowCount(writtenRows);
+            }
+            writeEnd();
+            finished = true;
+        }
+        flush();
+        return out.takePage();
+    }
+
+    protected abstract void writeStart() throws IOException;
+
+    /**
+     * @param rowsResponse the response holding the row, the first one or one fetched from its cursor
+     */
+    protected abstract void writeRow(SQLResponse rowsResponse, int row) throws IOException;
+
+    protected abstract void writeEnd() throws IOException;
+
+    protected abstract void flush() throws IOException;
+
+    /**
+     * collects the bytes of one page at a time
+     */
+    static class PageOutput extends OutputStream {
+
+        private BytesStreamOutput page = new BytesStreamOutput();
+
+        @Override
+        public void write(int b) throws IOException {
+            page.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            page.write(b, off, len);
+        }
+
+        BytesReference takePage() {
+            BytesReference bytes = page.bytes();
+            page = new BytesStreamOutput();
+            return bytes;
+        }
+    }
+
+    /**
+     * the same JSON as the regular response
+     */
+    static class JsonPageWriter extends SQLResponsePageWriter {
+
+        private final XContentBuilder builder;
+
+        JsonPageWriter(SQLResponse response, boolean pretty, int pageSize) throws IOException {
+            super(response, pageSize);
+            builder = new XContentBuilder(JsonXContent.jsonXContent, out);
+            if (pretty) {
+                builder.prettyPrint();
+            }
+        }
+
+        @Override
+        String contentType() {
+            return XContentType.JSON.restContentType();
+        }
+
+        @Override
+        protected void writeStart() throws IOException {
+            response.startXContent(builder);
+        }
+
+        @Override
+        protected void writeRow(SQLResponse rowsResponse, int row) throws IOException {
+            rowsResponse.rowToXContent(builder, row);
+        }
+
+        @Override
+        protected void writeEnd() throws IOException {
+            response.endXContent(builder);
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            builder.flush();
+        }
+    }
+
+    /**
+     * a header line with the column names followed by one line per row.
+     * Objects and arrays are written as JSON, null as an empty field.
+     */
+    static class CsvPageWriter extends SQLResponsePageWriter {
+
+        private final Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+
+        CsvPageWriter(SQLResponse response, int pageSize) {
+            super(response, pageSize);
+        }
+
+        @Override
+        String contentType() {
+            return "text/csv; charset=UTF-8";
+        }
+
+        @Override
+        protected void writeStart() throws IOException {
+            writeLine(response.cols());
+        }
+
+        @Override
+        protected void writeRow(SQLResponse rowsResponse, int row) throws IOException {
+            writeLine(rowsResponse.rows()[row]);
+        }
+
+        @Override
+        protected void writeEnd() throws IOException {
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            writer.flush();
+        }
+
+        private void writeLine(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (values[i] != null) {
+                    writeField(format(values[i]));
+                }
+            }
+            writer.write('\n');
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                // empty strings are quoted to tell them apart from null
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+
+        private static String format(Object value) throws IOException {
+            if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                return value.toString();
+            }
+            if (value instanceof BytesRef) {
+                return ((BytesRef) value).utf8ToString();
+            }
+            return XContentFactory.jsonBuilder().value(value).string();
+        }
+    }
+}
@@ -21,13 +21,14 @@
 
 package org.elasticsearch.action.bulk;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.crate.Constants;
 import io.crate.exceptions.Exceptions;
-import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.create.TransportCreateIndexAction;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.AutoCreateIndex;
@@ -36,58 +37,94 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static org.elasticsearch.common.util.concurrent.EsExecutors.daemonThreadFactory;
-
 /**
  * Processor to do Bulk Inserts, similar to {@link org.elasticsearch.action.bulk.BulkProcessor}
  * but less flexible (only supports IndexRequests)
  *
- * If the Bulk threadPool Queue is full retries are made and
- * the {@link #add(String, org.elasticsearch.common.bytes.BytesReference, String, String)} method will start to block.
+ * Requests are buffered per shard. A buffer is sent as one shard bulk request once it holds
+ * <code>bulkSize</code> items or <code>insert_by_query.flush_size</code> bytes of sources,
+ * once its first item is older than <code>insert_by_query.flush_interval</code>,
+ * or when the processor is closed.
+ *
+ * At most <code>insert_by_query.max_in_flight_requests_per_shard</code> requests are executed
+ * per shard at the same time, including requests that are retried because the bulk
+ * thread pool queue is full. If that limit is reached
+ * {@link #add(String, org.elasticsearch.common.bytes.BytesReference, String, String)}
+ * blocks the threads adding items to that shard.
+ *
+ * If indices are created automatically, items for an index which doesn't exist yet are held back
+ * while the index is created asynchronously and are routed once the creation has finished.
+ * At most <code>bulkSize</code> items are held back, further items block the adding threads.
+ *
+ * The periodic flush of aged buffers is scheduled once the first item stays buffered
+ * and is cancelled once the processor is closed or has failed.
+ * Flushes and retries are executed on the generic thread pool, never on the scheduler thread.
  */
 public class BulkShardProcessor {
 
+    static final String FLUSH_SIZE = "insert_by_query.flush_size";
+    static final String FLUSH_INTERVAL = "insert_by_query.flush_interval";
+    static final String MAX_IN_FLIGHT_REQUESTS_PER_SHARD = "insert_by_query.max_in_flight_requests_per_shard";
+
+    private static final ByteSizeValue DEFAULT_FLUSH_SIZE = new ByteSizeValue(5, ByteSizeUnit.MB);
+    private static final TimeValue DEFAULT_FLUSH_INTERVAL = TimeValue.timeValueSeconds(1);
+    private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SHARD = 2;
+    private static final long MAX_RETRY_DELAY_MS = 1000L;
+
     private final ClusterService clusterService;
+    /**
+     * schedules retries and flushes of aged buffers, the scheduled tasks must never block
+     */
+    private final ThreadPool threadPool;
+    private final Executor flushExecutor;
     private final TransportShardBulkActionDelegate transportShardBulkActionDelegate;
     private final TransportCreateIndexAction transportCreateIndexAction;
     private final boolean autoCreateIndices;
     private final boolean allowCreateOnly;
     private final int bulkSize;
-    private final Map<ShardId, List<BulkItemRequest>> requestsByShard = new HashMap<>();
+    private final long flushSizeInBytes;
+    private final TimeValue flushInterval;
+    private final long flushIntervalNanos;
+    private final int maxInFlightRequestsPerShard;
+    private final ConcurrentMap<ShardId, ShardBuffer> buffersByShard = ConcurrentCollections.newConcurrentMap();
     private final AutoCreateIndex autoCreateIndex;
     private final AtomicInteger globalCounter = new AtomicInteger(0);
-    private final AtomicInteger counter = new AtomicInteger(0);
     private final SettableFuture<BitSet> result;
     private final AtomicInteger pending = new AtomicInteger(0);
-    private final AtomicInteger currentDelay = new AtomicInteger(0);
     private final AtomicReference<Throwable> failure = new AtomicReference<>();
     private final BitSet responses;
+    private final BitSet processedItems = new BitSet();
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
     private final Object responsesLock = new Object();
     private volatile boolean closed = false;
-    private final Set<String> indicesCreated = new HashSet<>();
-    private final ReadWriteLock retryLock = new ReadWriteLock();
-    private final Semaphore executeLock = new Semaphore(1);
-    private final ScheduledExecutorService scheduledExecutorService =
-            Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("bulkShardProcessor"));
+    private final Set<String> indicesCreated = ConcurrentCollections.newConcurrentSet();
+    private final Map<String, List<PendingItem>> pendingItemsByIndex = new HashMap<>();
+    private final Object pendingItemsLock = new Object();
+    private final Semaphore heldBackItems;
     private final TimeValue requestTimeout;
+    private final Object flushTaskLock = new Object();
+    private volatile ScheduledFuture<?> flushTask;
+    private boolean flushTaskCancelled = false;
 
     private final ESLogger logger = Loggers.getLogger(getClass());
 
     public BulkShardProcessor(ClusterService clusterService,
+                              ThreadPool threadPool,
                               Settings settings,
                               TransportShardBulkActionDelegate transportShardBulkActionDelegate,
                               TransportCreateIndexAction transportCreateIndexAction,
@@ -95,15 +132,23 @@ public class BulkShardProcessor {
                               boolean allowCreateOnly,
                               int bulkSize) {
         this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.flushExecutor = threadPool.executor(ThreadPool.Names.GENERIC);
         this.transportShardBulkActionDelegate = transportShardBulkActionDelegate;
         this.transportCreateIndexAction = transportCreateIndexAction;
         this.autoCreateIndices = autoCreateIndices;
         this.allowCreateOnly = allowCreateOnly;
         this.bulkSize = bulkSize;
+        heldBackItems = new Semaphore(bulkSize);
         responses = new BitSet();
         result = SettableFuture.create();
         autoCreateIndex = new AutoCreateIndex(settings);
         requestTimeout = settings.getAsTime("insert_by_query.request_timeout", BulkShardRequest.DEFAULT_TIMEOUT);
+        flushSizeInBytes = settings.getAsBytesSize(FLUSH_SIZE, DEFAULT_FLUSH_SIZE).bytes();
+        maxInFlightRequestsPerShard = Math.max(1,
+                settings.getAsInt(MAX_IN_FLIGHT_REQUESTS_PER_SHARD, DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SHARD));
+        flushInterval = settings.getAsTime(FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL);
+        flushIntervalNanos = flushInterval.nanos();
     }
 
     public boolean add(String indexName, BytesReference source, String id, @Nullable String routing) {
@@ -115,31 +160,45 @@ public class BulkShardProcessor {
             return false;
         }
 
-        if (autoCreateIndices) {
-            createIndexIfRequired(indexName);
+        int itemId = globalCounter.getAndIncrement();
+        if (autoCreateIndices && holdBackIfIndexMissing(new PendingItem(itemId, indexName, source, id, routing))) {
+            // blocks if too many items are waiting for their index to be created
+            heldBackItems.acquireUninterruptibly();
+            return true;
         }
 
-        // will only block if retries/writer are active
+        ShardBuffer buffer;
         try {
-            retryLock.readLock();
-        } catch (InterruptedException e) {
-            Thread.interrupted();
+            buffer = buffer(shardId(indexName, id, routing));
+        } catch (RuntimeException e) {
+            // e.g. the index is missing, the item is never sent
+            pending.decrementAndGet();
+            setFailure(e);
+            throw e;
+        }
+        List<BulkItemRequest> items = buffer.add(
+                new BulkItemRequest(itemId, indexRequest(indexName, source, id, routing)), source.length());
+        if (items != null) {
+            // blocks if the maximum number of requests for this shard is in flight
+            buffer.inFlight.acquireUninterruptibly();
+            execute(buffer, items);
+        } else {
+            scheduleFlushTask();
         }
-
-        partitionRequestByShard(indexName, source, id, routing);
-        executeIfNeeded();
         return true;
     }
 
-    private void partitionRequestByShard(String indexName, BytesReference source, String id, @Nullable String routing) {
-        ShardId shardId = clusterService.operationRouting().indexShards(
+    private ShardId shardId(String indexName, String id, @Nullable String routing) {
+        return clusterService.operationRouting().indexShards(
                 clusterService.state(),
                 indexName,
                 Constants.DEFAULT_MAPPING_TYPE,
                 id,
                 routing
         ).shardId();
+    }
 
+    private IndexRequest indexRequest(String indexName, BytesReference source, String id, @Nullable String routing) {
         IndexRequest indexRequest = new IndexRequest(indexName, Constants.DEFAULT_MAPPING_TYPE, id);
         if (routing != null) {
             indexRequest.routing(routing);
@@ -147,30 +206,64 @@ public class BulkShardProcessor {
         indexRequest.source(source, false);
         indexRequest.timestamp(Long.toString(System.currentTimeMillis()));
         indexRequest.create(allowCreateOnly);
+        return indexRequest;
+    }
 
-        try {
-            executeLock.acquire();
-        } catch (InterruptedException e) {
-            Thread.interrupted();
-        }
-        List<BulkItemRequest> items = requestsByShard.get(shardId);
-        if (items == null) {
-            items = new ArrayList<>();
-            requestsByShard.put(shardId, items);
+    private ShardBuffer buffer(ShardId shardId) {
+        ShardBuffer buffer = buffersByShard.get(shardId);
+        if (buffer == null) {
+            buffer = new ShardBuffer(shardId);
+            ShardBuffer existing = buffersByShard.putIfAbsent(shardId, buffer);
+            if (existing != null) {
+                buffer = existing;
+            }
         }
-        counter.getAndIncrement();
-        items.add(new BulkItemRequest(globalCounter.getAndIncrement(), indexRequest));
-        executeLock.release();
+        return buffer;
     }
 
     public ListenableFuture<BitSet> result() {
         return result;
     }
 
+    /**
+     * flushes the buffered items if possible
+     *
+     * @return a future which completes once all items added so far are processed, whether they
+     *         have been indexed successfully or not. It fails if the processor fails.
+     */
+    public ListenableFuture<Void> checkpoint() {
+        SettableFuture<Void> future = SettableFuture.create();
+        int numItems = globalCounter.get();
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            future.setException(throwable);
+            return future;
+        }
+        synchronized (responsesLock) {
+            if (processedItems.nextClearBit(0) >= numItems) {
+                future.set(null);
+                return future;
+            }
+            checkpoints.add(new Checkpoint(numItems, future));
+        }
+        for (ShardBuffer buffer : buffersByShard.values()) {
+            flushAllIfPossible(buffer);
+        }
+        return future;
+    }
+
+    /**
+     * sends all buffered items, the result is set once all of them are processed.
+     * Must be called even if adding items failed.
+     */
     public void close() {
         trace("close");
         closed = true;
-        executeRequests();
+        // buffers are flushed as soon as their in flight requests complete from now on
+        cancelFlushTask();
+        for (ShardBuffer buffer : buffersByShard.values()) {
+            flushAllIfPossible(buffer);
+        }
         if (pending.get() == 0) {
             setResult();
         }
@@ -179,7 +272,37 @@ public class BulkShardProcessor {
     private void setFailure(Throwable e) {
         failure.compareAndSet(null, e);
         result.setException(e);
-        scheduledExecutorService.shutdown();
+        cancelFlushTask();
+        List<Checkpoint> failedCheckpoints;
+        synchronized (responsesLock) {
+            failedCheckpoints = new ArrayList<>(checkpoints);
+            checkpoints.clear();
+        }
+        for (Checkpoint checkpoint : failedCheckpoints) {
+            checkpoint.future.setException(e);
+        }
+    }
+
+    /**
+     * must be called holding the responsesLock
+     *
+     * @return the checkpoints whose items are all processed now
+     */
+    private List<Checkpoint> reachedCheckpoints() {
+        if (checkpoints.isEmpty()) {
+            return ImmutableList.of();
+        }
+        int processed = processedItems.nextClearBit(0);
+        List<Checkpoint> reached = new ArrayList<>();
+        Iterator<Checkpoint> it = checkpoints.iterator();
+        while (it.hasNext()) {
+            Checkpoint checkpoint = it.next();
+            if (checkpoint.numItems <= processed) {
+                reached.add(checkpoint);
+                it.remove();
+            }
+        }
+        return reached;
     }
 
     private void setResult() {
@@ -189,7 +312,7 @@ public class BulkShardProcessor {
         } else {
             result.setException(throwable);
         }
-        scheduledExecutorService.shutdown();
+        cancelFlushTask();
     }
 
     private void setResultIfDone(int successes) {
@@ -200,218 +323,389 @@ public class BulkShardProcessor {
         }
     }
 
-    private void executeIfNeeded() {
-        if (closed || counter.get() >= bulkSize) {
-            executeRequests();
+    /**
+     * schedules the periodic flush of aged buffers unless it is scheduled already or has been cancelled
+     */
+    private void scheduleFlushTask() {
+        if (flushTask != null) {
+            return;
+        }
+        synchronized (flushTaskLock) {
+            if (flushTask != null || flushTaskCancelled) {
+                return;
+            }
+            flushTask = threadPool.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    // the scheduler thread only hands the flush over
+                    flushExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            flushAgedBuffers();
+                        }
+                    });
+                }
+            }, flushInterval);
         }
     }
 
-    private void executeRequests() {
-        try {
-            executeLock.acquire();
-        } catch (InterruptedException e) {
-            Thread.interrupted();
-        }
-        for (Iterator<Map.Entry<ShardId, List<BulkItemRequest>>> it = requestsByShard.entrySet().iterator(); it.hasNext();) {
-            Map.Entry<ShardId, List<BulkItemRequest>> entry = it.next();
-            ShardId shardId= entry.getKey();
-            List<BulkItemRequest> items = entry.getValue();
-            BulkShardRequest bulkShardRequest = new BulkShardRequest(
-                    new BulkRequest(),
-                    shardId.index().name(),
-                    shardId.id(),
-                    false,
-                    items.toArray(new BulkItemRequest[items.size()]));
-            bulkShardRequest.timeout(requestTimeout);
-            execute(bulkShardRequest);
-            it.remove();
-        }
-        counter.set(0);
-        executeLock.release();
-    }
-
-    private void execute(BulkShardRequest bulkShardRequest) {
+    private void cancelFlushTask() {
+        synchronized (flushTaskLock) {
+            flushTaskCancelled = true;
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+        }
+    }
+
+    private void flushAgedBuffers() {
+        long now = System.nanoTime();
+        for (ShardBuffer buffer : buffersByShard.values()) {
+            if (buffer.isOlderThan(now - flushIntervalNanos)) {
+                flushIfPossible(buffer);
+            }
+        }
+    }
+
+    /**
+     * sends the next batch of buffered items of the shard unless the maximum number of requests
+     * is in flight already. The buffer is flushed again once one of those completes,
+     * if the processor is closed or full batches are left.
+     *
+     * @return true if a request has been sent
+     */
+    private boolean flushIfPossible(ShardBuffer buffer) {
+        if (failure.get() != null || !buffer.inFlight.tryAcquire()) {
+            return false;
+        }
+        List<BulkItemRequest> items = buffer.nextBatch();
+        if (items == null) {
+            buffer.inFlight.release();
+            return false;
+        }
+        execute(buffer, items);
+        return true;
+    }
+
+    /**
+     * sends as many batches of buffered items of the shard as requests may be in flight
+     */
+    private void flushAllIfPossible(ShardBuffer buffer) {
+        while (flushIfPossible(buffer)) {
+            // keep flushing
+        }
+    }
+
+    private void execute(ShardBuffer buffer, List<BulkItemRequest> items) {
+        BulkShardRequest bulkShardRequest = new BulkShardRequest(
+                new BulkRequest(),
+                buffer.shardId.index().name(),
+                buffer.shardId.id(),
+                false,
+                items.toArray(new BulkItemRequest[items.size()]));
+        bulkShardRequest.timeout(requestTimeout);
+        execute(buffer, bulkShardRequest, 0);
+    }
+
+    private void execute(ShardBuffer buffer, BulkShardRequest bulkShardRequest, int retry) {
         trace(String.format("execute shard request %d", bulkShardRequest.shardId()));
-        transportShardBulkActionDelegate.execute(bulkShardRequest, new ResponseListener(bulkShardRequest));
+        transportShardBulkActionDelegate.execute(bulkShardRequest, new ResponseListener(buffer, bulkShardRequest, retry));
     }
 
-    private void doRetry(final BulkShardRequest request, final boolean repeatingRetry) {
+    private void doRetry(final ShardBuffer buffer, final BulkShardRequest request, final int retry) {
         trace("doRetry");
-        if (repeatingRetry) {
-            try {
-                Thread.sleep(currentDelay.incrementAndGet());
-            } catch (InterruptedException e) {
-                Thread.interrupted();
+        long delay = Math.min(MAX_RETRY_DELAY_MS, 1L << Math.min(retry, 10));
+        threadPool.schedule(TimeValue.timeValueMillis(delay), ThreadPool.Names.GENERIC, new Runnable() {
+            @Override
+            public void run() {
+                execute(buffer, request, retry + 1);
             }
-            transportShardBulkActionDelegate.execute(request, new RetryResponseListener(request));
-        } else {
-            // new retries will be spawned in new thread because they can block
-            scheduledExecutorService.schedule(
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            // will block if other retries/writer are active
-                            try {
-                                retryLock.writeLock();
-                            } catch (InterruptedException e) {
-                                Thread.interrupted();
+        });
+    }
+
+    /**
+     * holds back the item if its index doesn't exist yet and starts to create the index
+     * unless a creation is already in progress.
+     *
+     * @return true if the item has been held back
+     */
+    private boolean holdBackIfIndexMissing(PendingItem item) {
+        if (indicesCreated.contains(item.indexName)) {
+            return false;
+        }
+        if (!autoCreateIndex.shouldAutoCreate(item.indexName, clusterService.state())) {
+            indicesCreated.add(item.indexName);
+            return false;
+        }
+        synchronized (pendingItemsLock) {
+            if (indicesCreated.contains(item.indexName)) {
+                return false;
+            }
+            List<PendingItem> pendingItems = pendingItemsByIndex.get(item.indexName);
+            if (pendingItems != null) {
+                pendingItems.add(item);
+                return true;
+            }
+            pendingItems = new ArrayList<>();
+            pendingItems.add(item);
+            pendingItemsByIndex.put(item.indexName, pendingItems);
+        }
+        createIndex(item.indexName);
+        return true;
+    }
+
+    private void createIndex(final String indexName) {
+        trace(String.format("create index %s", indexName));
+        createIndex(new CreateIndexRequest(indexName).cause("bulkShardProcessor"),
+                new ActionListener<CreateIndexResponse>() {
+                    @Override
+                    public void onResponse(CreateIndexResponse createIndexResponse) {
+                        onIndexCreated(indexName);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable e) {
+                        e = Exceptions.unwrap(e);
+                        if (e instanceof IndexAlreadyExistsException) {
+                            // copy from with multiple readers might attempt to create the index
+                            // multiple times
+                            // can be ignored.
+                            if (logger.isTraceEnabled()) {
+                                logger.trace("copy from index {}", e.getMessage());
                             }
-                            transportShardBulkActionDelegate.execute(request, new RetryResponseListener(request));
+                            onIndexCreated(indexName);
+                        } else {
+                            onIndexCreationFailed(indexName, e);
                         }
-                    }, currentDelay.getAndIncrement(), TimeUnit.MILLISECONDS);
-        }
-    }
-
-    private void createIndexIfRequired(final String indexName) {
-        if (!indicesCreated.contains(indexName) || autoCreateIndex.shouldAutoCreate(indexName, clusterService.state())) {
-            try {
-                transportCreateIndexAction.execute(new CreateIndexRequest(indexName).cause("bulkShardProcessor")).actionGet();
-                indicesCreated.add(indexName);
-            } catch (ElasticsearchException e) {
-                if (e instanceof IndexAlreadyExistsException) {
-                    // copy from with multiple readers might attempt to create the index
-                    // multiple times
-                    // can be ignored.
-                    if (logger.isTraceEnabled()) {
-                        logger.trace("copy from index {}", e.getMessage());
                     }
-                    indicesCreated.add(indexName);
-                } else {
-                    setFailure(e);
-                }
+                });
+    }
+
+    /**
+     * creates the index asynchronously, overridden by tests
+     */
+    void createIndex(CreateIndexRequest request, ActionListener<CreateIndexResponse> listener) {
+        transportCreateIndexAction.execute(request, listener);
+    }
+
+    private void onIndexCreationFailed(String indexName, Throwable e) {
+        List<PendingItem> pendingItems;
+        synchronized (pendingItemsLock) {
+            pendingItems = pendingItemsByIndex.remove(indexName);
+        }
+        setFailure(e);
+        if (pendingItems != null) {
+            heldBackItems.release(pendingItems.size());
+        }
+    }
+
+    /**
+     * routes the items held back for the index. Runs on the thread of the create index listener,
+     * so it never waits for in flight requests but leaves the items in the shard buffers instead,
+     * split into batches which are sent once requests of their shard complete.
+     */
+    private void onIndexCreated(String indexName) {
+        List<PendingItem> pendingItems;
+        synchronized (pendingItemsLock) {
+            indicesCreated.add(indexName);
+            pendingItems = pendingItemsByIndex.remove(indexName);
+        }
+        if (pendingItems == null) {
+            return;
+        }
+        heldBackItems.release(pendingItems.size());
+        Set<ShardBuffer> buffers = new HashSet<>();
+        try {
+            for (PendingItem item : pendingItems) {
+                ShardBuffer buffer = buffer(shardId(item.indexName, item.id, item.routing));
+                buffer.appendHeldBack(new BulkItemRequest(item.itemId,
+                        indexRequest(item.indexName, item.source, item.id, item.routing)), item.source.length());
+                buffers.add(buffer);
             }
+        } catch (Throwable e) {
+            setFailure(e);
+            return;
+        }
+        for (ShardBuffer buffer : buffers) {
+            flushAllIfPossible(buffer);
         }
+        scheduleFlushTask();
     }
 
     private void processResponse(BulkShardResponse bulkShardResponse) {
         trace("execute response");
-        for (BulkItemResponse itemResponse : bulkShardResponse.getResponses()) {
-            synchronized (responsesLock) {
+        List<Checkpoint> reached;
+        synchronized (responsesLock) {
+            for (BulkItemResponse itemResponse : bulkShardResponse.getResponses()) {
                 responses.set(itemResponse.getItemId(), !itemResponse.isFailed());
+                processedItems.set(itemResponse.getItemId());
             }
+            reached = reachedCheckpoints();
+        }
+        for (Checkpoint checkpoint : reached) {
+            checkpoint.future.set(null);
         }
         setResultIfDone(bulkShardResponse.getResponses().length);
     }
 
-    private void processFailure(Throwable e, BulkShardRequest bulkShardRequest, boolean repeatingRetry) {
+    private void processFailure(Throwable e, ShardBuffer buffer, BulkShardRequest bulkShardRequest, int retry) {
         trace("execute failure");
         e = Exceptions.unwrap(e);
         if (e instanceof EsRejectedExecutionException) {
             logger.trace("{}, retrying", e.getMessage());
-            doRetry(bulkShardRequest, repeatingRetry);
+            doRetry(buffer, bulkShardRequest, retry);
         } else {
-            if (repeatingRetry) {
-                // release failed retry
-                try {
-                    retryLock.writeUnlock();
-                } catch (InterruptedException ex) {
-                    Thread.interrupted();
-                }
-            }
-            for (BulkItemRequest bulkItemRequest : bulkShardRequest.items()) {
-                synchronized (responsesLock) {
+            synchronized (responsesLock) {
+                for (BulkItemRequest bulkItemRequest : bulkShardRequest.items()) {
                     responses.set(bulkItemRequest.id(), false);
                 }
             }
             setFailure(e);
+            buffer.inFlight.release();
         }
     }
 
     class ResponseListener implements ActionListener<BulkShardResponse> {
 
-        protected final BulkShardRequest bulkShardRequest;
+        private final ShardBuffer buffer;
+        private final BulkShardRequest bulkShardRequest;
+        private final int retry;
 
-        public ResponseListener(BulkShardRequest bulkShardRequest) {
+        public ResponseListener(ShardBuffer buffer, BulkShardRequest bulkShardRequest, int retry) {
+            this.buffer = buffer;
             this.bulkShardRequest = bulkShardRequest;
+            this.retry = retry;
         }
 
         @Override
         public void onResponse(BulkShardResponse bulkShardResponse) {
+            buffer.inFlight.release();
             processResponse(bulkShardResponse);
+            if (closed || buffer.hasFullBatches()) {
+                flushIfPossible(buffer);
+            }
         }
 
         @Override
         public void onFailure(Throwable e) {
-            processFailure(e, bulkShardRequest, false);
+            processFailure(e, buffer, bulkShardRequest, retry);
         }
     }
 
     private void trace(String message) {
         if (logger.isTraceEnabled()) {
-            logger.trace("BulkShardProcessor: pending: {}; active retries: {} - {}",
-                    pending.get(), retryLock.activeWriters(), message);
+            logger.trace("BulkShardProcessor: pending: {} - {}", pending.get(), message);
         }
     }
 
-    class RetryResponseListener extends ResponseListener {
+    private static class Checkpoint {
 
-        public RetryResponseListener(BulkShardRequest bulkShardRequest) {
-            super(bulkShardRequest);
-        }
+        private final int numItems;
+        private final SettableFuture<Void> future;
 
-        @Override
-        public void onResponse(BulkShardResponse bulkShardResponse) {
-            trace("BulkShardProcessor retry success");
-            currentDelay.set(0);
-            try {
-                retryLock.writeUnlock();
-            } catch (InterruptedException e) {
-                Thread.interrupted();
-            }
-            processResponse(bulkShardResponse);
+        Checkpoint(int numItems, SettableFuture<Void> future) {
+            this.numItems = numItems;
+            this.future = future;
         }
+    }
 
-        @Override
-        public void onFailure(Throwable e) {
-            trace("BulkShardProcessor retry failure");
-            processFailure(e, bulkShardRequest, true);
+    private static class PendingItem {
+
+        private final int itemId;
+        private final String indexName;
+        private final BytesReference source;
+        private final String id;
+        private final String routing;
+
+        PendingItem(int itemId, String indexName, BytesReference source, String id, @Nullable String routing) {
+            this.itemId = itemId;
+            this.indexName = indexName;
+            this.source = source;
+            this.id = id;
+            this.routing = routing;
         }
     }
 
     /**
-     * A {@link Semaphore} based read/write lock allowing multiple readers,
-     * no reader will block others, and only 1 active writer. Writers take
-     * precedence over readers, a writer will block all readers.
-     * Compared to a {@link ReadWriteLock}, no lock is owned by a thread.
+     * items of one shard which haven't been sent yet
      */
-    class ReadWriteLock {
-        private final Semaphore readLock = new Semaphore(1, true);
-        private final Semaphore writeLock = new Semaphore(1, true);
-        private final AtomicInteger activeWriters = new AtomicInteger(0);
-        private final AtomicInteger waitingReaders = new AtomicInteger(0);
+    private class ShardBuffer {
 
-        public ReadWriteLock() {
+        private final ShardId shardId;
+        private final Semaphore inFlight = new Semaphore(maxInFlightRequestsPerShard);
+        private List<BulkItemRequest> items = new ArrayList<>();
+        private final Queue<List<BulkItemRequest>> fullBatches = new LinkedList<>();
+        private long sizeInBytes = 0;
+        private long firstItemNanos;
+
+        ShardBuffer(ShardId shardId) {
+            this.shardId = shardId;
         }
 
-        public void writeLock() throws InterruptedException {
-            // check readLock permits to prevent deadlocks
-            if (activeWriters.getAndIncrement() == 0 && readLock.availablePermits() == 1) {
-                // draining read permits, so all reads will block
-                readLock.drainPermits();
+        /**
+         * @return the buffered items if they have to be sent, otherwise null
+         */
+        @Nullable
+        synchronized List<BulkItemRequest> add(BulkItemRequest item, long itemSizeInBytes) {
+            append(item, itemSizeInBytes);
+            if (isFull() || closed) {
+                return drain();
             }
-            writeLock.acquire();
+            return null;
         }
 
-        public void writeUnlock() throws InterruptedException {
-            if (activeWriters.decrementAndGet() == 0) {
-                // unlock all readers
-                readLock.release(waitingReaders.getAndSet(0)+1);
+        /**
+         * appends an item which has been held back, the items are set aside as a full batch
+         * if they have to be sent.
+         */
+        synchronized void appendHeldBack(BulkItemRequest item, long itemSizeInBytes) {
+            append(item, itemSizeInBytes);
+            if (isFull()) {
+                fullBatches.add(drain());
             }
-            writeLock.release();
         }
 
-        public void readLock() throws InterruptedException {
-            // only acquire permit if writers are active
-            if(activeWriters.get() > 0) {
-                waitingReaders.getAndIncrement();
-                readLock.acquire();
+        private boolean isFull() {
+            return items.size() >= bulkSize || sizeInBytes >= flushSizeInBytes;
+        }
+
+        private void append(BulkItemRequest item, long itemSizeInBytes) {
+            if (items.isEmpty()) {
+                firstItemNanos = System.nanoTime();
             }
+            items.add(item);
+            sizeInBytes += itemSizeInBytes;
         }
 
-        public int activeWriters() {
-            return activeWriters.get();
+        synchronized boolean hasFullBatches() {
+            return !fullBatches.isEmpty();
         }
 
-    }
+        /**
+         * @return the oldest full batch or otherwise the buffered items, null if there are none
+         */
+        @Nullable
+        synchronized List<BulkItemRequest> nextBatch() {
+            List<BulkItemRequest> batch = fullBatches.poll();
+            if (batch != null) {
+                return batch;
+            }
+            return drain();
+        }
+
+        @Nullable
+        synchronized List<BulkItemRequest> drain() {
+            if (items.isEmpty()) {
+                return null;
+            }
+            List<BulkItemRequest> drained = items;
+            items = new ArrayList<>();
+            sizeInBytes = 0;
+            return drained;
+        }
 
+        synchronized boolean isOlderThan(long nanos) {
+            return !items.isEmpty() && firstItemNanos <= nanos;
+        }
+    }
 }
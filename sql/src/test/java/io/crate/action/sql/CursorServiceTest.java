@@ -0,0 +1,220 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import io.crate.breaker.CrateCircuitBreakerService;
+import io.crate.core.bigarray.MultiNativeArrayBigArray;
+import io.crate.exceptions.CursorUnknownException;
+import io.crate.exceptions.UnhandledServerException;
+import io.crate.executor.FetchedRowsPageableTaskResult;
+import io.crate.executor.PageInfo;
+import io.crate.executor.PageableTaskResult;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class CursorServiceTest {
+
+    private static final String[] OUTPUT_NAMES = new String[]{"x"};
+    private static final DataType[] OUTPUT_TYPES = new DataType[]{DataTypes.INTEGER};
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private CursorService cursorService;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() throws Exception {
+        ClusterService clusterService = mock(ClusterService.class);
+        when(clusterService.localNode()).thenReturn(
+                new DiscoveryNode("n1", DummyTransportAddress.INSTANCE, Version.CURRENT));
+        circuitBreaker = mock(CircuitBreaker.class);
+        CrateCircuitBreakerService breakerService = mock(CrateCircuitBreakerService.class);
+        when(breakerService.getBreaker(CrateCircuitBreakerService.QUERY_BREAKER)).thenReturn(circuitBreaker);
+        cursorService = new CursorService(
+                ImmutableSettings.builder().put(CursorService.MAX_OPEN_SETTING, 2).build(),
+                clusterService,
+                mock(ThreadPool.class),
+                breakerService);
+    }
+
+    private static PageableTaskResult result(int numRows, PageInfo pageInfo) {
+        Object[][] rows = new Object[numRows][];
+        for (int i = 0; i < numRows; i++) {
+            rows[i] = new Object[]{i};
+        }
+        return new FetchedRowsPageableTaskResult(
+                new MultiNativeArrayBigArray<Object[]>(0, rows.length, rows), 0L, pageInfo);
+    }
+
+    private CursorPageResult open(int numRows, int fetchSize, Integer limit) {
+        SQLRequest request = new SQLRequest("select x from t");
+        request.fetchSize(fetchSize);
+        PageInfo pageInfo = PageInfo.firstPage(fetchSize);
+        return cursorService.open(result(numRows, pageInfo), pageInfo, limit, request, OUTPUT_NAMES, OUTPUT_TYPES);
+    }
+
+    private SQLResponse fetch(String cursor, int fetchSize) throws Exception {
+        SQLRequest request = new SQLRequest();
+        request.cursor(cursor);
+        request.fetchSize(fetchSize);
+        PlainActionFuture<SQLResponse> future = PlainActionFuture.newFuture();
+        cursorService.fetch(request, future);
+        return future.get();
+    }
+
+    @Test
+    public void testFetchUntilExhausted() throws Exception {
+        CursorPageResult firstPage = open(5, 2, null);
+        assertThat(firstPage.rows().length, is(2));
+        assertThat(firstPage.cursor(), startsWith("n1:"));
+        assertThat(CursorService.nodeId(firstPage.cursor()), is("n1"));
+
+        SQLResponse response = fetch(firstPage.cursor(), 0);
+        assertThat(response.rows(), is(new Object[][]{new Object[]{2}, new Object[]{3}}));
+        assertThat(response.rowCount(), is(2L));
+        assertThat(response.cursor(), is(firstPage.cursor()));
+
+        response = fetch(firstPage.cursor(), 10);
+        assertThat(response.rows(), is(new Object[][]{new Object[]{4}}));
+        assertThat(response.cursor(), nullValue());
+        assertThat(cursorService.numOpen(), is(0));
+    }
+
+    @Test
+    public void testFetchLastFullPage() throws Exception {
+        CursorPageResult firstPage = open(4, 2, null);
+        SQLResponse response = fetch(firstPage.cursor(), 2);
+        assertThat(response.rows().length, is(2));
+        assertThat(response.cursor(), is(firstPage.cursor()));
+
+        response = fetch(firstPage.cursor(), 2);
+        assertThat(response.rows().length, is(0));
+        assertThat(response.cursor(), nullValue());
+        assertThat(cursorService.numOpen(), is(0));
+    }
+
+    @Test
+    public void testNoCursorIfFirstPageContainsAllRows() throws Exception {
+        CursorPageResult firstPage = open(2, 5, null);
+        assertThat(firstPage.rows().length, is(2));
+        assertThat(firstPage.cursor(), nullValue());
+        assertThat(cursorService.numOpen(), is(0));
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        CursorPageResult firstPage = open(10, 2, 3);
+        SQLResponse response = fetch(firstPage.cursor(), 2);
+        assertThat(response.rows(), is(new Object[][]{new Object[]{2}}));
+        assertThat(response.cursor(), nullValue());
+    }
+
+    @Test
+    public void testMaxOpenCursors() throws Exception {
+        open(10, 2, null);
+        open(10, 2, null);
+
+        expectedException.expect(UnhandledServerException.class);
+        expectedException.expectMessage("Too many open cursors, a node can have up to 2 cursors open");
+        cursorService.ensureCapacity();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        CursorPageResult firstPage = open(10, 2, null);
+        cursorService.close(firstPage.cursor());
+        assertThat(cursorService.numOpen(), is(0));
+
+        expectedException.expect(CursorUnknownException.class);
+        expectedException.expectMessage(String.format("Cursor '%s' unknown", firstPage.cursor()));
+        fetch(firstPage.cursor(), 2);
+    }
+
+    @Test
+    public void testReapExpiredCursors() throws Exception {
+        SQLRequest request = new SQLRequest("select x from t");
+        request.fetchSize(2);
+        request.keepAlive(TimeValue.timeValueMinutes(1));
+        PageInfo pageInfo = PageInfo.firstPage(2);
+        cursorService.open(result(10, pageInfo), pageInfo, null, request, OUTPUT_NAMES, OUTPUT_TYPES);
+
+        cursorService.reap(System.currentTimeMillis());
+        assertThat(cursorService.numOpen(), is(1));
+
+        cursorService.reap(System.currentTimeMillis() + TimeValue.timeValueMinutes(2).millis());
+        assertThat(cursorService.numOpen(), is(0));
+    }
+
+    @Test
+    public void testStopClosesCursors() throws Exception {
+        cursorService.start();
+        CursorPageResult firstPage = open(10, 2, null);
+        cursorService.stop();
+        assertThat(cursorService.numOpen(), is(0));
+
+        expectedException.expect(CursorUnknownException.class);
+        fetch(firstPage.cursor(), 2);
+    }
+
+    @Test
+    public void testRowsInMemoryAreAccountedUntilTheCursorIsClosed() throws Exception {
+        Object[][] rows = new Object[][]{new Object[]{1}, new Object[]{2}, new Object[]{3}};
+        long bytes = CursorService.estimateSize(rows);
+        assertThat(bytes, greaterThan(0L));
+        SQLRequest request = new SQLRequest("select x from t");
+        request.fetchSize(2);
+
+        CursorPageResult firstPage = cursorService.open(rows, request, OUTPUT_NAMES, OUTPUT_TYPES);
+        verify(circuitBreaker).addEstimateBytesAndMaybeBreak(bytes, "cursor");
+        verify(circuitBreaker, never()).addWithoutBreaking(anyLong());
+
+        SQLResponse response = fetch(firstPage.cursor(), 2);
+        assertThat(response.rows(), is(new Object[][]{new Object[]{3}}));
+        assertThat(response.cursor(), nullValue());
+        verify(circuitBreaker).addWithoutBreaking(-bytes);
+    }
+
+    @Test
+    public void testInvalidCursorId() throws Exception {
+        expectedException.expect(CursorUnknownException.class);
+        CursorService.nodeId("foo");
+    }
+}
@@ -23,9 +23,11 @@ package io.crate.action.sql;
 
 import org.elasticsearch.common.io.stream.BytesStreamInput;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
 import org.junit.Test;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class SQLRequestTest {
@@ -49,7 +51,7 @@ public class SQLRequestTest {
         request.writeTo(out);
 
         byte[] expectedBytes = new byte[]
-                {0,19,115,101,108,101,99,116,32,42,32,102,114,111,109,32,117,115,101,114,115,2,0,4,97,114,103,49,0,4,97,114,103, 50, 0, 1};
+                {0,19,115,101,108,101,99,116,32,42,32,102,114,111,109,32,117,115,101,114,115,2,0,4,97,114,103,49,0,4,97,114,103, 50, 0, 1, 0};
         assertThat(out.bytes().toBytes(), is(expectedBytes));
     }
 
@@ -57,7 +59,7 @@ public class SQLRequestTest {
     @Test
     public void testSerializationReadFrom() throws Exception {
         byte[] buf = new byte[]
-                {0,19,115,101,108,101,99,116,32,42,32,102,114,111,109,32,117,115,101,114,115,2,0,4,97,114,103,49,0,4,97,114,103, 50, 0, 1};
+                {0,19,115,101,108,101,99,116,32,42,32,102,114,111,109,32,117,115,101,114,115,2,0,4,97,114,103,49,0,4,97,114,103, 50, 0, 1, 0};
         BytesStreamInput in = new BytesStreamInput(buf, false);
         SQLRequest request = new SQLRequest();
         request.readFrom(in);
@@ -66,4 +68,36 @@ public class SQLRequestTest {
         assertThat(request.includeTypesOnResponse(), is(true));
         assertThat(request.stmt(), is("select * from users"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSerializationWithCursor() throws Exception {
+        SQLRequest request = new SQLRequest();
+        request.cursor("n1:abc");
+        request.fetchSize(100);
+        request.keepAlive(TimeValue.timeValueMinutes(2));
+        request.closeCursor(true);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        SQLRequest streamed = new SQLRequest();
+        streamed.readFrom(new BytesStreamInput(out.bytes()));
+
+        assertThat(streamed.cursor(), is("n1:abc"));
+        assertThat(streamed.fetchSize(), is(100));
+        assertThat(streamed.keepAlive(), is(TimeValue.timeValueMinutes(2)));
+        assertThat(streamed.closeCursor(), is(true));
+    }
+
+    @Test
+    public void testSerializationWithoutCursor() throws Exception {
+        SQLRequest request = new SQLRequest("select * from users");
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        SQLRequest streamed = new SQLRequest();
+        streamed.readFrom(new BytesStreamInput(out.bytes()));
+
+        assertThat(streamed.cursor(), nullValue());
+        assertThat(streamed.fetchSize(), is(0));
+        assertThat(streamed.keepAlive(), nullValue());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql.parser;
+
+import io.crate.exceptions.SQLParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SQLXContentSourceParserTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private SQLXContentSourceContext parse(String source) {
+        SQLXContentSourceContext context = new SQLXContentSourceContext();
+        new SQLXContentSourceParser(context).parseSource(new BytesArray(source));
+        return context;
+    }
+
+    @Test
+    public void testFetchSizeAndKeepAlive() throws Exception {
+        SQLXContentSourceContext context = parse(
+                "{\"stmt\": \"select * from t\", \"fetch_size\": 100, \"keep_alive\": \"2m\"}");
+        assertThat(context.stmt(), is("select * from t"));
+        assertThat(context.fetchSize(), is(100));
+        assertThat(context.keepAlive(), is(TimeValue.timeValueMinutes(2)));
+        assertThat(context.cursor(), nullValue());
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        SQLXContentSourceContext context = parse("{\"cursor\": \"n1:abc\", \"fetch_size\": 10}");
+        assertThat(context.stmt(), nullValue());
+        assertThat(context.cursor(), is("n1:abc"));
+        assertThat(context.fetchSize(), is(10));
+        assertThat(context.close(), is(false));
+    }
+
+    @Test
+    public void testCloseCursor() throws Exception {
+        SQLXContentSourceContext context = parse("{\"cursor\": \"n1:abc\", \"close\": true}");
+        assertThat(context.close(), is(true));
+    }
+
+    @Test
+    public void testStmtAndCursor() throws Exception {
+        expectedException.expect(SQLParseException.class);
+        parse("{\"stmt\": \"select * from t\", \"cursor\": \"n1:abc\"}");
+    }
+
+    @Test
+    public void testInvalidFetchSize() throws Exception {
+        expectedException.expect(SQLParseException.class);
+        parse("{\"stmt\": \"select * from t\", \"fetch_size\": 0}");
+    }
+}
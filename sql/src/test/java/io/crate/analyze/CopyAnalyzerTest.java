@@ -129,6 +129,36 @@ public class CopyAnalyzerTest extends BaseAnalyzerTest {
         assertThat(BytesRefs.toString(value), is(path));
     }
 
+    @Test
+    public void testCopyFromCsvSettings() throws Exception {
+        CopyAnalyzedStatement analysis = (CopyAnalyzedStatement) analyze(
+                "copy users from '/some/distant/file.csv' with (format='csv', delimiter=';', quote='\\'', header=false)");
+        assertThat(analysis.settings().get("format"), is("csv"));
+        assertThat(analysis.settings().get("delimiter"), is(";"));
+        assertThat(analysis.settings().getAsBoolean("header", true), is(false));
+    }
+
+    @Test
+    public void testCopyFromUnknownFormat() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown format 'xml', supported formats are 'json' and 'csv'");
+        analyze("copy users from '/some/distant/file.xml' with (format='xml')");
+    }
+
+    @Test
+    public void testCopyFromCsvDelimiterMustBeSingleCharacter() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Setting \"delimiter\" must be a single character");
+        analyze("copy users from '/some/distant/file.csv' with (format='csv', delimiter=';;')");
+    }
+
+    @Test
+    public void testCopyFromCsvSettingWithoutCsvFormat() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Setting \"header\" is only supported with format 'csv'");
+        analyze("copy users from '/some/distant/file.json' with (header=true)");
+    }
+
     @Test
     public void testCopyToFile() throws Exception {
         CopyAnalyzedStatement analysis = (CopyAnalyzedStatement)analyze("copy users to '/blah.txt'");
@@ -161,6 +191,19 @@ public class CopyAnalyzerTest extends BaseAnalyzerTest {
         assertThat(analysis.settings().get("compression"), is("gzip"));
     }
 
+    @Test
+    public void testCopyToColumnarFormat() throws Exception {
+        CopyAnalyzedStatement analysis = (CopyAnalyzedStatement) analyze("copy users to directory '/foo' with (format='columnar')");
+        assertThat(analysis.settings().get("format"), is("columnar"));
+    }
+
+    @Test
+    public void testCopyToUnknownFormat() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown format 'parquet', supported formats are 'json' and 'columnar'");
+        analyze("copy users to directory '/foo' with (format='parquet')");
+    }
+
     @Test
     public void testCopyToFileWithPartitionedTable() throws Exception {
         CopyAnalyzedStatement analysis = (CopyAnalyzedStatement) analyze("copy parted to '/blah.txt'");
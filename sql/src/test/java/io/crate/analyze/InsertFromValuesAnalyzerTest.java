@@ -31,7 +31,10 @@ import io.crate.metadata.table.TableInfo;
 import io.crate.metadata.table.TestingTableInfo;
 import io.crate.operation.predicate.PredicateModule;
 import io.crate.planner.RowGranularity;
+import io.crate.planner.symbol.Reference;
+import io.crate.planner.symbol.Symbol;
 import io.crate.testing.MockedClusterServiceModule;
+import io.crate.testing.TestingHelpers;
 import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.collect.MapBuilder;
@@ -116,6 +119,62 @@ public class InsertFromValuesAnalyzerTest extends BaseAnalyzerTest {
         assertThat((String)values.get("name"), is("Trillian"));
     }
 
+    @Test
+    public void testSourcesOfMultipleRowsAreSeparate() throws Exception {
+        InsertFromValuesAnalyzedStatement analysis = (InsertFromValuesAnalyzedStatement) analyze(
+                "insert into users (id, name) values (?, ?)",
+                new Object[][]{ new Object[]{1, "Trillian"}, new Object[]{2, null}, new Object[]{3, "Zaphod"} });
+        assertThat(analysis.sourceMaps().size(), is(3));
+
+        Map<String, Object> values = XContentHelper.convertToMap(analysis.sourceMaps().get(1), false).v2();
+        assertThat(values.size(), is(2));
+        assertThat((Integer) values.get("id"), is(2));
+        assertThat(values.get("name"), nullValue());
+
+        values = XContentHelper.convertToMap(analysis.sourceMaps().get(2), false).v2();
+        assertThat((Integer) values.get("id"), is(3));
+        assertThat((String) values.get("name"), is("Zaphod"));
+    }
+
+    @Test
+    public void testInsertOnDuplicateKeyUpdate() throws Exception {
+        InsertFromValuesAnalyzedStatement analysis = (InsertFromValuesAnalyzedStatement) analyze(
+                "insert into users (id, name) values (1, 'Arthur') on duplicate key update name = 'Trillian', other_id = other_id + 1");
+        assertThat(analysis.sourceMaps().size(), is(1));
+        assertThat(analysis.onDuplicateKeyAssignments().size(), is(1));
+
+        Map<String, Symbol> assignments = new HashMap<>();
+        for (Map.Entry<Reference, Symbol> entry : analysis.onDuplicateKeyAssignments().get(0).entrySet()) {
+            assignments.put(entry.getKey().info().ident().columnIdent().fqn(), entry.getValue());
+        }
+        assertThat(assignments.get("name"), TestingHelpers.isLiteral(new BytesRef("Trillian"), DataTypes.STRING));
+        assertThat(assignments.get("other_id"), TestingHelpers.isFunction("add"));
+    }
+
+    @Test
+    public void testBulkInsertOnDuplicateKeyUpdateHasAssignmentsPerRow() throws Exception {
+        InsertFromValuesAnalyzedStatement analysis = (InsertFromValuesAnalyzedStatement) analyze(
+                "insert into users (id, name) values (?, ?) on duplicate key update name = ?",
+                new Object[][]{ new Object[]{1, "Arthur", "Trillian"}, new Object[]{2, "Ford", "Zaphod"} });
+        assertThat(analysis.onDuplicateKeyAssignments().size(), is(2));
+        assertThat(analysis.onDuplicateKeyAssignments().get(1).values().iterator().next(),
+                TestingHelpers.isLiteral(new BytesRef("Zaphod"), DataTypes.STRING));
+    }
+
+    @Test
+    public void testInsertOnDuplicateKeyUpdatePrimaryKey() throws Exception {
+        expectedException.expect(ColumnValidationException.class);
+        expectedException.expectMessage("Updating a primary key is not supported");
+        analyze("insert into users (id, name) values (1, 'Arthur') on duplicate key update id = 2");
+    }
+
+    @Test
+    public void testInsertOnDuplicateKeyUpdateWithoutPrimaryKey() throws Exception {
+        expectedException.expect(UnsupportedOperationException.class);
+        expectedException.expectMessage("ON DUPLICATE KEY UPDATE is only supported on tables with a primary key");
+        analyze("insert into parted (id, name) values (1, 'Arthur') on duplicate key update name = 'Trillian'");
+    }
+
     @Test
     public void testInsertWithTwistedColumns() throws Exception {
         InsertFromValuesAnalyzedStatement analysis = (InsertFromValuesAnalyzedStatement) analyze("insert into users (name, id) values ('Trillian', 2)");
@@ -786,5 +845,55 @@ public class InsertFromValuesAnalyzerTest extends BaseAnalyzerTest {
         expectedException.expectMessage("column name \"newCol[\" is invalid");
         analyze("insert into users (\"newCol[\") values(test)");
     }
-}
 
+    @Test
+    public void testInsertWithParamsUsesTemplate() throws Exception {
+        TemplateCache templateCache = injector.getInstance(TemplateCache.class);
+        String stmt = "insert into users (id, name, awesome) values (?, ?, true)";
+        analyze(stmt, new Object[]{1, "Trillian"});
+        assertThat(templateCache.size(), is(1L));
+
+        InsertFromValuesAnalyzedStatement analysis = (InsertFromValuesAnalyzedStatement) analyze(
+                stmt, new Object[]{2, "Ford"});
+        assertThat(templateCache.stats().hitCount(), is(1L));
+        assertThat(analysis.ids(), contains("2"));
+        assertThat(analysis.routingValues(), contains("2"));
+
+        Map<String, Object> values = XContentHelper.convertToMap(analysis.sourceMaps().get(0), false).v2();
+        assertThat((Integer) values.get("id"), is(2));
+        assertThat((String) values.get("name"), is("Ford"));
+        assertThat((Boolean) values.get("awesome"), is(true));
+    }
+
+    @Test
+    public void testBulkInsertUsesTemplate() throws Exception {
+        TemplateCache templateCache = injector.getInstance(TemplateCache.class);
+        String stmt = "insert into users (id, name) values (?, ?)";
+        analyze(stmt, new Object[][]{ new Object[]{1, "Trillian"} });
+
+        InsertFromValuesAnalyzedStatement analysis = (InsertFromValuesAnalyzedStatement) analyze(
+                stmt, new Object[][]{ new Object[]{2, "Ford"}, new Object[]{3, "Zaphod"} });
+        assertThat(templateCache.stats().hitCount(), is(1L));
+        assertThat(analysis.sourceMaps().size(), is(2));
+        assertThat(analysis.ids(), contains("2", "3"));
+    }
+
+    @Test
+    public void testInsertWithNewColumnIsNoTemplate() throws Exception {
+        TemplateCache templateCache = injector.getInstance(TemplateCache.class);
+        analyze("insert into users (id, new_col) values (?, ?)", new Object[]{1, "foo"});
+        assertThat(templateCache.size(), is(0L));
+    }
+
+    @Test
+    public void testMixedCaseColumnNamesAreKept() throws Exception {
+        InsertFromValuesAnalyzedStatement analysis = (InsertFromValuesAnalyzedStatement) analyze(
+                "insert into users (id, \"firstName\", \"firstname\") values (1, 'Arthur', 'Ford')");
+
+        Map<String, Object> values = XContentHelper.convertToMap(analysis.sourceMaps().get(0), false).v2();
+        assertThat(values.size(), is(3));
+        assertThat((String) values.get("firstName"), is("Arthur"));
+        assertThat((String) values.get("firstname"), is("Ford"));
+        assertThat(values.containsKey("first_name"), is(false));
+    }
+}
@@ -764,9 +764,97 @@ public class SelectStatementAnalyzerTest extends BaseAnalyzerTest {
         analyze("select id, name from parted where not date");
     }
 
-    @Test(expected = UnsupportedOperationException.class)
+    @Test
     public void testJoin() throws Exception {
-        analyze("select * from users join users_multi_pk on users.id = users.multi_pk.id");
+        SelectAnalyzedStatement analysis = analyze(
+                "select users.name, users_multi_pk.name from users join users_multi_pk on users.id = users_multi_pk.id");
+        assertThat(analysis.sources().size(), is(2));
+        assertThat(analysis.outputSymbols().size(), is(2));
+
+        Function joinCondition = (Function) analysis.joinCondition();
+        assertThat(joinCondition.info().ident().name(), is(EqOperator.NAME));
+        Field left = (Field) joinCondition.arguments().get(0);
+        Field right = (Field) joinCondition.arguments().get(1);
+        assertThat(((TableRelation) left.relation()).tableInfo().ident(), is(TEST_DOC_TABLE_IDENT));
+        assertThat(((TableRelation) right.relation()).tableInfo().ident(), is(TEST_DOC_TABLE_IDENT_MULTI_PK));
+    }
+
+    @Test
+    public void testJoinConditionIsNullForSingleTable() throws Exception {
+        SelectAnalyzedStatement analysis = analyze("select name from users");
+        assertNull(analysis.joinCondition());
+    }
+
+    @Test
+    public void testCrossJoinNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("Only INNER JOIN with an ON condition is supported");
+        analyze("select * from users cross join users_multi_pk");
+    }
+
+    @Test
+    public void testLeftJoinNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("Only INNER JOIN with an ON condition is supported");
+        analyze("select * from users left join users_multi_pk on users.id = users_multi_pk.id");
+    }
+
+    @Test
+    public void testSelfJoinNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("Joining a table with itself is not supported");
+        analyze("select a.name from users a join users b on a.id = b.id");
+    }
+
+    @Test
+    public void testInSubqueryIsAnalyzedAsSemiJoin() throws Exception {
+        SelectAnalyzedStatement analysis = analyze("select name from users " +
+                "where name = 'Arthur' and id in (select id from users_multi_pk where name = 'Trillian')");
+        assertThat(analysis.semiJoin(), is(true));
+        assertThat(analysis.sources().size(), is(2));
+
+        Function joinCondition = (Function) analysis.joinCondition();
+        assertThat(joinCondition.info().ident().name(), is(AndOperator.NAME));
+        Function eq = (Function) joinCondition.arguments().get(0);
+        assertThat(eq.info().ident().name(), is(EqOperator.NAME));
+        assertThat(((TableRelation) ((Field) eq.arguments().get(0)).relation()).tableInfo().ident(),
+                is(TEST_DOC_TABLE_IDENT));
+        assertThat(((TableRelation) ((Field) eq.arguments().get(1)).relation()).tableInfo().ident(),
+                is(TEST_DOC_TABLE_IDENT_MULTI_PK));
+
+        Function whereClause = (Function) analysis.whereClause().query();
+        assertThat(whereClause.info().ident().name(), is(EqOperator.NAME));
+    }
+
+    @Test
+    public void testInSubqueryWithAggregationNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("Only a simple SELECT of one column from a single table is supported");
+        analyze("select name from users where id in (select max(id) from users_multi_pk)");
+    }
+
+    @Test
+    public void testInSubqueryOfSameTableNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("Joining a table with itself is not supported");
+        analyze("select name from users where id in (select id from users)");
+    }
+
+    @Test
+    public void testUnresolvedExistsSubqueryNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("EXISTS (subquery) is only supported as a condition of the WHERE clause");
+        analyze("select exists (select id from users_multi_pk) from users");
+    }
+
+    @Test
+    public void testInArrayParameter() throws Exception {
+        SelectAnalyzedStatement analysis = analyze("select name from users where id in (?)",
+                new Object[]{ new Object[]{ 1, 2, 2 } });
+        Function whereClause = (Function) analysis.whereClause().query();
+        assertThat(whereClause.info().ident().name(), is(InOperator.NAME));
+        TestingHelpers.assertLiteralSymbol(whereClause.arguments().get(1),
+                Sets.<Object>newHashSet(1L, 2L), new SetType(DataTypes.LONG));
     }
 
     @Test(expected = UnsupportedOperationException.class)
@@ -0,0 +1,113 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.crate.Constants;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Symbol;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardBulkUpdateRequestTest {
+
+    @Test
+    public void testStreaming() throws Exception {
+        ShardBulkUpdateRequest request = new ShardBulkUpdateRequest(
+                new ShardId("users", 2),
+                ImmutableList.of("1", "2", "3"),
+                ImmutableMap.<String, Symbol>of("name", Literal.newLiteral("Arthur")));
+        request.version(4L);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        ShardBulkUpdateRequest request2 = new ShardBulkUpdateRequest();
+        request2.readFrom(new BytesStreamInput(out.bytes()));
+
+        assertThat(request2.index(), is("users"));
+        assertThat(request2.shardId(), is(2));
+        assertThat(request2.ids(), contains("1", "2", "3"));
+        assertThat(request2.version(), is(4L));
+        assertThat(request2.retryOnConflict(), is(0));
+        assertThat(request2.assignments(), is(request.assignments()));
+        assertThat(request2.upsertSources(), nullValue());
+    }
+
+    @Test
+    public void testUpsertStreaming() throws Exception {
+        ShardBulkUpdateRequest request = new ShardBulkUpdateRequest(
+                new ShardId("users", 1),
+                ImmutableList.of("1", "2"),
+                ImmutableMap.<String, Symbol>of("name", Literal.newLiteral("Arthur")));
+        request.upsert(
+                ImmutableList.<BytesReference>of(new BytesArray("{\"id\": 1}"), new BytesArray("{\"id\": 2}")),
+                Arrays.asList("1", null));
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        ShardBulkUpdateRequest request2 = new ShardBulkUpdateRequest();
+        request2.readFrom(new BytesStreamInput(out.bytes()));
+
+        assertThat(request2.upsertSources().size(), is(2));
+        assertThat(request2.upsertSources().get(1).toUtf8(), is("{\"id\": 2}"));
+        assertThat(request2.routings(), contains("1", null));
+    }
+
+    @Test
+    public void testConflictsAreRetriedWithoutRequiredVersion() throws Exception {
+        ShardBulkUpdateRequest request = new ShardBulkUpdateRequest(
+                new ShardId("users", 0),
+                ImmutableList.of("1"),
+                ImmutableMap.<String, Symbol>of("name", Literal.newLiteral("Arthur")));
+        assertThat(request.retryOnConflict(), is(Constants.UPDATE_RETRY_ON_CONFLICT));
+    }
+
+    @Test
+    public void testResponseStreaming() throws Exception {
+        ShardBulkUpdateResponse response = new ShardBulkUpdateResponse(2L, ImmutableList.of(
+                new ShardBulkUpdateResponse.Failure(2, "3", "version conflict", true)));
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        response.writeTo(out);
+        ShardBulkUpdateResponse response2 = new ShardBulkUpdateResponse();
+        response2.readFrom(new BytesStreamInput(out.bytes()));
+
+        assertThat(response2.updated(), is(2L));
+        assertThat(response2.failures().size(), is(1));
+        assertThat(response2.failures().get(0).location(), is(2));
+        assertThat(response2.failures().get(0).id(), is("3"));
+        assertThat(response2.failures().get(0).message(), is("version conflict"));
+        assertThat(response2.failures().get(0).versionConflict(), is(true));
+    }
+}
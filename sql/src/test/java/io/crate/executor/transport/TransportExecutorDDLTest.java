@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.Constants;
+import io.crate.action.sql.SQLResponse;
 import io.crate.executor.Job;
 import io.crate.executor.TaskResult;
 import io.crate.integrationtests.SQLTransportIntegrationTest;
@@ -57,6 +58,8 @@ import java.util.Map;
 
 import static org.elasticsearch.common.settings.ImmutableSettings.Builder.EMPTY_SETTINGS;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 @CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.GLOBAL)
 public class TransportExecutorDDLTest extends SQLTransportIntegrationTest {
@@ -257,6 +260,38 @@ public class TransportExecutorDDLTest extends SQLTransportIntegrationTest {
         assertThat(response.rowCount(), is(0L));
     }
 
+    @Test
+    public void testDeleteIndexTasksAreGrouped() throws Exception {
+        execute("create table t1 (id integer primary key, name string)");
+        execute("create table t2 (id integer primary key, name string)");
+        ensureGreen();
+        execute("set global stats.enabled = true");
+
+        IterablePlan plan = new IterablePlan();
+        plan.add(new ESDeleteIndexNode("t1", true));
+        plan.add(new ESDeleteIndexNode("t2", true));
+
+        Job job = executor.newJob(plan);
+        List<ListenableFuture<TaskResult>> futures = executor.execute(job);
+        assertThat(futures.size(), is(1));
+        TaskResult taskResult = futures.get(0).get();
+        assertThat(((Long) taskResult.rows()[0][0]), is(-1L));
+
+        execute("select * from information_schema.tables where table_name in ('t1', 't2')");
+        assertThat(response.rowCount(), is(0L));
+
+        // each delete index task is tracked as one finished operation of the job
+        SQLResponse operations = execute("select name, ended, error from sys.operations_log where job_id = ?",
+                new Object[]{job.id().toString()});
+        execute("reset global stats.enabled");
+        assertThat(operations.rowCount(), is(2L));
+        for (Object[] row : operations.rows()) {
+            assertThat((String) row[0], is("esDeleteIndexTask"));
+            assertThat(row[1], notNullValue());
+            assertThat(row[2], nullValue());
+        }
+    }
+
     @Test
     public void testClusterUpdateSettingsTask() throws Exception {
         final String persistentSetting = "persistent.level";
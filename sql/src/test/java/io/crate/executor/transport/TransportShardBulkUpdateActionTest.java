@@ -0,0 +1,337 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.crate.Constants;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Symbol;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkShardRequest;
+import org.elasticsearch.action.bulk.BulkShardResponse;
+import org.elasticsearch.action.bulk.TransportShardBulkActionDelegate;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.ActionFilter;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.ImmutableShardRouting;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.service.IndexService;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportResponseHandler;
+import org.elasticsearch.transport.TransportService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransportShardBulkUpdateActionTest {
+
+    private static final String INDEX = "characters";
+    private static final ShardId SHARD_ID = new ShardId(INDEX, 0);
+    private static final Map<String, Symbol> ASSIGNMENTS = ImmutableMap.<String, Symbol>of(
+            "name", Literal.newLiteral("Arthur"));
+    private static final DiscoveryNode LOCAL_NODE = new DiscoveryNode("n1", DummyTransportAddress.INSTANCE, Version.CURRENT);
+    private static final DiscoveryNode REMOTE_NODE = new DiscoveryNode("n2", DummyTransportAddress.INSTANCE, Version.CURRENT);
+
+    private final List<String> preparedIds = new ArrayList<>();
+    private final List<BulkShardRequest> bulkShardRequests = new ArrayList<>();
+    private final Queue<BulkItemResponse[]> bulkItemResponses = new LinkedList<>();
+
+    private ClusterService clusterService;
+    private TransportService transportService;
+    private IndicesService indicesService;
+    private TransportShardUpdateAction shardUpdateAction;
+    private TransportShardBulkUpdateAction action;
+
+    @Before
+    public void prepare() throws Exception {
+        preparedIds.clear();
+        bulkShardRequests.clear();
+        bulkItemResponses.clear();
+
+        ThreadPool threadPool = mock(ThreadPool.class);
+        when(threadPool.executor(anyString())).thenReturn(MoreExecutors.sameThreadExecutor());
+        clusterService = mock(ClusterService.class);
+        when(clusterService.state()).thenReturn(clusterState(LOCAL_NODE.id(), ShardRoutingState.STARTED));
+        transportService = mock(TransportService.class);
+
+        IndexShard indexShard = mock(IndexShard.class);
+        when(indexShard.shardId()).thenReturn(SHARD_ID);
+        IndexService indexService = mock(IndexService.class);
+        when(indexService.shard(0)).thenReturn(indexShard);
+        indicesService = mock(IndicesService.class);
+        when(indicesService.indexService(INDEX)).thenReturn(indexService);
+
+        shardUpdateAction = mock(TransportShardUpdateAction.class);
+        when(shardUpdateAction.prepare(any(ShardUpdateRequest.class), eq(indexShard))).thenAnswer(new Answer<IndexRequest>() {
+            @Override
+            public IndexRequest answer(InvocationOnMock invocation) throws Throwable {
+                ShardUpdateRequest request = (ShardUpdateRequest) invocation.getArguments()[0];
+                preparedIds.add(request.id());
+                return new IndexRequest(INDEX, Constants.DEFAULT_MAPPING_TYPE, request.id()).source("{}");
+            }
+        });
+
+        action = new TransportShardBulkUpdateAction(
+                ImmutableSettings.EMPTY,
+                threadPool,
+                clusterService,
+                transportService,
+                new ActionFilters(ImmutableSet.<ActionFilter>of()),
+                shardUpdateAction,
+                new TransportShardBulkActionDelegate() {
+                    @Override
+                    public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                        bulkShardRequests.add(request);
+                        BulkShardResponse response = mock(BulkShardResponse.class);
+                        when(response.getResponses()).thenReturn(bulkItemResponses.remove());
+                        listener.onResponse(response);
+                    }
+                },
+                indicesService);
+    }
+
+    private static ClusterState clusterState(String primaryNodeId, ShardRoutingState primaryState) {
+        DiscoveryNodes nodes = DiscoveryNodes.builder()
+                .put(LOCAL_NODE)
+                .put(REMOTE_NODE)
+                .localNodeId(LOCAL_NODE.id())
+                .build();
+        MetaData metaData = MetaData.builder()
+                .put(IndexMetaData.builder(INDEX).numberOfShards(1).numberOfReplicas(0))
+                .build();
+        IndexShardRoutingTable shardRoutingTable = new IndexShardRoutingTable.Builder(SHARD_ID, true)
+                .addShard(new ImmutableShardRouting(INDEX, 0, primaryNodeId, true, primaryState, 1))
+                .build();
+        RoutingTable routingTable = RoutingTable.builder()
+                .add(IndexRoutingTable.builder(INDEX).addIndexShard(shardRoutingTable))
+                .build();
+        return ClusterState.builder(new ClusterName("test"))
+                .nodes(nodes)
+                .metaData(metaData)
+                .routingTable(routingTable)
+                .build();
+    }
+
+    private static BulkItemResponse success(int itemId, String id) {
+        return new BulkItemResponse(itemId, "index",
+                new IndexResponse(INDEX, Constants.DEFAULT_MAPPING_TYPE, id, 2, false));
+    }
+
+    private static BulkItemResponse failure(int itemId, String id, RestStatus status) {
+        return new BulkItemResponse(itemId, "index", new BulkItemResponse.Failure(
+                INDEX, Constants.DEFAULT_MAPPING_TYPE, id, "failed with " + status.name(), status));
+    }
+
+    private ShardBulkUpdateResponse executeLocal(ShardBulkUpdateRequest request) throws Exception {
+        PlainActionFuture<ShardBulkUpdateResponse> future = PlainActionFuture.newFuture();
+        action.executeLocal(request, future);
+        return future.get();
+    }
+
+    private static ShardBulkUpdateRequest request(String... ids) {
+        return new ShardBulkUpdateRequest(SHARD_ID, Arrays.asList(ids), ASSIGNMENTS);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        bulkItemResponses.add(new BulkItemResponse[]{success(0, "1"), success(1, "2")});
+
+        ShardBulkUpdateResponse response = executeLocal(request("1", "2"));
+        assertThat(response.updated(), is(2L));
+        assertThat(response.failures().size(), is(0));
+        assertThat(bulkShardRequests.size(), is(1));
+        assertThat(bulkShardRequests.get(0).index(), is(INDEX));
+    }
+
+    @Test
+    public void testConflictingDocumentsAreRetried() throws Exception {
+        bulkItemResponses.add(new BulkItemResponse[]{
+                success(0, "1"), failure(1, "2", RestStatus.CONFLICT), success(2, "3")});
+        bulkItemResponses.add(new BulkItemResponse[]{success(0, "2")});
+
+        ShardBulkUpdateResponse response = executeLocal(request("1", "2", "3"));
+        assertThat(response.updated(), is(3L));
+        assertThat(response.failures().size(), is(0));
+        assertThat(bulkShardRequests.size(), is(2));
+        assertThat(preparedIds, contains("1", "2", "3", "2"));
+    }
+
+    @Test
+    public void testConflictIsReportedIfRetriesAreExhausted() throws Exception {
+        bulkItemResponses.add(new BulkItemResponse[]{failure(0, "1", RestStatus.CONFLICT), success(1, "2")});
+        for (int i = 0; i < Constants.UPDATE_RETRY_ON_CONFLICT; i++) {
+            bulkItemResponses.add(new BulkItemResponse[]{failure(0, "1", RestStatus.CONFLICT)});
+        }
+
+        ShardBulkUpdateResponse response = executeLocal(request("1", "2"));
+        assertThat(response.updated(), is(1L));
+        assertThat(bulkShardRequests.size(), is(Constants.UPDATE_RETRY_ON_CONFLICT + 1));
+        assertThat(response.failures().size(), is(1));
+        ShardBulkUpdateResponse.Failure failure = response.failures().get(0);
+        assertThat(failure.location(), is(0));
+        assertThat(failure.id(), is("1"));
+        assertThat(failure.versionConflict(), is(true));
+    }
+
+    @Test
+    public void testConflictIsNotRetriedWithRequiredVersion() throws Exception {
+        bulkItemResponses.add(new BulkItemResponse[]{failure(0, "1", RestStatus.CONFLICT)});
+
+        ShardBulkUpdateResponse response = executeLocal(request("1").version(3L));
+        assertThat(response.updated(), is(0L));
+        assertThat(bulkShardRequests.size(), is(1));
+        assertThat(response.failures().size(), is(1));
+        assertThat(response.failures().get(0).versionConflict(), is(true));
+    }
+
+    @Test
+    public void testItemFailuresAreReportedPerDocument() throws Exception {
+        bulkItemResponses.add(new BulkItemResponse[]{
+                success(0, "1"), failure(1, "2", RestStatus.BAD_REQUEST), success(2, "3")});
+
+        ShardBulkUpdateResponse response = executeLocal(request("1", "2", "3"));
+        assertThat(response.updated(), is(2L));
+        assertThat(bulkShardRequests.size(), is(1));
+        assertThat(response.failures().size(), is(1));
+        ShardBulkUpdateResponse.Failure failure = response.failures().get(0);
+        assertThat(failure.location(), is(1));
+        assertThat(failure.id(), is("2"));
+        assertThat(failure.message(), is("failed with BAD_REQUEST"));
+        assertThat(failure.versionConflict(), is(false));
+    }
+
+    @Test
+    public void testPrepareFailuresAreReportedPerDocument() throws Exception {
+        when(shardUpdateAction.prepare(any(ShardUpdateRequest.class), any(IndexShard.class))).thenAnswer(new Answer<IndexRequest>() {
+            @Override
+            public IndexRequest answer(InvocationOnMock invocation) throws Throwable {
+                ShardUpdateRequest request = (ShardUpdateRequest) invocation.getArguments()[0];
+                if (request.id().equals("2")) {
+                    throw new DocumentMissingException(SHARD_ID, request.type(), request.id());
+                }
+                preparedIds.add(request.id());
+                return new IndexRequest(INDEX, Constants.DEFAULT_MAPPING_TYPE, request.id()).source("{}");
+            }
+        });
+        // the item ids are the positions in the shard bulk request, which doesn't contain the missing document
+        bulkItemResponses.add(new BulkItemResponse[]{success(0, "1"), failure(1, "3", RestStatus.CONFLICT)});
+        bulkItemResponses.add(new BulkItemResponse[]{success(0, "3")});
+
+        ShardBulkUpdateResponse response = executeLocal(request("1", "2", "3"));
+        assertThat(response.updated(), is(2L));
+        assertThat(preparedIds, contains("1", "3", "3"));
+        assertThat(response.failures().size(), is(1));
+        ShardBulkUpdateResponse.Failure failure = response.failures().get(0);
+        assertThat(failure.location(), is(1));
+        assertThat(failure.id(), is("2"));
+        assertThat(failure.message(), containsString("document missing"));
+        assertThat(failure.versionConflict(), is(false));
+    }
+
+    @Test
+    public void testNoBulkRequestIfNoDocumentCouldBePrepared() throws Exception {
+        when(shardUpdateAction.prepare(any(ShardUpdateRequest.class), any(IndexShard.class))).thenThrow(
+                new DocumentMissingException(SHARD_ID, Constants.DEFAULT_MAPPING_TYPE, "1"));
+
+        ShardBulkUpdateResponse response = executeLocal(request("1"));
+        assertThat(response.updated(), is(0L));
+        assertThat(response.failures().size(), is(1));
+        assertThat(bulkShardRequests.size(), is(0));
+    }
+
+    @Test
+    public void testLocalPrimaryIsUpdatedWithoutTransport() throws Exception {
+        bulkItemResponses.add(new BulkItemResponse[]{success(0, "1")});
+
+        ShardBulkUpdateResponse response = executeLocal(request("1"));
+        assertThat(response.updated(), is(1L));
+        assertThat(bulkShardRequests.size(), is(1));
+        verify(transportService, never()).sendRequest(any(DiscoveryNode.class), anyString(),
+                any(ShardBulkUpdateRequest.class), any(TransportRequestOptions.class), any(TransportResponseHandler.class));
+    }
+
+    @Test
+    public void testRemotePrimaryIsUpdatedOnItsNode() throws Exception {
+        when(clusterService.state()).thenReturn(clusterState(REMOTE_NODE.id(), ShardRoutingState.STARTED));
+
+        ShardBulkUpdateRequest request = request("1");
+        action.executeLocal(request, PlainActionFuture.<ShardBulkUpdateResponse>newFuture());
+        verify(transportService).sendRequest(eq(REMOTE_NODE), anyString(),
+                eq(request), any(TransportRequestOptions.class), any(TransportResponseHandler.class));
+        verify(indicesService, never()).indexService(INDEX);
+        assertThat(bulkShardRequests.size(), is(0));
+    }
+
+    @Test
+    public void testInitializingLocalPrimaryIsNotUpdatedLocally() throws Exception {
+        when(clusterService.state()).thenReturn(clusterState(LOCAL_NODE.id(), ShardRoutingState.INITIALIZING));
+
+        // the action waits for the primary to become active
+        action.executeLocal(request("1"), PlainActionFuture.<ShardBulkUpdateResponse>newFuture());
+        verify(indicesService, never()).indexService(INDEX);
+        assertThat(bulkShardRequests.size(), is(0));
+    }
+}
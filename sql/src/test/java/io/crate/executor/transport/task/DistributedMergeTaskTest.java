@@ -98,13 +98,13 @@ public class DistributedMergeTaskTest extends SQLTransportIntegrationTest {
 
         DistributedResultRequest request3 = new DistributedResultRequest(mergeNode.contextId(), mapperOutputStreamer);
         request3.rows(new Object[][] {
-                new Object[] { 10, new BytesRef("foo") },
-                new Object[] { 20, new BytesRef("foo") },
+                new Object[] { 10L, new BytesRef("foo") },
+                new Object[] { 20L, new BytesRef("foo") },
         });
         DistributedResultRequest request4 = new DistributedResultRequest(mergeNode.contextId(), mapperOutputStreamer);
         request4.rows(new Object[][] {
-                new Object[] { 10, new BytesRef("foo") },
-                new Object[] { 14, new BytesRef("test") },
+                new Object[] { 10L, new BytesRef("foo") },
+                new Object[] { 14L, new BytesRef("test") },
         });
 
         String secondNode = iterator.next();
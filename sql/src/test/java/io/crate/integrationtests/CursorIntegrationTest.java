@@ -0,0 +1,140 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.integrationtests;
+
+import io.crate.action.sql.SQLAction;
+import io.crate.action.sql.SQLActionException;
+import io.crate.action.sql.SQLRequest;
+import io.crate.action.sql.SQLResponse;
+import io.crate.test.integration.CrateIntegrationTest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.GLOBAL)
+public class CursorIntegrationTest extends SQLTransportIntegrationTest {
+
+    private static final int NUM_ROWS = 25;
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Before
+    public void setUpTable() throws Exception {
+        execute("create table t (id int primary key) clustered into 3 shards with (number_of_replicas=0)");
+        ensureGreen();
+        Object[][] bulkArgs = new Object[NUM_ROWS][];
+        for (int i = 0; i < NUM_ROWS; i++) {
+            bulkArgs[i] = new Object[]{i};
+        }
+        execute("insert into t (id) values (?)", bulkArgs);
+        refresh();
+    }
+
+    private SQLResponse executeWithFetchSize(String stmt, int fetchSize) {
+        SQLRequest request = new SQLRequest(stmt);
+        request.fetchSize(fetchSize);
+        return client().execute(SQLAction.INSTANCE, request).actionGet();
+    }
+
+    private SQLResponse fetch(String cursor, int fetchSize) {
+        SQLRequest request = new SQLRequest();
+        request.cursor(cursor);
+        request.fetchSize(fetchSize);
+        return client().execute(SQLAction.INSTANCE, request).actionGet();
+    }
+
+    private SQLResponse close(String cursor) {
+        SQLRequest request = new SQLRequest();
+        request.cursor(cursor);
+        request.closeCursor(true);
+        return client().execute(SQLAction.INSTANCE, request).actionGet();
+    }
+
+    @Test
+    public void testFetchAllRows() throws Exception {
+        SQLResponse response = executeWithFetchSize("select id from t order by id", 10);
+        assertThat(response.rows().length, is(10));
+        assertThat(response.rows()[0][0], is((Object) 0));
+        String cursor = response.cursor();
+        assertThat(cursor, notNullValue());
+
+        response = fetch(cursor, 0);
+        assertThat(response.rows().length, is(10));
+        assertThat(response.rows()[0][0], is((Object) 10));
+        assertThat(response.cursor(), is(cursor));
+
+        response = fetch(cursor, 0);
+        assertThat(response.rows().length, is(5));
+        assertThat(response.rows()[4][0], is((Object) 24));
+        assertThat(response.cursor(), nullValue());
+    }
+
+    @Test
+    public void testFetchWithoutOrderReturnsEveryRowOnce() throws Exception {
+        Set<Object> ids = new HashSet<>();
+        SQLResponse response = executeWithFetchSize("select id from t", 7);
+        while (true) {
+            for (Object[] row : response.rows()) {
+                assertThat(ids.add(row[0]), is(true));
+            }
+            if (response.cursor() == null) {
+                break;
+            }
+            response = fetch(response.cursor(), 7);
+        }
+        assertThat(ids.size(), is(NUM_ROWS));
+    }
+
+    @Test
+    public void testLimitOfStatement() throws Exception {
+        SQLResponse response = executeWithFetchSize("select id from t order by id limit 12", 10);
+        assertThat(response.rows().length, is(10));
+        response = fetch(response.cursor(), 10);
+        assertThat(response.rows().length, is(2));
+        assertThat(response.cursor(), nullValue());
+    }
+
+    @Test
+    public void testNoCursorIfAllRowsFit() throws Exception {
+        SQLResponse response = executeWithFetchSize("select count(*) from t", 10);
+        assertThat(response.rows()[0][0], is((Object) (long) NUM_ROWS));
+        assertThat(response.cursor(), nullValue());
+    }
+
+    @Test
+    public void testCloseCursor() throws Exception {
+        SQLResponse response = executeWithFetchSize("select id from t order by id", 10);
+        String cursor = response.cursor();
+        close(cursor);
+
+        expectedException.expect(SQLActionException.class);
+        expectedException.expectMessage(String.format("Cursor '%s' unknown", cursor));
+        fetch(cursor, 10);
+    }
+}
@@ -21,12 +21,16 @@
 
 package io.crate.integrationtests;
 
+import io.crate.action.sql.SQLActionException;
+import io.crate.action.sql.SQLBulkResponse;
 import io.crate.test.integration.CrateIntegrationTest;
 import org.hamcrest.core.IsNull;
 import org.junit.Test;
 
 import java.util.ArrayList;
 
+import static io.crate.testing.TestingHelpers.printedTable;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.core.Is.is;
 
 @CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.GLOBAL)
@@ -93,4 +97,77 @@ public class InsertIntoIntegrationTest extends SQLTransportIntegrationTest {
         assertNull((((ArrayList) response.rows()[1][0]).get(0)));
     }
 
+    @Test
+    public void testInsertOnDuplicateKeyUpdate() throws Exception {
+        execute("create table counters (id int primary key, name string, cnt long) " +
+                "clustered into 2 shards with (number_of_replicas = 0)");
+        ensureGreen();
+
+        execute("insert into counters (id, name, cnt) values (1, 'Arthur', 1), (2, 'Ford', 1) " +
+                "on duplicate key update cnt = cnt + 1");
+        assertThat(response.rowCount(), is(2L));
+        execute("refresh table counters");
+
+        execute("insert into counters (id, name, cnt) values (1, 'Trillian', 1), (3, 'Zaphod', 1) " +
+                "on duplicate key update cnt = cnt + 1");
+        assertThat(response.rowCount(), is(2L));
+        execute("refresh table counters");
+
+        execute("select id, name, cnt from counters order by id");
+        assertEquals("1| Arthur| 2\n2| Ford| 1\n3| Zaphod| 1\n", printedTable(response.rows()));
+    }
+
+    @Test
+    public void testInsertOnDuplicateKeyUpdateRetriesConflicts() throws Exception {
+        execute("create table counters (id int primary key, cnt long) with (number_of_replicas = 0)");
+        ensureGreen();
+
+        // both rows are inserted on the same shard at once, the second one conflicts and is retried as an update
+        execute("insert into counters (id, cnt) values (1, 1), (1, 1) on duplicate key update cnt = cnt + 1");
+        assertThat(response.rowCount(), is(2L));
+        execute("refresh table counters");
+
+        execute("select cnt from counters where id = 1");
+        assertThat((Long) response.rows()[0][0], is(2L));
+    }
+
+    @Test
+    public void testInsertOnDuplicateKeyUpdateBulk() throws Exception {
+        execute("create table counters (id int primary key, cnt long) with (number_of_replicas = 0)");
+        ensureGreen();
+
+        SQLBulkResponse bulkResponse = execute("insert into counters (id, cnt) values (?, ?) " +
+                "on duplicate key update cnt = cnt + ?", new Object[][]{
+                new Object[]{1, 1, 10},
+                new Object[]{1, 1, 10},
+                new Object[]{2, 1, 10}
+        });
+        assertThat(bulkResponse.results().length, is(3));
+        for (SQLBulkResponse.Result result : bulkResponse.results()) {
+            assertThat(result.rowCount(), is(1L));
+        }
+        execute("refresh table counters");
+
+        execute("select id, cnt from counters order by id");
+        assertEquals("1| 11\n2| 1\n", printedTable(response.rows()));
+    }
+
+    @Test
+    public void testInsertOnDuplicateKeyUpdateReportsFailedRows() throws Exception {
+        execute("create table counters (id int primary key, cnt long) with (number_of_replicas = 0)");
+        ensureGreen();
+        execute("insert into counters (id, cnt) values (1, 1)");
+        execute("refresh table counters");
+
+        try {
+            execute("insert into counters (id, cnt) values (1, 1), (2, 1) on duplicate key update cnt = cnt / 0");
+            fail("the update of the existing row must fail");
+        } catch (SQLActionException e) {
+            assertThat(e.getMessage(), containsString("1 of 2 rows failed"));
+        }
+        execute("refresh table counters");
+
+        execute("select id, cnt from counters order by id");
+        assertEquals("1| 1\n2| 1\n", printedTable(response.rows()));
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.integrationtests;
+
+import io.crate.action.sql.SQLActionException;
+import io.crate.test.integration.CrateIntegrationTest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static io.crate.testing.TestingHelpers.printedTable;
+import static org.hamcrest.Matchers.is;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.GLOBAL)
+public class JoinIntegrationTest extends SQLTransportIntegrationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Before
+    public void setUpTables() throws Exception {
+        execute("create table authors (id int primary key, name string) " +
+                "clustered into 2 shards with (number_of_replicas=0)");
+        execute("create table books (id int primary key, author_id int, title string) " +
+                "clustered into 3 shards with (number_of_replicas=0)");
+        ensureGreen();
+        execute("insert into authors (id, name) values (?, ?)", new Object[][]{
+                new Object[]{1, "Douglas Adams"},
+                new Object[]{2, "Terry Pratchett"},
+                new Object[]{3, "Neil Gaiman"},
+        });
+        execute("insert into books (id, author_id, title) values (?, ?, ?)", new Object[][]{
+                new Object[]{1, 1, "The Hitchhiker's Guide to the Galaxy"},
+                new Object[]{2, 1, "The Restaurant at the End of the Universe"},
+                new Object[]{3, 2, "Good Omens"},
+                new Object[]{4, 2, "Mort"},
+                new Object[]{5, null, "Anonymous"},
+        });
+        refresh();
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        execute("select authors.name, books.title from authors join books on authors.id = books.author_id " +
+                "order by books.id");
+        assertThat(response.rowCount(), is(4L));
+        assertThat(printedTable(response.rows()), is(
+                "Douglas Adams| The Hitchhiker's Guide to the Galaxy\n" +
+                "Douglas Adams| The Restaurant at the End of the Universe\n" +
+                "Terry Pratchett| Good Omens\n" +
+                "Terry Pratchett| Mort\n"));
+    }
+
+    @Test
+    public void testJoinWithConditionsAndLimit() throws Exception {
+        execute("select authors.name, books.title from authors join books on authors.id = books.author_id " +
+                "where books.id > 1 and (authors.id = 2 or books.title = 'Good Omens') " +
+                "order by books.title desc limit 1");
+        assertThat(printedTable(response.rows()), is("Terry Pratchett| Mort\n"));
+    }
+
+    @Test
+    public void testJoinWithoutMatches() throws Exception {
+        execute("select authors.name, books.title from authors join books on authors.id = books.author_id " +
+                "where authors.id = 3");
+        assertThat(response.rowCount(), is(0L));
+    }
+
+    private void assertJoinWithStrategy(String strategy) throws Exception {
+        execute("set global transient cluster.join_strategy = ?", new Object[]{strategy});
+        try {
+            execute("select authors.name, books.title from authors join books on authors.id = books.author_id " +
+                    "order by books.id limit 3");
+            assertThat(printedTable(response.rows()), is(
+                    "Douglas Adams| The Hitchhiker's Guide to the Galaxy\n" +
+                    "Douglas Adams| The Restaurant at the End of the Universe\n" +
+                    "Terry Pratchett| Good Omens\n"));
+        } finally {
+            execute("reset global cluster.join_strategy");
+        }
+    }
+
+    @Test
+    public void testBroadcastJoin() throws Exception {
+        assertJoinWithStrategy("broadcast");
+    }
+
+    @Test
+    public void testShuffleJoin() throws Exception {
+        assertJoinWithStrategy("shuffle");
+    }
+
+    @Test
+    public void testJoinWithoutEqualityCondition() throws Exception {
+        expectedException.expect(SQLActionException.class);
+        expectedException.expectMessage("JOIN condition must contain an equality comparison between columns of both tables");
+        execute("select authors.name from authors join books on authors.id > books.author_id");
+    }
+}
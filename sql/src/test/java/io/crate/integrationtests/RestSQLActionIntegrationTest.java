@@ -29,6 +29,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.StringStartsWith.startsWith;
 
 @CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.GLOBAL)
@@ -58,4 +59,51 @@ public class RestSQLActionIntegrationTest extends SQLHttpIntegrationTest {
         String bodyAsString = EntityUtils.toString(response.getEntity());
         assertEquals("{\"error\":{\"message\":\"SQLActionException[request body contains args and bulk_args. It's forbidden to provide both]\",\"code\":4000},\"error_trace\":null}", bodyAsString);
     }
+
+    @Test
+    public void testWithInvalidFormat() throws IOException {
+        CloseableHttpResponse response = post("{\"stmt\": \"select name from sys.cluster\"}", "format=xml");
+        assertEquals(400, response.getStatusLine().getStatusCode());
+        String bodyAsString = EntityUtils.toString(response.getEntity());
+        assertEquals("{\"error\":{\"message\":\"SQLActionException[Unknown format 'xml', supported formats are 'json' and 'csv']\",\"code\":4000},\"error_trace\":null}", bodyAsString);
+    }
+
+    @Test
+    public void testStreamedResponse() throws IOException {
+        CloseableHttpResponse response = post("{\"stmt\": \"select id from sys.nodes limit 1\"}", "stream=true");
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertThat(response.getFirstHeader("Transfer-Encoding").getValue(), is("chunked"));
+        String bodyAsString = EntityUtils.toString(response.getEntity());
+        assertThat(bodyAsString, startsWith("{\"cols\":[\"id\"],\"rows\":[[\""));
+    }
+
+    @Test
+    public void testCsvResponse() throws IOException {
+        execute("create table t (x string, y int) with (number_of_replicas=0)");
+        ensureGreen();
+        execute("insert into t (x, y) values ('a,b', 1)");
+        refresh();
+        CloseableHttpResponse response = post("{\"stmt\": \"select x, y from t\"}", "format=csv&stream=true");
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertThat(response.getFirstHeader("Content-Type").getValue(), startsWith("text/csv"));
+        assertThat(EntityUtils.toString(response.getEntity()), is("x,y\n\"a,b\",1\n"));
+    }
+
+    @Test
+    public void testStreamedResponseFetchesAllRowsFromTheCursor() throws IOException {
+        execute("create table streamed (id int primary key) with (number_of_replicas=0)");
+        ensureGreen();
+        // more rows than are fetched from the cursor at a time
+        Object[][] bulkArgs = new Object[10005][];
+        for (int i = 0; i < bulkArgs.length; i++) {
+            bulkArgs[i] = new Object[]{i};
+        }
+        execute("insert into streamed (id) values (?)", bulkArgs);
+        refresh();
+        CloseableHttpResponse response = post("{\"stmt\": \"select id from streamed\"}", "format=csv&stream=true");
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+        assertThat(lines.length, is(10006));
+        assertThat(lines[0], is("id"));
+    }
 }
@@ -37,11 +37,12 @@ import java.net.InetSocketAddress;
 public class SQLHttpIntegrationTest extends SQLTransportIntegrationTest {
 
     private HttpPost httpPost;
+    private InetSocketAddress address;
 
     @Before
     public void setup() {
         HttpServerTransport httpServerTransport = cluster().getInstance(HttpServerTransport.class);
-        InetSocketAddress address = ((InetSocketTransportAddress) httpServerTransport.boundAddress().publishAddress())
+        address = ((InetSocketTransportAddress) httpServerTransport.boundAddress().publishAddress())
                 .address();
         httpPost = new HttpPost(String.format("http://%s:%s/_sql?error_trace", address.getHostName(), address.getPort()));
     }
@@ -57,6 +58,13 @@ public class SQLHttpIntegrationTest extends SQLTransportIntegrationTest {
         return httpClient.execute(httpPost);
     }
 
+    protected CloseableHttpResponse post(String body, String params) throws IOException {
+        HttpPost httpPost = new HttpPost(String.format("http://%s:%s/_sql?error_trace&%s",
+                address.getHostName(), address.getPort(), params));
+        httpPost.setEntity(new StringEntity(body));
+        return httpClient.execute(httpPost);
+    }
+
     protected CloseableHttpResponse post() throws IOException {
         return post(null);
     }
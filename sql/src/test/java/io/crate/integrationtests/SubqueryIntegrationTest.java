@@ -0,0 +1,122 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.integrationtests;
+
+import io.crate.test.integration.CrateIntegrationTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import static io.crate.testing.TestingHelpers.printedTable;
+import static org.hamcrest.Matchers.is;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.GLOBAL)
+public class SubqueryIntegrationTest extends SQLTransportIntegrationTest {
+
+    private static final int NUM_CUSTOMERS = 200;
+
+    @Before
+    public void setUpTables() throws Exception {
+        execute("create table customers (id int primary key, name string) " +
+                "clustered into 2 shards with (number_of_replicas=0)");
+        execute("create table orders (id int primary key, customer_id int, amount double) " +
+                "clustered into 3 shards with (number_of_replicas=0)");
+        ensureGreen();
+        Object[][] customers = new Object[NUM_CUSTOMERS][];
+        for (int i = 0; i < NUM_CUSTOMERS; i++) {
+            customers[i] = new Object[]{i, "customer " + i};
+        }
+        execute("insert into customers (id, name) values (?, ?)", customers);
+        // every even customer has ordered, the first ten of them for more than 100
+        Object[][] orders = new Object[NUM_CUSTOMERS / 2][];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = new Object[]{i, i * 2, i < 10 ? 200.0 : 50.0};
+        }
+        execute("insert into orders (id, customer_id, amount) values (?, ?, ?)", orders);
+        refresh();
+    }
+
+    @Test
+    public void testInSubquery() throws Exception {
+        execute("select id, name from customers where id in " +
+                "(select customer_id from orders where amount > 100 and customer_id < 8) order by id");
+        assertThat(printedTable(response.rows()), is(
+                "0| customer 0\n" +
+                "2| customer 2\n" +
+                "4| customer 4\n" +
+                "6| customer 6\n"));
+    }
+
+    @Test
+    public void testInSubqueryWithoutResult() throws Exception {
+        execute("select id from customers where id in (select customer_id from orders where amount > 1000)");
+        assertThat(response.rowCount(), is(0L));
+    }
+
+    @Test
+    public void testInSubqueryWithMoreKeysThanTermsFilterThreshold() throws Exception {
+        // 100 distinct keys are pushed down as a single terms filter
+        execute("select id from customers where id in (select customer_id from orders) order by id limit 200");
+        assertThat(response.rowCount(), is(NUM_CUSTOMERS / 2L));
+        for (int i = 0; i < response.rows().length; i++) {
+            assertThat((Integer) response.rows()[i][0], is(i * 2));
+        }
+    }
+
+    @Test
+    public void testExists() throws Exception {
+        execute("select id from customers where id < 3 and exists (select id from orders where amount > 100) " +
+                "order by id");
+        assertThat(printedTable(response.rows()), is("0\n1\n2\n"));
+    }
+
+    @Test
+    public void testNotExists() throws Exception {
+        execute("select id from customers where not exists (select id from orders where amount > 1000) " +
+                "and id < 2 order by id");
+        assertThat(printedTable(response.rows()), is("0\n1\n"));
+
+        execute("select id from customers where not exists (select id from orders)");
+        assertThat(response.rowCount(), is(0L));
+    }
+
+    @Test
+    public void testInSubqueryWithTooManyKeysIsExecutedAsSemiJoin() throws Exception {
+        execute("create table visits (id int primary key, customer_id int) " +
+                "clustered into 3 shards with (number_of_replicas=0)");
+        ensureGreen();
+        // more rows than SubqueryResolver.MAX_KEYS, every customer below 5 visited twice
+        Object[][] visits = new Object[10_010][];
+        for (int i = 0; i < visits.length; i++) {
+            visits[i] = new Object[]{i, i < 10 ? i % 5 : NUM_CUSTOMERS + i};
+        }
+        execute("insert into visits (id, customer_id) values (?, ?)", visits);
+        refresh();
+
+        execute("select id, name from customers where id in (select customer_id from visits) order by id");
+        assertThat(printedTable(response.rows()), is(
+                "0| customer 0\n" +
+                "1| customer 1\n" +
+                "2| customer 2\n" +
+                "3| customer 3\n" +
+                "4| customer 4\n"));
+    }
+}
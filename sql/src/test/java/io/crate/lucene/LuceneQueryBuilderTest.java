@@ -33,6 +33,7 @@ import io.crate.planner.symbol.*;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import io.crate.types.SetType;
+import org.apache.lucene.queries.TermsFilter;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.inject.ModulesBuilder;
@@ -43,6 +44,8 @@ import org.junit.Test;
 import org.mockito.Answers;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import static io.crate.testing.TestingHelpers.createFunction;
 import static io.crate.testing.TestingHelpers.createReference;
@@ -87,6 +90,20 @@ public class LuceneQueryBuilderTest {
         }
     }
 
+    @Test
+    public void testWhereRefInLargeSetLiteralIsConvertedToTermsFilter() throws Exception {
+        DataType dataType = new SetType(DataTypes.LONG);
+        Reference foo = createReference("foo", DataTypes.LONG);
+        Set<Long> values = new HashSet<>();
+        for (long i = 0; i <= LuceneQueryBuilder.IN_TERMS_FILTER_THRESHOLD; i++) {
+            values.add(i);
+        }
+        WhereClause whereClause = new WhereClause(
+                createFunction(InOperator.NAME, DataTypes.BOOLEAN, foo, Literal.newLiteral(dataType, values)));
+        Query query = convert(whereClause);
+        assertThat(query, instanceOf(ConstantScoreQuery.class));
+        assertThat(((ConstantScoreQuery) query).getFilter(), instanceOf(TermsFilter.class));
+    }
 
     private Query convert(WhereClause eq) {
         return builder.convert(eq).query;
@@ -0,0 +1,66 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.planner.node.dql.CollectNode;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class DistributingCollectOperationTest {
+
+    private final List<DiscoveryNode> downStreams = ImmutableList.of(
+            new DiscoveryNode("n1", DummyTransportAddress.INSTANCE, Version.CURRENT),
+            new DiscoveryNode("n2", DummyTransportAddress.INSTANCE, Version.CURRENT));
+
+    private final List<Object[]> rows = ImmutableList.of(new Object[]{1}, new Object[]{2}, new Object[]{3});
+
+    @Test
+    public void testBroadcastBuckets() throws Exception {
+        List<List<Object[]>> buckets = ImmutableList.copyOf(
+                DistributingCollectOperation.buckets(CollectNode.Distribution.BROADCAST, rows, downStreams, "n1"));
+        assertThat(buckets.size(), is(2));
+        assertThat(buckets.get(0).size(), is(3));
+        assertThat(buckets.get(1).size(), is(3));
+    }
+
+    @Test
+    public void testSameNodeBuckets() throws Exception {
+        List<List<Object[]>> buckets = ImmutableList.copyOf(
+                DistributingCollectOperation.buckets(CollectNode.Distribution.SAME_NODE, rows, downStreams, "n2"));
+        assertThat(buckets.size(), is(2));
+        assertThat(buckets.get(0), empty());
+        assertThat(buckets.get(1).size(), is(3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSameNodeBucketsOnNonDownstreamNode() throws Exception {
+        DistributingCollectOperation.buckets(CollectNode.Distribution.SAME_NODE, rows, downStreams, "n3");
+    }
+}
@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.executor.transport.TransportActionProvider;
 import io.crate.metadata.*;
+import io.crate.operation.collect.files.FileReadingCollector;
 import io.crate.planner.node.dql.FileUriCollectNode;
 import io.crate.planner.projection.Projection;
 import io.crate.planner.symbol.Literal;
@@ -83,7 +84,9 @@ public class MapSideDataCollectOperationTest {
                 functions,
                 referenceResolver,
                 indicesService,
-                new ThreadPool(ImmutableSettings.builder().put("name", getClass().getName()).build(), null),
+                new ThreadPool(ImmutableSettings.builder()
+                        .put("name", getClass().getName())
+                        .put("threadpool." + FileReadingCollector.THREAD_POOL + ".type", "fixed").build(), null),
                 new CollectServiceResolver(discoveryService,
                     new SystemCollectService(
                             discoveryService,
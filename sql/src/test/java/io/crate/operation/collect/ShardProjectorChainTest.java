@@ -56,6 +56,7 @@ import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.search.highlight.HighlightModule;
 import org.elasticsearch.test.cluster.NoopClusterService;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -108,6 +109,7 @@ public class ShardProjectorChainTest {
                 RowGranularity.CLUSTER);
         projectionToProjectorVisitor = new ProjectionToProjectorVisitor(
                 new NoopClusterService(),
+                mock(ThreadPool.class),
                 ImmutableSettings.EMPTY,
                 mock(TransportActionProvider.class),
                 implementationSymbolVisitor,
@@ -27,28 +27,50 @@ import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.external.S3ClientHelper;
 import io.crate.metadata.DynamicFunctionResolver;
 import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionImplementation;
 import io.crate.metadata.Functions;
+import io.crate.operation.collect.CollectionAbortedException;
+import io.crate.operation.projectors.CheckpointingProjector;
 import io.crate.operation.projectors.CollectingProjector;
 import io.crate.operation.reference.file.FileLineReferenceResolver;
+import io.crate.types.ArrayType;
+import io.crate.types.DataType;
 import io.crate.types.DataTypes;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.lucene.util.BytesRef;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import javax.annotation.Nullable;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 import static io.crate.testing.TestingHelpers.createReference;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.*;
@@ -62,6 +84,9 @@ public class FileReadingCollectorTest {
     private static File tmpFileGz;
     private FileCollectInputSymbolVisitor inputSymbolVisitor;
 
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
     @BeforeClass
     public static void setUpClass() throws Exception {
         Path copy_from = Files.createTempDirectory("copy_from");
@@ -140,6 +165,182 @@ public class FileReadingCollectorTest {
         assertCorrectResult(projector.result().get());
     }
 
+    @Test
+    public void testSplitsOfSharedFileAreReadExactlyOnce() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".json");
+        List<String> lines = new ArrayList<>();
+        try (FileWriter writer = new FileWriter(file)) {
+            for (int i = 0; i < 200; i++) {
+                String line = String.format(Locale.ENGLISH, "{\"id\": %d, \"name\": \"%s\"}", i, Strings.repeat("x", i % 17));
+                lines.add(line);
+                writer.write(line);
+                writer.write("\n");
+            }
+        }
+        try {
+            int numReaders = 3;
+            List<String> collected = new ArrayList<>();
+            for (int readerNumber = 0; readerNumber < numReaders; readerNumber++) {
+                CollectingProjector projector = getObjects(file.getAbsolutePath(), null, true, numReaders, readerNumber, 100);
+                Object[][] rows = projector.result().get();
+                assertThat(rows.length, greaterThan(0));
+                for (Object[] row : rows) {
+                    collected.add(((BytesRef) row[0]).utf8ToString());
+                }
+            }
+            Collections.sort(collected);
+            Collections.sort(lines);
+            assertThat(collected, is(lines));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCompressedFileIsNotSplit() throws Throwable {
+        CollectingProjector projector = getObjects(tmpFileGz.getAbsolutePath(), "gzip", true, 2, 0, 10);
+        assertCorrectResult(projector.result().get());
+        projector = getObjects(tmpFileGz.getAbsolutePath(), "gzip", true, 2, 1, 10);
+        assertThat(projector.result().get().length, is(0));
+    }
+
+    @Test
+    public void testLinesAreParsedConcurrently() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".json");
+        List<String> lines = new ArrayList<>();
+        try (FileWriter writer = new FileWriter(file)) {
+            for (int i = 0; i < LineParsingPipeline.BATCH_SIZE * 10 + 3; i++) {
+                String line = String.format(Locale.ENGLISH, "{\"id\": %d}", i);
+                lines.add(line);
+                writer.write(line);
+                writer.write("\n");
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CollectingProjector projector = getObjects(file.getAbsolutePath(), null, false, 1, 0,
+                    FileReadingCollector.DEFAULT_SPLIT_SIZE, 4, executor, new CollectingProjector(), null);
+            List<String> collected = new ArrayList<>();
+            for (Object[] row : projector.result().get()) {
+                collected.add(((BytesRef) row[0]).utf8ToString());
+            }
+            Collections.sort(collected);
+            Collections.sort(lines);
+            assertThat(collected, is(lines));
+        } finally {
+            executor.shutdownNow();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAbortOfConcurrentParsingIsPropagated() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".json");
+        try (FileWriter writer = new FileWriter(file)) {
+            for (int i = 0; i < LineParsingPipeline.BATCH_SIZE * 10; i++) {
+                writer.write(String.format(Locale.ENGLISH, "{\"id\": %d}\n", i));
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        final AtomicInteger rowCount = new AtomicInteger(0);
+        CollectingProjector projector = new CollectingProjector() {
+            @Override
+            public synchronized boolean setNextRow(Object... row) {
+                super.setNextRow(row);
+                return rowCount.incrementAndGet() < 10;
+            }
+        };
+        try {
+            expectedException.expect(CollectionAbortedException.class);
+            getObjects(file.getAbsolutePath(), null, false, 1, 0,
+                    FileReadingCollector.DEFAULT_SPLIT_SIZE, 4, executor, projector, null);
+        } finally {
+            executor.shutdownNow();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCollectCsvWithHeader() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".csv");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("id,name,details\n");
+            writer.write("4,\"Arthur, Dent\",\n");
+            writer.write("5,\"Trillian \"\"Tricia\"\"\",\"\"\n");
+        }
+        try {
+            CsvOptions csvOptions = new CsvOptions(',', '"', true,
+                    Arrays.asList("name", "id"), Arrays.<DataType>asList(DataTypes.STRING, DataTypes.INTEGER));
+            Object[][] rows = getObjects(file.getAbsolutePath(), null, false, 1, 0,
+                    FileReadingCollector.DEFAULT_SPLIT_SIZE, 1, null, new CollectingProjector(), csvOptions).result().get();
+            assertThat(rows.length, is(2));
+            assertThat(((BytesRef) rows[0][0]).utf8ToString(), is(
+                    "{\"id\":4,\"name\":\"Arthur, Dent\",\"details\":null}"));
+            assertThat(((BytesRef) rows[1][0]).utf8ToString(), is(
+                    "{\"id\":5,\"name\":\"Trillian \\\"Tricia\\\"\",\"details\":\"\"}"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCollectCsvWithObjectAndArrayColumns() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".csv");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("4;\"{\"\"age\"\": 38}\";\"[1, 2]\"\n");
+        }
+        try {
+            CsvOptions csvOptions = new CsvOptions(';', '"', false,
+                    Arrays.asList("id", "details", "tags"), Arrays.<DataType>asList(
+                            DataTypes.INTEGER, DataTypes.OBJECT, new ArrayType(DataTypes.INTEGER)));
+            Object[][] rows = getObjects(file.getAbsolutePath(), null, false, 1, 0,
+                    FileReadingCollector.DEFAULT_SPLIT_SIZE, 1, null, new CollectingProjector(), csvOptions).result().get();
+            assertThat(((BytesRef) rows[0][0]).utf8ToString(), is(
+                    "{\"id\":4,\"details\":{\"age\":38},\"tags\":[1,2]}"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCollectCsvWithInvalidObjectFails() throws Throwable {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Cannot convert value \"38\" of column \"details\" to type object");
+        File file = File.createTempFile("fileReadingCollector", ".csv");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("4;38\n");
+        }
+        try {
+            CsvOptions csvOptions = new CsvOptions(';', '"', false,
+                    Arrays.asList("id", "details"), Arrays.<DataType>asList(DataTypes.INTEGER, DataTypes.OBJECT));
+            getObjects(file.getAbsolutePath(), null, false, 1, 0,
+                    FileReadingCollector.DEFAULT_SPLIT_SIZE, 1, null, new CollectingProjector(), csvOptions).result().get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCollectCsvByPosition() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".csv");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("Arthur;4\n");
+            writer.write("Trillian\n");
+        }
+        try {
+            CsvOptions csvOptions = new CsvOptions(';', '"', false,
+                    Arrays.asList("name", "id"), Arrays.<DataType>asList(DataTypes.STRING, DataTypes.INTEGER));
+            Object[][] rows = getObjects(file.getAbsolutePath(), null, false, 1, 0,
+                    FileReadingCollector.DEFAULT_SPLIT_SIZE, 1, null, new CollectingProjector(), csvOptions).result().get();
+            assertThat(((BytesRef) rows[0][0]).utf8ToString(), is("{\"name\":\"Arthur\",\"id\":4}"));
+            assertThat(((BytesRef) rows[1][0]).utf8ToString(), is("{\"name\":\"Trillian\"}"));
+        } finally {
+            file.delete();
+        }
+    }
+
     private void assertCorrectResult(Object[][] rows) throws Throwable {
         assertThat(((BytesRef)rows[0][0]).utf8ToString(), is(
                 "{\"name\": \"Arthur\", \"id\": 4, \"details\": {\"age\": 38}}"));
@@ -147,20 +348,300 @@ public class FileReadingCollectorTest {
                 "{\"id\": 5, \"name\": \"Trillian\", \"details\": {\"age\": 33}}"));
     }
 
+    @Test
+    public void testS3ObjectsAreFetchedAhead() throws Throwable {
+        final Map<String, byte[]> objects = new TreeMap<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 10; i < 30; i++) {
+            String line = String.format(Locale.ENGLISH, "{\"id\": %d}", i);
+            lines.add(line);
+            objects.put(String.format(Locale.ENGLISH, "data/%d.json", i), (line + "\n").getBytes("UTF-8"));
+        }
+        final AtomicInteger concurrentFetches = new AtomicInteger();
+        final AtomicInteger maxConcurrentFetches = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CollectingProjector projector = new CollectingProjector();
+            FileReadingCollector collector = new FileReadingCollector(
+                    "s3://fakebucket/data/*",
+                    FileReadingCollector.toParsers(ImmutableList.of(
+                            inputSymbolVisitor.process(createReference("_raw", DataTypes.STRING))), null),
+                    null,
+                    executor,
+                    4,
+                    projector,
+                    FileReadingCollector.FileFormat.JSON,
+                    null,
+                    null,
+                    ImmutableMap.<String, FileInputFactory>of("s3", new FileInputFactory() {
+                        @Override
+                        public FileInput create() throws IOException {
+                            return inMemoryS3FileInput(objects, concurrentFetches, maxConcurrentFetches);
+                        }
+                    }),
+                    null,
+                    1,
+                    0,
+                    FileReadingCollector.DEFAULT_SPLIT_SIZE,
+                    null,
+                    null
+            );
+            projector.startProjection();
+            collector.doCollect(null);
+
+            List<String> collected = new ArrayList<>();
+            for (Object[] row : projector.result().get()) {
+                collected.add(((BytesRef) row[0]).utf8ToString());
+            }
+            assertThat(collected, is(lines));
+            assertThat(maxConcurrentFetches.get(), greaterThan(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPrefetchedSplitLargerThanBufferIsReadCompletely() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".json");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append(String.format(Locale.ENGLISH, "{\"id\": %d}\n", i));
+        }
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(content.toString());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        SplitPrefetcher prefetcher = new SplitPrefetcher(new LocalFsFileInput(),
+                Arrays.asList(FileSplit.wholeFile(file.toURI(), file.length()), FileSplit.wholeFile(file.toURI(), file.length())),
+                executor, 1, 16);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try (InputStream stream = prefetcher.next()) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[100];
+                    int read;
+                    while ((read = stream.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                    assertThat(out.toString("UTF-8"), is(content.toString()));
+                }
+            }
+        } finally {
+            prefetcher.close();
+            executor.shutdownNow();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testResumedCollectSkipsCompletedSplits() throws Throwable {
+        File dir = Files.createTempDirectory("copy_from_resume").toFile();
+        for (int i = 0; i < 3; i++) {
+            try (FileWriter writer = new FileWriter(new File(dir, "data" + i + ".json"))) {
+                writer.write(String.format(Locale.ENGLISH, "{\"id\": %d}\n", i));
+            }
+        }
+        String fileUri = dir.getAbsolutePath() + "/data*.json";
+        InMemoryCheckpoints checkpoints = new InMemoryCheckpoints();
+
+        CheckpointingCollectingProjector projector = new CheckpointingCollectingProjector();
+        collect(fileUri, "id", DataTypes.INTEGER, projector, checkpoints, null);
+        assertThat(projector.result().get().length, is(3));
+        assertThat(projector.numCheckpoints.get(), is(3));
+        assertThat(checkpoints.completed.size(), is(1));
+        BitSet completed = checkpoints.completed.values().iterator().next();
+        assertThat(completed.cardinality(), is(3));
+        assertThat(checkpoints.numImportsCompleted.get(), is(1));
+
+        projector = new CheckpointingCollectingProjector();
+        collect(fileUri, "id", DataTypes.INTEGER, projector, checkpoints, null);
+        assertThat(projector.result().get().length, is(0));
+
+        // the import got interrupted before the checkpoint of the first split
+        BitSet partial = (BitSet) completed.clone();
+        partial.clear(0);
+        checkpoints.completed.put(checkpoints.completed.keySet().iterator().next(), partial);
+        projector = new CheckpointingCollectingProjector();
+        collect(fileUri, "id", DataTypes.INTEGER, projector, checkpoints, null);
+        assertThat(projector.result().get().length, is(1));
+        assertThat(checkpoints.completed.values().iterator().next().cardinality(), is(3));
+    }
+
+    @Test
+    public void testLinesWhichCantBeParsedAreWrittenToErrorFile() throws Throwable {
+        File file = File.createTempFile("fileReadingCollector", ".json");
+        File errorFile = new File(file.getParentFile(), file.getName() + ".errors");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("{\"id\": 1}\n");
+            writer.write("this is not json\n");
+            writer.write("{\"id\": 3}\n");
+        }
+        try {
+            CollectingProjector projector = new CollectingProjector();
+            collect(file.getAbsolutePath(), "id", DataTypes.INTEGER, projector, null, errorFile.getAbsolutePath());
+            Object[][] rows = projector.result().get();
+            assertThat(rows.length, is(2));
+            assertThat(((Number) rows[0][0]).intValue(), is(1));
+            assertThat(((Number) rows[1][0]).intValue(), is(3));
+
+            List<String> errors = Files.readAllLines(errorFile.toPath(), StandardCharsets.UTF_8);
+            assertThat(errors.size(), is(1));
+            assertThat(errors.get(0), containsString("\"line\":\"this is not json\""));
+            assertThat(errors.get(0), containsString(file.getName()));
+        } finally {
+            file.delete();
+            errorFile.delete();
+        }
+    }
+
+    private void collect(String fileUri,
+                         String column,
+                         DataType type,
+                         CollectingProjector projector,
+                         @Nullable Checkpoints checkpoints,
+                         @Nullable String errorFile) throws Throwable {
+        FileReadingCollector collector = new FileReadingCollector(
+                fileUri,
+                FileReadingCollector.toParsers(ImmutableList.of(
+                        inputSymbolVisitor.process(createReference(column, type))), null),
+                null,
+                null,
+                null,
+                projector,
+                FileReadingCollector.FileFormat.JSON,
+                null,
+                null,
+                ImmutableMap.<String, FileInputFactory>of(),
+                null,
+                1,
+                0,
+                FileReadingCollector.DEFAULT_SPLIT_SIZE,
+                checkpoints,
+                errorFile
+        );
+        projector.startProjection();
+        collector.doCollect(null);
+    }
+
+    private static class InMemoryCheckpoints implements Checkpoints {
+
+        private final Map<String, BitSet> completed = new HashMap<>();
+        private final AtomicInteger numImportsCompleted = new AtomicInteger();
+
+        @Override
+        public synchronized BitSet completedSplits(String fingerprint, boolean sharedStorage) {
+            BitSet splits = completed.get(fingerprint);
+            return splits == null ? new BitSet() : (BitSet) splits.clone();
+        }
+
+        @Override
+        public synchronized void splitsCompleted(String fingerprint, BitSet splits) {
+            completed.put(fingerprint, splits);
+        }
+
+        @Override
+        public void importCompleted() {
+            numImportsCompleted.incrementAndGet();
+        }
+    }
+
+    private static class CheckpointingCollectingProjector extends CollectingProjector implements CheckpointingProjector {
+
+        private final AtomicInteger numCheckpoints = new AtomicInteger();
+
+        @Override
+        public ListenableFuture<?> checkpoint() {
+            numCheckpoints.incrementAndGet();
+            return Futures.immediateFuture(null);
+        }
+    }
+
+    /**
+     * a S3FileInput which serves the given objects, every fetch takes a while
+     */
+    private static S3FileInput inMemoryS3FileInput(final Map<String, byte[]> objects,
+                                                   final AtomicInteger concurrentFetches,
+                                                   final AtomicInteger maxConcurrentFetches) {
+        return new S3FileInput(new S3ClientHelper() {
+            @Override
+            protected AmazonS3 initClient(String accessKey, String secretKey) throws IOException {
+                AmazonS3 client = mock(AmazonS3Client.class);
+                ObjectListing objectListing = mock(ObjectListing.class);
+                List<S3ObjectSummary> summaries = new ArrayList<>();
+                for (Map.Entry<String, byte[]> entry : objects.entrySet()) {
+                    S3ObjectSummary summary = new S3ObjectSummary();
+                    summary.setKey(entry.getKey());
+                    summary.setSize(entry.getValue().length);
+                    summaries.add(summary);
+                }
+                when(client.listObjects(anyString(), anyString())).thenReturn(objectListing);
+                when(objectListing.getObjectSummaries()).thenReturn(summaries);
+                when(objectListing.isTruncated()).thenReturn(false);
+                when(client.getObject(anyString(), anyString())).thenAnswer(new Answer<S3Object>() {
+                    @Override
+                    public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                        int fetches = concurrentFetches.incrementAndGet();
+                        synchronized (maxConcurrentFetches) {
+                            maxConcurrentFetches.set(Math.max(maxConcurrentFetches.get(), fetches));
+                        }
+                        try {
+                            Thread.sleep(20);
+                            S3Object s3Object = mock(S3Object.class);
+                            byte[] data = objects.get((String) invocation.getArguments()[1]);
+                            when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(
+                                    new ByteArrayInputStream(data), mock(HttpRequestBase.class)));
+                            return s3Object;
+                        } finally {
+                            concurrentFetches.decrementAndGet();
+                        }
+                    }
+                });
+                return client;
+            }
+        });
+    }
+
     private CollectingProjector getObjects(String fileUri) throws Throwable {
         return getObjects(fileUri, null);
     }
 
     private CollectingProjector getObjects(String fileUri, String compression) throws Throwable {
-        CollectingProjector projector = new CollectingProjector();
-        FileCollectInputSymbolVisitor.Context context =
-                inputSymbolVisitor.process(createReference("_raw", DataTypes.STRING));
+        return getObjects(fileUri, compression, false, 1, 0, FileReadingCollector.DEFAULT_SPLIT_SIZE);
+    }
+
+    private CollectingProjector getObjects(String fileUri,
+                                           String compression,
+                                           boolean shared,
+                                           int numReaders,
+                                           int readerNumber,
+                                           long splitSize) throws Throwable {
+        return getObjects(fileUri, compression, shared, numReaders, readerNumber, splitSize,
+                1, null, new CollectingProjector(), null);
+    }
+
+    private CollectingProjector getObjects(String fileUri,
+                                           String compression,
+                                           boolean shared,
+                                           int numReaders,
+                                           int readerNumber,
+                                           long splitSize,
+                                           int numParsers,
+                                           @Nullable Executor parserExecutor,
+                                           CollectingProjector projector,
+                                           @Nullable CsvOptions csvOptions) throws Throwable {
+        List<FileCollectInputSymbolVisitor.Context> parserContexts = new ArrayList<>(numParsers);
+        for (int i = 0; i < numParsers; i++) {
+            parserContexts.add(inputSymbolVisitor.process(createReference("_raw", DataTypes.STRING)));
+        }
         FileReadingCollector collector = new FileReadingCollector(
                 fileUri,
-                context.topLevelInputs(),
-                context.expressions(),
+                FileReadingCollector.toParsers(parserContexts, csvOptions),
+                parserExecutor,
+                null,
+                null,
                 projector,
-                FileReadingCollector.FileFormat.JSON,
+                csvOptions == null ? FileReadingCollector.FileFormat.JSON : FileReadingCollector.FileFormat.CSV,
+                csvOptions,
                 compression,
                 ImmutableMap.<String, FileInputFactory>of("s3", new FileInputFactory() {
                     @Override
@@ -188,9 +669,12 @@ public class FileReadingCollectorTest {
                         });
                     }
                 }),
-                false,
-                1,
-                0
+                shared,
+                numReaders,
+                readerNumber,
+                splitSize,
+                null,
+                null
         );
         projector.startProjection();
         collector.doCollect(null);
@@ -0,0 +1,105 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.io.ByteStreams;
+import io.crate.external.S3ClientHelper;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class S3FileInputTest {
+
+    private static final byte[] DATA = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private final List<long[]> ranges = new ArrayList<>();
+
+    private S3FileInput fileInput(long rangeSize) {
+        return new S3FileInput(new S3ClientHelper() {
+            @Override
+            protected AmazonS3 initClient(String accessKey, String secretKey) throws IOException {
+                AmazonS3 client = mock(AmazonS3.class);
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(DATA.length);
+                when(client.getObjectMetadata(anyString(), anyString())).thenReturn(metadata);
+                when(client.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+                    @Override
+                    public S3Object answer(InvocationOnMock invocation) throws Throwable {
+                        long[] range = ((GetObjectRequest) invocation.getArguments()[0]).getRange();
+                        ranges.add(range);
+                        S3Object object = new S3Object();
+                        object.setObjectContent(new S3ObjectInputStream(
+                                new ByteArrayInputStream(Arrays.copyOfRange(DATA, (int) range[0], (int) range[1] + 1)),
+                                mock(HttpRequestBase.class)));
+                        return object;
+                    }
+                });
+                return client;
+            }
+        }, rangeSize);
+    }
+
+    @Test
+    public void testStreamFromPositionReadsBoundedRanges() throws Exception {
+        try (InputStream stream = fileInput(5).getStream(new URI("s3://bucket/data.json"), 3)) {
+            assertThat(new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8), is("3456789abcdef"));
+        }
+        assertThat(ranges.size(), is(3));
+        assertThat(ranges.get(0), is(new long[]{3, 7}));
+        assertThat(ranges.get(1), is(new long[]{8, 12}));
+        assertThat(ranges.get(2), is(new long[]{13, 15}));
+    }
+
+    @Test
+    public void testNextRangeIsOnlyRequestedIfNeeded() throws Exception {
+        try (InputStream stream = fileInput(5).getStream(new URI("s3://bucket/data.json"), 0)) {
+            byte[] buffer = new byte[5];
+            ByteStreams.readFully(stream, buffer);
+            assertThat(new String(buffer, StandardCharsets.UTF_8), is("01234"));
+            assertThat(ranges.size(), is(1));
+            assertThat(stream.read(), is((int) '5'));
+        }
+        assertThat(ranges.size(), is(2));
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.join;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.executor.*;
+import io.crate.executor.transport.TransportActionProvider;
+import io.crate.metadata.Functions;
+import io.crate.metadata.MetaDataModule;
+import io.crate.metadata.ReferenceResolver;
+import io.crate.operation.ImplementationSymbolVisitor;
+import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.scalar.ScalarFunctionModule;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.node.PlanNode;
+import io.crate.planner.node.dql.join.HashJoinNode;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.projection.TopNProjection;
+import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Symbol;
+import io.crate.testing.MockedClusterServiceModule;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.inject.Injector;
+import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.crate.testing.TestingHelpers.printedTable;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HashJoinOperationTest {
+
+    private static class ImmediateTestTask extends JobTask {
+
+        private final List<ListenableFuture<TaskResult>> result;
+
+        public ImmediateTestTask(Object[][] rows) {
+            super(UUID.randomUUID());
+            this.result = ImmutableList.of(Futures.<TaskResult>immediateFuture(new QueryResult(rows)));
+        }
+
+        @Override
+        public void start() {
+            // ignore
+        }
+
+        @Override
+        public List<ListenableFuture<TaskResult>> result() {
+            return result;
+        }
+
+        @Override
+        public void upstreamResult(List result) {
+            // ignore
+        }
+    }
+
+    private static class TestExecutor implements TaskExecutor {
+
+        @Override
+        public List<Task> newTasks(PlanNode planNode, UUID jobId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<ListenableFuture<TaskResult>> execute(Collection<Task> tasks) {
+            return Iterables.getLast(tasks).result();
+        }
+    }
+
+    private ProjectionToProjectorVisitor projectionVisitor;
+    private long flushBufferSize;
+
+    @Before
+    public void prepare() {
+        ModulesBuilder builder = new ModulesBuilder()
+                .add(new MockedClusterServiceModule())
+                .add(new MetaDataModule())
+                .add(new ScalarFunctionModule());
+        Injector injector = builder.createInjector();
+        Functions functions = injector.getInstance(Functions.class);
+        ReferenceResolver referenceResolver = injector.getInstance(ReferenceResolver.class);
+        ImplementationSymbolVisitor implementationSymbolVisitor = new ImplementationSymbolVisitor(referenceResolver, functions, RowGranularity.CLUSTER);
+        TransportActionProvider transportActionProvider = mock(TransportActionProvider.class);
+        projectionVisitor = new ProjectionToProjectorVisitor(mock(ClusterService.class), mock(ThreadPool.class), ImmutableSettings.EMPTY, transportActionProvider, implementationSymbolVisitor);
+        flushBufferSize = RamAccountingContext.FLUSH_BUFFER_SIZE;
+    }
+
+    @After
+    public void resetFlushBufferSize() {
+        RamAccountingContext.FLUSH_BUFFER_SIZE = flushBufferSize;
+    }
+
+    private Object[][] join(Object[][] left,
+                            Object[][] right,
+                            List<DataType> leftTypes,
+                            List<DataType> rightTypes,
+                            int[] leftJoinKeys,
+                            int[] rightJoinKeys,
+                            int limit,
+                            CircuitBreaker circuitBreaker) throws Exception {
+        HashJoinNode node = new HashJoinNode(
+                ImmutableList.<PlanNode>of(), ImmutableList.<PlanNode>of(), leftJoinKeys, rightJoinKeys);
+        node.leftTypes(leftTypes);
+        node.rightTypes(rightTypes);
+        int numColumns = (left.length > 0 ? left[0].length : 0) + (right.length > 0 ? right[0].length : 0);
+        List<Symbol> outputs = new ArrayList<>(numColumns);
+        for (int i = 0; i < numColumns; i++) {
+            outputs.add(new InputColumn(i, DataTypes.UNDEFINED));
+        }
+        TopNProjection projection = new TopNProjection(limit, 0);
+        projection.outputs(outputs);
+        node.projections(ImmutableList.<Projection>of(projection));
+
+        HashJoinOperation operation = new HashJoinOperation(
+                node,
+                Arrays.<Task>asList(new ImmediateTestTask(left)),
+                Arrays.<Task>asList(new ImmediateTestTask(right)),
+                new TestExecutor(),
+                projectionVisitor,
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA)),
+                circuitBreaker,
+                BigArrays.NON_RECYCLING_INSTANCE);
+        return operation.execute().get().rows();
+    }
+
+    private Object[][] join(Object[][] left, Object[][] right, int[] leftJoinKeys, int[] rightJoinKeys, int limit) throws Exception {
+        return join(left, right, undefinedTypes(left), undefinedTypes(right), leftJoinKeys, rightJoinKeys, limit,
+                new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+    }
+
+    /**
+     * joins rows of an integer and a string column on the integer column
+     */
+    private Object[][] join(Object[][] left, Object[][] right, CircuitBreaker circuitBreaker) throws Exception {
+        List<DataType> types = Arrays.<DataType>asList(DataTypes.INTEGER, DataTypes.STRING);
+        return join(left, right, types, types, new int[]{0}, new int[]{0}, 1000, circuitBreaker);
+    }
+
+    private static List<DataType> undefinedTypes(Object[][] rows) {
+        return Collections.<DataType>nCopies(rows.length > 0 ? rows[0].length : 0, DataTypes.UNDEFINED);
+    }
+
+    private Object[][] join(Object[][] left, Object[][] right) throws Exception {
+        return join(left, right, new int[]{0}, new int[]{0}, 100);
+    }
+
+    /**
+     * breaker that trips once more than <code>limit</code> bytes are used
+     */
+    private CircuitBreaker limitedBreaker(final long limit, final AtomicLong used) {
+        CircuitBreaker breaker = mock(CircuitBreaker.class);
+        when(breaker.getLimit()).thenReturn(limit);
+        doAnswer(new Answer<Double>() {
+            @Override
+            public Double answer(InvocationOnMock invocation) throws Throwable {
+                long bytes = (Long) invocation.getArguments()[0];
+                if (used.get() + bytes > limit) {
+                    throw new CircuitBreakingException("limit of " + limit + " bytes reached");
+                }
+                return (double) used.addAndGet(bytes);
+            }
+        }).when(breaker).addEstimateBytesAndMaybeBreak(anyLong(), anyString());
+        doAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                return used.addAndGet((Long) invocation.getArguments()[0]);
+            }
+        }).when(breaker).addWithoutBreaking(anyLong());
+        return breaker;
+    }
+
+    @Test
+    public void testNoRows() throws Exception {
+        assertThat(join(new Object[0][], new Object[0][]).length, is(0));
+        assertThat(join(new Object[0][], new Object[][]{new Object[]{1, "a"}}).length, is(0));
+        assertThat(join(new Object[][]{new Object[]{1, "a"}}, new Object[0][]).length, is(0));
+    }
+
+    @Test
+    public void testJoinBuildLeft() throws Exception {
+        Object[][] rows = join(
+                new Object[][]{
+                        new Object[]{1, "a"},
+                        new Object[]{2, "b"},
+                        new Object[]{3, "c"}
+                },
+                new Object[][]{
+                        new Object[]{2, "x"},
+                        new Object[]{3, "y"},
+                        new Object[]{3, "z"},
+                        new Object[]{4, "w"}
+                });
+        assertThat(printedTable(rows), is(
+                "2| b| 2| x\n" +
+                "3| c| 3| y\n" +
+                "3| c| 3| z\n"));
+    }
+
+    @Test
+    public void testJoinBuildRightKeepsColumnOrder() throws Exception {
+        Object[][] rows = join(
+                new Object[][]{
+                        new Object[]{1, "a"},
+                        new Object[]{2, "b"},
+                        new Object[]{3, "c"},
+                        new Object[]{3, "d"}
+                },
+                new Object[][]{
+                        new Object[]{3, "x"},
+                        new Object[]{1, "y"}
+                });
+        assertThat(printedTable(rows), is(
+                "1| a| 1| y\n" +
+                "3| c| 3| x\n" +
+                "3| d| 3| x\n"));
+    }
+
+    @Test
+    public void testNullKeysDontMatch() throws Exception {
+        Object[][] rows = join(
+                new Object[][]{
+                        new Object[]{null, "a"},
+                        new Object[]{1, "b"}
+                },
+                new Object[][]{
+                        new Object[]{null, "x"},
+                        new Object[]{1, "y"}
+                });
+        assertThat(printedTable(rows), is("1| b| 1| y\n"));
+    }
+
+    @Test
+    public void testJoinMultipleKeys() throws Exception {
+        Object[][] rows = join(
+                new Object[][]{
+                        new Object[]{1, "a", "l1"},
+                        new Object[]{1, "b", "l2"},
+                        new Object[]{2, "a", "l3"}
+                },
+                new Object[][]{
+                        new Object[]{"r1", "a", 1},
+                        new Object[]{"r2", "a", 2},
+                        new Object[]{"r3", "b", 2},
+                        new Object[]{"r4", null, 1}
+                },
+                new int[]{0, 1},
+                new int[]{2, 1},
+                100);
+        assertThat(printedTable(rows), is(
+                "1| a| l1| r1| a| 1\n" +
+                "2| a| l3| r2| a| 2\n"));
+    }
+
+    @Test
+    public void testJoinWithLimit() throws Exception {
+        Object[][] rows = join(
+                new Object[][]{
+                        new Object[]{1, "a"}
+                },
+                new Object[][]{
+                        new Object[]{1, "x"},
+                        new Object[]{1, "y"},
+                        new Object[]{1, "z"}
+                },
+                new int[]{0},
+                new int[]{0},
+                2);
+        assertThat(printedTable(rows), is(
+                "1| a| 1| x\n" +
+                "1| a| 1| y\n"));
+    }
+
+    private static Object[][] rows(String prefix, int numRows, boolean sameKey) {
+        Object[][] rows = new Object[numRows][];
+        for (int i = 0; i < numRows; i++) {
+            rows[i] = new Object[]{sameKey ? 1 : i, new BytesRef(prefix + i)};
+        }
+        return rows;
+    }
+
+    @Test
+    public void testJoinIfHashTableFitsIntoBreakerLimit() throws Exception {
+        RamAccountingContext.FLUSH_BUFFER_SIZE = 1;
+        AtomicLong used = new AtomicLong();
+        // the hash table for all rows needs about 76kb
+        Object[][] rows = join(rows("l", 400, false), rows("r", 400, false), limitedBreaker(100_000, used));
+
+        assertThat(rows.length, is(400));
+        for (Object[] row : rows) {
+            assertThat(row[0], is(row[2]));
+            assertThat(row[1], is((Object) new BytesRef("l" + row[0])));
+            assertThat(row[3], is((Object) new BytesRef("r" + row[0])));
+        }
+        // the hash table has been released
+        assertThat(used.get(), is(0L));
+    }
+
+    @Test
+    public void testPartitionedJoinIfHashTableExceedsBreakerLimit() throws Exception {
+        RamAccountingContext.FLUSH_BUFFER_SIZE = 1;
+        AtomicLong used = new AtomicLong();
+        // the hash table for all rows needs about 76kb, the one of a single partition about 10kb
+        Object[][] rows = join(rows("l", 400, false), rows("r", 400, false), limitedBreaker(20_000, used));
+
+        assertThat(rows.length, is(400));
+        for (Object[] row : rows) {
+            assertThat(row[0], is(row[2]));
+            assertThat(row[1], is((Object) new BytesRef("l" + row[0])));
+            assertThat(row[3], is((Object) new BytesRef("r" + row[0])));
+        }
+        // the hash tables and the pages of the partitions have been released
+        assertThat(used.get(), is(0L));
+    }
+
+    @Test
+    public void testJoinFailsIfHashTableOfPartitionExceedsBreakerLimit() throws Exception {
+        RamAccountingContext.FLUSH_BUFFER_SIZE = 1;
+        AtomicLong used = new AtomicLong();
+        try {
+            // all rows have the same key, so partitioning them doesn't reduce the size of the hash table
+            join(rows("l", 400, true), rows("r", 400, true), limitedBreaker(16_000, used));
+            fail("join should fail with a CircuitBreakingException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(CircuitBreakingException.class));
+            assertThat(e.getCause().getMessage(),
+                    containsString("hash table for 400 rows of a partition doesn't fit into memory"));
+        }
+        // the partially built hash tables have been released
+        assertThat(used.get(), is(0L));
+    }
+}
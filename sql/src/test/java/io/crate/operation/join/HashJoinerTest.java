@@ -0,0 +1,88 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.join;
+
+import io.crate.operation.projectors.CollectingProjector;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.util.BigArrays;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static io.crate.testing.TestingHelpers.printedTable;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class HashJoinerTest {
+
+    private static final List<DataType> TYPES = Arrays.<DataType>asList(DataTypes.INTEGER, DataTypes.STRING);
+
+    private HashJoiner hashJoiner(boolean buildLeft, CollectingProjector downstream) {
+        return new HashJoiner(new int[]{0}, new int[]{0}, TYPES, TYPES, buildLeft, false, "test",
+                new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA), BigArrays.NON_RECYCLING_INSTANCE, downstream);
+    }
+
+    private static List<Object[]> page(int key, String value) {
+        return Arrays.<Object[]>asList(new Object[]{key, new BytesRef(value)});
+    }
+
+    @Test
+    public void testProbeRowsAddedBeforeTheBuildSideFinishedAreJoined() throws Exception {
+        CollectingProjector downstream = new CollectingProjector();
+        HashJoiner hashJoiner = hashJoiner(false, downstream);
+
+        hashJoiner.addProbeRows(page(1, "a"));
+        hashJoiner.addBuildRows(page(1, "x"));
+        hashJoiner.addProbeRows(page(2, "b"));
+        hashJoiner.addBuildRows(page(2, "y"));
+        assertThat(downstream.rows.size(), is(0));
+
+        assertThat(hashJoiner.buildFinished(), is(true));
+        assertThat(hashJoiner.addProbeRows(page(1, "c")), is(true));
+        assertThat(hashJoiner.finish(), is(true));
+        hashJoiner.close();
+
+        assertThat(printedTable(downstream.rows.toArray(new Object[downstream.rows.size()][])), is(
+                "1| a| 1| x\n" +
+                "2| b| 2| y\n" +
+                "1| c| 1| x\n"));
+    }
+
+    @Test
+    public void testBuildLeftKeepsColumnOrder() throws Exception {
+        CollectingProjector downstream = new CollectingProjector();
+        HashJoiner hashJoiner = hashJoiner(true, downstream);
+
+        hashJoiner.addBuildRows(page(1, "a"));
+        hashJoiner.buildFinished();
+        hashJoiner.addProbeRows(page(1, "x"));
+        hashJoiner.finish();
+        hashJoiner.close();
+
+        assertThat(printedTable(downstream.rows.toArray(new Object[downstream.rows.size()][])), is("1| a| 1| x\n"));
+    }
+}
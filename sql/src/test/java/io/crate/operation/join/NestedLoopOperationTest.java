@@ -30,6 +30,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.breaker.RamAccountingContext;
+import io.crate.core.bigarray.MultiNativeArrayBigArray;
 import io.crate.executor.*;
 import io.crate.executor.transport.TransportActionProvider;
 import io.crate.metadata.Functions;
@@ -51,9 +52,13 @@ import io.crate.testing.MockedClusterServiceModule;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
 import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.inject.ModulesBuilder;
 import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -99,14 +104,53 @@ public class NestedLoopOperationTest {
         }
     }
 
+    /**
+     * returns the rows page by page like a paged query
+     */
+    private class PageableTestTask extends JobTask implements PageableTask {
+
+        private final Object[][] rows;
+        private final List<ListenableFuture<TaskResult>> result = new ArrayList<>(1);
+
+        public PageableTestTask(Object[][] rows) {
+            super(UUID.randomUUID());
+            this.rows = rows;
+        }
+
+        @Override
+        public void start(PageInfo pageInfo) {
+            result.add(Futures.<TaskResult>immediateFuture(new FetchedRowsPageableTaskResult(
+                    new MultiNativeArrayBigArray<Object[]>(0, rows.length, rows), 0L, pageInfo)));
+        }
+
+        @Override
+        public void start() {
+            start(new PageInfo(0, rows.length));
+        }
+
+        @Override
+        public List<ListenableFuture<TaskResult>> result() {
+            return result;
+        }
+
+        @Override
+        public void upstreamResult(List result) {
+            // ignore
+        }
+    }
+
     private class TestDQLNode extends AbstractDQLPlanNode {
 
         private final Object[][] rows;
 
         private TestDQLNode(Object[][] rows) {
+            this(rows, DataTypes.UNDEFINED); // could be any type
+        }
+
+        private TestDQLNode(Object[][] rows, DataType type) {
             this.rows = rows;
             if (rows.length > 0) {
-                this.outputTypes(Collections.<DataType>nCopies(rows[0].length, DataTypes.UNDEFINED)); // could be any type
+                this.outputTypes(Collections.nCopies(rows[0].length, type));
             }
         }
 
@@ -168,7 +212,7 @@ public class NestedLoopOperationTest {
         ReferenceResolver referenceResolver = injector.getInstance(ReferenceResolver.class);
         ImplementationSymbolVisitor implementationSymbolVisitor = new ImplementationSymbolVisitor(referenceResolver, functions, RowGranularity.CLUSTER);
         TransportActionProvider transportActionProvider = mock(TransportActionProvider.class);
-        projectionVisitor = new ProjectionToProjectorVisitor(mock(ClusterService.class), ImmutableSettings.EMPTY, transportActionProvider, implementationSymbolVisitor);
+        projectionVisitor = new ProjectionToProjectorVisitor(mock(ClusterService.class), mock(ThreadPool.class), ImmutableSettings.EMPTY, transportActionProvider, implementationSymbolVisitor);
     }
 
     private void assertNestedLoop(Object[][] left, Object[][] right, int limit, int offset, int expectedRows) throws Exception {
@@ -192,7 +236,8 @@ public class NestedLoopOperationTest {
                 Arrays.asList(innerTask),
                 new TestExecutor(),
                 projectionVisitor,
-                mock(RamAccountingContext.class));
+                mock(RamAccountingContext.class),
+                BigArrays.NON_RECYCLING_INSTANCE);
         Object[][] result = nestedLoop.execute(Optional.<PageInfo>absent()).get().rows();
 
         int i = 0;
@@ -285,6 +330,46 @@ public class NestedLoopOperationTest {
     }
 
 
+    @Test
+    public void testPagedInnerRelationWithoutOuterColumns() throws Exception {
+        // only the inner relation has columns, its rows are gathered page by page in a RowPageStore
+        Object[][] outerRows = new Object[][]{new Object[0], new Object[0], new Object[0]};
+        Object[][] innerRows = new Object[25][];
+        for (int i = 0; i < innerRows.length; i++) {
+            innerRows[i] = new Object[]{i};
+        }
+        NestedLoopNode node = new NestedLoopNode(
+                new TestDQLNode(leftOuterNode ? outerRows : innerRows, DataTypes.INTEGER),
+                new TestDQLNode(leftOuterNode ? innerRows : outerRows, DataTypes.INTEGER),
+                leftOuterNode, 100, 0);
+        node.projections(ImmutableList.<Projection>of());
+        NestedLoopOperation nestedLoop = new NestedLoopOperation(
+                node,
+                Arrays.<Task>asList(new ImmediateTestTask(outerRows, outerRows.length, 0)),
+                Arrays.<Task>asList(new PageableTestTask(innerRows)),
+                new TestExecutor(),
+                projectionVisitor,
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA)),
+                BigArrays.NON_RECYCLING_INSTANCE);
+        // the inner relation is fetched in pages of 10 rows
+        PageableTaskResult result = (PageableTaskResult) nestedLoop.execute(
+                Optional.of(new PageInfo(0, 100))).get();
+
+        // every outer row is joined with every inner row, each joined row is a distinct array
+        Set<Object[]> distinctRows = Collections.newSetFromMap(new IdentityHashMap<Object[], Boolean>());
+        int[] counts = new int[innerRows.length];
+        for (Object[] row : result.page()) {
+            assertThat(row.length, is(1));
+            counts[(Integer) row[0]]++;
+            distinctRows.add(row);
+        }
+        assertThat(distinctRows.size(), is(outerRows.length * innerRows.length));
+        for (int count : counts) {
+            assertThat(count, is(outerRows.length));
+        }
+        result.close();
+    }
+
     @Test
     public void testNoRows() throws Exception {
         assertNestedLoop(new Object[0][], new Object[0][], 100, 0, 0);
@@ -46,6 +46,7 @@ import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.inject.ModulesBuilder;
 import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Answers;
@@ -108,6 +109,7 @@ public class MergeOperationTest {
 
         MergeOperation mergeOperation = new MergeOperation(
                 mock(ClusterService.class),
+                mock(ThreadPool.class),
                 ImmutableSettings.EMPTY,
                 mock(TransportActionProvider.class, Answers.RETURNS_DEEP_STUBS.get()),
                 symbolVisitor,
@@ -142,6 +144,7 @@ public class MergeOperationTest {
         ));
         MergeOperation mergeOperation = new MergeOperation(
                 mock(ClusterService.class),
+                mock(ThreadPool.class),
                 ImmutableSettings.EMPTY,
                 mock(TransportActionProvider.class, Answers.RETURNS_DEEP_STUBS.get()),
                 symbolVisitor,
@@ -34,6 +34,7 @@ import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.action.bulk.TransportShardBulkActionDelegateImpl;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Test;
 
 import java.util.Arrays;
@@ -57,6 +58,7 @@ public class IndexWriterProjectorTest extends SQLTransportIntegrationTest {
 
         final IndexWriterProjector indexWriter = new IndexWriterProjector(
                 cluster().getInstance(ClusterService.class),
+                cluster().getInstance(ThreadPool.class),
                 ImmutableSettings.EMPTY,
                 cluster().getInstance(TransportShardBulkActionDelegateImpl.class),
                 cluster().getInstance(TransportCreateIndexAction.class),
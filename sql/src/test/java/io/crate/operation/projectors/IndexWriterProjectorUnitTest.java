@@ -32,6 +32,8 @@ import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.action.bulk.TransportShardBulkActionDelegateImpl;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -55,11 +57,18 @@ public class IndexWriterProjectorUnitTest {
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
+    private final ThreadPool threadPool = new ThreadPool(getClass().getSimpleName());
+
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        threadPool.shutdownNow();
+    }
+
     @Test
     public void testExceptionBubbling() throws Throwable {
         expectedException.expect(IllegalStateException.class);
@@ -72,6 +81,7 @@ public class IndexWriterProjectorUnitTest {
 
         final IndexWriterProjector indexWriter = new IndexWriterProjector(
                 clusterService,
+                threadPool,
                 ImmutableSettings.EMPTY,
                 mock(TransportShardBulkActionDelegateImpl.class),
                 mock(TransportCreateIndexAction.class),
@@ -110,6 +120,7 @@ public class IndexWriterProjectorUnitTest {
         CollectExpression[] collectExpressions = new CollectExpression[]{ idInput, sourceInput, routingInput };
         final IndexWriterProjector indexWriter = new IndexWriterProjector(
                 clusterService,
+                threadPool,
                 ImmutableSettings.EMPTY,
                 mock(TransportShardBulkActionDelegateImpl.class),
                 mock(TransportCreateIndexAction.class),
@@ -0,0 +1,161 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.crate.executor.transport.ShardBulkUpdateRequest;
+import io.crate.executor.transport.ShardBulkUpdateResponse;
+import io.crate.executor.transport.TransportShardBulkUpdateAction;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Symbol;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class UpdateProjectorTest {
+
+    private static final ShardId SHARD_ID = new ShardId("characters", 0);
+    private static final Map<String, Symbol> ASSIGNMENTS = ImmutableMap.<String, Symbol>of(
+            "name", Literal.newLiteral("Arthur"));
+
+    private final List<ShardBulkUpdateRequest> requests = new ArrayList<>();
+    private final List<ActionListener<ShardBulkUpdateResponse>> listeners = new ArrayList<>();
+    private TransportShardBulkUpdateAction bulkUpdateAction;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void prepare() {
+        requests.clear();
+        listeners.clear();
+        bulkUpdateAction = mock(TransportShardBulkUpdateAction.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                requests.add((ShardBulkUpdateRequest) invocation.getArguments()[0]);
+                listeners.add((ActionListener<ShardBulkUpdateResponse>) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(bulkUpdateAction).executeLocal(any(ShardBulkUpdateRequest.class), any(ActionListener.class));
+    }
+
+    private UpdateProjector createProjector(int bulkSize, CollectingProjector collectingProjector) {
+        UpdateProjector projector = new UpdateProjector(
+                SHARD_ID,
+                bulkUpdateAction,
+                new InputCollectExpression<>(0),
+                ASSIGNMENTS,
+                null,
+                bulkSize);
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+        projector.startProjection();
+        return projector;
+    }
+
+    private static void setNextRows(UpdateProjector projector, int numRows) {
+        for (int i = 0; i < numRows; i++) {
+            projector.setNextRow(new BytesRef("default#" + i));
+        }
+    }
+
+    private static ShardBulkUpdateResponse response(long updated) {
+        return new ShardBulkUpdateResponse(updated, ImmutableList.<ShardBulkUpdateResponse.Failure>of());
+    }
+
+    @Test
+    public void testIdsAreSentInBatches() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        UpdateProjector projector = createProjector(2, collectingProjector);
+        setNextRows(projector, 5);
+
+        assertThat(requests.size(), is(2));
+        assertThat(requests.get(0).ids(), contains("0", "1"));
+        assertThat(requests.get(1).ids(), contains("2", "3"));
+        assertThat(requests.get(0).shardId(), is(0));
+        assertThat(requests.get(0).index(), is("characters"));
+        assertThat(requests.get(0).assignments(), is(ASSIGNMENTS));
+    }
+
+    @Test
+    public void testPendingIdsAreFlushedWhenUpstreamFinished() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        UpdateProjector projector = createProjector(2, collectingProjector);
+        setNextRows(projector, 5);
+        projector.upstreamFinished();
+
+        assertThat(requests.size(), is(3));
+        assertThat(requests.get(2).ids(), contains("4"));
+        assertThat(collectingProjector.result().isDone(), is(false));
+
+        listeners.get(0).onResponse(response(2L));
+        listeners.get(1).onResponse(response(2L));
+        listeners.get(2).onResponse(response(1L));
+
+        Object[][] rows = collectingProjector.result().get();
+        assertThat(rows.length, is(1));
+        assertThat((Long) rows[0][0], is(5L));
+    }
+
+    @Test
+    public void testNothingIsSentWithoutRows() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        UpdateProjector projector = createProjector(2, collectingProjector);
+        projector.upstreamFinished();
+
+        assertThat(requests.size(), is(0));
+        Object[][] rows = collectingProjector.result().get();
+        assertThat((Long) rows[0][0], is(0L));
+    }
+
+    @Test
+    public void testFailedBatchCountsNoUpdatedDocuments() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        UpdateProjector projector = createProjector(2, collectingProjector);
+        setNextRows(projector, 4);
+        projector.upstreamFinished();
+
+        assertThat(requests.size(), is(2));
+        listeners.get(0).onFailure(new IllegalStateException("shard closed"));
+        listeners.get(1).onResponse(new ShardBulkUpdateResponse(1L, ImmutableList.of(
+                new ShardBulkUpdateResponse.Failure(1, "3", "version conflict", true))));
+
+        Object[][] rows = collectingProjector.result().get();
+        assertThat((Long) rows[0][0], is(1L));
+    }
+}
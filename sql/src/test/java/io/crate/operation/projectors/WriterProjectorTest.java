@@ -22,10 +22,16 @@
 package io.crate.operation.projectors;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.metadata.ColumnIdent;
+import io.crate.operation.Input;
 import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.projectors.writer.ColumnarReader;
 import io.crate.testing.TestingHelpers;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
@@ -35,8 +41,11 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
@@ -60,6 +69,7 @@ public class WriterProjectorTest {
         WriterProjector projector = new WriterProjector(
                 uri,
                 settings,
+                MoreExecutors.sameThreadExecutor(),
                 null,
                 ImmutableSet.<CollectExpression<?>>of(),
                 new HashMap<ColumnIdent, Object>()
@@ -87,6 +97,43 @@ public class WriterProjectorTest {
                 "input line 04\n", TestingHelpers.readFile(uri));
     }
 
+    @Test
+    public void testWriteColumnarToFile() throws Exception {
+        String uri = folder.newFile("out.ccol").getAbsolutePath();
+        Settings settings = ImmutableSettings.builder().put("format", "columnar").build();
+        InputCollectExpression<Object> id = new InputCollectExpression<>(0);
+        InputCollectExpression<Object> name = new InputCollectExpression<>(1);
+        WriterProjector projector = new WriterProjector(
+                uri,
+                settings,
+                MoreExecutors.sameThreadExecutor(),
+                Arrays.<Input<?>>asList(id, name),
+                ImmutableSet.<CollectExpression<?>>of(id, name),
+                new HashMap<ColumnIdent, Object>(),
+                Arrays.asList("id", "name"),
+                Arrays.<DataType>asList(DataTypes.INTEGER, DataTypes.STRING)
+        );
+        CollectingProjector downstream = new CollectingProjector();
+        projector.downstream(downstream);
+
+        projector.startProjection();
+        projector.registerUpstream(null);
+        for (int i = 0; i < 5; i++) {
+            projector.setNextRow(i, new BytesRef("name" + i));
+        }
+        projector.upstreamFinished();
+
+        Object[][] rows = downstream.result().get();
+        assertEquals(5L, rows[0][0]);
+
+        ColumnarReader reader = new ColumnarReader(Files.readAllBytes(Paths.get(uri)));
+        assertThat(reader.columnNames(), is(Arrays.asList("id", "name")));
+        List<Object[]> written = reader.readRowGroup(0);
+        assertThat(written.size(), is(5));
+        assertThat((Integer) written.get(3)[0], is(3));
+        assertThat((BytesRef) written.get(3)[1], is(new BytesRef("name3")));
+    }
+
     @Test
     public void testToNestedStringObjectMap() throws Exception {
 
@@ -109,6 +156,7 @@ public class WriterProjectorTest {
         WriterProjector projector = new WriterProjector(
                 uri,
                 settings,
+                MoreExecutors.sameThreadExecutor(),
                 null,
                 ImmutableSet.<CollectExpression<?>>of(),
                 new HashMap<ColumnIdent, Object>()
@@ -131,6 +179,7 @@ public class WriterProjectorTest {
         WriterProjector projector = new WriterProjector(
                 uri,
                 settings,
+                MoreExecutors.sameThreadExecutor(),
                 null,
                 ImmutableSet.<CollectExpression<?>>of(),
                 new HashMap<ColumnIdent, Object>()
@@ -0,0 +1,137 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import io.crate.Streamer;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads files written by {@link ColumnarWriter}, used by the tests to check the written files.
+ *
+ * The schema and the row group positions are read from the footer, a single column of a
+ * row group can be read without decoding the other columns.
+ */
+public class ColumnarReader {
+
+    private static final int TRAILER_LENGTH = 4 + ColumnarWriter.MAGIC.length;
+
+    private final byte[] data;
+    private final List<String> columnNames;
+    private final List<DataType> columnTypes;
+    private final long[] rowGroupOffsets;
+    private final int[] rowGroupRows;
+
+    public ColumnarReader(byte[] data) throws IOException {
+        this.data = data;
+        int headerLength = ColumnarWriter.MAGIC.length + 1;
+        if (data.length < headerLength + TRAILER_LENGTH
+                || !hasMagic(0) || !hasMagic(data.length - ColumnarWriter.MAGIC.length)) {
+            throw new IOException("Not a columnar file");
+        }
+        int version = input(ColumnarWriter.MAGIC.length).readVInt();
+        if (version != ColumnarWriter.VERSION) {
+            throw new IOException(String.format("Unsupported columnar file version %d", version));
+        }
+        int footerLength = input(data.length - TRAILER_LENGTH).readInt();
+        BytesStreamInput footer = input(data.length - TRAILER_LENGTH - footerLength);
+
+        int numColumns = footer.readVInt();
+        columnNames = new ArrayList<>(numColumns);
+        columnTypes = new ArrayList<>(numColumns);
+        for (int i = 0; i < numColumns; i++) {
+            columnNames.add(footer.readString());
+            columnTypes.add(DataTypes.fromStream(footer));
+        }
+        int numRowGroups = footer.readVInt();
+        rowGroupOffsets = new long[numRowGroups];
+        rowGroupRows = new int[numRowGroups];
+        for (int i = 0; i < numRowGroups; i++) {
+            rowGroupOffsets[i] = footer.readVLong();
+            rowGroupRows[i] = footer.readVInt();
+        }
+    }
+
+    private boolean hasMagic(int offset) {
+        return Arrays.equals(ColumnarWriter.MAGIC,
+                Arrays.copyOfRange(data, offset, offset + ColumnarWriter.MAGIC.length));
+    }
+
+    private BytesStreamInput input(long offset) {
+        return new BytesStreamInput(data, (int) offset, data.length - (int) offset, false);
+    }
+
+    public List<String> columnNames() {
+        return columnNames;
+    }
+
+    public List<DataType> columnTypes() {
+        return columnTypes;
+    }
+
+    public int numRowGroups() {
+        return rowGroupOffsets.length;
+    }
+
+    public int numRows(int rowGroup) {
+        return rowGroupRows[rowGroup];
+    }
+
+    /**
+     * decodes the values of a single column of the given row group
+     */
+    public Object[] readColumn(int rowGroup, int column) throws IOException {
+        BytesStreamInput in = input(rowGroupOffsets[rowGroup]);
+        int numRows = in.readVInt();
+        for (int i = 0; i < column; i++) {
+            in.skip(in.readVInt());
+        }
+        in.readVInt();
+        Streamer<?> streamer = columnTypes.get(column).streamer();
+        Object[] values = new Object[numRows];
+        for (int i = 0; i < numRows; i++) {
+            values[i] = streamer.readValueFrom(in);
+        }
+        return values;
+    }
+
+    public List<Object[]> readRowGroup(int rowGroup) throws IOException {
+        int numRows = rowGroupRows[rowGroup];
+        List<Object[]> rows = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; i++) {
+            rows.add(new Object[columnTypes.size()]);
+        }
+        for (int c = 0; c < columnTypes.size(); c++) {
+            Object[] values = readColumn(rowGroup, c);
+            for (int i = 0; i < numRows; i++) {
+                rows.get(i)[c] = values[i];
+            }
+        }
+        return rows;
+    }
+}
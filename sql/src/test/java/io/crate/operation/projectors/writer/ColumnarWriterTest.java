@@ -0,0 +1,135 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import com.google.common.collect.ImmutableMap;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ColumnarWriterTest {
+
+    private static final List<String> NAMES = Arrays.asList("id", "name", "details");
+    private static final List<DataType> TYPES = Arrays.<DataType>asList(
+            DataTypes.LONG, DataTypes.STRING, DataTypes.OBJECT);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(out, NAMES, TYPES);
+        writer.write(new Object[]{1L, new BytesRef("Arthur"), ImmutableMap.of("age", 42)});
+        writer.write(new Object[]{2L, null, null});
+        writer.finish();
+
+        ColumnarReader reader = new ColumnarReader(out.toByteArray());
+        assertThat(reader.columnNames(), is(NAMES));
+        assertThat(reader.columnTypes(), is(TYPES));
+        assertThat(reader.numRowGroups(), is(1));
+
+        List<Object[]> rows = reader.readRowGroup(0);
+        assertThat(rows.size(), is(2));
+        assertThat((Long) rows.get(0)[0], is(1L));
+        assertThat((BytesRef) rows.get(0)[1], is(new BytesRef("Arthur")));
+        assertThat((Integer) ((Map) rows.get(0)[2]).get("age"), is(42));
+        assertThat((Long) rows.get(1)[0], is(2L));
+        assertThat(rows.get(1)[1], nullValue());
+        assertThat(rows.get(1)[2], nullValue());
+    }
+
+    @Test
+    public void testValuesAreConvertedToColumnType() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(out, NAMES, TYPES);
+        writer.write(new Object[]{1, "Trillian", null});
+        writer.finish();
+
+        ColumnarReader reader = new ColumnarReader(out.toByteArray());
+        Object[] row = reader.readRowGroup(0).get(0);
+        assertThat((Long) row[0], is(1L));
+        assertThat((BytesRef) row[1], is(new BytesRef("Trillian")));
+    }
+
+    @Test
+    public void testRowsAreSplitIntoRowGroups() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(out, NAMES, TYPES, 10, ColumnarWriter.DEFAULT_MAX_ROW_GROUP_BYTES);
+        for (long i = 0; i < 25; i++) {
+            writer.write(new Object[]{i, new BytesRef("name" + i), null});
+        }
+        writer.finish();
+
+        ColumnarReader reader = new ColumnarReader(out.toByteArray());
+        assertThat(reader.numRowGroups(), is(3));
+        assertThat(reader.numRows(0), is(10));
+        assertThat(reader.numRows(2), is(5));
+
+        Object[] names = reader.readColumn(2, 1);
+        assertThat(names.length, is(5));
+        assertThat((BytesRef) names[0], is(new BytesRef("name20")));
+        assertThat((BytesRef) names[4], is(new BytesRef("name24")));
+    }
+
+    @Test
+    public void testRowGroupIsFlushedIfMaxBytesAreReached() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(out, NAMES, TYPES, 1000, 16);
+        for (long i = 0; i < 4; i++) {
+            writer.write(new Object[]{i, new BytesRef("a name longer than sixteen bytes"), null});
+        }
+        writer.finish();
+
+        ColumnarReader reader = new ColumnarReader(out.toByteArray());
+        assertThat(reader.numRowGroups(), is(4));
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ColumnarWriter(out, NAMES, TYPES).finish();
+
+        ColumnarReader reader = new ColumnarReader(out.toByteArray());
+        assertThat(reader.columnNames(), is(NAMES));
+        assertThat(reader.numRowGroups(), is(0));
+    }
+
+    @Test
+    public void testReadInvalidFile() throws Exception {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("Not a columnar file");
+        new ColumnarReader("{\"id\": 1}\n".getBytes());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import io.crate.external.S3ClientHelper;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class OutputS3Test {
+
+    private static AmazonS3 mockClient() {
+        AmazonS3 client = mock(AmazonS3.class);
+        InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId("upload");
+        when(client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult);
+        return client;
+    }
+
+    private static OutputS3 output(final AmazonS3 client, ExecutorService executor) throws Exception {
+        return new OutputS3(new URI("s3://bucket/key.json"), ImmutableSettings.EMPTY,
+                executor, new S3ClientHelper() {
+            @Override
+            protected AmazonS3 initClient(String accessKey, String secretKey) throws IOException {
+                return client;
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrentPartUploadsAreBounded() throws Exception {
+        final AmazonS3 client = mockClient();
+
+        final AtomicInteger inFlight = new AtomicInteger(0);
+        final AtomicInteger maxInFlight = new AtomicInteger(0);
+        when(client.uploadPart(any(UploadPartRequest.class))).thenAnswer(new Answer<UploadPartResult>() {
+            @Override
+            public UploadPartResult answer(InvocationOnMock invocation) throws Throwable {
+                int current = inFlight.incrementAndGet();
+                while (true) {
+                    int max = maxInFlight.get();
+                    if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                Thread.sleep(20);
+                inFlight.decrementAndGet();
+                UploadPartRequest request = (UploadPartRequest) invocation.getArguments()[0];
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag" + request.getPartNumber());
+                return result;
+            }
+        });
+
+        // the shared executor has more threads than a single output may use
+        ExecutorService executor = Executors.newFixedThreadPool(OutputS3.MAX_CONCURRENT_PARTS * 2);
+        try {
+            OutputS3 output = output(client, executor);
+            output.open();
+            OutputStream outputStream = output.getOutputStream();
+            byte[] chunk = new byte[1024 * 1024];
+            for (int i = 0; i < 5 * 12; i++) {
+                outputStream.write(chunk);
+            }
+            output.close();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(OutputS3.MAX_CONCURRENT_PARTS));
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeRequest =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(client).completeMultipartUpload(completeRequest.capture());
+        List<PartETag> partETags = completeRequest.getValue().getPartETags();
+        assertThat(partETags.size(), is(13));
+        for (int i = 0; i < partETags.size(); i++) {
+            assertThat(partETags.get(i).getPartNumber(), is(i + 1));
+        }
+    }
+
+    @Test
+    public void testFailedLastPartAbortsUpload() throws Exception {
+        AmazonS3 client = mockClient();
+        when(client.uploadPart(any(UploadPartRequest.class))).thenThrow(new RuntimeException("upload failed"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            OutputS3 output = output(client, executor);
+            output.open();
+            output.getOutputStream().write(new byte[1024]);
+            try {
+                output.close();
+                fail("close must fail if the last part can't be uploaded");
+            } catch (IOException e) {
+                assertThat(e.getCause().getMessage(), is("upload failed"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class ParallelGZIPOutputStreamTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBlocksAreReadAsOneStream() throws Exception {
+        byte[] data = new byte[10000];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(10));
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, executor, 128, 2);
+        out.write(data, 0, 5000);
+        for (int i = 5000; i < data.length; i++) {
+            out.write(data[i]);
+        }
+        out.close();
+
+        assertArrayEquals(data, decompress(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testEmptyStreamIsValidGzip() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGZIPOutputStream(compressed, executor, 128, 2).close();
+
+        assertThat(decompress(compressed.toByteArray()).length, is(0));
+    }
+
+    @Test
+    public void testBlocksAreCompressedInlineWithoutPermits() throws Exception {
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'a');
+        Executor failingExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new AssertionError("no block must be handed to the executor");
+            }
+        };
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(
+                compressed, failingExecutor, new Semaphore(0), 128, 2);
+        out.write(data, 0, data.length);
+        out.close();
+
+        assertArrayEquals(data, decompress(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testPermitsAreReleasedAfterCompression() throws Exception {
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'a');
+        Semaphore permits = new Semaphore(2);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, executor, permits, 128, 4);
+        out.write(data, 0, data.length);
+        out.close();
+
+        assertArrayEquals(data, decompress(compressed.toByteArray()));
+        assertThat(permits.availablePermits(), is(2));
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
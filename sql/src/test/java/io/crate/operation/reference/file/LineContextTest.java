@@ -24,6 +24,8 @@ package io.crate.operation.reference.file;
 import io.crate.metadata.ColumnIdent;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -39,4 +41,35 @@ public class LineContextTest {
         assertNull(context.get(new ColumnIdent("details", "invalid")));
         assertEquals(43, context.get(new ColumnIdent("details", "age")));
     }
+
+    @Test
+    public void testValues() throws Exception {
+        LineContext context = new LineContext();
+        context.values(new String[]{"name", "age"}, new Object[]{"foo", 43});
+
+        assertEquals("foo", context.get(new ColumnIdent("name")));
+        assertNull(context.get(new ColumnIdent("name", "invalid")));
+        assertNull(context.get(new ColumnIdent("invalid")));
+        assertEquals("{\"name\":\"foo\",\"age\":43}", context.sourceAsBytesRef().utf8ToString());
+        assertEquals(43, context.sourceAsMap().get("age"));
+    }
+
+    @Test
+    public void testGetPrefetchedColumns() throws Exception {
+        LineContext context = new LineContext();
+        context.prefetchColumn(new ColumnIdent("id"));
+        context.prefetchColumn(new ColumnIdent("details", "age"));
+        context.prefetchColumn(new ColumnIdent("missing"));
+
+        context.rawSource("{\"tags\": [1, {\"a\": 2}], \"details\": {\"x\": {\"y\": 1}, \"age\": 43}, \"id\": \"foo\"}".getBytes());
+        assertEquals("foo", context.get(new ColumnIdent("id")));
+        assertEquals(43, context.get(new ColumnIdent("details", "age")));
+        assertNull(context.get(new ColumnIdent("missing")));
+        // not prefetched, falls back to parsing the whole source
+        assertEquals(1, context.get(new ColumnIdent("details", Arrays.asList("x", "y"))));
+
+        context.rawSource("{\"id\": 2}".getBytes());
+        assertEquals(2, context.get(new ColumnIdent("id")));
+        assertNull(context.get(new ColumnIdent("details", "age")));
+    }
 }
@@ -507,6 +507,18 @@ public class TestSysNodesExpressions {
         assertEquals(1000L, (long) v.get("max_open_file_descriptors"));
     }
 
+    @Test
+    public void testTemplateCache() throws Exception {
+        ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, "template_cache");
+        SysObjectReference templateCacheRef = (SysObjectReference)resolver.getImplementation(ident);
+
+        Map<String, Object> v = templateCacheRef.value();
+        assertEquals(0L, (long) v.get("size"));
+        assertEquals(0L, (long) v.get("hits"));
+        assertEquals(0L, (long) v.get("misses"));
+        assertEquals(0L, (long) v.get("evictions"));
+    }
+
     @Test
     public void testNestedBytesRefExpressionsString() throws Exception {
         ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, "version");
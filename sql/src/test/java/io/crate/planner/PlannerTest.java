@@ -9,6 +9,7 @@ import io.crate.exceptions.UnsupportedFeatureException;
 import io.crate.exceptions.VersionInvalidException;
 import io.crate.metadata.*;
 import io.crate.metadata.doc.DocSysColumns;
+import io.crate.metadata.settings.CrateSettings;
 import io.crate.metadata.sys.SysClusterTableInfo;
 import io.crate.metadata.sys.SysNodesTableInfo;
 import io.crate.metadata.sys.SysSchemaInfo;
@@ -18,6 +19,8 @@ import io.crate.metadata.table.SchemaInfo;
 import io.crate.metadata.table.TableInfo;
 import io.crate.metadata.table.TestingTableInfo;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.collect.files.CsvOptions;
+import io.crate.operation.collect.files.FileReadingCollector;
 import io.crate.operation.operator.OperatorModule;
 import io.crate.operation.predicate.PredicateModule;
 import io.crate.operation.scalar.ScalarFunctionModule;
@@ -26,6 +29,7 @@ import io.crate.planner.node.ddl.DropTableNode;
 import io.crate.planner.node.ddl.ESClusterUpdateSettingsNode;
 import io.crate.planner.node.dml.*;
 import io.crate.planner.node.dql.*;
+import io.crate.planner.node.dql.join.*;
 import io.crate.planner.projection.*;
 import io.crate.planner.symbol.*;
 import io.crate.sql.parser.SqlParser;
@@ -42,6 +46,7 @@ import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -69,6 +74,8 @@ public class PlannerTest {
 
     private Analyzer analyzer;
     private Planner planner;
+    private ClusterService clusterService;
+    private TableStatsService tableStatsService = mock(TableStatsService.class);
     Routing shardRouting = new Routing(ImmutableMap.<String, Map<String, Set<Integer>>>builder()
             .put("nodeOne", ImmutableMap.<String, Set<Integer>>of("t1", ImmutableSet.of(1, 2)))
             .put("nodeTow", ImmutableMap.<String, Set<Integer>>of("t1", ImmutableSet.of(3, 4)))
@@ -95,6 +102,7 @@ public class PlannerTest {
             when(metaData.concreteAllOpenIndices()).thenReturn(new String[0]);
             when(metaData.getTemplates()).thenReturn(ImmutableOpenMap.<String, IndexTemplateMetaData>of());
             when(metaData.templates()).thenReturn(ImmutableOpenMap.<String, IndexTemplateMetaData>of());
+            when(metaData.settings()).thenReturn(ImmutableSettings.EMPTY);
             when(clusterState.metaData()).thenReturn(metaData);
             DiscoveryNodes nodes = mock(DiscoveryNodes.class);
             DiscoveryNode node = mock(DiscoveryNode.class);
@@ -107,6 +115,7 @@ public class PlannerTest {
             bind(FulltextAnalyzerResolver.class).toInstance(fulltextAnalyzerResolver);
             bind(ClusterService.class).toInstance(clusterService);
             bind(TransportPutIndexTemplateAction.class).toInstance(mock(TransportPutIndexTemplateAction.class));
+            bind(TableStatsService.class).toInstance(tableStatsService);
             super.configure();
         }
 
@@ -228,6 +237,7 @@ public class PlannerTest {
                 .createInjector();
         analyzer = injector.getInstance(Analyzer.class);
         planner = injector.getInstance(Planner.class);
+        clusterService = injector.getInstance(ClusterService.class);
     }
 
     private Plan plan(String statement) {
@@ -557,6 +567,18 @@ public class PlannerTest {
         assertEquals(DataTypes.LONG, indexNode.outputTypes().get(0));
     }
 
+    @Test
+    public void testESIndexPlanOnDuplicateKeyUpdate() throws Exception {
+        IterablePlan plan = (IterablePlan) plan(
+                "insert into users (id, name) values (42, 'Deep Thought'), (99, 'Marvin') on duplicate key update name = 'Trillian'");
+        ESIndexNode indexNode = (ESIndexNode) plan.iterator().next();
+
+        assertThat(indexNode.sourceMaps().size(), is(2));
+        assertThat(indexNode.onDuplicateKeyAssignments().size(), is(2));
+        assertThat(indexNode.onDuplicateKeyAssignments().get(0).keySet(), contains("name"));
+        assertThat(indexNode.ids(), contains("42", "99"));
+    }
+
     @Test
     public void testESIndexPlanMultipleValues() throws Exception {
         IterablePlan plan = (IterablePlan) plan("insert into users (id, name) values (42, 'Deep Thought'), (99, 'Marvin')");
@@ -842,6 +864,25 @@ public class PlannerTest {
         assertNull(collectNode.sharedStorage());
     }
 
+    @Test
+    public void testCopyFromCsvPlan() throws Exception {
+        IterablePlan plan = (IterablePlan) plan("copy users from '/path/to/file.csv' with (format='csv', delimiter=';')");
+        FileUriCollectNode collectNode = (FileUriCollectNode) plan.iterator().next();
+        assertThat(collectNode.fileFormat(), is(FileReadingCollector.FileFormat.CSV));
+        CsvOptions csvOptions = collectNode.csvOptions();
+        assertNotNull(csvOptions);
+        assertThat(csvOptions.delimiter(), is(';'));
+        assertThat(csvOptions.quote(), is('"'));
+        assertThat(csvOptions.header(), is(true));
+        assertThat(csvOptions.columnNames().get(0), is("id"));
+        assertThat(csvOptions.columnTypes().get(0), is((DataType) DataTypes.LONG));
+
+        plan = (IterablePlan) plan("copy users from '/path/to/file.json'");
+        collectNode = (FileUriCollectNode) plan.iterator().next();
+        assertThat(collectNode.fileFormat(), is(FileReadingCollector.FileFormat.JSON));
+        assertNull(collectNode.csvOptions());
+    }
+
     @Test
     public void testCopyToWithColumnsReferenceRewrite() throws Exception {
         IterablePlan plan = (IterablePlan) plan("copy users (name) to '/file.ext'");
@@ -852,6 +893,25 @@ public class PlannerTest {
         assertThat(nameRef.info().ident().columnIdent().path().get(0), is("name"));
     }
 
+    @Test
+    public void testCopyToColumnarExportsAllColumns() throws Exception {
+        IterablePlan plan = (IterablePlan) plan("copy users to directory '/tmp' with (format='columnar')");
+        CollectNode node = (CollectNode) plan.iterator().next();
+        WriterProjection projection = (WriterProjection) node.projections().get(0);
+
+        assertThat(projection.outputNames(), contains("name", "id", "date", "text", "no_index"));
+        assertThat(projection.inputs().size(), is(5));
+        assertThat(projection.inputs().get(1).valueType(), is((DataType) DataTypes.LONG));
+    }
+
+    @Test
+    public void testCopyToJsonHasNoOutputNames() throws Exception {
+        IterablePlan plan = (IterablePlan) plan("copy users (name) to '/file.ext'");
+        CollectNode node = (CollectNode) plan.iterator().next();
+        WriterProjection projection = (WriterProjection) node.projections().get(0);
+        assertNull(projection.outputNames());
+    }
+
     @Test
     public void testCopyToWithNonExistentPartitionClause() throws Exception {
         IterablePlan plan = (IterablePlan) plan("copy parted partition (date=0) to '/foo.txt' ");
@@ -859,6 +919,36 @@ public class PlannerTest {
         assertFalse(collectNode.routing().hasLocations());
     }
 
+    @Test
+    public void testCopyFromPlanWithPrefetch() throws Exception {
+        IterablePlan plan = (IterablePlan) plan("copy users from 's3://bucket/*.json' with (prefetch=8)");
+        FileUriCollectNode collectNode = (FileUriCollectNode) plan.iterator().next();
+        assertThat(collectNode.prefetch(), is(8));
+
+        plan = (IterablePlan) plan("copy users from 's3://bucket/*.json'");
+        collectNode = (FileUriCollectNode) plan.iterator().next();
+        assertNull(collectNode.prefetch());
+    }
+
+    @Test
+    public void testCopyFromPlanWithResumeAndErrorFile() throws Exception {
+        IterablePlan plan = (IterablePlan) plan(
+                "copy users from '/path/to/*.json' with (resume=true, error_file='/tmp/users.errors')");
+        FileUriCollectNode collectNode = (FileUriCollectNode) plan.iterator().next();
+        assertTrue(collectNode.resume());
+        assertThat(collectNode.errorFile(), is("/tmp/users.errors"));
+
+        plan = (IterablePlan) plan("copy users from '/path/to/*.json'");
+        collectNode = (FileUriCollectNode) plan.iterator().next();
+        assertFalse(collectNode.resume());
+        assertNull(collectNode.errorFile());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testCopyFromPlanWithNegativePrefetch() throws Exception {
+        plan("copy users from 's3://bucket/*.json' with (prefetch=-1)");
+    }
+
     @Test (expected = IllegalArgumentException.class)
     public void testCopyFromPlanWithInvalidParameters() throws Exception {
         plan("copy users from '/path/to/file.ext' with (bulk_size=-28)");
@@ -1497,4 +1587,192 @@ public class PlannerTest {
         assertThat(whereClause.partitions().size(), is(1));
         assertThat(whereClause.noMatch(), is(false));
     }
+
+    @Test
+    public void testHashJoin() throws Exception {
+        HashJoin plan = (HashJoin) plan("select users.id, characters.id from users join characters " +
+                "on users.name = characters.name where users.id > 1 order by characters.id limit 5");
+        HashJoinNode hashJoinNode = plan.hashJoinNode();
+
+        assertThat(hashJoinNode.left().size(), is(2));
+        assertThat(hashJoinNode.left().get(1), instanceOf(MergeNode.class));
+        CollectNode leftCollectNode = (CollectNode) hashJoinNode.left().get(0);
+        assertThat(leftCollectNode.whereClause().hasQuery(), is(true));
+        assertThat(leftCollectNode.toCollect().size(), is(2));
+
+        CollectNode rightCollectNode = (CollectNode) hashJoinNode.right().get(0);
+        assertThat(rightCollectNode.whereClause().hasQuery(), is(false));
+        assertThat(rightCollectNode.toCollect().size(), is(2));
+
+        // join keys are collected first: [name, id] of users + [name, id] of characters
+        assertThat(hashJoinNode.leftJoinKeys(), is(new int[]{0}));
+        assertThat(hashJoinNode.rightJoinKeys(), is(new int[]{0}));
+        assertThat(hashJoinNode.leftTypes(), contains((DataType) DataTypes.STRING, DataTypes.LONG));
+        assertThat(hashJoinNode.rightTypes(), contains((DataType) DataTypes.STRING, DataTypes.STRING));
+
+        assertThat(hashJoinNode.projections().size(), is(1));
+        TopNProjection topNProjection = (TopNProjection) hashJoinNode.projections().get(0);
+        assertThat(topNProjection.limit(), is(5));
+        assertThat(topNProjection.outputs(), contains(
+                (Symbol) new InputColumn(1, DataTypes.LONG), new InputColumn(3, DataTypes.STRING)));
+        assertThat(topNProjection.orderBy(), contains((Symbol) new InputColumn(3, DataTypes.STRING)));
+        assertThat(hashJoinNode.outputTypes(), contains((DataType) DataTypes.LONG, DataTypes.STRING));
+    }
+
+    @Test
+    public void testHashJoinConditionOnBothTablesIsFiltered() throws Exception {
+        HashJoin plan = (HashJoin) plan("select users.name from users join characters " +
+                "on users.name = characters.name where users.id = 1 or characters.id = 'a'");
+        HashJoinNode hashJoinNode = plan.hashJoinNode();
+
+        assertThat(((CollectNode) hashJoinNode.left().get(0)).whereClause().hasQuery(), is(false));
+        assertThat(((CollectNode) hashJoinNode.right().get(0)).whereClause().hasQuery(), is(false));
+        assertThat(hashJoinNode.projections().size(), is(2));
+        assertThat(hashJoinNode.projections().get(0), instanceOf(FilterProjection.class));
+        assertThat(hashJoinNode.projections().get(1), instanceOf(TopNProjection.class));
+    }
+
+    @Test
+    public void testHashJoinWithoutEqualityCondition() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("JOIN condition must contain an equality comparison between columns of both tables");
+        plan("select users.name from users join characters on users.name > characters.name");
+    }
+
+    @Test
+    public void testHashJoinWithAggregation() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("GROUP BY, HAVING and aggregate functions are not supported on joined tables");
+        plan("select count(*) from users join characters on users.name = characters.name");
+    }
+
+    private void numDocs(String tableName, long numDocs) {
+        when(tableStatsService.numDocs(new TableIdent(ReferenceInfos.DEFAULT_SCHEMA_NAME, tableName)))
+                .thenReturn(numDocs);
+    }
+
+    @Test
+    public void testHashJoinOfSmallTablesIsExecutedOnHandler() throws Exception {
+        numDocs("users", 100L);
+        numDocs("characters", 10_000L);
+        Plan plan = plan("select users.name from users join characters on users.name = characters.name");
+        assertThat(plan, instanceOf(HashJoin.class));
+    }
+
+    @Test
+    public void testHashJoinWithUnknownNumDocsIsShuffled() throws Exception {
+        numDocs("users", -1L);
+        numDocs("characters", 1_000_000L);
+        DistributedHashJoin plan = (DistributedHashJoin) plan(
+                "select users.name from users join characters on users.name = characters.name");
+        assertThat(plan.strategy(), is(JoinStrategy.SHUFFLE));
+        // the hash table is built on the known table
+        assertThat(plan.joinMergeNode().buildLeft(), is(false));
+    }
+
+    @Test
+    public void testHashJoinWithUnknownNumDocsBroadcastsSmallTable() throws Exception {
+        numDocs("users", -1L);
+        numDocs("characters", 100L);
+        DistributedHashJoin plan = (DistributedHashJoin) plan(
+                "select users.name from users join characters on users.name = characters.name");
+        assertThat(plan.strategy(), is(JoinStrategy.BROADCAST));
+        assertThat(plan.rightCollectNode().distribution(), is(CollectNode.Distribution.BROADCAST));
+    }
+
+    @Test
+    public void testBroadcastHashJoin() throws Exception {
+        numDocs("users", 1_000_000L);
+        numDocs("characters", 100L);
+        DistributedHashJoin plan = (DistributedHashJoin) plan("select users.id, characters.id from users " +
+                "join characters on users.name = characters.name order by characters.id limit 5 offset 2");
+        assertThat(plan.strategy(), is(JoinStrategy.BROADCAST));
+
+        assertThat(plan.leftCollectNode().distribution(), is(CollectNode.Distribution.SAME_NODE));
+        assertThat(plan.rightCollectNode().distribution(), is(CollectNode.Distribution.BROADCAST));
+        assertThat(plan.leftCollectNode().downStreamNodes(), contains("nodeOne", "nodeTow"));
+        assertThat(plan.rightCollectNode().downStreamNodes(), contains("nodeOne", "nodeTow"));
+
+        HashJoinMergeNode joinMergeNode = plan.joinMergeNode();
+        assertThat(joinMergeNode.executionNodes(), containsInAnyOrder("nodeOne", "nodeTow"));
+        assertThat(joinMergeNode.numUpstreams(), is(2));
+        assertThat(joinMergeNode.numRightUpstreams(), is(2));
+        assertThat(joinMergeNode.leftJoinKeys(), is(new int[]{0}));
+        assertThat(joinMergeNode.rightJoinKeys(), is(new int[]{0}));
+        assertThat(joinMergeNode.inputTypes(), contains((DataType) DataTypes.STRING, DataTypes.LONG));
+        assertThat(joinMergeNode.rightInputTypes(), contains((DataType) DataTypes.STRING, DataTypes.STRING));
+        // the hash table is built on the broadcasted side
+        assertThat(joinMergeNode.buildLeft(), is(false));
+
+        TopNProjection joinTopN = (TopNProjection) joinMergeNode.projections().get(0);
+        assertThat(joinTopN.limit(), is(7));
+        assertThat(joinTopN.offset(), is(0));
+        assertThat(joinMergeNode.outputTypes(), contains((DataType) DataTypes.LONG, DataTypes.STRING));
+
+        TopNProjection handlerTopN = (TopNProjection) plan.localMergeNode().projections().get(0);
+        assertThat(handlerTopN.limit(), is(5));
+        assertThat(handlerTopN.offset(), is(2));
+        assertThat(handlerTopN.orderBy(), contains((Symbol) new InputColumn(1, DataTypes.STRING)));
+        assertThat(plan.localMergeNode().numUpstreams(), is(2));
+    }
+
+    @Test
+    public void testShuffleHashJoin() throws Exception {
+        numDocs("users", 1_000_000L);
+        numDocs("characters", 2_000_000L);
+        DistributedHashJoin plan = (DistributedHashJoin) plan("select users.name from users " +
+                "join characters on users.name = characters.name order by characters.id");
+        assertThat(plan.strategy(), is(JoinStrategy.SHUFFLE));
+        assertThat(plan.leftCollectNode().distribution(), is(CollectNode.Distribution.MODULO));
+        assertThat(plan.rightCollectNode().distribution(), is(CollectNode.Distribution.MODULO));
+        assertThat(plan.leftCollectNode().downStreamNodes(), contains("nodeOne", "nodeTow"));
+        assertThat(plan.rightCollectNode().downStreamNodes(), contains("nodeOne", "nodeTow"));
+        assertThat(plan.joinMergeNode().buildLeft(), is(true));
+
+        // the order by symbol is passed to the handler in addition to the selected column
+        assertThat(plan.joinMergeNode().outputTypes(), contains((DataType) DataTypes.STRING, DataTypes.STRING));
+        TopNProjection handlerTopN = (TopNProjection) plan.localMergeNode().projections().get(0);
+        assertThat(handlerTopN.outputs(), contains((Symbol) new InputColumn(0, DataTypes.STRING)));
+        assertThat(handlerTopN.orderBy(), contains((Symbol) new InputColumn(1, DataTypes.STRING)));
+    }
+
+    @Test
+    public void testInSubqueryIsPlannedAsSemiJoin() throws Exception {
+        HashJoin plan = (HashJoin) plan("select id from users " +
+                "where name in (select name from characters where id = 'a')");
+        HashJoinNode hashJoinNode = plan.hashJoinNode();
+        assertThat(hashJoinNode.semiJoin(), is(true));
+        assertThat(((CollectNode) hashJoinNode.right().get(0)).whereClause().hasQuery(), is(true));
+        assertThat(hashJoinNode.outputTypes(), contains((DataType) DataTypes.LONG));
+    }
+
+    @Test
+    public void testLeftSideOfSemiJoinIsNotBroadcasted() throws Exception {
+        numDocs("users", 100L);
+        numDocs("characters", 1_000_000L);
+        DistributedHashJoin plan = (DistributedHashJoin) plan(
+                "select id from users where name in (select name from characters)");
+        assertThat(plan.strategy(), is(JoinStrategy.SHUFFLE));
+        assertThat(plan.joinMergeNode().semiJoin(), is(true));
+    }
+
+    @Test
+    public void testRightSideOfSemiJoinIsBroadcasted() throws Exception {
+        numDocs("users", 1_000_000L);
+        numDocs("characters", 100L);
+        DistributedHashJoin plan = (DistributedHashJoin) plan(
+                "select id from users where name in (select name from characters)");
+        assertThat(plan.strategy(), is(JoinStrategy.BROADCAST));
+        assertThat(plan.leftCollectNode().distribution(), is(CollectNode.Distribution.SAME_NODE));
+        assertThat(plan.rightCollectNode().distribution(), is(CollectNode.Distribution.BROADCAST));
+    }
+
+    @Test
+    public void testHashJoinStrategyFromSetting() throws Exception {
+        when(clusterService.state().metaData().settings()).thenReturn(ImmutableSettings.builder()
+                .put(CrateSettings.CLUSTER_JOIN_STRATEGY.settingName(), "shuffle").build());
+        DistributedHashJoin plan = (DistributedHashJoin) plan(
+                "select users.name from users join characters on users.name = characters.name");
+        assertThat(plan.strategy(), is(JoinStrategy.SHUFFLE));
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.rest.action;
+
+import com.google.common.collect.ImmutableMap;
+import io.crate.action.sql.SQLResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SQLResponsePageWriterTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private SQLResponse response() {
+        SQLResponse response = new SQLResponse();
+        response.cols(new String[]{"name", "details"});
+        response.rows(new Object[][]{
+                new Object[]{"Arthur", ImmutableMap.of("age", 42)},
+                new Object[]{"Ford, \"Prefect\"", null},
+                new Object[]{"", new Object[]{1, 2}},
+        });
+        response.rowCount(3L);
+        return response;
+    }
+
+    private String writeAll(SQLResponsePageWriter writer) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        int pages = 0;
+        BytesReference page;
+        while ((page = writer.nextPage()) != null) {
+            page.writeTo(out);
+            pages++;
+        }
+        // one page per two rows, the last one also ends the response
+        assertThat(pages, is(2));
+        return out.bytes().toUtf8();
+    }
+
+    @Test
+    public void testJsonPagesAreTheRegularResponse() throws Exception {
+        SQLResponse response = response();
+        String expected = response.toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).string();
+        SQLResponsePageWriter writer = SQLResponsePageWriter.create(response, "json", false, 2);
+        assertThat(writeAll(writer), is(expected));
+        assertThat(writer.nextPage(), nullValue());
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        SQLResponsePageWriter writer = SQLResponsePageWriter.create(response(), "CSV", false, 2);
+        assertThat(writer.contentType(), is("text/csv; charset=UTF-8"));
+        assertThat(writeAll(writer), is(
+                "name,details\n" +
+                "Arthur,\"{\"\"age\"\":42}\"\n" +
+                "\"Ford, \"\"Prefect\"\"\",\n" +
+                "\"\",\"[1,2]\"\n"));
+    }
+
+    @Test
+    public void testEmptyResponse() throws Exception {
+        SQLResponse response = new SQLResponse();
+        response.cols(new String[]{"name"});
+        response.rows(new Object[0][]);
+        SQLResponsePageWriter writer = SQLResponsePageWriter.create(response, "csv", false, 2);
+        assertThat(writer.nextPage().toUtf8(), is("name\n"));
+        assertThat(writer.nextPage(), nullValue());
+    }
+
+    private SQLResponse page(String cursor, Object[]... rows) {
+        SQLResponse response = new SQLResponse();
+        response.cols(new String[]{"name"});
+        response.rows(rows);
+        response.rowCount(rows.length);
+        response.cursor(cursor);
+        return response;
+    }
+
+    @Test
+    public void testRowsFetchedFromTheCursorAreWrittenAsOneResponse() throws Exception {
+        SQLResponse expected = page(null, new Object[]{"Arthur"}, new Object[]{"Ford"}, new Object[]{"Trillian"});
+        SQLResponsePageWriter writer = SQLResponsePageWriter.create(
+                page("c1", new Object[]{"Arthur"}), "json", false, 2);
+        writer.followCursor();
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        writer.nextPage().writeTo(out);
+        assertThat(writer.needsRows(), is(true));
+        assertThat(writer.cursor(), is("c1"));
+
+        writer.addRows(page(null, new Object[]{"Ford"}, new Object[]{"Trillian"}));
+        assertThat(writer.needsRows(), is(false));
+        BytesReference page;
+        while ((page = writer.nextPage()) != null) {
+            page.writeTo(out);
+        }
+        assertThat(out.bytes().toUtf8(),
+                is(expected.toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).string()));
+    }
+
+    @Test
+    public void testUnknownFormat() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown format 'xml', supported formats are 'json' and 'csv'");
+        SQLResponsePageWriter.create(response(), "xml", false, 2);
+    }
+}
@@ -21,11 +21,16 @@
 
 package org.elasticsearch.action.bulk;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.create.TransportCreateIndexAction;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.support.ActionFilter;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.update.UpdateHelper;
+import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.action.index.MappingUpdatedAction;
@@ -36,12 +41,16 @@ import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.indices.IndexMissingException;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.Transport;
 import org.elasticsearch.transport.TransportRequestHandler;
 import org.elasticsearch.transport.TransportService;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -50,13 +59,20 @@ import org.mockito.*;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
@@ -72,11 +88,18 @@ public class BulkShardProcessorTest {
     @Mock(answer = Answers.RETURNS_MOCKS)
     ClusterService clusterService;
 
+    private final ThreadPool threadPool = new ThreadPool(getClass().getSimpleName());
+
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        threadPool.shutdownNow();
+    }
+
     @Test
     public void testNonEsRejectedExceptionDoesNotResultInRetryButAborts() throws Throwable {
         expectedException.expect(RuntimeException.class);
@@ -92,6 +115,7 @@ public class BulkShardProcessorTest {
 
         final BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
                 clusterService,
+                threadPool,
                 ImmutableSettings.EMPTY,
                 transportShardBulkActionDelegate,
                 mock(TransportCreateIndexAction.class),
@@ -133,7 +157,9 @@ public class BulkShardProcessorTest {
 
         final BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
                 clusterService,
-                ImmutableSettings.EMPTY,
+                threadPool,
+                ImmutableSettings.builder()
+                        .put(BulkShardProcessor.MAX_IN_FLIGHT_REQUESTS_PER_SHARD, 1).build(),
                 transportShardBulkActionDelegate,
                 mock(TransportCreateIndexAction.class),
                 false,
@@ -144,9 +170,8 @@ public class BulkShardProcessorTest {
         bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null);
         final ActionListener<BulkShardResponse> listener = ref.get();
 
+        // the retried request keeps its shard busy, another request for that shard has to wait
         listener.onFailure(new EsRejectedExecutionException());
-        // wait, failure retry lock is done in decoupled thread
-        Thread.sleep(1);
 
         final ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(2);
         final AtomicBoolean hadBlocked = new AtomicBoolean(false);
@@ -162,12 +187,382 @@ public class BulkShardProcessorTest {
                         latch.countDown();
                     }
                 }, 10, TimeUnit.MILLISECONDS);
-                bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar2\"}"), "2", null);
+                bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar2\"}"), "1", null);
                 hasBlocked.set(false);
             }
         });
         latch.await();
         assertTrue(hadBlocked.get());
+        scheduledExecutorService.shutdownNow();
+    }
+
+    @Test
+    public void testAddToOtherShardDoesNotBlockDuringRetry() throws Exception {
+        ClusterService clusterService = mock(ClusterService.class);
+        OperationRouting operationRouting = mock(OperationRouting.class);
+
+        mockShard(operationRouting, 1);
+        mockShard(operationRouting, 2);
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+
+        final AtomicReference<ActionListener<BulkShardResponse>> ref = new AtomicReference<>();
+        final AtomicInteger executed = new AtomicInteger(0);
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = new TransportShardBulkActionDelegate() {
+            @Override
+            public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                ref.compareAndSet(null, listener);
+                executed.incrementAndGet();
+            }
+        };
+
+        BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                ImmutableSettings.builder()
+                        .put(BulkShardProcessor.MAX_IN_FLIGHT_REQUESTS_PER_SHARD, 1).build(),
+                transportShardBulkActionDelegate,
+                mock(TransportCreateIndexAction.class),
+                false,
+                false,
+                1
+        );
+
+        bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null);
+        ref.get().onFailure(new EsRejectedExecutionException());
+
+        assertTrue(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar2\"}"), "2", null));
+        assertThat(executed.get(), greaterThanOrEqualTo(2));
+    }
+
+    @Test
+    public void testFlushOnSizeInBytes() throws Exception {
+        ClusterService clusterService = mock(ClusterService.class);
+        OperationRouting operationRouting = mock(OperationRouting.class);
+        mockShard(operationRouting, 1);
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+
+        final AtomicInteger executed = new AtomicInteger(0);
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = new TransportShardBulkActionDelegate() {
+            @Override
+            public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                executed.incrementAndGet();
+            }
+        };
+
+        BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                ImmutableSettings.builder()
+                        .put(BulkShardProcessor.FLUSH_SIZE, "10b")
+                        .put(BulkShardProcessor.FLUSH_INTERVAL, "1h").build(),
+                transportShardBulkActionDelegate,
+                mock(TransportCreateIndexAction.class),
+                false,
+                false,
+                100
+        );
+
+        bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null);
+        assertThat(executed.get(), is(1));
+    }
+
+    @Test
+    public void testFlushOfAgedBuffer() throws Exception {
+        ClusterService clusterService = mock(ClusterService.class);
+        OperationRouting operationRouting = mock(OperationRouting.class);
+        mockShard(operationRouting, 1);
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+
+        final CountDownLatch executed = new CountDownLatch(1);
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = new TransportShardBulkActionDelegate() {
+            @Override
+            public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                executed.countDown();
+            }
+        };
+
+        BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                ImmutableSettings.builder().put(BulkShardProcessor.FLUSH_INTERVAL, "10ms").build(),
+                transportShardBulkActionDelegate,
+                mock(TransportCreateIndexAction.class),
+                false,
+                false,
+                100
+        );
+
+        bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null);
+        assertTrue(executed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCheckpointCompletesOnceAllItemsAddedBeforeAreProcessed() throws Exception {
+        ClusterService clusterService = mock(ClusterService.class);
+        OperationRouting operationRouting = mock(OperationRouting.class);
+        mockShard(operationRouting, 1);
+        mockShard(operationRouting, 2);
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+
+        final List<BulkShardRequest> requests = new ArrayList<>();
+        final List<ActionListener<BulkShardResponse>> listeners = new ArrayList<>();
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = new TransportShardBulkActionDelegate() {
+            @Override
+            public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                requests.add(request);
+                listeners.add(listener);
+            }
+        };
+
+        BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                ImmutableSettings.builder().put(BulkShardProcessor.FLUSH_INTERVAL, "1h").build(),
+                transportShardBulkActionDelegate,
+                mock(TransportCreateIndexAction.class),
+                false,
+                false,
+                100
+        );
+        bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null);
+        bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar2\"}"), "2", null);
+        assertThat(requests.size(), is(0));
+
+        ListenableFuture<Void> checkpoint = bulkShardProcessor.checkpoint();
+        // the buffered items are sent right away
+        assertThat(requests.size(), is(2));
+        assertFalse(checkpoint.isDone());
+
+        respond(requests.get(0), listeners.get(0));
+        assertFalse(checkpoint.isDone());
+
+        // items added afterwards don't delay the checkpoint
+        bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar3\"}"), "1", null);
+        respond(requests.get(1), listeners.get(1));
+        assertTrue(checkpoint.isDone());
+    }
+
+    @Test
+    public void testCheckpointFailsIfProcessorFails() throws Throwable {
+        expectedException.expect(RuntimeException.class);
+        expectedException.expectMessage("a random exception");
+
+        final AtomicReference<ActionListener<BulkShardResponse>> ref = new AtomicReference<>();
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = new TransportShardBulkActionDelegate() {
+            @Override
+            public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                ref.set(listener);
+            }
+        };
+
+        BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                ImmutableSettings.EMPTY,
+                transportShardBulkActionDelegate,
+                mock(TransportCreateIndexAction.class),
+                false,
+                false,
+                100
+        );
+        bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null);
+        ListenableFuture<Void> checkpoint = bulkShardProcessor.checkpoint();
+        ref.get().onFailure(new RuntimeException("a random exception"));
+
+        try {
+            checkpoint.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testItemsAreHeldBackUntilTheirIndexIsCreated() throws Exception {
+        final List<BulkShardRequest> requests = new ArrayList<>();
+        final List<ActionListener<BulkShardResponse>> listeners = new ArrayList<>();
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = new TransportShardBulkActionDelegate() {
+            @Override
+            public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                requests.add(request);
+                listeners.add(listener);
+            }
+        };
+        List<ActionListener<CreateIndexResponse>> creations = new ArrayList<>();
+        BulkShardProcessor bulkShardProcessor = autoCreatingProcessor(
+                ImmutableSettings.builder()
+                        .put(BulkShardProcessor.MAX_IN_FLIGHT_REQUESTS_PER_SHARD, 1)
+                        .put(BulkShardProcessor.FLUSH_SIZE, "10b")
+                        .put(BulkShardProcessor.FLUSH_INTERVAL, "1h").build(),
+                transportShardBulkActionDelegate, creations, 3);
+
+        assertTrue(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null));
+        assertTrue(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar2\"}"), "1", null));
+        // the index is created once
+        assertThat(creations.size(), is(1));
+        assertThat(requests.size(), is(0));
+
+        creations.get(0).onResponse(mock(CreateIndexResponse.class));
+        // the held back items exceed the flush size, they are sent in separate requests
+        assertThat(requests.size(), is(1));
+        assertThat(requests.get(0).items().length, is(1));
+
+        respond(requests.get(0), listeners.get(0));
+        assertThat(requests.size(), is(2));
+        assertThat(requests.get(1).items().length, is(1));
+
+        // items added later are routed right away
+        assertTrue(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar3\"}"), "2", null));
+        assertThat(requests.size(), is(3));
+        assertThat(creations.size(), is(1));
+    }
+
+    @Test
+    public void testAddBlocksIfTooManyItemsAreHeldBack() throws Exception {
+        final List<ActionListener<CreateIndexResponse>> creations = new CopyOnWriteArrayList<>();
+        final BulkShardProcessor bulkShardProcessor = autoCreatingProcessor(
+                ImmutableSettings.EMPTY, mock(TransportShardBulkActionDelegate.class), creations, 1);
+
+        assertTrue(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null));
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> added = executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar2\"}"), "2", null);
+                }
+            });
+            try {
+                added.get(50, TimeUnit.MILLISECONDS);
+                fail("add must block while the index is created");
+            } catch (TimeoutException e) {
+                // expected
+            }
+            creations.get(0).onResponse(mock(CreateIndexResponse.class));
+            assertTrue(added.get(5, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedIndexCreationFailsProcessor() throws Throwable {
+        expectedException.expect(RuntimeException.class);
+        expectedException.expectMessage("index creation failed");
+
+        List<ActionListener<CreateIndexResponse>> creations = new ArrayList<>();
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = mock(TransportShardBulkActionDelegate.class);
+        BulkShardProcessor bulkShardProcessor = autoCreatingProcessor(
+                ImmutableSettings.EMPTY, transportShardBulkActionDelegate, creations, 1);
+
+        assertTrue(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null));
+        creations.get(0).onFailure(new RuntimeException("index creation failed"));
+        assertFalse(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar2\"}"), "2", null));
+        verify(transportShardBulkActionDelegate, never()).execute(
+                any(BulkShardRequest.class), any(ActionListener.class));
+
+        try {
+            bulkShardProcessor.result().get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testHeldBackItemsAreRoutedIfIndexAlreadyExists() throws Exception {
+        final List<BulkShardRequest> requests = new ArrayList<>();
+        TransportShardBulkActionDelegate transportShardBulkActionDelegate = new TransportShardBulkActionDelegate() {
+            @Override
+            public void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+                requests.add(request);
+            }
+        };
+        List<ActionListener<CreateIndexResponse>> creations = new ArrayList<>();
+        BulkShardProcessor bulkShardProcessor = autoCreatingProcessor(
+                ImmutableSettings.EMPTY, transportShardBulkActionDelegate, creations, 1);
+
+        assertTrue(bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null));
+        creations.get(0).onFailure(new IndexAlreadyExistsException(new Index("foo")));
+
+        assertThat(requests.size(), is(1));
+        assertThat(requests.get(0).items()[0].id(), is(0));
+        assertFalse(bulkShardProcessor.result().isDone());
+    }
+
+    @Test
+    public void testFailedRoutingFailsProcessor() throws Throwable {
+        expectedException.expect(IndexMissingException.class);
+
+        ClusterService clusterService = mock(ClusterService.class);
+        OperationRouting operationRouting = mock(OperationRouting.class);
+        when(operationRouting.indexShards(
+                any(ClusterState.class), anyString(), anyString(), anyString(), anyString()))
+                .thenThrow(new IndexMissingException(new Index("foo")));
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+        BulkShardProcessor bulkShardProcessor = new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                ImmutableSettings.EMPTY,
+                mock(TransportShardBulkActionDelegate.class),
+                mock(TransportCreateIndexAction.class),
+                false,
+                false,
+                10
+        );
+        try {
+            bulkShardProcessor.add("foo", new BytesArray("{\"foo\": \"bar1\"}"), "1", null);
+            fail("add must fail if the item can't be routed");
+        } catch (IndexMissingException e) {
+            // expected
+        } finally {
+            bulkShardProcessor.close();
+        }
+
+        try {
+            bulkShardProcessor.result().get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return a processor which creates indices automatically and collects the listeners of the creations
+     */
+    private BulkShardProcessor autoCreatingProcessor(Settings settings,
+                                                     TransportShardBulkActionDelegate transportShardBulkActionDelegate,
+                                                     final List<ActionListener<CreateIndexResponse>> creations,
+                                                     int bulkSize) {
+        ClusterService clusterService = mock(ClusterService.class);
+        OperationRouting operationRouting = mock(OperationRouting.class);
+        mockShard(operationRouting, 1);
+        mockShard(operationRouting, 2);
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+        when(clusterService.state()).thenReturn(ClusterState.builder(new ClusterName("test")).build());
+
+        return new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                settings,
+                transportShardBulkActionDelegate,
+                mock(TransportCreateIndexAction.class),
+                true,
+                false,
+                bulkSize
+        ) {
+            @Override
+            void createIndex(CreateIndexRequest request, ActionListener<CreateIndexResponse> listener) {
+                creations.add(listener);
+            }
+        };
+    }
+
+    private static void respond(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+        BulkItemRequest[] items = request.items();
+        BulkItemResponse[] responses = new BulkItemResponse[items.length];
+        for (int i = 0; i < items.length; i++) {
+            responses[i] = new BulkItemResponse(items[i].id(), "index",
+                    new IndexResponse(request.index(), "default", Integer.toString(items[i].id()), 1, true));
+        }
+        listener.onResponse(new BulkShardResponse(new ShardId(request.index(), request.shardId()), responses));
     }
 
     private void mockShard(OperationRouting operationRouting, Integer shardId) {